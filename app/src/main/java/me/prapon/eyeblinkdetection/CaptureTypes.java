@@ -1,9 +1,15 @@
 package me.prapon.eyeblinkdetection;
 
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+
 public class CaptureTypes {
 
-    public static final int EYE = 1;
-    public static final int LEFT_FACE = 2;
-    public static final int RIGHT_FACE = 3;
+    public static final int EYE = FaceEvents.EYE;
+    public static final int LEFT_FACE = FaceEvents.LEFT_FACE;
+    public static final int RIGHT_FACE = FaceEvents.RIGHT_FACE;
+    public static final int LEFT_WINK = FaceEvents.LEFT_WINK;
+    public static final int RIGHT_WINK = FaceEvents.RIGHT_WINK;
+    public static final int DOUBLE_BLINK = FaceEvents.DOUBLE_BLINK;
+    public static final int LONG_BLINK = FaceEvents.LONG_BLINK;
 
 }
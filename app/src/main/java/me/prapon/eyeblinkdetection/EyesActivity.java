@@ -19,7 +19,6 @@ import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -37,25 +36,26 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.vision.CameraSource;
-import com.google.android.gms.vision.Detector;
-import com.google.android.gms.vision.MultiProcessor;
-import com.google.android.gms.vision.Tracker;
-import com.google.android.gms.vision.face.Face;
-import com.google.android.gms.vision.face.FaceDetector;
-import com.google.android.gms.vision.face.LargestFaceFocusingProcessor;
 import com.google.android.material.snackbar.Snackbar;
 
 import java.io.IOException;
+import java.util.Locale;
 
+import me.prapon.eyeblinkdetection.core.SwitchScanner;
+import me.prapon.eyeblinkdetection.core.pipeline.LatencyBudget;
+import me.prapon.eyeblinkdetection.core.stats.CrowdStats;
 import me.prapon.eyeblinkdetection.vision.CameraSourcePreview;
-import me.prapon.eyeblinkdetection.vision.FaceTracker;
+import me.prapon.eyeblinkdetection.vision.FacePipeline;
+import me.prapon.eyeblinkdetection.vision.FacePipelineHolder;
 import me.prapon.eyeblinkdetection.vision.GraphicOverlay;
+import me.prapon.eyeblinkdetection.vision.OverlayRenderView;
 
 public final class EyesActivity extends AppCompatActivity {
     private static final String TAG = "GooglyEyes";
@@ -65,26 +65,41 @@ public final class EyesActivity extends AppCompatActivity {
     // permission request codes need to be < 256
     private static final int RC_HANDLE_CAMERA_PERM = 2;
 
-    private CameraSource mCameraSource = null;
+    // Background of the element focused in switch access mode.
+    private static final int SWITCH_FOCUS_COLOR = 0x8033B5E5;
+
+    // Both pipelines are built once and kept warm, so that flipping the camera does not have to
+    // rebuild the detector and its processor.  They live in the holder rather than the activity, so
+    // that they survive rotation and short pauses.
+    private FacePipelineHolder mPipelineHolder;
     private CameraSourcePreview mPreview;
     private GraphicOverlay mGraphicOverlay;
+    private OverlayRenderView mOverlayRenderView;
     private TextView countTV;
     private ImageView eyeImage, leftImage, rightImage;
 
     private boolean mIsFrontFacing = true;
+
+    // Switch access mode: deliberate gestures of the front camera's face step through the elements
+    // and click the focused one, see SwitchScanner.  The mode is kept across rotations, but only
+    // takes effect in layouts which have all of the elements.  Only touched on the main thread.
+    private boolean mSwitchAccess;
+    private View[] mSwitchElements;
+    private boolean mHasSwitchElements;
+    private SwitchScanner mScanner;
+    private int mLatencyLevel = LatencyBudget.LEVEL_FULL;
     /**
      * Toggles between front-facing and rear-facing modes.
      */
     private View.OnClickListener mFlipButtonListener = new View.OnClickListener() {
         public void onClick(View v) {
-            mIsFrontFacing = !mIsFrontFacing;
-
-            if (mCameraSource != null) {
-                mCameraSource.release();
-                mCameraSource = null;
+            if (!mPipelineHolder.hasPipelines()) {
+                return;
             }
+            stopCameraSource();
+            mIsFrontFacing = !mIsFrontFacing;
+            mPipelineHolder.setFrontFacing(mIsFrontFacing);
 
-            createCameraSource();
             startCameraSource();
         }
     };
@@ -103,8 +118,47 @@ public final class EyesActivity extends AppCompatActivity {
         leftImage = findViewById(R.id.faceLeft);
         rightImage = findViewById(R.id.faceRight);
         countTV = findViewById(R.id.count);
+        // The landscape layout only has the preview, so the other views may be missing.
+        if (countTV != null) {
+            countTV.setOnLongClickListener(v -> {
+                cycleSignalGraph();
+                return true;
+            });
+        }
+
+        // The elements switch access steps through, and what selecting each of them does.
+        mSwitchElements = new View[]{eyeImage, leftImage, rightImage, countTV};
+        mScanner = new SwitchScanner(mSwitchElements.length);
+        mHasSwitchElements = eyeImage != null && leftImage != null && rightImage != null
+                && countTV != null;
+        if (mHasSwitchElements) {
+            eyeImage.setOnClickListener(v -> captureImage(CaptureTypes.EYE, false, false));
+            leftImage.setOnClickListener(v -> captureImage(CaptureTypes.LEFT_FACE, false, false));
+            rightImage.setOnClickListener(v -> captureImage(CaptureTypes.RIGHT_FACE, false, false));
+            countTV.setOnClickListener(v -> cycleSignalGraph());
+            eyeImage.setOnLongClickListener(v -> {
+                setSwitchAccess(!mSwitchAccess);
+                return true;
+            });
+        }
         mGraphicOverlay = findViewById(R.id.faceOverlay);
 
+        // Draw the face graphics on their own render thread rather than the UI thread.
+        mOverlayRenderView = findViewById(R.id.overlayRender);
+        mOverlayRenderView.setOverlay(mGraphicOverlay);
+
+        mPipelineHolder = FacePipelineHolder.getInstance(this);
+        if (mPipelineHolder.hasPipelines()) {
+            mIsFrontFacing = mPipelineHolder.isFrontFacing();
+        } else if (savedInstanceState != null) {
+            mIsFrontFacing = savedInstanceState.getBoolean("IsFrontFacing", true);
+            mPipelineHolder.setFrontFacing(mIsFrontFacing);
+        }
+        if (savedInstanceState != null) {
+            mSwitchAccess = savedInstanceState.getBoolean("SwitchAccess", false);
+            mScanner.setFocus(savedInstanceState.getInt("SwitchFocus", 0));
+        }
+
         // Check for the camera permission before accessing the camera.  If the
         // permission is not granted yet, request permission.
 
@@ -142,33 +196,50 @@ public final class EyesActivity extends AppCompatActivity {
     }
 
     /**
-     * Restarts the camera.
+     * Re-attaches to the pipelines and restarts the camera preview on this activity's surface.  If
+     * the holder tore the pipelines down while the activity was in the background, they are built
+     * again first.
      */
     @Override
     protected void onResume() {
         super.onResume();
 
+        if (!mPipelineHolder.hasPipelines()) {
+            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+                    != PackageManager.PERMISSION_GRANTED) {
+                return;
+            }
+            mPipelineHolder.setFrontFacing(mIsFrontFacing);
+            createCameraSource();
+        } else {
+            mPipelineHolder.attach(mGraphicOverlay, mFrontListener, mRearListener);
+            setSwitchAccess(mSwitchAccess);
+        }
         startCameraSource();
     }
 
     /**
-     * Stops the camera.
+     * Stops the camera preview and detaches from the pipelines.  The detectors and trackers are
+     * kept until the holder's idle timeout, so that rotation and short pauses do not lose the
+     * tracking state, but the camera does not capture in the background.
      */
     @Override
     protected void onPause() {
         super.onPause();
-        mPreview.stop();
+        stopCameraSource();
+        mPipelineHolder.detach();
     }
 
     /**
      * Releases the resources associated with the camera source, the associated detector, and the
-     * rest of the processing pipeline.
+     * rest of the processing pipeline when the activity is finished for good.  Otherwise they are
+     * released by the holder after the idle timeout.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mCameraSource != null) {
-            mCameraSource.release();
+        if (isFinishing()) {
+            mPipelineHolder.release();
         }
     }
 
@@ -201,68 +272,65 @@ public final class EyesActivity extends AppCompatActivity {
     }
 
     /**
-     * Saves the camera facing mode, so that it can be restored after the device is rotated.
+     * Saves the camera facing mode, so that it can be restored if the pipelines were torn down
+     * while the activity was in the background.
      */
     @Override
     public void onSaveInstanceState(@NonNull Bundle savedInstanceState) {
         super.onSaveInstanceState(savedInstanceState);
         savedInstanceState.putBoolean("IsFrontFacing", mIsFrontFacing);
+        savedInstanceState.putBoolean("SwitchAccess", mSwitchAccess);
+        savedInstanceState.putInt("SwitchFocus", mScanner.getFocus());
     }
 
     //==============================================================================================
     // Detector
     //==============================================================================================
 
-    /**
-     * Creates the face detector and associated processing pipeline to support either front facing
-     * mode or rear facing mode.  Checks if the detector is ready to use, and displays a low storage
-     * warning if it was not possible to download the face library.
-     */
-    @NonNull
-    private FaceDetector createFaceDetector(Context context) {
-
-        FaceDetector detector = new FaceDetector.Builder(context)
-                .setLandmarkType(FaceDetector.ALL_LANDMARKS)
-                .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
-                .setTrackingEnabled(true)
-                .setMode(FaceDetector.FAST_MODE)
-                .setProminentFaceOnly(mIsFrontFacing)
-                .setMinFaceSize(mIsFrontFacing ? 0.35f : 0.15f)
-                .build();
-
-        Detector.Processor<Face> processor;
-        if (mIsFrontFacing) {
-            // For front facing mode
-
-            Tracker<Face> tracker = new FaceTracker(mGraphicOverlay, (position, type) -> {
-
-                countTV.setText("Blink count nasmfd:" + position);
-
-                if(type == CaptureTypes.EYE) {
-                    if (position == 2) {
-                        captureImage(type);
-                    }
-                }else {
-                    captureImage(type);
-                }
-            });
-            processor = new LargestFaceFocusingProcessor.Builder(detector, tracker).build();
+    private final ClickListener mFrontListener = (position, type) -> {
+        if (isSwitchAccessActive()) {
+            onSwitchEvent(type);
+            return;
+        }
 
-//            Toast.makeText(context, "face on camera", Toast.LENGTH_SHORT).show();
-        } else {
-            // For rear facing mode, a factory is used to create per-face tracker instances.
-            MultiProcessor.Factory<Face> factory = face -> new FaceTracker(mGraphicOverlay, (position, viewId) -> {
-                Toast.makeText(context, "Blink count :" + position, Toast.LENGTH_SHORT).show();
+        if (countTV != null) {
+            countTV.setText("Blink count nasmfd:" + position);
+        }
 
-            });
-            processor = new MultiProcessor.Builder<>(factory).build();
-//            Toast.makeText(context, "face not on camera", Toast.LENGTH_SHORT).show();
+        if (type == CaptureTypes.DOUBLE_BLINK) {
+            // A deliberate double blink takes the eye picture.
+            captureImage(CaptureTypes.EYE, false, true);
+        } else if (type == CaptureTypes.LEFT_FACE || type == CaptureTypes.RIGHT_FACE) {
+            captureImage(type, true, true);
+        }
+    };
 
+    private final ClickListener mRearListener = (position, viewId) -> {
+        if (viewId != CaptureTypes.EYE) {
+            return;
         }
+        // Each face has its own blink count, so show the statistics across all of them.
+        CrowdStats.Snapshot stats = mPipelineHolder.getPipeline(false).getCrowdStats().snapshot();
+        Toast.makeText(this, String.format(Locale.US, "Blinks: %d, faces: %d, %.1f/min",
+                stats.getEventCount(CaptureTypes.EYE), stats.getVisibleFaces(),
+                stats.getCrowdRate()), Toast.LENGTH_SHORT).show();
+    };
 
-        detector.setProcessor(processor);
+    /**
+     * Creates the face detector and associated processing pipeline for both front facing mode and
+     * rear facing mode, unless they were kept from a previous instance of this activity.  Checks if
+     * the detectors are ready to use, and displays a low storage warning if it was not possible to
+     * download the face library.
+     */
+    private void createCameraSource() {
+        if (mPipelineHolder.hasPipelines()) {
+            return;
+        }
+        mPipelineHolder.createPipelines();
+        mPipelineHolder.attach(mGraphicOverlay, mFrontListener, mRearListener);
+        setSwitchAccess(mSwitchAccess);
 
-        if (!detector.isOperational()) {
+        if (!activePipeline().isOperational()) {
 
             // isOperational() can be used to check if the required native library is currently available.  .
             Log.w(TAG, "Face detector dependencies are not yet available.");
@@ -277,12 +345,138 @@ public final class EyesActivity extends AppCompatActivity {
                 Log.w(TAG, getString(R.string.low_storage_error));
             }
         }
-        return detector;
     }
 
-    private void captureImage(int type) {
+    /**
+     * Shows the signal graph of the active pipeline, zooms it out one level, or hides it after the
+     * widest level.
+     */
+    private void cycleSignalGraph() {
+        FacePipeline pipeline = activePipeline();
+        if (pipeline == null) {
+            return;
+        }
+        int zoom = pipeline.getSignalGraphZoom() + 1;
+        pipeline.setSignalGraphZoom(zoom < pipeline.getSignalGraphLevels() ? zoom : -1);
+    }
+
+    //==============================================================================================
+    // Switch access
+    //==============================================================================================
+
+    /**
+     * Turns switch access mode on or off.  While on, the front pipeline's event latency is measured
+     * against its budget from scratch, and the mode sheds work as the budget is missed; see
+     * {@link #onLatencyLevelChanged}.  In a layout without the switch elements the mode is only
+     * remembered, for when the activity is recreated with them.
+     */
+    private void setSwitchAccess(boolean enabled) {
+        if (mSwitchAccess && !enabled && countTV != null) {
+            countTV.setText(null);
+        }
+        mSwitchAccess = enabled;
+        boolean active = isSwitchAccessActive();
+        FacePipeline pipeline = mPipelineHolder.getPipeline(true);
+        if (pipeline != null) {
+            if (active) {
+                pipeline.getLatencyBudget().reset();
+            }
+            pipeline.setLatencyListener(active ? this::onLatencyLevelChanged : null);
+        }
+        mLatencyLevel = LatencyBudget.LEVEL_FULL;
+        updateSwitchFocus();
+    }
+
+    /**
+     * Steps or selects with a gesture.  Head turns still capture their pictures while the budget
+     * is kept.
+     */
+    private void onSwitchEvent(int type) {
+        int action = mScanner.onEvent(type);
+        if (action == SwitchScanner.ACTION_SELECT) {
+            mSwitchElements[mScanner.getFocus()].performClick();
+        } else if (action != SwitchScanner.ACTION_NONE) {
+            updateSwitchFocus();
+        } else if ((type == CaptureTypes.LEFT_FACE || type == CaptureTypes.RIGHT_FACE)
+                && mLatencyLevel == LatencyBudget.LEVEL_FULL) {
+            captureImage(type, true, true);
+        }
+    }
+
+    /**
+     * Degrades switch access while events miss the latency budget: first the optional work on the
+     * main and capture threads is shed, that is head turn captures and the signal graph, and if the
+     * budget is still missed the user is told that responses are slow, so that gestures can be
+     * paced to them.  Everything comes back as the latency recovers.
+     */
+    private void onLatencyLevelChanged(int level) {
+        mLatencyLevel = level;
+        FacePipeline pipeline = mPipelineHolder.getPipeline(true);
+        if (pipeline != null) {
+            Log.i(TAG, "Switch access latency level " + level + ": " + pipeline.getLatencyBudget());
+            if (level >= LatencyBudget.LEVEL_REDUCED) {
+                pipeline.setSignalGraphZoom(-1);
+            }
+        }
+        updateSwitchFocus();
+    }
 
-        mCameraSource.takePicture(null, new CameraSource.PictureCallback() {
+    /**
+     * Highlights the focused element, and shows the mode and, when degraded, the latency in the
+     * count text.
+     */
+    private void updateSwitchFocus() {
+        if (!mHasSwitchElements) {
+            return;
+        }
+        for (int i = 0; i < mSwitchElements.length; i++) {
+            boolean focused = mSwitchAccess && i == mScanner.getFocus();
+            mSwitchElements[i].setBackgroundColor(focused ? SWITCH_FOCUS_COLOR : Color.TRANSPARENT);
+        }
+        if (!mSwitchAccess) {
+            return;
+        }
+        FacePipeline pipeline = mPipelineHolder.getPipeline(true);
+        if (mLatencyLevel == LatencyBudget.LEVEL_MINIMAL && pipeline != null) {
+            LatencyBudget budget = pipeline.getLatencyBudget();
+            countTV.setText(String.format(Locale.US, "Switch access: slow, %d ms (budget %d ms)",
+                    budget.getPercentileMicros(0.9) / 1000, budget.getBudgetMs()));
+        } else {
+            countTV.setText("Switch access");
+        }
+    }
+
+    private boolean isSwitchAccessActive() {
+        return mSwitchAccess && mHasSwitchElements;
+    }
+
+    @Nullable
+    private FacePipeline activePipeline() {
+        return mPipelineHolder.getPipeline(mIsFrontFacing);
+    }
+
+    /**
+     * Shows the best recent preview frame for the event, or for head turns the newest one, since
+     * the turn was predicted to be there by then.  Only if no preview frame is available yet does
+     * this fall back to taking a picture, which interrupts the preview.  For an automatic capture,
+     * a frame which looks nearly the same as one already shown for the type is not shown again; a
+     * tap, or a switch access selection, always shows one.
+     *
+     * @param turn whether a head turn event triggered the capture
+     * @param automatic whether an event rather than the user asked for the capture
+     */
+    private void captureImage(int type, boolean turn, boolean automatic) {
+
+        FacePipeline pipeline = activePipeline();
+        if (pipeline == null) {
+            return;
+        }
+        if (turn ? pipeline.captureTurn(type, bitmap -> showImage(type, bitmap))
+                : pipeline.captureBestFrame(type, automatic,
+                        bitmap -> showImage(type, bitmap))) {
+            return;
+        }
+        pipeline.getCameraSource().takePicture(null, new CameraSource.PictureCallback() {
             @Override
             public void onPictureTaken(byte[] bytes) {
                 Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
@@ -297,40 +491,33 @@ public final class EyesActivity extends AppCompatActivity {
     }
 
     private void showImage(int type, Bitmap bitmap) {
+        ImageView image = null;
         if(type == CaptureTypes.EYE){
-            eyeImage.setImageBitmap(bitmap);
+            image = eyeImage;
         }else if(type == CaptureTypes.LEFT_FACE){
-            leftImage.setImageBitmap(bitmap);
+            image = leftImage;
         }else if(type == CaptureTypes.RIGHT_FACE){
-            rightImage.setImageBitmap(bitmap);
+            image = rightImage;
+        }
+        // Not shown in layouts without the image views.
+        if (image != null) {
+            image.setImageBitmap(bitmap);
         }
     }
 
 
     /**
-     * Creates the face detector and the camera.
+     * Stops the camera preview, and tells its pipeline that no frames come until it is started
+     * again.
      */
-    private void createCameraSource() {
-        Context context = getApplicationContext();
-        FaceDetector detector = createFaceDetector(context);
-
-        int facing = CameraSource.CAMERA_FACING_FRONT;
-
-        if (!mIsFrontFacing) {
-            facing = CameraSource.CAMERA_FACING_BACK;
+    private void stopCameraSource() {
+        mPreview.stop();
+        FacePipeline pipeline = activePipeline();
+        if (pipeline != null) {
+            pipeline.markStopped();
         }
-
-        mCameraSource = new CameraSource.Builder(context, detector)
-                .setFacing(facing)
-                .setRequestedPreviewSize(320, 240)
-                .setRequestedFps(1.0f)
-                .setAutoFocusEnabled(true)
-                .build();
-
-
     }
 
-
     private void startCameraSource() {
         // check that the device has play services available.
         int code = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(
@@ -342,13 +529,14 @@ public final class EyesActivity extends AppCompatActivity {
             dlg.show();
         }
 
-        if (mCameraSource != null) {
+        FacePipeline pipeline = activePipeline();
+        if (pipeline != null) {
             try {
-                mPreview.start(mCameraSource, mGraphicOverlay);
+                pipeline.markStartRequested();
+                mPreview.start(pipeline.getCameraSource(), mGraphicOverlay);
             } catch (IOException e) {
                 Log.e(TAG, "Unable to start camera source.", e);
-                mCameraSource.release();
-                mCameraSource = null;
+                stopCameraSource();
             }
         }
     }
@@ -77,6 +77,10 @@ public class CameraSourcePreview extends ViewGroup {
                 // do not touch here
                 return;
             }
+            // The camera source may still be running on the surface of a previous activity, since
+            // pipelines are kept across rotation.  It can only be moved to this surface by
+            // restarting it; stopping a camera source which is not running does nothing.
+            mCameraSource.stop();
             mCameraSource.start(mSurfaceView.getHolder());
             if (mOverlay != null) {
                 Size size = mCameraSource.getPreviewSize();
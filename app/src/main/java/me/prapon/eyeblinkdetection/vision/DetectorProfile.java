@@ -0,0 +1,114 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+
+import com.google.android.gms.vision.face.FaceDetector;
+
+/**
+ * A face detector configuration: which optional outputs the detector computes, and how hard it
+ * looks.  Each output costs detection time, so a profile is derived from the features the app
+ * currently needs, and nothing more:<p>
+ *
+ * <ul>
+ * <li>Head turns only need the face and its Euler angles, which every configuration reports.</li>
+ * <li>Blink counting needs the eye open classifications.</li>
+ * <li>The googly eyes overlay needs the eye landmarks.</li>
+ * <li>Capturing needs nothing extra, since captures are scored from the face bounds.</li>
+ * </ul>
+ * Rear profiles which classify eyes also have small faces refined; see {@link SmallFaceRefiner}.
+ */
+final class DetectorProfile {
+    static final int FEATURE_HEAD_TURNS = 1;
+    static final int FEATURE_BLINKS = 1 << 1;
+    static final int FEATURE_OVERLAY = 1 << 2;
+    static final int FEATURE_CAPTURE = 1 << 3;
+
+    private final boolean mFrontFacing;
+    private final boolean mLandmarks;
+    private final boolean mClassifications;
+    private final boolean mAccurate;
+    private final float mMinFaceSize;
+
+    private DetectorProfile(boolean frontFacing, boolean landmarks, boolean classifications,
+                            boolean accurate, float minFaceSize) {
+        mFrontFacing = frontFacing;
+        mLandmarks = landmarks;
+        mClassifications = classifications;
+        mAccurate = accurate;
+        mMinFaceSize = minFaceSize;
+    }
+
+    /**
+     * Returns the cheapest profile which supports all of the given features.
+     */
+    static DetectorProfile forFeatures(int features, boolean frontFacing) {
+        return new DetectorProfile(frontFacing,
+                (features & FEATURE_OVERLAY) != 0,
+                (features & FEATURE_BLINKS) != 0,
+                false,
+                frontFacing ? 0.35f : 0.15f);
+    }
+
+    /**
+     * Whether the detector reports eye open probabilities, without which they are uncomputed.
+     */
+    boolean classifiesEyes() {
+        return mClassifications;
+    }
+
+    /**
+     * Whether faces too small to classify should get a second, closer look.  Only the rear camera
+     * looks for faces small enough to need it.
+     */
+    boolean refinesSmallFaces() {
+        return mClassifications && !mFrontFacing;
+    }
+
+    FaceDetector build(Context context) {
+        return new FaceDetector.Builder(context)
+                .setLandmarkType(mLandmarks
+                        ? FaceDetector.ALL_LANDMARKS : FaceDetector.NO_LANDMARKS)
+                .setClassificationType(mClassifications
+                        ? FaceDetector.ALL_CLASSIFICATIONS : FaceDetector.NO_CLASSIFICATIONS)
+                .setTrackingEnabled(true)
+                .setMode(mAccurate ? FaceDetector.ACCURATE_MODE : FaceDetector.FAST_MODE)
+                .setProminentFaceOnly(mFrontFacing)
+                .setMinFaceSize(mMinFaceSize)
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DetectorProfile)) {
+            return false;
+        }
+        DetectorProfile other = (DetectorProfile) o;
+        return mFrontFacing == other.mFrontFacing
+                && mLandmarks == other.mLandmarks
+                && mClassifications == other.mClassifications
+                && mAccurate == other.mAccurate
+                && Float.compare(mMinFaceSize, other.mMinFaceSize) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mFrontFacing ? 1 : 0;
+        result = 31 * result + (mLandmarks ? 1 : 0);
+        result = 31 * result + (mClassifications ? 1 : 0);
+        result = 31 * result + (mAccurate ? 1 : 0);
+        result = 31 * result + Float.floatToIntBits(mMinFaceSize);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (mFrontFacing ? "front" : "rear")
+                + (mLandmarks ? "+landmarks" : "")
+                + (mClassifications ? "+classifications" : "")
+                + (mAccurate ? "+accurate" : "")
+                + "@" + mMinFaceSize;
+    }
+}
@@ -0,0 +1,199 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.vision.face.FaceDetector;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a pipeline's detector on the cheapest {@link DetectorProfile} for the features currently
+ * in use, e.g. dropping landmarks while the overlay is hidden, or classifications while blinks are
+ * not counted.<p>
+ *
+ * Building a face detector takes long enough to stall the camera, so detectors are built on a
+ * background thread, and the {@link PipelineDetector} switches over at a frame boundary only once
+ * the new detector is ready.  Until then the previous detector keeps running, so a switch never
+ * leaves a gap.  The most recently used detectors are kept warm, so switching back and forth
+ * between two states is immediate.<p>
+ *
+ * The rear pipeline also gets a {@link SmallFaceRefiner}, built in the background as well.  Until
+ * it is ready, small faces simply go unrefined.
+ */
+class DetectorProfileManager {
+    private static final String TAG = "DetectorProfiles";
+
+    // Detectors kept built, including the one in use.
+    private static final int MAX_WARM_DETECTORS = 2;
+    // Small faces refined per frame, each costing about one detection of a large face.
+    private static final int REFINE_BUDGET = 2;
+
+    // Builds detectors for all pipelines, one at a time.
+    private static final ExecutorService sBuildExecutor = Executors.newSingleThreadExecutor();
+
+    private final Context mContext;
+    private final boolean mFrontFacing;
+    private final PipelineDetector mDetector;
+
+    // Built detectors by profile, least recently used first.  Guarded by this.
+    private final LinkedHashMap<DetectorProfile, FaceDetector> mWarm =
+            new LinkedHashMap<>(4, 0.75f, true);
+    private DetectorProfile mWanted;
+    private boolean mBuilding;
+    private boolean mReleased;
+    private SmallFaceRefiner mRefiner;
+
+    /**
+     * Builds the detector for the initial features on the calling thread, so that the pipeline can
+     * start straight away.
+     *
+     * @param frameIntervalMs the expected time between camera frames
+     */
+    DetectorProfileManager(Context context, boolean frontFacing, int features,
+                           FrameRing frameRing, long frameIntervalMs) {
+        mContext = context.getApplicationContext();
+        mFrontFacing = frontFacing;
+        mWanted = DetectorProfile.forFeatures(features, frontFacing);
+        FaceDetector detector = mWanted.build(mContext);
+        mWarm.put(mWanted, detector);
+        mDetector = new PipelineDetector(mWanted, detector, frameRing, frameIntervalMs);
+        if (!frontFacing) {
+            sBuildExecutor.execute(this::buildRefiner);
+        }
+    }
+
+    PipelineDetector getDetector() {
+        return mDetector;
+    }
+
+    /**
+     * Switches to the cheapest profile for the given {@code DetectorProfile.FEATURE_*} flags, as
+     * soon as its detector is built.
+     */
+    synchronized void setFeatures(int features) {
+        if (mReleased) {
+            return;
+        }
+        mWanted = DetectorProfile.forFeatures(features, mFrontFacing);
+        FaceDetector warm = mWarm.get(mWanted);
+        if (warm != null) {
+            if (!mWanted.equals(mDetector.getTargetProfile())) {
+                Log.d(TAG, "Switching to warm profile " + mWanted);
+                mDetector.switchTo(mWanted, warm);
+            }
+            return;
+        }
+        if (!mBuilding) {
+            mBuilding = true;
+            sBuildExecutor.execute(this::buildWanted);
+        }
+    }
+
+    /**
+     * Returns the detection time percentiles of each profile used so far.
+     */
+    String getCostReport() {
+        return mDetector.getCostReport();
+    }
+
+    /**
+     * Releases the detectors which are not in use.  The one in use is released with the camera
+     * source, through the pipeline detector.
+     */
+    synchronized void release() {
+        mReleased = true;
+        DetectorProfile active = mDetector.getActiveProfile();
+        for (Map.Entry<DetectorProfile, FaceDetector> entry : mWarm.entrySet()) {
+            if (!entry.getKey().equals(active)) {
+                entry.getValue().release();
+            }
+        }
+        mWarm.clear();
+        if (mRefiner != null) {
+            mRefiner.release();
+            mRefiner = null;
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void buildRefiner() {
+        long startMs = System.currentTimeMillis();
+        SmallFaceRefiner refiner = new SmallFaceRefiner(mContext, REFINE_BUDGET);
+        Log.d(TAG, "Built small face refiner in " + (System.currentTimeMillis() - startMs) + " ms");
+        synchronized (this) {
+            if (mReleased) {
+                refiner.release();
+                return;
+            }
+            mRefiner = refiner;
+            mDetector.setRefiner(refiner);
+        }
+    }
+
+    /**
+     * Builds detectors on the build thread until the wanted profile has one, since the wanted
+     * profile may change while a build is running.
+     */
+    private void buildWanted() {
+        while (true) {
+            DetectorProfile profile;
+            synchronized (this) {
+                if (mReleased || mWarm.containsKey(mWanted)) {
+                    mBuilding = false;
+                    return;
+                }
+                profile = mWanted;
+            }
+
+            long startMs = System.currentTimeMillis();
+            FaceDetector detector = profile.build(mContext);
+            Log.d(TAG, "Built profile " + profile + " in "
+                    + (System.currentTimeMillis() - startMs) + " ms");
+
+            List<FaceDetector> evicted = new ArrayList<>();
+            synchronized (this) {
+                if (mReleased) {
+                    mBuilding = false;
+                    detector.release();
+                    return;
+                }
+                mWarm.put(profile, detector);
+                if (profile.equals(mWanted)) {
+                    mDetector.switchTo(profile, detector);
+                }
+                evictColdDetectors(evicted);
+            }
+            for (FaceDetector cold : evicted) {
+                cold.release();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used detectors beyond the warm limit, never the one in use or the
+     * one about to be.
+     */
+    private void evictColdDetectors(List<FaceDetector> evicted) {
+        DetectorProfile active = mDetector.getActiveProfile();
+        DetectorProfile target = mDetector.getTargetProfile();
+        Iterator<Map.Entry<DetectorProfile, FaceDetector>> entries = mWarm.entrySet().iterator();
+        while (mWarm.size() > MAX_WARM_DETECTORS && entries.hasNext()) {
+            Map.Entry<DetectorProfile, FaceDetector> entry = entries.next();
+            DetectorProfile profile = entry.getKey();
+            if (!profile.equals(active) && !profile.equals(target) && !profile.equals(mWanted)) {
+                evicted.add(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+}
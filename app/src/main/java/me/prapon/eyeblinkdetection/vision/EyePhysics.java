@@ -16,7 +16,6 @@
 package me.prapon.eyeblinkdetection.vision;
 
 import android.graphics.PointF;
-import android.os.SystemClock;
 
 /**
  * Simulates the physics of motion for an iris which moves within a googly eye.  The iris moves
@@ -33,7 +32,10 @@ import android.os.SystemClock;
  * </ol>
  *
  * The simulation is configured to run at a universal real time rate, regardless of the performance
- * of the device in which it is run and how frequently updates are received.
+ * of the device in which it is run and how frequently updates are received.  The caller supplies
+ * the time of each step, normally the display frame time, so the simulation advances exactly once
+ * per rendered frame.  Frames are only rendered while {@link #isMoving}, so a step after a pause is
+ * capped rather than taken as one long stretch of motion.  Steps do not allocate.
  */
 public class EyePhysics {
     // The friction and gravity values below are set relative to a specific time period.  This
@@ -49,13 +51,22 @@ public class EyePhysics {
     // Allow slightly non-zero values to be considered to be zero, to converge to zero more quickly.
     private final float ZERO_TOLERANCE = 0.001f;
 
-    private long mLastUpdateTimeMs = SystemClock.elapsedRealtime();
+    // The longest step simulated, a few display frames.
+    private final long MAX_STEP_MS = 50;
+    // An iris which moved less than this in a step, in pixels, is taken to be at rest.
+    private final float MIN_MOTION = 0.25f;
 
-    private PointF mEyePosition;
+    // Time of the previous step, or -1 before the first one.
+    private long mLastUpdateTimeMs = -1;
+
+    private final PointF mEyePosition = new PointF();
     private float mEyeRadius;
 
-    private PointF mIrisPosition;
+    // Returned by each step, so only valid until the next one.
+    private final PointF mIrisPosition = new PointF();
+    private boolean mHasIrisPosition;
     private float mIrisRadius;
+    private boolean mMoving = true;
 
     // Velocity is independent of the final rendering coordinate system, so that we don't have to
     // change it as the eye gets bigger or smaller by forward and backward motion.  This will be
@@ -74,25 +85,29 @@ public class EyePhysics {
 
     /**
      * Generate the next position of the iris based on simulated velocity, eye boundaries, gravity,
-     * friction, and bounce momentum.
+     * friction, and bounce momentum, advancing the simulation to the given time.  The returned
+     * point is reused by the next step.
      */
-    PointF nextIrisPosition(PointF eyePosition, float eyeRadius, float irisRadius) {
+    PointF nextIrisPosition(PointF eyePosition, float eyeRadius, float irisRadius, long nowMs) {
         // Correct the current eye position and size based on recent motion of the face within the
         // frame.  Keep the current iris position, if available.
-        mEyePosition = eyePosition;
+        mEyePosition.set(eyePosition.x, eyePosition.y);
         mEyeRadius = eyeRadius;
 
-        if (mIrisPosition == null) {
-            mIrisPosition = eyePosition;
+        if (!mHasIrisPosition) {
+            mIrisPosition.set(eyePosition.x, eyePosition.y);
+            mHasIrisPosition = true;
         }
+        float startX = mIrisPosition.x;
+        float startY = mIrisPosition.y;
 
         mIrisRadius = irisRadius;
 
         // Keep track of time, so that we can consistently update the simulation proportionally to
         // how much time has elapsed.  This makes the animation rate device-independent.  All of the
         // velocity changes below are pro-rated based on this.
-        long nowMs = SystemClock.elapsedRealtime();
-        long elapsedTimeMs = nowMs - mLastUpdateTimeMs;
+        long elapsedTimeMs = mLastUpdateTimeMs < 0 ? 0
+                : Math.max(0, Math.min(MAX_STEP_MS, nowMs - mLastUpdateTimeMs));
         float simulationRate = (float) elapsedTimeMs / TIME_PERIOD_MS;
         mLastUpdateTimeMs = nowMs;
 
@@ -110,12 +125,14 @@ public class EyePhysics {
         // the iris radius to get the change in position.
         float x = mIrisPosition.x + (vx * mIrisRadius * simulationRate);
         float y = mIrisPosition.y + (vy * mIrisRadius * simulationRate);
-        mIrisPosition = new PointF(x, y);
+        mIrisPosition.set(x, y);
 
         // Correct the position and velocity of the iris if it has gone out of bounds, guaranteeing
         // that the returned result is at a valid position within the eye.
         makeIrisInBounds(simulationRate);
 
+        mMoving = elapsedTimeMs == 0 || Math.abs(mIrisPosition.x - startX) > MIN_MOTION
+                || Math.abs(mIrisPosition.y - startY) > MIN_MOTION;
         return mIrisPosition;
     }
 
@@ -172,7 +189,15 @@ public class EyePhysics {
         float dy = y - mIrisPosition.y;
         vy = applyBounce(vy, dy, simulationRate) / mConsecutiveBounces;
 
-        mIrisPosition = new PointF(x, y);
+        mIrisPosition.set(x, y);
+    }
+
+    /**
+     * Whether the iris moved in the last step, so that it will likely move on the next one even if
+     * the eye does not.  An iris at rest only moves again once the eye does.
+     */
+    boolean isMoving() {
+        return mMoving;
     }
 
     /**
@@ -0,0 +1,150 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+/**
+ * Pre-rendered bitmaps of the googly eye parts, so that drawing an eye is one or two bitmap blits
+ * instead of several circle and line draws.<p>
+ *
+ * Sprites are keyed by kind (open eye, closed eye, iris) and by radius quantized to sixteen steps
+ * per doubling, and are drawn scaled to the exact radius, so a face moving towards the camera
+ * reuses a handful of sprites rather than rendering new ones every frame.  The cache is bounded by
+ * bitmap bytes and evicts the least recently used sprites.  It is safe to use from several
+ * threads, and is shared by all eye graphics.
+ */
+class EyeSpriteCache {
+    private static final int KIND_OPEN = 0;
+    private static final int KIND_CLOSED = 1;
+    private static final int KIND_IRIS = 2;
+
+    // Radius quantization: sixteen buckets per doubling, i.e. sprites are at most about 2% larger
+    // or smaller than the radius they are drawn at.
+    private static final int STEPS_PER_OCTAVE = 16;
+    private static final float MIN_RADIUS = 2;
+    private static final float MAX_RADIUS = 512;
+
+    private static final float IRIS_STROKE = 2;
+    private static final float OUTLINE_STROKE = 3;
+
+    private final LruCache<Integer, Bitmap> mSprites;
+    private final Paint mEyeLidPaint;
+    private final Paint mEyeIrisPaint;
+    private final Paint mEyeOutlinePaint;
+    private final Paint mBlitPaint;
+
+    // Used by draw(), which may run on more than one thread.
+    private final ThreadLocal<RectF> mDestination = new ThreadLocal<RectF>() {
+        @Override
+        protected RectF initialValue() {
+            return new RectF();
+        }
+    };
+
+    /**
+     * @param maxBytes the total size of the cached bitmaps beyond which sprites are evicted
+     */
+    EyeSpriteCache(int maxBytes) {
+        mSprites = new LruCache<Integer, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap sprite) {
+                return sprite.getRowBytes() * sprite.getHeight();
+            }
+        };
+
+        mEyeLidPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mEyeLidPaint.setColor(Color.YELLOW);
+        mEyeLidPaint.setStyle(Paint.Style.FILL);
+
+        mEyeIrisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mEyeIrisPaint.setColor(Color.RED);
+        mEyeIrisPaint.setStyle(Paint.Style.STROKE);
+        mEyeIrisPaint.setStrokeWidth(IRIS_STROKE);
+
+        mEyeOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mEyeOutlinePaint.setColor(Color.BLACK);
+        mEyeOutlinePaint.setStyle(Paint.Style.STROKE);
+        mEyeOutlinePaint.setStrokeWidth(OUTLINE_STROKE);
+
+        mBlitPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    /**
+     * Draws the eye, either closed or open with the iris in the given position.
+     */
+    void drawEye(Canvas canvas, float x, float y, float eyeRadius, float irisX, float irisY,
+                 float irisRadius, boolean isOpen) {
+        if (isOpen) {
+            draw(canvas, KIND_OPEN, x, y, eyeRadius);
+            draw(canvas, KIND_IRIS, irisX, irisY, irisRadius);
+        } else {
+            draw(canvas, KIND_CLOSED, x, y, eyeRadius);
+        }
+    }
+
+    void clear() {
+        mSprites.evictAll();
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void draw(Canvas canvas, int kind, float x, float y, float radius) {
+        if (radius < MIN_RADIUS / 2) {
+            return;
+        }
+        int step = quantize(radius);
+        float spriteRadius = radiusOf(step);
+        Integer key = (step << 2) | kind;
+        Bitmap sprite = mSprites.get(key);
+        if (sprite == null) {
+            sprite = render(kind, spriteRadius);
+            mSprites.put(key, sprite);
+        }
+
+        // The sprite has a margin for the stroke, which is scaled along with the radius.
+        float scale = radius / spriteRadius;
+        float half = sprite.getWidth() * scale / 2;
+        RectF destination = mDestination.get();
+        destination.set(x - half, y - half, x + half, y + half);
+        canvas.drawBitmap(sprite, null, destination, mBlitPaint);
+    }
+
+    private Bitmap render(int kind, float radius) {
+        int size = (int) Math.ceil(2 * (radius + OUTLINE_STROKE));
+        Bitmap sprite = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(sprite);
+        float center = size / 2f;
+
+        switch (kind) {
+            case KIND_OPEN:
+                // The eye whites are transparent, so an open eye is just its outline.
+                canvas.drawCircle(center, center, radius, mEyeOutlinePaint);
+                break;
+            case KIND_CLOSED:
+                canvas.drawCircle(center, center, radius, mEyeLidPaint);
+                canvas.drawLine(center - radius, center, center + radius, center,
+                        mEyeOutlinePaint);
+                canvas.drawCircle(center, center, radius, mEyeOutlinePaint);
+                break;
+            default:
+                canvas.drawCircle(center, center, radius, mEyeIrisPaint);
+                break;
+        }
+        return sprite;
+    }
+
+    private static int quantize(float radius) {
+        float clamped = Math.max(MIN_RADIUS, Math.min(MAX_RADIUS, radius));
+        return Math.round((float) (STEPS_PER_OCTAVE * Math.log(clamped) / Math.log(2)));
+    }
+
+    private static float radiusOf(int step) {
+        return (float) Math.pow(2, step / (double) STEPS_PER_OCTAVE);
+    }
+}
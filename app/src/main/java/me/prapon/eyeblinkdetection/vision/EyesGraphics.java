@@ -16,32 +16,45 @@
 package me.prapon.eyeblinkdetection.vision;
 
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.PointF;
-import android.util.Log;
+
+import me.prapon.eyeblinkdetection.core.EyeState;
 
 /**
- * Graphics class for rendering Googly Eyes on a graphic overlay given the current eye positions.
+ * Graphics class for rendering Googly Eyes on a graphic overlay given the current eye positions.<p>
+ *
+ * Its {@link FaceTracker} hands over the eyes of each detection, which are published through an
+ * {@link EyeState} that the drawing thread copies once per display frame, so it always sees a
+ * consistent pair of eyes without locking or allocating per frame.  The iris physics is stepped in
+ * {@link #advance}, once per display frame, and {@link #draw} only renders the result, using
+ * sprites shared by all faces from an {@link EyeSpriteCache}.  Display frames are only requested
+ * while an iris is moving, and whenever the eyes are updated.
  */
 class EyesGraphics extends GraphicOverlay.Graphic {
     private static final float EYE_RADIUS_PROPORTION = 0.45f;
     private static final float IRIS_RADIUS_PROPORTION = EYE_RADIUS_PROPORTION / 2.0f;
 
-    private Paint mEyeWhitesPaint;
-    private Paint mEyeIrisPaint;
-    private Paint mEyeOutlinePaint;
-    private Paint mEyeLidPaint;
+    // Enough for a few dozen faces of different sizes, each with open, closed and iris sprites.
+    private static final int SPRITE_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final EyeSpriteCache sSprites = new EyeSpriteCache(SPRITE_CACHE_BYTES);
 
     // Keep independent physics state for each eye.
     private EyePhysics mLeftPhysics = new EyePhysics();
     private EyePhysics mRightPhysics = new EyePhysics();
 
-    private volatile PointF mLeftPosition;
-    private volatile boolean mLeftOpen;
+    // The most recent detection, in preview coordinates, written by the tracker.
+    private final EyeState mEyes = new EyeState();
 
-    private volatile PointF mRightPosition;
-    private volatile boolean mRightOpen;
+    // The eyes as of the last display frame, in view coordinates.  Only touched by the drawing
+    // thread.
+    private final EyeState.Snapshot mFrameEyes = new EyeState.Snapshot();
+    private boolean mHasFrameEyes;
+    private final PointF mLeftPosition = new PointF();
+    private final PointF mRightPosition = new PointF();
+    private PointF mLeftIrisPosition;
+    private PointF mRightIrisPosition;
+    private float mEyeRadius;
+    private float mIrisRadius;
 
     //==============================================================================================
     // Methods
@@ -49,76 +62,71 @@ class EyesGraphics extends GraphicOverlay.Graphic {
 
     public EyesGraphics(GraphicOverlay overlay) {
         super(overlay);
-
-        mEyeWhitesPaint = new Paint();
-        mEyeWhitesPaint.setColor(Color.TRANSPARENT);
-        mEyeWhitesPaint.setStyle(Paint.Style.FILL);
-
-        mEyeLidPaint = new Paint();
-        mEyeLidPaint.setColor(Color.YELLOW);
-        mEyeLidPaint.setStyle(Paint.Style.FILL);
-
-        mEyeIrisPaint = new Paint();
-        mEyeIrisPaint.setColor(Color.RED);
-        mEyeIrisPaint.setStyle(Paint.Style.STROKE);
-        mEyeIrisPaint.setStrokeWidth(2);
-
-        mEyeOutlinePaint = new Paint();
-        mEyeOutlinePaint.setColor(Color.BLACK);
-        mEyeOutlinePaint.setStyle(Paint.Style.STROKE);
-        mEyeOutlinePaint.setStrokeWidth(3);
     }
 
     /**
-     * Updates the eye positions and state from the detection of the most recent frame.  Invalidates
-     * the relevant portions of the overlay to trigger a redraw.
+     * Updates the eye positions, in preview coordinates, and state from the detection of the most
+     * recent frame, and requests a display frame to draw them.  Called on the tracking stage.
      */
-    void updateEyes(PointF leftPosition, boolean leftOpen,
-                    PointF rightPosition, boolean rightOpen) {
-        mLeftPosition = leftPosition;
-        mLeftOpen = leftOpen;
-
-        mRightPosition = rightPosition;
-        mRightOpen = rightOpen;
-
+    void updateEyes(boolean hasEyes, float leftX, float leftY, boolean leftOpen,
+                    float rightX, float rightY, boolean rightOpen) {
+        if (hasEyes) {
+            mEyes.publish(true, leftX, leftY, leftOpen, rightX, rightY, rightOpen, 0, 0);
+        } else {
+            mEyes.clearEyes();
+        }
 
         postInvalidate();
     }
 
     /**
-     * Draws the current eye state to the supplied canvas.  This will draw the eyes at the last
-     * reported position from the tracker, and the iris positions according to the physics
-     * simulations for each iris given motion and other forces.
+     * Moves the eyes to the last reported position from the tracker, and advances the iris
+     * positions according to the physics simulations for each iris given motion and other forces.
      */
     @Override
-    public void draw(Canvas canvas) {
-        PointF detectLeftPosition = mLeftPosition;
-        PointF detectRightPosition = mRightPosition;
-        if ((detectLeftPosition == null) || (detectRightPosition == null)) {
+    public void advance(long frameTimeMs) {
+        EyeState.Snapshot eyes = mFrameEyes;
+        mHasFrameEyes = mEyes.read(eyes);
+        if (!mHasFrameEyes) {
             return;
         }
 
-        PointF leftPosition =
-                new PointF(translateX(detectLeftPosition.x), translateY(detectLeftPosition.y));
-        PointF rightPosition =
-                new PointF(translateX(detectRightPosition.x), translateY(detectRightPosition.y));
+        mLeftPosition.set(translateX(eyes.leftX), translateY(eyes.leftY));
+        mRightPosition.set(translateX(eyes.rightX), translateY(eyes.rightY));
 
         // Use the inter-eye distance to set the size of the eyes.
         float distance = (float) Math.sqrt(
-                Math.pow(rightPosition.x - leftPosition.x, 2) +
-                Math.pow(rightPosition.y - leftPosition.y, 2));
-        float eyeRadius = EYE_RADIUS_PROPORTION * distance;
-        float irisRadius = IRIS_RADIUS_PROPORTION * distance;
-
-        // Advance the current left iris position, and draw left eye.
-        PointF leftIrisPosition =
-                mLeftPhysics.nextIrisPosition(leftPosition, eyeRadius, irisRadius);
-        drawEye(canvas, leftPosition, eyeRadius, leftIrisPosition, irisRadius, mLeftOpen);
-
-        // Advance the current right iris position, and draw right eye.
-        PointF rightIrisPosition =
-                mRightPhysics.nextIrisPosition(rightPosition, eyeRadius, irisRadius);
-        drawEye(canvas, rightPosition, eyeRadius, rightIrisPosition, irisRadius, mRightOpen);
+                Math.pow(mRightPosition.x - mLeftPosition.x, 2) +
+                Math.pow(mRightPosition.y - mLeftPosition.y, 2));
+        mEyeRadius = EYE_RADIUS_PROPORTION * distance;
+        mIrisRadius = IRIS_RADIUS_PROPORTION * distance;
+
+        mLeftIrisPosition = mLeftPhysics.nextIrisPosition(
+                mLeftPosition, mEyeRadius, mIrisRadius, frameTimeMs);
+        mRightIrisPosition = mRightPhysics.nextIrisPosition(
+                mRightPosition, mEyeRadius, mIrisRadius, frameTimeMs);
+    }
+
+    /**
+     * Whether either iris is still moving as of the last display frame.
+     */
+    @Override
+    public boolean isAnimating() {
+        return mHasFrameEyes && (mLeftPhysics.isMoving() || mRightPhysics.isMoving());
+    }
+
+    /**
+     * Draws the eye state of the current display frame to the supplied canvas.
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        if (!mHasFrameEyes) {
+            return;
+        }
+        EyeState.Snapshot eyes = mFrameEyes;
+        drawEye(canvas, mLeftPosition, mEyeRadius, mLeftIrisPosition, mIrisRadius, eyes.leftOpen);
+        drawEye(canvas, mRightPosition, mEyeRadius, mRightIrisPosition, mIrisRadius,
+                eyes.rightOpen);
     }
 
     /**
@@ -126,16 +134,7 @@ class EyesGraphics extends GraphicOverlay.Graphic {
      */
     private void drawEye(Canvas canvas, PointF eyePosition, float eyeRadius,
                          PointF irisPosition, float irisRadius, boolean isOpen) {
-        if (isOpen) {
-            canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeWhitesPaint);
-            canvas.drawCircle(irisPosition.x, irisPosition.y, irisRadius, mEyeIrisPaint);
-        } else {
-            canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeLidPaint);
-            float y = eyePosition.y;
-            float start = eyePosition.x - eyeRadius;
-            float end = eyePosition.x + eyeRadius;
-            canvas.drawLine(start, y, end, y, mEyeOutlinePaint);
-        }
-        canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeOutlinePaint);
+        sSprites.drawEye(canvas, eyePosition.x, eyePosition.y, eyeRadius,
+                irisPosition.x, irisPosition.y, irisRadius, isOpen);
     }
 }
@@ -0,0 +1,791 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.Choreographer;
+
+import com.google.android.gms.vision.CameraSource;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.MultiProcessor;
+import com.google.android.gms.vision.Tracker;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.LargestFaceFocusingProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import me.prapon.eyeblinkdetection.ClickListener;
+import me.prapon.eyeblinkdetection.core.FaceReidentifier;
+import me.prapon.eyeblinkdetection.core.FaceSignals;
+import me.prapon.eyeblinkdetection.core.FrameClock;
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.TurnCaptureStats;
+import me.prapon.eyeblinkdetection.core.eventlog.EventLog;
+import me.prapon.eyeblinkdetection.core.image.HashIndex;
+import me.prapon.eyeblinkdetection.core.image.PerceptualHash;
+import me.prapon.eyeblinkdetection.core.pipeline.LatencyBudget;
+import me.prapon.eyeblinkdetection.core.pipeline.Stage;
+import me.prapon.eyeblinkdetection.core.series.RollupStore;
+import me.prapon.eyeblinkdetection.core.stats.CrowdStats;
+
+/**
+ * A complete detection pipeline for one camera facing: the face detector, its processor and
+ * trackers, and the camera source which feeds it.<p>
+ *
+ * Building a detector loads the native face library and is by far the slowest part of starting
+ * the camera, so both pipelines are built once and kept warm.  Flipping between front and rear
+ * only stops one camera source and starts the other; the detectors and processors stay alive.
+ * The time from a start request to the first frame with a detected face is measured so that the
+ * cost of a flip can be reported.<p>
+ *
+ * A pipeline is not tied to an activity.  The overlay and listener are attached and detached as
+ * activities come and go, so trackers and their blink counts survive configuration changes.
+ * Listener callbacks are delivered on the main thread, and are dropped while nothing is attached.<p>
+ *
+ * All trackers of a pipeline share one {@link FrameClock}, advanced once per camera frame from the
+ * frame's capture timestamp, so their cooldowns measure camera time rather than processing time.<p>
+ *
+ * The last few preview frames are kept in a {@link FrameRing}, so that a capture encodes the best
+ * recent frame in the background instead of waiting for the camera to take a new picture.<p>
+ *
+ * The face detector only computes what the features in use need; see {@link DetectorProfile}.
+ * They follow the pipeline's state: events are only needed while a listener is attached, and eye
+ * landmarks while an overlay draws the eyes.  While the camera is stopped, the detector is left as
+ * it is, so that nothing is built for frames which do not come.<p>
+ *
+ * The work on each frame is split into {@link Stage}s, each on its own thread, so that a slow step
+ * holds up only itself rather than the next frame's detection:
+ * <ol>
+ * <li>frame copy and detection, on the camera source's processing thread, which already skips to
+ * the newest frame while it is busy;</li>
+ * <li>tracking, where the processor and trackers turn detections into events;</li>
+ * <li>event dispatch, which records events to the event log and posts them to the listener;</li>
+ * <li>capture, which encodes captured frames, shared by both pipelines.</li>
+ * </ol>
+ * Tracking and capture keep only the newest work when they fall behind.  The depth, counts and
+ * latencies of the stages are reported by {@link #getStageReport}.<p>
+ *
+ * An automatic capture whose frame looks nearly the same as an earlier one of the same type is
+ * skipped before it is encoded: each captured face is reduced to a {@link PerceptualHash}, and
+ * looked up in a {@link HashIndex} of the captures of that type since the pipeline was last
+ * attached.  Captures the user asked for are always delivered, and only added to the index.<p>
+ *
+ * Head turn captures take the newest frame instead, and measure how long after the turn was
+ * triggered they were taken, and how far from the expected yaw, see {@link #captureTurn}.  The
+ * trackers predict head turns by the measured latency, so that captures land on the turned
+ * head.<p>
+ *
+ * The trackers also record the eye and head signals of one face, which can be graphed on the
+ * overlay with {@link #setSignalGraphZoom}, and rolled up for the whole session in a
+ * {@link RollupStore}, whose batches are written in the background.<p>
+ *
+ * Every delivered event is timed from the start of its frame's detection to the first display
+ * frame after the listener handled it, hop by hop, against a {@link LatencyBudget}.  The listener
+ * is called before the event is written to the event log, so that disk writes stay off that path.
+ * A {@link LatencyListener} hears when the budget's degradation level changes.
+ */
+public class FacePipeline {
+    private static final String TAG = "FacePipeline";
+    private static final float REQUESTED_FPS = 1.0f;
+    private static final long FRAME_INTERVAL_MS = Math.round(1000 / REQUESTED_FPS);
+    private static final int FRAME_RING_SIZE = 4;
+    // Captures pick from the frames within this time before the newest one.
+    private static final long CAPTURE_WINDOW_MS = 1500;
+    private static final int JPEG_QUALITY = 90;
+    // Captures whose hash is this close to an earlier one of the same type are near duplicates.
+    private static final int DUPLICATE_DISTANCE = 6;
+    // Capture hashes kept per type.
+    private static final int CAPTURE_HASHES = 64;
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 150;
+
+    // Frames arrive at about REQUESTED_FPS, so a tracking stage this far behind is better off
+    // skipping to the newest detections.
+    private static final int TRACK_QUEUE_SIZE = 2;
+    // Events are rare, but must not be lost to a slow disk write.
+    private static final int EVENT_QUEUE_SIZE = 64;
+    // Queued captures keep their frames pinned, so some of the ring stays free for new frames.
+    private static final int CAPTURE_QUEUE_SIZE = FRAME_RING_SIZE / 2;
+
+    // Points per graph, zoom levels, and samples folded per level: at one frame per second, the
+    // levels span four minutes, sixteen minutes, an hour and four hours.
+    private static final int SIGNAL_POINTS = 240;
+    private static final int SIGNAL_LEVELS = 4;
+    private static final int SIGNAL_FACTOR = 4;
+
+    // Features in use while a listener is attached, besides the overlay's, which follows the
+    // overlay.
+    private static final int FRONT_FEATURES = DetectorProfile.FEATURE_HEAD_TURNS
+            | DetectorProfile.FEATURE_BLINKS | DetectorProfile.FEATURE_CAPTURE;
+    private static final int REAR_FEATURES = DetectorProfile.FEATURE_BLINKS
+            | DetectorProfile.FEATURE_CAPTURE;
+    // While detached, events are not delivered, so faces are only tracked to keep their ids.  The
+    // trackers drop their eye state without classifications, so no blinks are recorded meanwhile.
+    private static final int DETACHED_FEATURES = DetectorProfile.FEATURE_HEAD_TURNS;
+
+    // Encodes captures for all pipelines, one at a time, off the detector and main threads.
+    private static final Stage<Capture> sCaptureStage = new Stage<>("capture", CAPTURE_QUEUE_SIZE,
+            Stage.DROP_OLDEST, Capture::run, Capture::cancel);
+
+    static {
+        sCaptureStage.start();
+    }
+
+    // Writes the batches of the signal stores of all pipelines, off the tracking threads.
+    private static final ExecutorService sStoreExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Receives a captured frame, on the main thread.
+     */
+    public interface CaptureCallback {
+        void onCaptured(Bitmap bitmap);
+    }
+
+    /**
+     * Hears when events start or stop missing the latency budget, on the main thread.
+     */
+    public interface LatencyListener {
+        /**
+         * @param level the new {@code LatencyBudget.LEVEL_*} degradation level
+         */
+        void onLatencyLevelChanged(int level);
+    }
+
+    private final boolean mFrontFacing;
+    private final PipelineDetector mDetector;
+    private final DetectorProfileManager mProfiles;
+    // The features in use while a listener is attached, and whether the camera source is running
+    // so that the detector should follow them.  Only touched on the main thread.
+    private int mFeatures;
+    private boolean mRunning;
+    private final FrameRing mFrameRing = new FrameRing(FRAME_RING_SIZE);
+    private final CameraSource mCameraSource;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final FrameClock mClock = new FrameClock(FRAME_INTERVAL_MS,
+            TrackerConfig.DEFAULT.getMaxFrameGapMs());
+    private final CrowdStats mCrowdStats = new CrowdStats();
+    // Only used by the trackers, on the tracking stage.
+    private final FaceReidentifier mReidentifier = new FaceReidentifier();
+    // Set from the main thread once the log has been opened in the background.
+    private volatile EventLog mEventLog;
+    private final FaceSignals mSignals = new FaceSignals(SIGNAL_POINTS, SIGNAL_LEVELS,
+            SIGNAL_FACTOR);
+    // Set from the main thread once the store has been opened in the background.
+    private volatile RollupStore mSignalStore;
+    private final TurnCaptureStats mTurnStats = new TurnCaptureStats();
+    // The most recent head turn of each direction, set on the event stage.
+    private volatile TrackerEvent mLastLeftTurn;
+    private volatile TrackerEvent mLastRightTurn;
+    // The head turn whose capture was last measured, so that each is only measured once.  Only
+    // touched on the main thread.
+    private TrackerEvent mMeasuredTurn;
+    // Hashes of the captures of each type, their scratch cells and counts, only touched on the
+    // capture stage; and whether they are to be forgotten before the next capture.
+    private final SparseArray<HashIndex> mCaptureHashes = new SparseArray<>();
+    private final int[] mHashCells = new int[PerceptualHash.cellCount()];
+    private volatile long mCapturesHashed;
+    private volatile long mCapturesSkipped;
+    private volatile boolean mForgetCaptures;
+    private final Stage<Detector.Detections<Face>> mTrackStage;
+    private final Stage<TrackerEvent> mEventStage;
+
+    private volatile ClickListener mListener;
+
+    // The latency of delivered events, through detection, tracking, the event stage, the main
+    // thread's queue, and the listener up to the next display frame.  The listener and boundaries
+    // are only touched on the main thread.
+    private final LatencyBudget mLatency = new LatencyBudget(DEFAULT_LATENCY_BUDGET_MS,
+            "detect", "track", "events", "main", "ui");
+    private final long[] mBoundaries = new long[mLatency.getHopCount() + 1];
+    private LatencyListener mLatencyListener;
+
+    // Trackers created by the processor, and the overlay they draw on.  Trackers which are done
+    // are dropped by the processor and will be collected, so weak keys keep this bounded.  Both
+    // are guarded by mTrackers, so that a tracker created during a swap cannot miss it.
+    private GraphicOverlay mOverlay;
+    private final Set<FaceTracker> mTrackers =
+            Collections.newSetFromMap(new WeakHashMap<FaceTracker, Boolean>());
+
+    // The signal graph on the current overlay, if shown, and its zoom level or -1 if hidden.  Only
+    // changed on the main thread; the tracking stage reads the graph to redraw it.
+    private volatile SignalGraphGraphic mSignalGraph;
+    private int mSignalGraphZoom = -1;
+
+    // Time of the most recent start request, or zero once the first detection has been reported.
+    private volatile long mStartRequestedMs;
+    private volatile long mLastStartLatencyMs = -1;
+
+    /**
+     * @param eventLog    the log to record the trackers' events to, or null
+     * @param signalStore the store to roll the followed face's signals up in, with the
+     *                    {@link FaceSignals} signals, or null.  It is not closed by the pipeline.
+     */
+    public FacePipeline(Context context, boolean frontFacing, EventLog eventLog,
+                        RollupStore signalStore) {
+        mFrontFacing = frontFacing;
+        mEventLog = eventLog;
+        setSignalStore(signalStore);
+
+        String facing = frontFacing ? "front " : "rear ";
+        mEventStage = new Stage<>(facing + "events", EVENT_QUEUE_SIZE, Stage.DROP_NEWEST,
+                this::dispatch, event -> Log.w(TAG, "Dropped event " + event.type));
+        mEventStage.start();
+
+        mFeatures = frontFacing ? FRONT_FEATURES : REAR_FEATURES;
+        // Built for the pipeline being attached to an activity with an overlay, as it is next.
+        mProfiles = new DetectorProfileManager(context, frontFacing,
+                mFeatures | DetectorProfile.FEATURE_OVERLAY, mFrameRing, FRAME_INTERVAL_MS);
+        mDetector = mProfiles.getDetector();
+
+        Detector.Processor<Face> processor;
+        if (frontFacing) {
+            // For front facing mode, only the largest face is tracked.
+            Tracker<Face> tracker = createTracker();
+            processor = new LargestFaceFocusingProcessor.Builder(mDetector, tracker).build();
+        } else {
+            // For rear facing mode, a factory is used to create per-face tracker instances.
+            MultiProcessor.Factory<Face> factory = face -> createTracker();
+            processor = new MultiProcessor.Builder<>(factory).build();
+        }
+        TrackingProcessor tracking = new TrackingProcessor(processor);
+        mTrackStage = new Stage<>(facing + "tracking", TRACK_QUEUE_SIZE, Stage.DROP_OLDEST,
+                tracking::track, null);
+        mTrackStage.start();
+        mDetector.setProcessor(tracking);
+
+        mCameraSource = new CameraSource.Builder(context, mDetector)
+                .setFacing(frontFacing
+                        ? CameraSource.CAMERA_FACING_FRONT : CameraSource.CAMERA_FACING_BACK)
+                .setRequestedPreviewSize(320, 240)
+                .setRequestedFps(REQUESTED_FPS)
+                .setAutoFocusEnabled(true)
+                .build();
+    }
+
+    /**
+     * Sets the log to record the trackers' events to from now on, or null to stop recording.  May
+     * be called from any thread.
+     */
+    public void setEventLog(EventLog eventLog) {
+        mEventLog = eventLog;
+    }
+
+    /**
+     * Sets the store to roll the followed face's signals up in from now on, or null to stop.  It is
+     * not closed by the pipeline.  May be called from any thread.
+     */
+    public void setSignalStore(RollupStore signalStore) {
+        mSignalStore = signalStore;
+        mSignals.setStore(signalStore);
+    }
+
+    public boolean isFrontFacing() {
+        return mFrontFacing;
+    }
+
+    public CameraSource getCameraSource() {
+        return mCameraSource;
+    }
+
+    /**
+     * isOperational() can be used to check if the required native library is currently available.
+     */
+    public boolean isOperational() {
+        return mDetector.isOperational();
+    }
+
+    /**
+     * Marks the moment the camera source was asked to start, so that the latency until the first
+     * detected face can be measured.
+     */
+    public void markStartRequested() {
+        mRunning = true;
+        updateFeatures();
+        mStartRequestedMs = SystemClock.elapsedRealtime();
+        // Frame timestamps restart with the camera, so older frames cannot be compared with new
+        // ones.
+        mFrameRing.clear();
+    }
+
+    /**
+     * Marks the camera source as stopped, so that the detector is not switched for frames which do
+     * not come until it is started again.  Must be called on the main thread.
+     */
+    public void markStopped() {
+        mRunning = false;
+    }
+
+    /**
+     * Returns the time from the last start request to the first detected face, or -1 if no face has
+     * been detected since the pipeline was first started.
+     */
+    public long getLastStartLatencyMs() {
+        return mLastStartLatencyMs;
+    }
+
+    /**
+     * Returns the inter-arrival statistics of the frames this pipeline has processed.
+     */
+    public FrameClock.Stats getFrameStats() {
+        return mClock.getStats();
+    }
+
+    /**
+     * Returns the blink statistics across all faces this pipeline has tracked.  Snapshots can be
+     * taken from any thread without holding up detection.
+     */
+    public CrowdStats getCrowdStats() {
+        return mCrowdStats;
+    }
+
+    /**
+     * Attaches the pipeline to an activity's overlay and listener.  Must be called on the main
+     * thread.
+     */
+    public void attach(GraphicOverlay overlay, ClickListener listener) {
+        mListener = listener;
+        // The activity shows none of the earlier captures, so none of them are duplicates.
+        mForgetCaptures = true;
+        setOverlay(overlay);
+        updateFeatures();
+    }
+
+    /**
+     * Sets the features the attached activity uses, as {@code DetectorProfile.FEATURE_*} flags, so
+     * that the detector can skip the work nothing uses.  The overlay's feature is added while an
+     * overlay is attached.  Must be called on the main thread.
+     */
+    public void setFeatures(int features) {
+        mFeatures = features & ~DetectorProfile.FEATURE_OVERLAY;
+        updateFeatures();
+    }
+
+    /**
+     * Returns the detection time percentiles of each detector profile used so far.
+     */
+    public String getDetectorCostReport() {
+        return mProfiles.getCostReport();
+    }
+
+    /**
+     * Shows the graph of the followed face's eye open probabilities and yaw at the given zoom
+     * level, from 0 for the most recent minutes to {@link #getSignalGraphLevels} - 1 for the last
+     * hours, or hides it if negative.  Must be called on the main thread.
+     */
+    public void setSignalGraphZoom(int level) {
+        mSignalGraphZoom = Math.min(level, SIGNAL_LEVELS - 1);
+        updateSignalGraph();
+    }
+
+    /**
+     * Returns the zoom level of the signal graph, or -1 if it is hidden.
+     */
+    public int getSignalGraphZoom() {
+        return mSignalGraphZoom;
+    }
+
+    public int getSignalGraphLevels() {
+        return SIGNAL_LEVELS;
+    }
+
+    /**
+     * Returns the queue depth, counts and latencies of the stages of this pipeline, one per line,
+     * including the capture stage shared with the other pipeline.
+     */
+    public String getStageReport() {
+        return mTrackStage + "\n" + mEventStage + "\n" + sCaptureStage + "\n";
+    }
+
+    /**
+     * Sets the listener for changes of the latency budget's degradation level, or null.  It is
+     * cleared on {@link #detach}.  Must be called on the main thread.
+     */
+    public void setLatencyListener(LatencyListener listener) {
+        mLatencyListener = listener;
+    }
+
+    /**
+     * Returns the latency budget of delivered events, whose budget can be changed and which reports
+     * the latency of each hop.
+     */
+    public LatencyBudget getLatencyBudget() {
+        return mLatency;
+    }
+
+    /**
+     * Detaches the pipeline from the current activity, keeping all tracking state.  Must be called
+     * on the main thread.
+     */
+    public void detach() {
+        mListener = null;
+        mLatencyListener = null;
+        setOverlay(null);
+        updateFeatures();
+        Log.d(TAG, (mFrontFacing ? "Front" : "Rear") + " camera frames: " + mClock.getStats());
+        Log.d(TAG, "Detector cost:\n" + mProfiles.getCostReport());
+        Log.d(TAG, "Stages:\n" + getStageReport());
+        Log.d(TAG, "Head turn captures: " + mTurnStats);
+        Log.d(TAG, "Event latency: " + mLatency);
+        Log.d(TAG, "Captures: " + mCapturesSkipped + " of " + mCapturesHashed
+                + " skipped as near duplicates");
+    }
+
+    /**
+     * Captures the best of the recent preview frames: the sharpest frame with the largest face.  The
+     * frame is JPEG encoded and decoded upright in the background, and delivered on the main thread.
+     * If captures are requested faster than they can be encoded, the oldest waiting ones are
+     * dropped and their callbacks are not called.  Neither are they for an automatic capture of a
+     * frame which is a near duplicate of an earlier capture of the same type, which is not encoded
+     * at all.
+     *
+     * @param type the capture type, e.g. {@code FaceEvents.EYE}, among whose earlier captures
+     *             duplicates are looked for
+     * @param automatic whether an event rather than the user asked for the capture, so that it is
+     *                  skipped if it is a near duplicate
+     * @return false if no preview frame is available, in which case the callback is not called
+     */
+    public boolean captureBestFrame(int type, boolean automatic, CaptureCallback callback) {
+        FrameRing.Slot slot = mFrameRing.pinBest(CAPTURE_WINDOW_MS);
+        if (slot == null) {
+            return false;
+        }
+        sCaptureStage.submit(new Capture(this, type, slot, automatic, callback));
+        return true;
+    }
+
+    /**
+     * Captures the newest preview frame for the most recent head turn of the given type, and
+     * records the time from the tracker triggering the turn to the frame being taken here, and the
+     * yaw in the captured frame against the yaw the turn expected.  The time is measured from the
+     * trigger rather than from the turn's frame, since at low frame rates the newest frame is
+     * usually the turn's own.  Only the first capture of each turn is measured.  The frame is
+     * delivered as by {@link #captureBestFrame} for an automatic capture.  Must be called on the
+     * main thread.
+     *
+     * @param type {@code FaceEvents.LEFT_FACE} or {@code FaceEvents.RIGHT_FACE}
+     * @return false if no preview frame is available, in which case the callback is not called
+     */
+    public boolean captureTurn(int type, CaptureCallback callback) {
+        FrameRing.Slot slot = mFrameRing.pinNewest();
+        if (slot == null) {
+            return false;
+        }
+        TrackerEvent turn = type == FaceEvents.LEFT_FACE ? mLastLeftTurn : mLastRightTurn;
+        if (turn != null && turn != mMeasuredTurn && slot.timestampMs >= turn.frameMs) {
+            mMeasuredTurn = turn;
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - turn.createdNs);
+            mTurnStats.recordCapture(latencyMs, turn.targetYaw, slot.yaw);
+        }
+        sCaptureStage.submit(new Capture(this, type, slot, true, callback));
+        return true;
+    }
+
+    /**
+     * Returns the measured head turn capture latency and yaw error.
+     */
+    public TurnCaptureStats getTurnCaptureStats() {
+        return mTurnStats;
+    }
+
+    /**
+     * Releases the camera source, which in turn releases the detector and its processor, and any
+     * other detectors kept warm.  Events still waiting are dropped.  No more signals are added to
+     * the signal store once this returns.
+     */
+    public void release() {
+        mSignals.setStore(null);
+        mCameraSource.release();
+        mProfiles.release();
+        mEventStage.stop();
+    }
+
+    /**
+     * Encodes a pinned frame to JPEG, as a picture from the camera would be, and decodes it rotated
+     * upright.
+     */
+    private static Bitmap encode(FrameRing.Slot slot) {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(slot.width * slot.height / 4);
+        YuvImage image = new YuvImage(slot.data, ImageFormat.NV21, slot.width, slot.height, null);
+        image.compressToJpeg(new Rect(0, 0, slot.width, slot.height), JPEG_QUALITY, jpeg);
+        byte[] bytes = jpeg.toByteArray();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        if (slot.rotation == 0 || bitmap == null) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(90 * slot.rotation);
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix,
+                true);
+    }
+
+    /**
+     * Hashes the face in a captured frame, or the whole frame if it has none, and tells whether an
+     * earlier capture of the same type looked nearly the same.  Otherwise the hash is kept for
+     * later captures.  Called on the capture stage, for every capture, so that the ones the user
+     * asked for are also known to later automatic ones.
+     */
+    private boolean isDuplicate(int type, FrameRing.Slot slot) {
+        if (mForgetCaptures) {
+            mForgetCaptures = false;
+            for (int i = 0; i < mCaptureHashes.size(); i++) {
+                mCaptureHashes.valueAt(i).clear();
+            }
+        }
+        HashIndex hashes = mCaptureHashes.get(type);
+        if (hashes == null) {
+            hashes = new HashIndex(CAPTURE_HASHES);
+            mCaptureHashes.put(type, hashes);
+        }
+        long hash = PerceptualHash.dHash(slot.data, slot.width, slot.height,
+                slot.faceFraction > 0 ? slot.faceRegion : null, mHashCells);
+        mCapturesHashed++;
+        if (hashes.findNearest(hash, DUPLICATE_DISTANCE) >= 0) {
+            return true;
+        }
+        hashes.add(hash);
+        return false;
+    }
+
+    private FaceTracker createTracker() {
+        synchronized (mTrackers) {
+            FaceTracker tracker = new FaceTracker(mOverlay, mClock, mCrowdStats, mReidentifier,
+                    mEventStage, mDetector, mSignals, mTurnStats);
+            mTrackers.add(tracker);
+            return tracker;
+        }
+    }
+
+    /**
+     * Posts an event to the listener, then records it to the event log, if there is one.  Called on
+     * the event stage.
+     */
+    private void dispatch(TrackerEvent event) {
+        if (event.type == FaceEvents.LEFT_FACE) {
+            mLastLeftTurn = event;
+        } else if (event.type == FaceEvents.RIGHT_FACE) {
+            mLastRightTurn = event;
+        }
+        long postedNs = System.nanoTime();
+        mMainHandler.post(() -> deliver(event, postedNs));
+        EventLog eventLog = mEventLog;
+        if (eventLog != null) {
+            try {
+                eventLog.append(event.wallTimeMs, event.type, event.faceId, event.blinkCount);
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "Could not record event " + event.type, e);
+            }
+        }
+    }
+
+    /**
+     * Calls the listener, and records the event's latency once the display frame which shows the
+     * listener's changes starts.  Called on the main thread.
+     */
+    private void deliver(TrackerEvent event, long postedNs) {
+        ClickListener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        long deliveredNs = System.nanoTime();
+        listener.onClick(event.blinkCount, event.type);
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+            long[] boundaries = mBoundaries;
+            boundaries[0] = event.detectStartNs;
+            boundaries[1] = event.detectEndNs;
+            boundaries[2] = event.createdNs;
+            boundaries[3] = postedNs;
+            boundaries[4] = deliveredNs;
+            boundaries[5] = System.nanoTime();
+            int level = mLatency.getLevel();
+            int newLevel = mLatency.record(boundaries);
+            LatencyListener latencyListener = mLatencyListener;
+            if (newLevel != level && latencyListener != null) {
+                latencyListener.onLatencyLevelChanged(newLevel);
+            }
+        });
+    }
+
+    /**
+     * Switches the detector to the features the pipeline's state needs, unless the camera source
+     * is stopped, in which case this is done when it starts.
+     */
+    private void updateFeatures() {
+        if (!mRunning) {
+            return;
+        }
+        int features = mListener != null ? mFeatures : DETACHED_FEATURES;
+        GraphicOverlay overlay;
+        synchronized (mTrackers) {
+            overlay = mOverlay;
+        }
+        if (overlay != null) {
+            features |= DetectorProfile.FEATURE_OVERLAY;
+        }
+        mProfiles.setFeatures(features);
+    }
+
+    private void setOverlay(GraphicOverlay overlay) {
+        synchronized (mTrackers) {
+            if (mSignalGraph != null) {
+                mOverlay.remove(mSignalGraph);
+                mSignalGraph = null;
+            }
+            mOverlay = overlay;
+            for (FaceTracker tracker : mTrackers) {
+                tracker.setOverlay(overlay);
+            }
+        }
+        updateSignalGraph();
+    }
+
+    /**
+     * Adds, updates or removes the signal graph on the current overlay.
+     */
+    private void updateSignalGraph() {
+        GraphicOverlay overlay;
+        synchronized (mTrackers) {
+            overlay = mOverlay;
+        }
+        if (overlay == null) {
+            return;
+        }
+        if (mSignalGraphZoom < 0) {
+            if (mSignalGraph != null) {
+                overlay.remove(mSignalGraph);
+                mSignalGraph = null;
+            }
+            return;
+        }
+        if (mSignalGraph == null) {
+            mSignalGraph = new SignalGraphGraphic(overlay, mSignals);
+            overlay.add(mSignalGraph);
+        }
+        mSignalGraph.setZoomLevel(mSignalGraphZoom);
+    }
+
+    //==============================================================================================
+    // Stages
+    //==============================================================================================
+
+    /**
+     * Hands detections over to the tracking stage, which forwards them to the real processor after
+     * advancing the frame clock to the frame's capture time.  Also records the first frame with a
+     * face after each start request.
+     */
+    private class TrackingProcessor implements Detector.Processor<Face> {
+        private final Detector.Processor<Face> mDelegate;
+
+        TrackingProcessor(Detector.Processor<Face> delegate) {
+            mDelegate = delegate;
+        }
+
+        /**
+         * Called on the detector thread.
+         */
+        @Override
+        public void receiveDetections(Detector.Detections<Face> detections) {
+            mTrackStage.submit(detections);
+        }
+
+        /**
+         * Called on the tracking stage.
+         */
+        void track(Detector.Detections<Face> detections) {
+            // The frame arrived when it was submitted, not when the stage got to it.
+            long waitedMs = (System.nanoTime() - mTrackStage.getCurrentSubmittedNs()) / 1000000;
+            long arrivedMs = SystemClock.elapsedRealtime() - waitedMs;
+            mClock.advance(detections.getFrameMetadata().getTimestampMillis(), arrivedMs);
+            long startRequestedMs = mStartRequestedMs;
+            if (startRequestedMs != 0 && detections.getDetectedItems().size() > 0) {
+                mStartRequestedMs = 0;
+                mLastStartLatencyMs = arrivedMs - startRequestedMs;
+                Log.i(TAG, (mFrontFacing ? "Front" : "Rear") + " camera first detection after "
+                        + mLastStartLatencyMs + " ms");
+            }
+            mDelegate.receiveDetections(detections);
+            // The overlay only redraws on request, so ask for the graph to show the new signals.
+            SignalGraphGraphic signalGraph = mSignalGraph;
+            if (signalGraph != null) {
+                signalGraph.postInvalidate();
+            }
+            RollupStore signalStore = mSignalStore;
+            if (signalStore != null && signalStore.isFlushDue()) {
+                sStoreExecutor.execute(() -> {
+                    try {
+                        signalStore.flush();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not write the signal rollups", e);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Stops the tracking stage before releasing the processor, so that no more detections reach
+         * the trackers.  Detections already being tracked may still finish afterwards.
+         */
+        @Override
+        public void release() {
+            mTrackStage.stop();
+            mDelegate.release();
+        }
+    }
+
+    /**
+     * A captured frame waiting to be encoded by the capture stage.
+     */
+    private static final class Capture {
+        final FacePipeline pipeline;
+        final int type;
+        final FrameRing.Slot slot;
+        // Whether an event triggered the capture, so that near duplicates are skipped.
+        final boolean automatic;
+        final CaptureCallback callback;
+        final long requestedMs = SystemClock.elapsedRealtime();
+
+        Capture(FacePipeline pipeline, int type, FrameRing.Slot slot, boolean automatic,
+                CaptureCallback callback) {
+            this.pipeline = pipeline;
+            this.type = type;
+            this.slot = slot;
+            this.automatic = automatic;
+            this.callback = callback;
+        }
+
+        void run() {
+            Bitmap bitmap;
+            try {
+                if (pipeline.isDuplicate(type, slot) && automatic) {
+                    pipeline.mCapturesSkipped++;
+                    Log.d(TAG, "Skipped near duplicate capture of type " + type);
+                    return;
+                }
+                bitmap = encode(slot);
+            } finally {
+                pipeline.mFrameRing.release(slot);
+            }
+            Log.d(TAG, "Captured frame in " + (SystemClock.elapsedRealtime() - requestedMs) + " ms");
+            pipeline.mMainHandler.post(() -> callback.onCaptured(bitmap));
+        }
+
+        void cancel() {
+            pipeline.mFrameRing.release(slot);
+        }
+    }
+}
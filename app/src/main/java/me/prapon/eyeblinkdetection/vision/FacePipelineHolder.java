@@ -0,0 +1,310 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import me.prapon.eyeblinkdetection.ClickListener;
+import me.prapon.eyeblinkdetection.core.FaceSignals;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.eventlog.EventLog;
+import me.prapon.eyeblinkdetection.core.series.RollupStore;
+
+/**
+ * Keeps the front and rear face pipelines alive independently of any activity.<p>
+ *
+ * When the activity is recreated (e.g., on rotation) or briefly paused, the new activity simply
+ * re-attaches to the same pipelines, so the detectors, trackers, blink counts and camera sources
+ * are all kept; the activity only stops the camera preview while it is paused.  The pipelines are
+ * only torn down once nothing has been attached for the idle timeout, and the activity builds them
+ * again if it comes back after that.  All methods must be called on the main thread.<p>
+ *
+ * The holder also keeps the {@link EventLog} which both pipelines record their events to.  It is
+ * opened and compacted to the retention period in the background, so the pipelines start without
+ * one and only record the events from when it is ready, and it is flushed when they are
+ * detached.
+ * Likewise each pipeline gets a {@link RollupStore} for its signals, with new files for each time
+ * the pipelines are created, and older files than the retention period are deleted.  The stores
+ * are opened in the background too, since they create their directory and files.
+ */
+public final class FacePipelineHolder {
+    private static final String TAG = "FacePipelineHolder";
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 10000;
+
+    private static final String EVENT_LOG_DIRECTORY = "events";
+    private static final long EVENT_RETENTION_MS = TimeUnit.DAYS.toMillis(30);
+    private static final String SIGNAL_DIRECTORY = "signals";
+    // Raw signal samples kept in memory: the window, and room for it at a few frames per second.
+    private static final long SIGNAL_RAW_WINDOW_MS = 10000;
+    private static final int SIGNAL_RAW_CAPACITY = 64;
+
+    // Opens, flushes, compacts and closes the event log and signal stores off the main thread.
+    private static final ExecutorService sLogExecutor = Executors.newSingleThreadExecutor();
+
+    private static FacePipelineHolder sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mTeardown = this::release;
+
+    private long mIdleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private FacePipeline mFrontPipeline;
+    private FacePipeline mRearPipeline;
+    private boolean mFrontFacing = true;
+    private EventLog mEventLog;
+    private RollupStore mFrontSignals;
+    private RollupStore mRearSignals;
+
+    private FacePipelineHolder(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static FacePipelineHolder getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FacePipelineHolder(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets how long the pipelines are kept alive after the last detach.
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns true if the pipelines already exist, i.e. they were kept from a previous activity.
+     */
+    public boolean hasPipelines() {
+        return mFrontPipeline != null;
+    }
+
+    /**
+     * Builds both pipelines if they do not already exist.
+     */
+    public void createPipelines() {
+        if (mFrontPipeline == null) {
+            mFrontPipeline = new FacePipeline(mContext, true, null, null);
+            mRearPipeline = new FacePipeline(mContext, false, null, null);
+            openEventLog();
+            openSignalStores();
+        }
+    }
+
+    /**
+     * Returns the log of the events of both pipelines, or null if it is not open yet, could not be
+     * opened, or the pipelines do not exist.
+     */
+    public EventLog getEventLog() {
+        return mEventLog;
+    }
+
+    public FacePipeline getPipeline(boolean frontFacing) {
+        return frontFacing ? mFrontPipeline : mRearPipeline;
+    }
+
+    public boolean isFrontFacing() {
+        return mFrontFacing;
+    }
+
+    public void setFrontFacing(boolean frontFacing) {
+        mFrontFacing = frontFacing;
+    }
+
+    /**
+     * Attaches both pipelines to the given overlay and listeners, cancelling any pending teardown.
+     */
+    public void attach(GraphicOverlay overlay, ClickListener frontListener,
+                       ClickListener rearListener) {
+        mHandler.removeCallbacks(mTeardown);
+        if (mFrontPipeline != null) {
+            mFrontPipeline.attach(overlay, frontListener);
+            mRearPipeline.attach(overlay, rearListener);
+        }
+    }
+
+    /**
+     * Detaches both pipelines, keeping them until the idle timeout elapses.
+     */
+    public void detach() {
+        if (mFrontPipeline != null) {
+            mFrontPipeline.detach();
+            mRearPipeline.detach();
+        }
+        EventLog eventLog = mEventLog;
+        if (eventLog != null) {
+            sLogExecutor.execute(() -> {
+                try {
+                    eventLog.flush();
+                } catch (IOException | IllegalStateException e) {
+                    Log.w(TAG, "Could not flush the event log", e);
+                }
+            });
+        }
+        flushSignalStore(mFrontSignals);
+        flushSignalStore(mRearSignals);
+        mHandler.removeCallbacks(mTeardown);
+        mHandler.postDelayed(mTeardown, mIdleTimeoutMs);
+    }
+
+    /**
+     * Releases both pipelines immediately, including the cameras and detectors.
+     */
+    public void release() {
+        mHandler.removeCallbacks(mTeardown);
+        if (mFrontPipeline != null) {
+            Log.d(TAG, "Releasing face pipelines");
+            mFrontPipeline.release();
+            mRearPipeline.release();
+            mFrontPipeline = null;
+            mRearPipeline = null;
+        }
+        EventLog eventLog = mEventLog;
+        mEventLog = null;
+        if (eventLog != null) {
+            closeEventLog(eventLog);
+        }
+        closeSignalStore(mFrontSignals);
+        closeSignalStore(mRearSignals);
+        mFrontSignals = null;
+        mRearSignals = null;
+    }
+
+    /**
+     * Opens the event log and drops events older than the retention period in the background, as
+     * opening scans and maps the segment files, then hands the log to the pipelines on the main
+     * thread.  If the pipelines have been released by then, the log is closed again.  The
+     * pipelines work without a log if it cannot be opened.
+     */
+    private void openEventLog() {
+        FacePipeline frontPipeline = mFrontPipeline;
+        File directory = new File(mContext.getFilesDir(), EVENT_LOG_DIRECTORY);
+        sLogExecutor.execute(() -> {
+            EventLog eventLog;
+            try {
+                eventLog = new EventLog(directory);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open the event log", e);
+                return;
+            }
+            try {
+                long dropped = eventLog.compact(System.currentTimeMillis() - EVENT_RETENTION_MS);
+                Log.d(TAG, "Compacted the event log, dropped " + dropped + " events");
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "Could not compact the event log", e);
+            }
+            mHandler.post(() -> onEventLogOpened(frontPipeline, eventLog));
+        });
+    }
+
+    private void onEventLogOpened(FacePipeline frontPipeline, EventLog eventLog) {
+        if (mFrontPipeline != frontPipeline) {
+            closeEventLog(eventLog);
+            return;
+        }
+        mEventLog = eventLog;
+        mFrontPipeline.setEventLog(eventLog);
+        mRearPipeline.setEventLog(eventLog);
+    }
+
+    private static void closeEventLog(EventLog eventLog) {
+        sLogExecutor.execute(() -> {
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close the event log", e);
+            }
+        });
+    }
+
+    /**
+     * Opens the signal stores of both pipelines in the background, then hands them to the
+     * pipelines on the main thread.  If the pipelines have been released by then, the stores are
+     * closed again.
+     */
+    private void openSignalStores() {
+        FacePipeline frontPipeline = mFrontPipeline;
+        File filesDir = mContext.getFilesDir();
+        sLogExecutor.execute(() -> {
+            RollupStore front = openSignalStore(filesDir, "front");
+            RollupStore rear = openSignalStore(filesDir, "rear");
+            mHandler.post(() -> onSignalStoresOpened(frontPipeline, front, rear));
+        });
+    }
+
+    private void onSignalStoresOpened(FacePipeline frontPipeline, RollupStore front,
+                                      RollupStore rear) {
+        if (mFrontPipeline != frontPipeline) {
+            closeSignalStore(front);
+            closeSignalStore(rear);
+            return;
+        }
+        mFrontSignals = front;
+        mRearSignals = rear;
+        mFrontPipeline.setSignalStore(front);
+        mRearPipeline.setSignalStore(rear);
+    }
+
+    /**
+     * Opens a signal store for a new session in the named subdirectory, and deletes the sessions
+     * older than the retention period.  The pipeline works without a store if it cannot be
+     * opened.  Called on the log executor.
+     */
+    private static RollupStore openSignalStore(File filesDir, String name) {
+        File directory = new File(new File(filesDir, SIGNAL_DIRECTORY), name);
+        long nowMs = System.currentTimeMillis();
+        float closed = TrackerConfig.DEFAULT.getEyeClosedThreshold();
+        float[] closedBelow = new float[FaceSignals.COUNT];
+        closedBelow[FaceSignals.LEFT_EYE] = closed;
+        closedBelow[FaceSignals.RIGHT_EYE] = closed;
+        closedBelow[FaceSignals.YAW] = Float.NaN;
+        RollupStore store;
+        try {
+            store = new RollupStore(directory, closedBelow, SIGNAL_RAW_WINDOW_MS,
+                    SIGNAL_RAW_CAPACITY, nowMs);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open the " + name + " signal store", e);
+            return null;
+        }
+        int deleted = RollupStore.deleteSessionsBefore(directory, nowMs - EVENT_RETENTION_MS);
+        Log.d(TAG, "Deleted " + deleted + " old " + name + " signal files");
+        return store;
+    }
+
+    private static void flushSignalStore(RollupStore store) {
+        if (store != null) {
+            sLogExecutor.execute(() -> {
+                try {
+                    store.flush();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not flush a signal store", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes a signal store, which writes the buckets still in progress, once its pipeline has
+     * been released.
+     */
+    private static void closeSignalStore(RollupStore store) {
+        if (store != null) {
+            sLogExecutor.execute(() -> {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not close a signal store", e);
+                }
+            });
+        }
+    }
+}
@@ -15,7 +15,6 @@
  */
 package me.prapon.eyeblinkdetection.vision;
 
-import android.annotation.SuppressLint;
 import android.graphics.PointF;
 import android.util.Log;
 
@@ -24,131 +23,179 @@ import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.vision.face.FaceDetector;
 import com.google.android.gms.vision.face.Landmark;
 
-import java.sql.Types;
-import java.util.Calendar;
-import java.util.HashMap;
-import java.util.Map;
-
-import me.prapon.eyeblinkdetection.CaptureTypes;
-import me.prapon.eyeblinkdetection.ClickListener;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.FaceReidentifier;
+import me.prapon.eyeblinkdetection.core.FaceSignals;
+import me.prapon.eyeblinkdetection.core.FaceTrackerLogic;
+import me.prapon.eyeblinkdetection.core.FrameClock;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.TurnCaptureStats;
+import me.prapon.eyeblinkdetection.core.pipeline.Stage;
+import me.prapon.eyeblinkdetection.core.stats.CrowdStats;
 
 /**
  * Tracks the eye positions and state over time, managing an underlying graphic which renders googly
- * eyes over the source video.<p>
+ * eyes over the source video.  The eyes of each frame are handed to the graphic while an overlay
+ * is attached, and drawn by the overlay's renderer.<p>
  * <p>
  * To improve eye tracking performance, it also helps to keep track of the previous landmark
  * proportions relative to the detected face and to interpolate landmark positions for future
  * updates if the landmarks are missing.  This helps to compensate for intermediate frames where the
  * face was detected but one or both of the eyes were not detected.  Missing landmarks can happen
- * during quick movements due to camera image blurring.
+ * during quick movements due to camera image blurring.<p>
+ *
+ * The blink and head turn decisions themselves live in {@link FaceTrackerLogic}, which has no
+ * Android dependencies so that recorded sessions can be re-scored on a desktop JVM.  This class
+ * converts each detected face into a {@link FaceFrame} and hands it over, stamped with the capture
+ * time of its camera frame from the pipeline's {@link FrameClock}.  Its events also feed the
+ * pipeline's {@link CrowdStats}, through a window for the face currently tracked.<p>
+ *
+ * When its face goes missing, the tracker offers its logic state to the pipeline's
+ * {@link FaceReidentifier}, and a tracker for a new face first tries to claim a lost face's state.
+ * A face which the detector loses and finds again under a new id thus keeps its blink count and
+ * cooldowns.<p>
+ *
+ * Trackers run on the tracking stage of their pipeline.  Events are submitted to the pipeline's
+ * event stage, which records and delivers them, so that neither disk writes nor listeners hold up
+ * tracking.
  */
 public class FaceTracker extends Tracker<Face> {
-    private static final float EYE_CLOSED_THRESHOLD = 0.4f;
-    int blinkCount = 0;
-    ClickListener clickListener;
-    /**
-     * Updates the positions and state of eyes to the underlying graphic, according to the most
-     * recent face detection results.  The graphic will render the eyes and simulate the motion of
-     * the iris based upon these changes over time.
-     */
+    private static final String TAG = "FaceTracker";
 
-    long lastBlinkStored;
-    private GraphicOverlay mOverlay;
+    // The overlay may be swapped from the UI thread when the activity is recreated, while the
+    // graphics are only ever rebuilt on the tracking stage.  mGraphicsOverlay is the overlay that
+    // the current graphics were created for.
+    private volatile GraphicOverlay mOverlay;
+    private GraphicOverlay mGraphicsOverlay;
     private EyesGraphics mEyesGraphics;
-    private EyesGraphics mEarGraphics;
-    // Record the previously seen proportions of the landmark locations relative to the bounding box
-    // of the face.  These proportions can be used to approximate where the landmarks are within the
-    // face bounding box if the eye landmark is missing in a future update.
-    @SuppressLint("UseSparseArrays")
-    private Map<Integer, PointF> mPreviousProportions = new HashMap<>();
 
+    private final FaceTrackerLogic mLogic;
+    private final FrameClock mClock;
+    private final CrowdStats mCrowdStats;
+    private CrowdStats.FaceWindow mWindow;
+    private final FaceReidentifier mReidentifier;
+    private final Stage<TrackerEvent> mEvents;
+    private final PipelineDetector mDetector;
+    private final FaceSignals mSignals;
+    private final TurnCaptureStats mTurnStats;
+    // Capture timestamp of the frame being tracked.
+    private long mFrameMs;
+    private int mFaceId;
+    // Whether the state of the face is on offer to other trackers.
+    private boolean mOffered;
+    // Reused for every update, to avoid allocating per frame.
+    private final FaceFrame mFrame = new FaceFrame();
+    private final float[] mLeftEye = new float[2];
+    private final float[] mRightEye = new float[2];
+    private final long[] mDetectTimes = new long[2];
 
     //==============================================================================================
     // Methods
     //==============================================================================================
-    // Similarly, keep track of the previous eye open state so that it can be reused for
-    // intermediate frames which lack eye landmarks and corresponding eye state.
-    private boolean mPreviousIsLeftOpen = true;
-    private boolean mPreviousIsRightOpen = true;
-
-    long lastLeftCapture = 0;
-    long lastRightCapture = 0;
-    public FaceTracker(GraphicOverlay overlay, ClickListener listener) {
-        mOverlay = overlay;
-        clickListener = listener;
-        long timeInMil = Calendar.getInstance().getTimeInMillis();
 
-         lastLeftCapture = timeInMil;
-         lastRightCapture = timeInMil;
+    /**
+     * @param clock the frame clock of the pipeline, already advanced to the current frame whenever
+     *              this tracker is called
+     * @param crowdStats the statistics shared by all trackers of the pipeline
+     * @param reidentifier the lost faces shared by all trackers of the pipeline, which are all
+     *                     called on the pipeline's tracking stage
+     * @param events the stage which records and delivers the events of this tracker
+     * @param detector the detector of the pipeline, for the eyes of small faces it refined
+     * @param signals the graphed signals shared by all trackers of the pipeline
+     * @param turnStats the head turn capture latency of the pipeline, which head turns are
+     *                  predicted ahead by
+     */
+    FaceTracker(GraphicOverlay overlay, FrameClock clock, CrowdStats crowdStats,
+                FaceReidentifier reidentifier, Stage<TrackerEvent> events,
+                PipelineDetector detector, FaceSignals signals, TurnCaptureStats turnStats) {
+        mOverlay = overlay;
+        mClock = clock;
+        mCrowdStats = crowdStats;
+        mReidentifier = reidentifier;
+        mEvents = events;
+        mDetector = detector;
+        mSignals = signals;
+        mTurnStats = turnStats;
+        mLogic = new FaceTrackerLogic(TrackerConfig.DEFAULT, this::onEvent);
+        mLogic.start(clock.getNowMs());
     }
 
     /**
-     * Resets the underlying googly eyes graphic and associated physics state.
+     * Resets the underlying googly eyes graphic and associated physics state, and picks up the
+     * state of a recently lost face if the new face matches one.
      */
     @Override
     public void onNewItem(int id, Face face) {
-        mEyesGraphics = new EyesGraphics(mOverlay);
-        mEarGraphics = new EyesGraphics(mOverlay);
+        mGraphicsOverlay = null;
+        updateGraphics();
+        long nowMs = mClock.getNowMs();
+        if (mWindow != null) {
+            mWindow.close();
+        }
+        mWindow = mCrowdStats.open(id, nowMs);
+
+        mFaceId = id;
+        mOffered = false;
+        toFrame(face, nowMs, mFrame);
+        int lostId = mReidentifier.claim(mFrame, mLogic, nowMs);
+        if (lostId != FaceReidentifier.NO_MATCH) {
+            Log.d(TAG, "Face " + id + " continues lost face " + lostId);
+        }
     }
 
+    /**
+     * Moves this tracker to a new overlay, e.g. after the activity was recreated on rotation.  A
+     * null overlay detaches the tracker from any view; tracking state is kept either way.
+     */
+    public void setOverlay(GraphicOverlay overlay) {
+        mOverlay = overlay;
+    }
 
+    /**
+     * Updates the positions and state of eyes to the underlying graphic, according to the most
+     * recent face detection results.  The graphic will render the eyes and simulate the motion of
+     * the iris based upon these changes over time.
+     */
     @Override
     public void onUpdate(FaceDetector.Detections<Face> detectionResults, Face face) {
-        mOverlay.add(mEyesGraphics);
-        mOverlay.add(mEarGraphics);
-        long timeInMil = Calendar.getInstance().getTimeInMillis();
-
-        updatePreviousProportions(face);
-
-        Log.d("FaceRotation", face.getEulerY()+"" );
-
-
-
-        if(face.getEulerY()<-40 && face.getEulerZ()>-20 && face.getEulerZ()<20&& timeInMil - lastLeftCapture > 2000){
-            lastLeftCapture = timeInMil;
-            clickListener.onClick(blinkCount, CaptureTypes.LEFT_FACE);
-        } else if (face.getEulerY()>40&& face.getEulerZ()>-20 && face.getEulerZ()<20 && timeInMil - lastRightCapture > 2000) {
-            lastRightCapture = timeInMil;
-            clickListener.onClick(blinkCount, CaptureTypes.RIGHT_FACE);
+        updateGraphics();
+        if (mGraphicsOverlay != null) {
+            mGraphicsOverlay.add(mEyesGraphics);
         }
-
-        PointF leftPosition = getLandmarkPosition(face, Landmark.LEFT_EYE);
-        PointF rightPosition = getLandmarkPosition(face, Landmark.RIGHT_EYE);
-        PointF RIGHT_EAR = getLandmarkPosition(face, Landmark.RIGHT_EAR);
-        PointF LEFT_EAR = getLandmarkPosition(face, Landmark.LEFT_EAR);
-//        PointF LEFT_EAR = getLandmarkPosition(face, Landmark.LEFT_EAR);
-
-        float leftOpenScore = face.getIsLeftEyeOpenProbability();
-        boolean isLeftOpen;
-        if (leftOpenScore == Face.UNCOMPUTED_PROBABILITY) {
-            isLeftOpen = mPreviousIsLeftOpen;
-        } else {
-            isLeftOpen = (leftOpenScore > EYE_CLOSED_THRESHOLD);
-            mPreviousIsLeftOpen = isLeftOpen;
+        long timeInMil = mClock.getNowMs();
+        if (mOffered) {
+            // Found again under the same id.
+            mReidentifier.withdraw(mFaceId);
+            mOffered = false;
         }
-
-        float rightOpenScore = face.getIsRightEyeOpenProbability();
-        boolean isRightOpen;
-        if (rightOpenScore == Face.UNCOMPUTED_PROBABILITY) {
-            isRightOpen = mPreviousIsRightOpen;
-        } else {
-            isRightOpen = (rightOpenScore > EYE_CLOSED_THRESHOLD);
-            mPreviousIsRightOpen = isRightOpen;
+        if (mWindow != null) {
+            mWindow.onFrame(timeInMil);
         }
 
+        Log.d("FaceRotation", face.getEulerY()+"" );
 
-
-        if ((!mPreviousIsLeftOpen || !mPreviousIsRightOpen) && timeInMil - lastBlinkStored > 2000) {
-
-            lastBlinkStored = timeInMil;
-            blinkCount++;
-            clickListener.onClick(blinkCount, CaptureTypes.EYE);
+        toFrame(face, timeInMil, mFrame);
+        mFrameMs = detectionResults.getFrameMetadata().getTimestampMillis();
+        mDetector.refineEyes(face.getId(), mFrameMs, mFrame);
+        mLogic.setTurnLeadMs(mTurnStats.getLeadMs());
+        if (mClock.isDiscontinuity() || mClock.getDroppedInLastInterval() > 0) {
+            mLogic.onFrameGap(mClock.isDiscontinuity());
+        }
+        if (!mDetector.getActiveProfile().classifiesEyes()) {
+            // E.g. while detached.  The eyes will stay uncomputed, so an eye closed when
+            // classification stopped must not keep counting as a blink.
+            mLogic.resetEyeState();
+        }
+        mLogic.update(mFrame);
+        mSignals.add(mFrame);
+
+        if (mEyesGraphics != null) {
+            // Published to the renderer as one frame, through the graphic's EyeState.
+            boolean hasEyes = mLogic.getLandmarkPosition(mFrame, Landmark.LEFT_EYE, mLeftEye)
+                    & mLogic.getLandmarkPosition(mFrame, Landmark.RIGHT_EYE, mRightEye);
+            mEyesGraphics.updateEyes(hasEyes, mLeftEye[0], mLeftEye[1], mLogic.isLeftOpen(),
+                    mRightEye[0], mRightEye[1], mLogic.isRightOpen());
         }
-
-//        Log.d("TAG", "updateEyes: mRightOpen: " + mPreviousIsRightOpen + " mLeftOpen: " + mPreviousIsLeftOpen);
-
-//        mEyesGraphics.updateEyes(leftPosition, isLeftOpen, rightPosition, isRightOpen);
-//        mEarGraphics.updateEyes(LEFT_EAR, isLeftOpen, RIGHT_EAR, isRightOpen);
     }
 
     /**
@@ -158,8 +205,8 @@ public class FaceTracker extends Tracker<Face> {
      */
     @Override
     public void onMissing(FaceDetector.Detections<Face> detectionResults) {
-        mOverlay.remove(mEyesGraphics);
-        mOverlay.remove(mEarGraphics);
+        removeGraphics();
+        offerState();
     }
 
     /**
@@ -168,41 +215,78 @@ public class FaceTracker extends Tracker<Face> {
      */
     @Override
     public void onDone() {
-        mOverlay.remove(mEyesGraphics);
-        mOverlay.remove(mEarGraphics);
+        removeGraphics();
+        offerState();
+        if (mWindow != null) {
+            mWindow.close();
+            mWindow = null;
+        }
+    }
+
+    /**
+     * Copies the values of a detected face into a reusable frame for the tracker logic.
+     */
+    static void toFrame(Face face, long timestampMs, FaceFrame out) {
+        PointF position = face.getPosition();
+        out.set(face.getId(), timestampMs, position.x, position.y, face.getWidth(),
+                face.getHeight(), face.getEulerY(), face.getEulerZ(),
+                face.getIsLeftEyeOpenProbability(), face.getIsRightEyeOpenProbability());
+        for (Landmark landmark : face.getLandmarks()) {
+            PointF landmarkPosition = landmark.getPosition();
+            out.setLandmark(landmark.getType(), landmarkPosition.x, landmarkPosition.y);
+        }
     }
 
     //==============================================================================================
     // Private
     //==============================================================================================
 
-    private void updatePreviousProportions(Face face) {
-        for (Landmark landmark : face.getLandmarks()) {
-            PointF position = landmark.getPosition();
-            float xProp = (position.x - face.getPosition().x) / face.getWidth();
-            float yProp = (position.y - face.getPosition().y) / face.getHeight();
-            mPreviousProportions.put(landmark.getType(), new PointF(xProp, yProp));
+    /**
+     * Passes an event of the tracker logic on to the event stage, along with the frame that
+     * triggered it.
+     */
+    private void onEvent(int type, int blinkCount, long timestampMs) {
+        if (mWindow != null) {
+            mWindow.onEvent(type, timestampMs);
         }
+        if (!mDetector.getFrameTimes(mFrameMs, mDetectTimes)) {
+            mDetectTimes[0] = 0;
+            mDetectTimes[1] = 0;
+        }
+        mEvents.submit(new TrackerEvent(mFaceId, type, blinkCount, System.currentTimeMillis(),
+                mFrameMs, mLogic.getTurnTargetYaw(), mDetectTimes[0], mDetectTimes[1]));
     }
 
     /**
-     * Finds a specific landmark position, or approximates the position based on past observations
-     * if it is not present.
+     * Offers the state of the face, as of its last update, once per disappearance.
      */
-    private PointF getLandmarkPosition(Face face, int landmarkId) {
-        for (Landmark landmark : face.getLandmarks()) {
-            if (landmark.getType() == landmarkId) {
-                return landmark.getPosition();
-            }
+    private void offerState() {
+        if (!mOffered) {
+            mReidentifier.offer(mFaceId, mFrame, mLogic, mClock.getNowMs());
+            mOffered = true;
         }
+    }
 
-        PointF prop = mPreviousProportions.get(landmarkId);
-        if (prop == null) {
-            return null;
+    /**
+     * Recreates the graphics if the overlay was swapped since they were created.
+     */
+    private void updateGraphics() {
+        GraphicOverlay overlay = mOverlay;
+        if (overlay == mGraphicsOverlay && mEyesGraphics != null) {
+            return;
         }
+        removeGraphics();
+        mGraphicsOverlay = overlay;
+        if (overlay == null) {
+            mEyesGraphics = null;
+        } else {
+            mEyesGraphics = new EyesGraphics(overlay);
+        }
+    }
 
-        float x = face.getPosition().x + (prop.x * face.getWidth());
-        float y = face.getPosition().y + (prop.y * face.getHeight());
-        return new PointF(x, y);
+    private void removeGraphics() {
+        if (mGraphicsOverlay != null) {
+            mGraphicsOverlay.remove(mEyesGraphics);
+        }
     }
-}
\ No newline at end of file
+}
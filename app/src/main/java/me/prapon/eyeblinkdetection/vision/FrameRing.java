@@ -0,0 +1,209 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.image.LumaScores;
+
+/**
+ * A bounded ring of the most recent preview frames, so that a capture can use a frame which was
+ * already seen instead of asking the camera for a new picture.<p>
+ *
+ * Each slot keeps its own buffer, which is reused for later frames of the same size, and the
+ * frame is scored as it arrives: the size of the largest face relative to the frame, and the
+ * sharpness of the image within that face.  The yaw of that face is kept too, to measure how well
+ * head turn captures hit their target.  A slot handed out for encoding is pinned, and is not
+ * overwritten until it is released.
+ */
+class FrameRing {
+    // Luma pixels sampled per direction when scoring sharpness.
+    private static final int SHARPNESS_STEP = 2;
+
+    /**
+     * One recorded frame.  The fields are only written by the ring while the slot is not pinned.
+     */
+    static final class Slot {
+        byte[] data;
+        int width;
+        int height;
+        int rotation;
+        long timestampMs;
+        float faceFraction;
+        float sharpness;
+        // Yaw of the largest face, or NaN if there is none.
+        float yaw;
+        // Bounds of the largest face in sensor coordinates, if faceFraction is positive.
+        final int[] faceRegion = new int[4];
+        boolean valid;
+        private boolean mPinned;
+    }
+
+    private final Slot[] mSlots;
+    private int mNext;
+
+    // Scratch region for scoring, and the yaw of the face in it; only used on the detector thread.
+    private final int[] mRegion = new int[4];
+    private float mYaw;
+
+    FrameRing(int size) {
+        mSlots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Copies a frame and its detected faces into the oldest slot which is not pinned.  Called on the
+     * detector thread.
+     */
+    void offer(Frame frame, SparseArray<Face> faces) {
+        Frame.Metadata metadata = frame.getMetadata();
+        ByteBuffer image = frame.getGrayscaleImageData();
+        if (image == null) {
+            return;
+        }
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int rotation = metadata.getRotation();
+
+        float faceFraction = largestFace(faces, rotation, width, height);
+
+        synchronized (this) {
+            Slot slot = nextFreeSlot();
+            if (slot == null) {
+                return;
+            }
+            int length = image.limit();
+            if (slot.data == null || slot.data.length != length) {
+                slot.data = new byte[length];
+            }
+            ByteBuffer source = image.duplicate();
+            source.rewind();
+            source.get(slot.data, 0, length);
+
+            slot.width = width;
+            slot.height = height;
+            slot.rotation = rotation;
+            slot.timestampMs = metadata.getTimestampMillis();
+            slot.faceFraction = faceFraction;
+            slot.yaw = faceFraction > 0 ? mYaw : Float.NaN;
+            System.arraycopy(mRegion, 0, slot.faceRegion, 0, mRegion.length);
+            slot.sharpness = faceFraction > 0
+                    ? LumaScores.sharpness(slot.data, width, height, mRegion, SHARPNESS_STEP)
+                    : 0;
+            slot.valid = true;
+        }
+    }
+
+    /**
+     * Picks the best frame from the last {@code windowMs} before the newest frame, and pins it.
+     * Frames with a face rank above frames without one; among those, sharper frames of larger
+     * faces win.
+     *
+     * @return the pinned slot, to be passed to {@link #release}, or null if there are no frames
+     */
+    synchronized Slot pinBest(long windowMs) {
+        long newestMs = Long.MIN_VALUE;
+        for (Slot slot : mSlots) {
+            if (slot.valid && !slot.mPinned) {
+                newestMs = Math.max(newestMs, slot.timestampMs);
+            }
+        }
+
+        Slot best = null;
+        float bestScore = -1;
+        for (Slot slot : mSlots) {
+            if (!slot.valid || slot.mPinned || newestMs - slot.timestampMs > windowMs) {
+                continue;
+            }
+            float score = slot.faceFraction > 0
+                    ? 1 + slot.sharpness * (float) Math.sqrt(slot.faceFraction)
+                    : 0;
+            if (score > bestScore
+                    || (score == bestScore && slot.timestampMs > best.timestampMs)) {
+                best = slot;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            best.mPinned = true;
+        }
+        return best;
+    }
+
+    /**
+     * Pins the newest frame.
+     *
+     * @return the pinned slot, to be passed to {@link #release}, or null if there are no frames
+     */
+    synchronized Slot pinNewest() {
+        Slot newest = null;
+        for (Slot slot : mSlots) {
+            if (slot.valid && !slot.mPinned
+                    && (newest == null || slot.timestampMs > newest.timestampMs)) {
+                newest = slot;
+            }
+        }
+        if (newest != null) {
+            newest.mPinned = true;
+        }
+        return newest;
+    }
+
+    synchronized void release(Slot slot) {
+        slot.mPinned = false;
+    }
+
+    /**
+     * Forgets all frames, e.g. when the camera is restarted.
+     */
+    synchronized void clear() {
+        for (Slot slot : mSlots) {
+            slot.valid = false;
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private Slot nextFreeSlot() {
+        for (int i = 0; i < mSlots.length; i++) {
+            Slot slot = mSlots[mNext];
+            mNext = (mNext + 1) % mSlots.length;
+            if (!slot.mPinned) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the area of the largest face as a fraction of the frame, and leaves its bounds in
+     * sensor coordinates in mRegion and its yaw in mYaw.
+     */
+    private float largestFace(SparseArray<Face> faces, int rotation, int width, int height) {
+        float largestArea = 0;
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.valueAt(i);
+            float area = face.getWidth() * face.getHeight();
+            if (area > largestArea) {
+                largestArea = area;
+                mYaw = face.getEulerY();
+                mRegion[0] = (int) face.getPosition().x;
+                mRegion[1] = (int) face.getPosition().y;
+                mRegion[2] = (int) (face.getPosition().x + face.getWidth());
+                mRegion[3] = (int) (face.getPosition().y + face.getHeight());
+            }
+        }
+        if (largestArea == 0) {
+            return 0;
+        }
+        LumaScores.toSensorRegion(rotation, width, height, mRegion);
+        return Math.min(1, largestArea / (width * (float) height));
+    }
+}
@@ -17,23 +17,37 @@ package me.prapon.eyeblinkdetection.vision;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
 
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
-import java.util.Set;
-
-
+/**
+ * A view which renders a series of custom graphics to be overlayed on top of an associated preview
+ * (i.e., the camera preview).  The creator can add graphics objects, update the objects, and remove
+ * them, triggering the appropriate drawing and invalidation within the view.<p>
+ *
+ * The set of graphics is published as an immutable snapshot, so drawing never takes a lock that the
+ * detector thread might hold.  By default the graphics are drawn on the UI thread in
+ * {@link #onDraw}.  Once an {@link OverlayRenderView} is attached with {@link #setRenderView},
+ * this view only provides the layout and coordinate transforms, and the graphics are drawn on the
+ * render view's own thread instead.
+ */
 public class GraphicOverlay extends View {
+    private static final Graphic[] NO_GRAPHICS = new Graphic[0];
+
+    // Guards changes to the graphics; readers use the published snapshot without locking.
     private final Object mLock = new Object();
-    private int mPreviewWidth;
-    private float mWidthScaleFactor = 1.0f;
-    private int mPreviewHeight;
-    private float mHeightScaleFactor = 1.0f;
-    private int mFacing = CameraSource.CAMERA_FACING_BACK;
-    private Set<Graphic> mGraphics = new HashSet<>();
+    private volatile Graphic[] mGraphics = NO_GRAPHICS;
+
+    private volatile int mPreviewWidth;
+    private volatile float mWidthScaleFactor = 1.0f;
+    private volatile int mPreviewHeight;
+    private volatile float mHeightScaleFactor = 1.0f;
+    private volatile int mFacing = CameraSource.CAMERA_FACING_BACK;
+
+    private volatile OverlayRenderView mRenderView;
 
     public static abstract class Graphic {
         private GraphicOverlay mOverlay;
@@ -42,6 +56,22 @@ public class GraphicOverlay extends View {
             mOverlay = overlay;
         }
 
+        /**
+         * Advances any animation to the given display frame time, in the
+         * {@link SystemClock#uptimeMillis} time base.  Called exactly once per display frame,
+         * before {@link #draw}.
+         */
+        public void advance(long frameTimeMs) {
+        }
+
+        /**
+         * Whether the graphic keeps changing without new data, e.g. an iris still in motion, so
+         * that the next display frame must be drawn too.  Called after {@link #advance}.
+         */
+        public boolean isAnimating() {
+            return false;
+        }
+
         public abstract void draw(Canvas canvas);
 
         /**
@@ -80,7 +110,7 @@ public class GraphicOverlay extends View {
         }
 
         public void postInvalidate() {
-            mOverlay.postInvalidate();
+            mOverlay.invalidateGraphics();
         }
     }
 
@@ -93,9 +123,9 @@ public class GraphicOverlay extends View {
      */
     public void clear() {
         synchronized (mLock) {
-            mGraphics.clear();
+            mGraphics = NO_GRAPHICS;
         }
-        postInvalidate();
+        invalidateGraphics();
     }
 
     /**
@@ -103,9 +133,18 @@ public class GraphicOverlay extends View {
      */
     public void add(Graphic graphic) {
         synchronized (mLock) {
-            mGraphics.add(graphic);
+            Graphic[] graphics = mGraphics;
+            for (Graphic existing : graphics) {
+                if (existing == graphic) {
+                    return;
+                }
+            }
+            Graphic[] copy = new Graphic[graphics.length + 1];
+            System.arraycopy(graphics, 0, copy, 0, graphics.length);
+            copy[graphics.length] = graphic;
+            mGraphics = copy;
         }
-        postInvalidate();
+        invalidateGraphics();
     }
 
     /**
@@ -113,9 +152,18 @@ public class GraphicOverlay extends View {
      */
     public void remove(Graphic graphic) {
         synchronized (mLock) {
-            mGraphics.remove(graphic);
+            Graphic[] graphics = mGraphics;
+            for (int i = 0; i < graphics.length; i++) {
+                if (graphics[i] == graphic) {
+                    Graphic[] copy = new Graphic[graphics.length - 1];
+                    System.arraycopy(graphics, 0, copy, 0, i);
+                    System.arraycopy(graphics, i + 1, copy, i, copy.length - i);
+                    mGraphics = copy;
+                    break;
+                }
+            }
         }
-        postInvalidate();
+        invalidateGraphics();
     }
 
     /**
@@ -123,12 +171,22 @@ public class GraphicOverlay extends View {
      * image coordinates later.
      */
     public void setCameraInfo(int previewWidth, int previewHeight, int facing) {
-        synchronized (mLock) {
-            mPreviewWidth = previewWidth;
-            mPreviewHeight = previewHeight;
-            mFacing = facing;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mFacing = facing;
+        invalidateGraphics();
+    }
+
+    /**
+     * Moves drawing of the graphics to the given render view, or back to this view's
+     * {@link #onDraw} if null.  Must be called on the main thread.
+     */
+    public void setRenderView(OverlayRenderView renderView) {
+        mRenderView = renderView;
+        invalidate();
+        if (renderView != null) {
+            renderView.requestRender();
         }
-        postInvalidate();
     }
 
     /**
@@ -137,16 +195,52 @@ public class GraphicOverlay extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (mRenderView != null) {
+            return;
+        }
+        if (drawGraphics(canvas, SystemClock.uptimeMillis())) {
+            postInvalidateOnAnimation();
+        }
+    }
 
-        synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
-            }
+    /**
+     * Advances and draws the current snapshot of graphics, on whichever thread owns the canvas.
+     *
+     * @return whether any of the graphics is still animating
+     */
+    boolean drawGraphics(Canvas canvas, long frameTimeMs) {
+        updateScale(canvas.getWidth(), canvas.getHeight());
+        Graphic[] graphics = mGraphics;
+        boolean animating = false;
+        for (Graphic graphic : graphics) {
+            graphic.advance(frameTimeMs);
+            animating |= graphic.isAnimating();
+        }
+        for (Graphic graphic : graphics) {
+            graphic.draw(canvas);
+        }
+        return animating;
+    }
 
-            for (Graphic graphic : mGraphics) {
-                graphic.draw(canvas);
-            }
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void updateScale(int width, int height) {
+        int previewWidth = mPreviewWidth;
+        int previewHeight = mPreviewHeight;
+        if ((previewWidth != 0) && (previewHeight != 0)) {
+            mWidthScaleFactor = (float) width / (float) previewWidth;
+            mHeightScaleFactor = (float) height / (float) previewHeight;
+        }
+    }
+
+    private void invalidateGraphics() {
+        OverlayRenderView renderView = mRenderView;
+        if (renderView != null) {
+            renderView.requestRender();
+        } else {
+            postInvalidate();
         }
     }
 }
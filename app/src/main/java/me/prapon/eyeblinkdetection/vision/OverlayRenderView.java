@@ -0,0 +1,243 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.TextureView;
+import android.view.WindowManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+
+/**
+ * Draws the graphics of a {@link GraphicOverlay} on a dedicated render thread, so that the overlay
+ * does not compete with layout and image views on the UI thread.<p>
+ *
+ * The render thread is paced by {@link Choreographer} vsync callbacks.  On each display frame it
+ * takes the overlay's current snapshot of graphics without locking, advances their animation once
+ * to the vsync time, and draws them into this view's surface.  Further callbacks are only scheduled
+ * while a graphic is animating; otherwise the thread waits for the overlay to request a frame when
+ * its graphics or their data change, so a still overlay costs one frame per camera frame.<p>
+ *
+ * The time from vsync to the frame being posted is recorded for percentile reporting, together with
+ * the number of vsyncs missed while frames were being rendered back to back.
+ */
+public class OverlayRenderView extends TextureView implements TextureView.SurfaceTextureListener {
+    private static final String TAG = "OverlayRenderView";
+    private static final long STOP_TIMEOUT_MS = 500;
+
+    private final Object mStatsLock = new Object();
+    private final LatencyHistogram mFrameTimes = new LatencyHistogram();
+    private long mMissedVsyncs;
+
+    private volatile GraphicOverlay mOverlay;
+    private volatile RenderThread mRenderThread;
+
+    public OverlayRenderView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+    }
+
+    /**
+     * Sets the overlay whose graphics are drawn by this view, or null to draw nothing.  The overlay
+     * stops drawing its graphics itself while attached.  Must be called on the main thread.
+     */
+    public void setOverlay(GraphicOverlay overlay) {
+        GraphicOverlay previous = mOverlay;
+        if (previous != null && previous != overlay) {
+            previous.setRenderView(null);
+        }
+        mOverlay = overlay;
+        if (overlay != null) {
+            overlay.setRenderView(this);
+        }
+        requestRender();
+    }
+
+    /**
+     * Schedules a frame at the next vsync, if the surface is available.  May be called from any
+     * thread.
+     */
+    public void requestRender() {
+        RenderThread renderThread = mRenderThread;
+        if (renderThread != null) {
+            renderThread.requestRender();
+        }
+    }
+
+    /**
+     * Returns a summary of the frame time percentiles and missed vsyncs since the last reset.
+     */
+    public String getStats() {
+        synchronized (mStatsLock) {
+            return "frames: " + mFrameTimes + ", missed vsyncs: " + mMissedVsyncs;
+        }
+    }
+
+    public void resetStats() {
+        synchronized (mStatsLock) {
+            mFrameTimes.reset();
+            mMissedVsyncs = 0;
+        }
+    }
+
+    //==============================================================================================
+    // Surface
+    //==============================================================================================
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+        WindowManager windowManager =
+                (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        long vsyncPeriodNs = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60));
+
+        RenderThread renderThread = new RenderThread(vsyncPeriodNs);
+        renderThread.begin();
+        mRenderThread = renderThread;
+        renderThread.requestRender();
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+        requestRender();
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+        RenderThread renderThread = mRenderThread;
+        mRenderThread = null;
+        if (renderThread != null) {
+            // The surface is released when this returns, so rendering must have stopped by then.
+            renderThread.quitAndWait();
+        }
+        Log.i(TAG, getStats());
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+    }
+
+    //==============================================================================================
+    // Render thread
+    //==============================================================================================
+
+    /**
+     * The thread which owns the Choreographer callbacks and draws into the surface.
+     */
+    private class RenderThread extends HandlerThread implements Choreographer.FrameCallback {
+        private final long mVsyncPeriodNs;
+        private volatile Handler mHandler;
+
+        // Only touched on the render thread.
+        private Choreographer mChoreographer;
+        private boolean mFrameScheduled;
+        private long mLastFrameTimeNs;
+        private boolean mQuitting;
+
+        RenderThread(long vsyncPeriodNs) {
+            super("overlay-render", Process.THREAD_PRIORITY_DISPLAY);
+            mVsyncPeriodNs = vsyncPeriodNs;
+        }
+
+        @Override
+        protected void onLooperPrepared() {
+            mChoreographer = Choreographer.getInstance();
+        }
+
+        void begin() {
+            start();
+            mHandler = new Handler(getLooper());
+        }
+
+        void requestRender() {
+            mHandler.post(this::scheduleFrame);
+        }
+
+        void quitAndWait() {
+            CountDownLatch stopped = new CountDownLatch(1);
+            mHandler.post(() -> {
+                mQuitting = true;
+                mChoreographer.removeFrameCallback(this);
+                stopped.countDown();
+            });
+            try {
+                if (!stopped.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Render thread did not stop in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            quit();
+        }
+
+        private void scheduleFrame() {
+            if (!mFrameScheduled && !mQuitting) {
+                mFrameScheduled = true;
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            if (mQuitting) {
+                return;
+            }
+
+            GraphicOverlay overlay = mOverlay;
+            Canvas canvas = lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            boolean animating = false;
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                if (overlay != null) {
+                    animating = overlay.drawGraphics(canvas, frameTimeNanos / 1000000);
+                }
+            } finally {
+                unlockCanvasAndPost(canvas);
+            }
+            recordFrame(frameTimeNanos, System.nanoTime());
+
+            // Keep going while an animation is in progress; otherwise wait for a request.
+            if (animating) {
+                scheduleFrame();
+            } else {
+                mLastFrameTimeNs = 0;
+            }
+        }
+
+        /**
+         * Records the time from vsync until the frame was posted, and counts the vsyncs skipped
+         * since the previous frame if frames are being rendered continuously.
+         */
+        private void recordFrame(long frameTimeNanos, long postedNanos) {
+            long missed = 0;
+            if (mLastFrameTimeNs != 0) {
+                long intervals = (frameTimeNanos - mLastFrameTimeNs + mVsyncPeriodNs / 2)
+                        / mVsyncPeriodNs;
+                missed = Math.max(0, intervals - 1);
+            }
+            mLastFrameTimeNs = frameTimeNanos;
+
+            synchronized (mStatsLock) {
+                mFrameTimes.recordNanos(postedNanos - frameTimeNanos);
+                mMissedVsyncs += missed;
+            }
+        }
+    }
+}
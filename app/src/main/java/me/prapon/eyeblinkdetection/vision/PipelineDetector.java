@@ -0,0 +1,342 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.FaceDetector;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+import me.prapon.eyeblinkdetection.core.image.LumaScores;
+import me.prapon.eyeblinkdetection.core.image.MotionGate;
+
+/**
+ * The detector a {@link FacePipeline}'s camera source feeds.  It delegates detection to an
+ * underlying {@link FaceDetector}, and gives the pipeline access to each frame alongside its
+ * detections, which the face detector itself does not expose.<p>
+ *
+ * Every frame with its faces is offered to a {@link FrameRing}, so that captures can be taken from
+ * recent preview frames.<p>
+ *
+ * The underlying detector can be replaced at runtime with one built for another
+ * {@link DetectorProfile}.  The replacement is picked up between two frames on the detector
+ * thread, so no frame goes undetected.  The detection time of every frame is recorded per profile.<p>
+ *
+ * Small faces are refined after detection, if the profile asks for it and the pipeline has a
+ * {@link SmallFaceRefiner}.<p>
+ *
+ * The pipeline's processor runs on its own tracking thread, so focus requests are likewise applied
+ * on the detector thread, before the next frame.<p>
+ *
+ * While the picture holds still, detection is skipped: a {@link MotionGate} compares each frame
+ * with the last detected one around its faces, and frames which barely changed reuse its faces.
+ * The refined eyes of those faces carry over too.  Even a still picture is detected again every
+ * few frames, counted at the expected frame rate so that the gate skips frames however slowly the
+ * camera runs.  The report counts the skipped frames and estimates the detection time they saved
+ * at the profile's mean.<p>
+ *
+ * The times at which the last few frames entered and left detection are kept by capture
+ * timestamp, so that the latency of an event can be measured from the start of its frame's
+ * detection; see {@link #getFrameTimes}.
+ */
+class PipelineDetector extends Detector<Face> {
+    private static final int NO_FOCUS = -1;
+    // Motion gate parameters: samples per side, threshold in luma levels, and the frames after
+    // which a still picture is detected again anyway.
+    private static final int GATE_GRID = 24;
+    private static final float GATE_THRESHOLD = 6;
+    private static final int GATE_REFRESH_FRAMES = 4;
+    // Frames whose detection times are kept: more than can wait for the tracking stage.
+    private static final int TIMED_FRAMES = 4;
+
+    private final FrameRing mFrameRing;
+
+    // Only touched on the detector thread, apart from the volatile reads in the accessors.
+    private volatile FaceDetector mDelegate;
+    private volatile DetectorProfile mProfile;
+    private LatencyHistogram mCost;
+    private final MotionGate mGate;
+    private final int[] mRegion = new int[4];
+    // The last detected faces, and the capture time of the previous frame, which used them.
+    private SparseArray<Face> mLastFaces;
+    private long mLastFrameMs;
+
+    // A detector waiting to replace the current one at the next frame.  Taken atomically, so that
+    // a switch scheduled while the previous one is picked up is not lost.
+    private final AtomicReference<Pending> mPending = new AtomicReference<>();
+    // A face to focus on from the next frame, or NO_FOCUS.
+    private final AtomicInteger mPendingFocus = new AtomicInteger(NO_FOCUS);
+    // Set once its detector is built, if the pipeline refines small faces at all.
+    private volatile SmallFaceRefiner mRefiner;
+
+    // Detection time per profile, in the order the profiles were first used.
+    private final Map<DetectorProfile, LatencyHistogram> mCosts = new LinkedHashMap<>();
+    // Time spent in the gate, frames seen, and frames which reused the last detection, with the
+    // detection time they would have taken.  Guarded by mCosts.
+    private final LatencyHistogram mGateCost = new LatencyHistogram();
+    private long mFrames;
+    private long mSkipped;
+    private double mSavedMicros;
+
+    // Capture timestamps of the last frames, and when their detection started and ended, in a ring.
+    // Guarded by mTimedFrameMs.
+    private final long[] mTimedFrameMs = new long[TIMED_FRAMES];
+    private final long[] mTimedStartNs = new long[TIMED_FRAMES];
+    private final long[] mTimedEndNs = new long[TIMED_FRAMES];
+    private int mNextTimed;
+
+    private static final class Pending {
+        final DetectorProfile profile;
+        final FaceDetector detector;
+
+        Pending(DetectorProfile profile, FaceDetector detector) {
+            this.profile = profile;
+            this.detector = detector;
+        }
+    }
+
+    /**
+     * @param frameIntervalMs the expected time between camera frames, which the motion gate's
+     *                        refresh interval is counted in
+     */
+    PipelineDetector(DetectorProfile profile, FaceDetector delegate, FrameRing frameRing,
+                     long frameIntervalMs) {
+        // Half a frame short, so that jitter in the frame times cannot add a frame.
+        mGate = new MotionGate(GATE_GRID, GATE_THRESHOLD,
+                GATE_REFRESH_FRAMES * frameIntervalMs - frameIntervalMs / 2);
+        mFrameRing = frameRing;
+        mDelegate = delegate;
+        mProfile = profile;
+        mCost = costOf(profile);
+    }
+
+    /**
+     * Schedules the given detector to replace the current one from the next frame on.  A switch
+     * which was scheduled earlier but not yet picked up is superseded.
+     */
+    void switchTo(DetectorProfile profile, FaceDetector detector) {
+        mPending.set(new Pending(profile, detector));
+    }
+
+    void setRefiner(SmallFaceRefiner refiner) {
+        mRefiner = refiner;
+    }
+
+    /**
+     * Applies the refined eye open probabilities of a face to its frame, if the face was refined
+     * in the frame with the given timestamp.  Called on the tracking thread.
+     */
+    void refineEyes(int faceId, long timestampMs, FaceFrame out) {
+        SmallFaceRefiner refiner = mRefiner;
+        if (refiner != null) {
+            refiner.apply(faceId, timestampMs, out);
+        }
+    }
+
+    /**
+     * The profile of the detector in use, or the one about to be, if a switch is pending.
+     */
+    DetectorProfile getTargetProfile() {
+        Pending pending = mPending.get();
+        return pending != null ? pending.profile : mProfile;
+    }
+
+    /**
+     * The profile of the detector which handled the most recent frame.
+     */
+    DetectorProfile getActiveProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Returns the detection time percentiles of each profile used so far, one per line.
+     */
+    String getCostReport() {
+        StringBuilder report = new StringBuilder();
+        synchronized (mCosts) {
+            for (Map.Entry<DetectorProfile, LatencyHistogram> entry : mCosts.entrySet()) {
+                report.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+            report.append(String.format(Locale.US,
+                    "motion gate: skipped %d of %d frames (%.0f%%), saved ~%.0f ms; gate %s\n",
+                    mSkipped, mFrames, mFrames == 0 ? 0 : 100.0 * mSkipped / mFrames,
+                    mSavedMicros / 1000, mGateCost));
+        }
+        SmallFaceRefiner refiner = mRefiner;
+        if (refiner != null) {
+            report.append("small face refinement: ").append(refiner.getCostReport()).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Looks up when the detection of a recent frame started and ended.
+     *
+     * @param out receives the {@link System#nanoTime} of the start and of the end
+     * @return false if the frame is no longer kept, in which case out is not changed
+     */
+    boolean getFrameTimes(long timestampMs, long[] out) {
+        synchronized (mTimedFrameMs) {
+            for (int i = 1; i <= TIMED_FRAMES; i++) {
+                int index = (mNextTimed - i + TIMED_FRAMES) % TIMED_FRAMES;
+                if (mTimedFrameMs[index] == timestampMs && mTimedEndNs[index] != 0) {
+                    out[0] = mTimedStartNs[index];
+                    out[1] = mTimedEndNs[index];
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public SparseArray<Face> detect(Frame frame) {
+        long startNs = System.nanoTime();
+        SparseArray<Face> faces = detectFrame(frame);
+        long endNs = System.nanoTime();
+        synchronized (mTimedFrameMs) {
+            mTimedFrameMs[mNextTimed] = frame.getMetadata().getTimestampMillis();
+            mTimedStartNs[mNextTimed] = startNs;
+            mTimedEndNs[mNextTimed] = endNs;
+            mNextTimed = (mNextTimed + 1) % TIMED_FRAMES;
+        }
+        return faces;
+    }
+
+    @Override
+    public boolean isOperational() {
+        return mDelegate.isOperational();
+    }
+
+    /**
+     * Focuses on the given face from the next frame on.  Always reports success, as whether the
+     * face is still there is only known once the next frame is detected.
+     */
+    @Override
+    public boolean setFocus(int id) {
+        mPendingFocus.set(id);
+        return true;
+    }
+
+    /**
+     * Releases the processor and the detector in use.  Other detectors are owned by whoever built
+     * them.
+     */
+    @Override
+    public void release() {
+        super.release();
+        mDelegate.release();
+    }
+
+    /**
+     * Picks up a pending detector switch or focus, and detects the frame unless the motion gate
+     * lets it reuse the last faces.
+     */
+    private SparseArray<Face> detectFrame(Frame frame) {
+        Pending pending = mPending.getAndSet(null);
+        if (pending != null) {
+            mDelegate = pending.detector;
+            mProfile = pending.profile;
+            mCost = costOf(pending.profile);
+            mGate.invalidate();
+        }
+        int focus = mPendingFocus.getAndSet(NO_FOCUS);
+        if (focus != NO_FOCUS) {
+            mDelegate.setFocus(focus);
+        }
+
+        Frame.Metadata metadata = frame.getMetadata();
+        long timestampMs = metadata.getTimestampMillis();
+        ByteBuffer image = frame.getGrayscaleImageData();
+        SmallFaceRefiner refiner = mRefiner;
+        boolean refines = refiner != null && mProfile.refinesSmallFaces();
+
+        long gateNs = System.nanoTime();
+        boolean unchanged = image != null && mLastFaces != null
+                && mGate.isUnchanged(image, metadata.getWidth(), metadata.getHeight(), timestampMs);
+        long startNs = System.nanoTime();
+        if (unchanged) {
+            synchronized (mCosts) {
+                mGateCost.recordNanos(startNs - gateNs);
+                mFrames++;
+                mSkipped++;
+                mSavedMicros += mCost.getMeanMicros();
+            }
+            if (refines) {
+                refiner.carryOver(mLastFrameMs, timestampMs);
+            }
+            mLastFrameMs = timestampMs;
+            mFrameRing.offer(frame, mLastFaces);
+            return mLastFaces;
+        }
+
+        SparseArray<Face> faces = mDelegate.detect(frame);
+        long elapsedNs = System.nanoTime() - startNs;
+        synchronized (mCosts) {
+            mGateCost.recordNanos(startNs - gateNs);
+            mFrames++;
+            mCost.recordNanos(elapsedNs);
+        }
+
+        if (refines) {
+            refiner.refine(frame, faces);
+        }
+
+        if (image != null) {
+            mGate.setReference(image, metadata.getWidth(), metadata.getHeight(),
+                    facesRegion(faces, metadata), timestampMs);
+        }
+        mLastFaces = faces;
+        mLastFrameMs = timestampMs;
+
+        mFrameRing.offer(frame, faces);
+        return faces;
+    }
+
+    /**
+     * Returns the bounds of all faces in sensor coordinates, in mRegion, or null if there are none.
+     */
+    private int[] facesRegion(SparseArray<Face> faces, Frame.Metadata metadata) {
+        if (faces.size() == 0) {
+            return null;
+        }
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.valueAt(i);
+            left = Math.min(left, face.getPosition().x);
+            top = Math.min(top, face.getPosition().y);
+            right = Math.max(right, face.getPosition().x + face.getWidth());
+            bottom = Math.max(bottom, face.getPosition().y + face.getHeight());
+        }
+        mRegion[0] = (int) left;
+        mRegion[1] = (int) top;
+        mRegion[2] = (int) right;
+        mRegion[3] = (int) bottom;
+        LumaScores.toSensorRegion(metadata.getRotation(), metadata.getWidth(),
+                metadata.getHeight(), mRegion);
+        return mRegion;
+    }
+
+    private LatencyHistogram costOf(DetectorProfile profile) {
+        synchronized (mCosts) {
+            LatencyHistogram cost = mCosts.get(profile);
+            if (cost == null) {
+                cost = new LatencyHistogram();
+                mCosts.put(profile, cost);
+            }
+            return cost;
+        }
+    }
+}
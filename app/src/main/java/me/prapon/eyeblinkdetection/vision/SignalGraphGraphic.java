@@ -0,0 +1,113 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import me.prapon.eyeblinkdetection.core.FaceSignals;
+import me.prapon.eyeblinkdetection.core.SignalHistory;
+
+/**
+ * Graphs the eye open probabilities and head yaw of the face a {@link FaceSignals} follows, along
+ * the bottom of the overlay.<p>
+ *
+ * The graph shows one zoom level of the signals' histories, so it always draws the same number of
+ * points however much time the level spans.  Each point is a vertical stroke from its minimum to
+ * its maximum, joined to the next, which shows both the trend and the blinks within it.  The
+ * points are copied once per display frame in {@link #advance}, and each signal is drawn with the
+ * same reused path, so drawing does not allocate.
+ */
+class SignalGraphGraphic extends GraphicOverlay.Graphic {
+    // Fraction of the overlay height taken by the graph.
+    private static final float HEIGHT_FRACTION = 0.25f;
+    // Yaw range mapped to the height of the graph, in degrees either way.
+    private static final float MAX_YAW = 60;
+    private static final int[] COLORS = {Color.GREEN, Color.CYAN, Color.YELLOW};
+
+    private final FaceSignals mSignals;
+    private volatile int mZoomLevel;
+
+    // Only touched by the drawing thread.
+    private final float[][] mMins = new float[FaceSignals.COUNT][];
+    private final float[][] mMaxs = new float[FaceSignals.COUNT][];
+    private final int[] mCounts = new int[FaceSignals.COUNT];
+    private final Path mPath = new Path();
+    private final Paint[] mPaints = new Paint[FaceSignals.COUNT];
+    private final Paint mBackgroundPaint = new Paint();
+
+    SignalGraphGraphic(GraphicOverlay overlay, FaceSignals signals) {
+        super(overlay);
+        mSignals = signals;
+        for (int i = 0; i < FaceSignals.COUNT; i++) {
+            int capacity = signals.get(i).getCapacity();
+            mMins[i] = new float[capacity];
+            mMaxs[i] = new float[capacity];
+            mPaints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mPaints[i].setColor(COLORS[i]);
+            mPaints[i].setStyle(Paint.Style.STROKE);
+            mPaints[i].setStrokeWidth(2);
+        }
+        mBackgroundPaint.setColor(Color.argb(96, 0, 0, 0));
+    }
+
+    /**
+     * Selects the zoom level to show, clamped to the levels the signals keep.
+     */
+    void setZoomLevel(int level) {
+        mZoomLevel = Math.max(0, Math.min(mSignals.get(0).getLevels() - 1, level));
+        postInvalidate();
+    }
+
+    @Override
+    public void advance(long frameTimeMs) {
+        int level = mZoomLevel;
+        for (int i = 0; i < FaceSignals.COUNT; i++) {
+            mCounts[i] = mSignals.get(i).read(level, mMins[i], mMaxs[i]);
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        float width = canvas.getWidth();
+        float bottom = canvas.getHeight();
+        float height = bottom * HEIGHT_FRACTION;
+        float top = bottom - height;
+        canvas.drawRect(0, top, width, bottom, mBackgroundPaint);
+
+        for (int i = 0; i < FaceSignals.COUNT; i++) {
+            SignalHistory history = mSignals.get(i);
+            float step = width / Math.max(1, history.getCapacity() - 1);
+            // The newest point is at the right edge.
+            float x = width - (mCounts[i] - 1) * step;
+            boolean yaw = i == FaceSignals.YAW;
+            boolean joined = false;
+            mPath.rewind();
+            for (int j = 0; j < mCounts[i]; j++, x += step) {
+                float min = mMins[i][j];
+                float max = mMaxs[i][j];
+                if (Float.isNaN(min)) {
+                    joined = false;
+                    continue;
+                }
+                float yMin = bottom - height * (yaw ? toUnit(min) : min);
+                float yMax = bottom - height * (yaw ? toUnit(max) : max);
+                if (joined) {
+                    mPath.lineTo(x, yMin);
+                } else {
+                    mPath.moveTo(x, yMin);
+                    joined = true;
+                }
+                mPath.lineTo(x, yMax);
+            }
+            canvas.drawPath(mPath, mPaints[i]);
+        }
+    }
+
+    /**
+     * Maps a yaw angle to the unit range, with straight ahead in the middle.
+     */
+    private static float toUnit(float yaw) {
+        return Math.max(0, Math.min(1, 0.5f + yaw / (2 * MAX_YAW)));
+    }
+}
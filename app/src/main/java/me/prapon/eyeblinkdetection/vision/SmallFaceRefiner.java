@@ -0,0 +1,286 @@
+package me.prapon.eyeblinkdetection.vision;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.FaceDetector;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+import me.prapon.eyeblinkdetection.core.image.LumaResampler;
+import me.prapon.eyeblinkdetection.core.image.LumaScores;
+
+/**
+ * Takes a second, closer look at faces too small for the eye classifier.<p>
+ *
+ * The pipeline detects faces on a low resolution preview, where a distant face is only a few dozen
+ * pixels wide and often comes back without eye open probabilities.  After each frame is detected,
+ * this crops the smallest such faces, with a margin, out of the frame data, enlarges them, and runs
+ * a detector built for classification on the enlarged crops.  The whole face is cropped rather than
+ * just its eyes, because the classifier only runs on a face the detector finds.<p>
+ *
+ * Each frame refines at most a fixed number of faces, those refined least recently first, so that
+ * the extra cost per frame stays bounded however many faces are in view.  The results are kept
+ * by face id and frame time, for the trackers to {@link #apply} to the same frame.
+ */
+class SmallFaceRefiner {
+    // Faces narrower than this fraction of the upright frame are refined.
+    private static final float SMALL_FACE_FRACTION = 0.25f;
+    // Margin around the face in the crop, as a fraction of the face size, on each side.
+    private static final float MARGIN = 0.3f;
+    // Faces are enlarged to about this width, but by no more than MAX_SCALE.
+    private static final int TARGET_FACE_PX = 120;
+    private static final float MAX_SCALE = 4;
+    // Recent refinements kept for the trackers, which may lag a frame or two behind.
+    private static final int RESULTS = 32;
+
+    private final FaceDetector mDetector;
+    private final int mBudget;
+
+    // Only used on the detector thread.
+    private final int[] mRegion = new int[4];
+    private int[] mCandidates = new int[8];
+    private byte[] mLuma = new byte[0];
+    private byte[] mCrop = new byte[0];
+    private ByteBuffer mCropBuffer;
+    // The probabilities found by refineFace, or UNCOMPUTED_PROBABILITY.
+    private float mLeft;
+    private float mRight;
+
+    // The results of recent attempts, written on the detector thread and read on the tracking
+    // thread.  Guarded by this, as is mCost.
+    private final int[] mResultIds = new int[RESULTS];
+    private final long[] mResultTimes = new long[RESULTS];
+    private final float[] mResultLeft = new float[RESULTS];
+    private final float[] mResultRight = new float[RESULTS];
+    private int mNextResult;
+    private final int[] mCarried = new int[RESULTS];
+    private final LatencyHistogram mCost = new LatencyHistogram();
+
+    /**
+     * Builds the refinement detector, which takes as long as building any face detector.
+     *
+     * @param budget the most faces refined per frame
+     */
+    SmallFaceRefiner(Context context, int budget) {
+        mDetector = new FaceDetector.Builder(context)
+                .setLandmarkType(FaceDetector.NO_LANDMARKS)
+                .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
+                .setTrackingEnabled(false)
+                .setMode(FaceDetector.ACCURATE_MODE)
+                .setProminentFaceOnly(true)
+                .setMinFaceSize(0.3f)
+                .build();
+        mBudget = budget;
+        Arrays.fill(mResultTimes, Long.MIN_VALUE);
+    }
+
+    /**
+     * Refines the small faces of a detected frame, up to the budget.  Called on the detector
+     * thread.
+     */
+    void refine(Frame frame, SparseArray<Face> faces) {
+        Frame.Metadata metadata = frame.getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int rotation = metadata.getRotation();
+        float uprightWidth = (rotation & 1) != 0 ? height : width;
+        int count = selectCandidates(faces, SMALL_FACE_FRACTION * uprightWidth);
+        if (count == 0) {
+            return;
+        }
+        ByteBuffer image = frame.getGrayscaleImageData();
+        if (image == null) {
+            return;
+        }
+        int length = width * height;
+        if (mLuma.length < length) {
+            mLuma = new byte[length];
+        }
+        ByteBuffer source = image.duplicate();
+        source.rewind();
+        source.get(mLuma, 0, Math.min(length, source.remaining()));
+
+        long timestampMs = metadata.getTimestampMillis();
+        for (int i = 0; i < count; i++) {
+            long startNs = System.nanoTime();
+            Face face = faces.valueAt(mCandidates[i]);
+            mLeft = Face.UNCOMPUTED_PROBABILITY;
+            mRight = Face.UNCOMPUTED_PROBABILITY;
+            refineFace(face, width, height, rotation, timestampMs);
+            long elapsedNs = System.nanoTime() - startNs;
+            // Failed attempts are kept too, so that the face waits its turn before the next one.
+            synchronized (this) {
+                int result = mNextResult;
+                mNextResult = (result + 1) % RESULTS;
+                mResultIds[result] = face.getId();
+                mResultTimes[result] = timestampMs;
+                mResultLeft[result] = mLeft;
+                mResultRight[result] = mRight;
+                mCost.recordNanos(elapsedNs);
+            }
+        }
+    }
+
+    /**
+     * Replaces the eye open probabilities of a face with refined ones, if its frame was refined.
+     * Called on the tracking thread.
+     *
+     * @return whether the face was refined
+     */
+    synchronized boolean apply(int faceId, long timestampMs, FaceFrame out) {
+        for (int i = 0; i < RESULTS; i++) {
+            if (mResultIds[i] == faceId && mResultTimes[i] == timestampMs) {
+                if (mResultLeft[i] == Face.UNCOMPUTED_PROBABILITY
+                        && mResultRight[i] == Face.UNCOMPUTED_PROBABILITY) {
+                    return false;
+                }
+                out.setEyeOpenProbabilities(mResultLeft[i], mResultRight[i]);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Repeats the results of one frame for the next, which reuses its detections.  Called on the
+     * detector thread.
+     */
+    synchronized void carryOver(long fromMs, long toMs) {
+        // Gathered first, since the copies overwrite the oldest results.
+        int count = 0;
+        for (int i = 0; i < RESULTS; i++) {
+            if (mResultTimes[i] == fromMs) {
+                mCarried[count++] = i;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int result = mCarried[i];
+            int copy = mNextResult;
+            mNextResult = (copy + 1) % RESULTS;
+            mResultIds[copy] = mResultIds[result];
+            mResultTimes[copy] = toMs;
+            mResultLeft[copy] = mResultLeft[result];
+            mResultRight[copy] = mResultRight[result];
+        }
+    }
+
+    /**
+     * Returns the refinement time percentiles per attempted face.
+     */
+    synchronized String getCostReport() {
+        return mCost.toString();
+    }
+
+    void release() {
+        mDetector.release();
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Collects the indices of the small faces without eye probabilities into mCandidates, and
+     * moves the budget's worth refined least recently to the front.
+     *
+     * @return the number of faces to refine
+     */
+    private int selectCandidates(SparseArray<Face> faces, float maxWidth) {
+        int count = 0;
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.valueAt(i);
+            if (face.getWidth() >= maxWidth
+                    || (face.getIsLeftEyeOpenProbability() != Face.UNCOMPUTED_PROBABILITY
+                    && face.getIsRightEyeOpenProbability() != Face.UNCOMPUTED_PROBABILITY)) {
+                continue;
+            }
+            if (count == mCandidates.length) {
+                mCandidates = Arrays.copyOf(mCandidates, count * 2);
+            }
+            mCandidates[count++] = i;
+        }
+
+        int selected = Math.min(count, mBudget);
+        for (int i = 0; i < selected; i++) {
+            int oldest = i;
+            long oldestMs = lastRefinedMs(faces.valueAt(mCandidates[i]).getId());
+            for (int j = i + 1; j < count; j++) {
+                long refinedMs = lastRefinedMs(faces.valueAt(mCandidates[j]).getId());
+                if (refinedMs < oldestMs) {
+                    oldest = j;
+                    oldestMs = refinedMs;
+                }
+            }
+            int swap = mCandidates[i];
+            mCandidates[i] = mCandidates[oldest];
+            mCandidates[oldest] = swap;
+        }
+        return selected;
+    }
+
+    /**
+     * Enlarges a face into mCrop and classifies it, leaving the probabilities in mLeft and mRight.
+     */
+    private void refineFace(Face face, int width, int height, int rotation, long timestampMs) {
+        float marginX = face.getWidth() * MARGIN;
+        float marginY = face.getHeight() * MARGIN;
+        mRegion[0] = (int) (face.getPosition().x - marginX);
+        mRegion[1] = (int) (face.getPosition().y - marginY);
+        mRegion[2] = (int) (face.getPosition().x + face.getWidth() + marginX);
+        mRegion[3] = (int) (face.getPosition().y + face.getHeight() + marginY);
+        LumaScores.toSensorRegion(rotation, width, height, mRegion);
+        mRegion[0] = Math.max(0, mRegion[0]);
+        mRegion[1] = Math.max(0, mRegion[1]);
+        mRegion[2] = Math.min(width, mRegion[2]);
+        mRegion[3] = Math.min(height, mRegion[3]);
+
+        float scale = Math.min(MAX_SCALE, TARGET_FACE_PX / Math.max(1f, face.getWidth()));
+        // NV21 needs even dimensions.
+        int cropWidth = Math.round((mRegion[2] - mRegion[0]) * scale) & ~1;
+        int cropHeight = Math.round((mRegion[3] - mRegion[1]) * scale) & ~1;
+        if (cropWidth < 2 || cropHeight < 2) {
+            return;
+        }
+        int lumaLength = cropWidth * cropHeight;
+        if (mCrop.length < lumaLength * 3 / 2) {
+            mCrop = new byte[lumaLength * 3 / 2];
+            mCropBuffer = ByteBuffer.wrap(mCrop);
+        }
+        if (!LumaResampler.scale(mLuma, width, height, mRegion, mCrop, cropWidth, cropHeight)) {
+            return;
+        }
+        // Neutral chroma, as the detector only looks at luma anyway.
+        Arrays.fill(mCrop, lumaLength, lumaLength * 3 / 2, (byte) 128);
+
+        mCropBuffer.clear();
+        Frame crop = new Frame.Builder()
+                .setImageData(mCropBuffer, cropWidth, cropHeight, ImageFormat.NV21)
+                .setRotation(rotation)
+                .setTimestampMillis(timestampMs)
+                .build();
+        SparseArray<Face> refined = mDetector.detect(crop);
+        if (refined.size() == 0) {
+            return;
+        }
+        Face closer = refined.valueAt(0);
+        mLeft = closer.getIsLeftEyeOpenProbability();
+        mRight = closer.getIsRightEyeOpenProbability();
+    }
+
+    private synchronized long lastRefinedMs(int faceId) {
+        long latestMs = Long.MIN_VALUE;
+        for (int i = 0; i < RESULTS; i++) {
+            if (mResultIds[i] == faceId) {
+                latestMs = Math.max(latestMs, mResultTimes[i]);
+            }
+        }
+        return latestMs;
+    }
+}
@@ -0,0 +1,35 @@
+package me.prapon.eyeblinkdetection.vision;
+
+/**
+ * An event of a {@link FaceTracker}, on its way from the tracking stage of a {@link FacePipeline}
+ * to the stage which records and dispatches it.
+ */
+final class TrackerEvent {
+    final int faceId;
+    final int type;
+    final int blinkCount;
+    // Wall clock time, as recorded in the event log.
+    final long wallTimeMs;
+    // Capture timestamp of the frame which triggered the event, as in the frame ring.
+    final long frameMs;
+    // For head turns, the yaw expected in a capture triggered by this event.
+    final float targetYaw;
+    // System.nanoTime when detection of the triggering frame started and ended, or zero if unknown,
+    // and when the tracker created the event.
+    final long detectStartNs;
+    final long detectEndNs;
+    final long createdNs;
+
+    TrackerEvent(int faceId, int type, int blinkCount, long wallTimeMs, long frameMs,
+                 float targetYaw, long detectStartNs, long detectEndNs) {
+        this.faceId = faceId;
+        this.type = type;
+        this.blinkCount = blinkCount;
+        this.wallTimeMs = wallTimeMs;
+        this.frameMs = frameMs;
+        this.targetYaw = targetYaw;
+        this.detectStartNs = detectStartNs;
+        this.detectEndNs = detectEndNs;
+        this.createdNs = System.nanoTime();
+    }
+}
@@ -0,0 +1,145 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Tells deliberate eye gestures apart from the per-eye open probabilities of a single face:
+ * {@link FaceEvents#LEFT_WINK}, {@link FaceEvents#RIGHT_WINK}, {@link FaceEvents#DOUBLE_BLINK} and
+ * {@link FaceEvents#LONG_BLINK}.<p>
+ *
+ * An episode starts with the first frame in which either eye is closed, and ends with the first
+ * frame in which both are open again, which is when the gesture is reported.  Recognition thus
+ * lags the gesture by at most one frame after the eyes reopen.  An episode in which only one eye
+ * ever closed is a wink of that eye.  One in which both eyes were closed together is a blink,
+ * which is long if both eyes stayed closed for {@link TrackerConfig#getLongBlinkMs}, measured from
+ * the first to the last frame with both closed.  A short blink is not reported by itself, but
+ * makes a double blink with the next short blink if that starts within
+ * {@link TrackerConfig#getDoubleBlinkGapMs}.  Episodes in which the eyes closed one after the other
+ * but never together are ignored.<p>
+ *
+ * Left and right are as reported by the detector.  Uncomputed probabilities keep the previous
+ * state of the eye, and everything is forgotten after a gap of more than
+ * {@link TrackerConfig#getMaxFrameGapMs}.  Updates do not allocate.  Instances are not thread safe.
+ */
+public final class BlinkGestureRecognizer {
+    /** Returned by {@link #update} when no gesture ended with the frame. */
+    public static final int NONE = 0;
+
+    // Used for "never", far enough from Long.MIN_VALUE that subtracting it cannot overflow.
+    private static final long NEVER = Long.MIN_VALUE / 4;
+
+    private final float mEyeClosedThreshold;
+    private final long mLongBlinkMs;
+    private final long mDoubleBlinkGapMs;
+    private final long mMaxFrameGapMs;
+
+    private boolean mLeftOpen = true;
+    private boolean mRightOpen = true;
+    private long mLastFrameMs = NEVER;
+
+    // The current episode, if mEpisodeStartMs is not NEVER.
+    private long mEpisodeStartMs = NEVER;
+    private boolean mLeftClosed;
+    private boolean mRightClosed;
+    private long mBothClosedStartMs = NEVER;
+    private long mBothClosedEndMs = NEVER;
+
+    // End of the last short blink which may still become the first half of a double blink.
+    private long mShortBlinkEndMs = NEVER;
+
+    public BlinkGestureRecognizer(TrackerConfig config) {
+        mEyeClosedThreshold = config.getEyeClosedThreshold();
+        mLongBlinkMs = config.getLongBlinkMs();
+        mDoubleBlinkGapMs = config.getDoubleBlinkGapMs();
+        mMaxFrameGapMs = config.getMaxFrameGapMs();
+    }
+
+    /**
+     * Updates the state from the eye open probabilities of the face in a frame.
+     *
+     * @param leftOpen  open probability of the left eye, or {@link FaceFrame#UNCOMPUTED_PROBABILITY}
+     * @param rightOpen open probability of the right eye, or
+     *                  {@link FaceFrame#UNCOMPUTED_PROBABILITY}
+     * @return the {@link FaceEvents} type of the gesture which ended with this frame, or
+     * {@link #NONE}
+     */
+    public int update(long timestampMs, float leftOpen, float rightOpen) {
+        if (timestampMs - mLastFrameMs > mMaxFrameGapMs) {
+            reset();
+        }
+        mLastFrameMs = timestampMs;
+
+        if (leftOpen != FaceFrame.UNCOMPUTED_PROBABILITY) {
+            mLeftOpen = leftOpen > mEyeClosedThreshold;
+        }
+        if (rightOpen != FaceFrame.UNCOMPUTED_PROBABILITY) {
+            mRightOpen = rightOpen > mEyeClosedThreshold;
+        }
+
+        if (!mLeftOpen || !mRightOpen) {
+            if (mEpisodeStartMs == NEVER) {
+                mEpisodeStartMs = timestampMs;
+            }
+            mLeftClosed |= !mLeftOpen;
+            mRightClosed |= !mRightOpen;
+            if (!mLeftOpen && !mRightOpen) {
+                if (mBothClosedStartMs == NEVER) {
+                    mBothClosedStartMs = timestampMs;
+                }
+                mBothClosedEndMs = timestampMs;
+            }
+            return NONE;
+        }
+
+        if (mEpisodeStartMs == NEVER) {
+            return NONE;
+        }
+        int gesture = endEpisode(timestampMs);
+        mEpisodeStartMs = NEVER;
+        mLeftClosed = false;
+        mRightClosed = false;
+        mBothClosedStartMs = NEVER;
+        mBothClosedEndMs = NEVER;
+        return gesture;
+    }
+
+    /**
+     * Forgets the eye state and any gesture in progress.
+     */
+    public void reset() {
+        mLeftOpen = true;
+        mRightOpen = true;
+        mEpisodeStartMs = NEVER;
+        mLeftClosed = false;
+        mRightClosed = false;
+        mBothClosedStartMs = NEVER;
+        mBothClosedEndMs = NEVER;
+        mShortBlinkEndMs = NEVER;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private int endEpisode(long reopenedMs) {
+        if (mBothClosedStartMs == NEVER) {
+            mShortBlinkEndMs = NEVER;
+            if (mLeftClosed && !mRightClosed) {
+                return FaceEvents.LEFT_WINK;
+            }
+            if (mRightClosed && !mLeftClosed) {
+                return FaceEvents.RIGHT_WINK;
+            }
+            return NONE;
+        }
+
+        if (mBothClosedEndMs - mBothClosedStartMs >= mLongBlinkMs) {
+            mShortBlinkEndMs = NEVER;
+            return FaceEvents.LONG_BLINK;
+        }
+        if (mEpisodeStartMs - mShortBlinkEndMs <= mDoubleBlinkGapMs) {
+            mShortBlinkEndMs = NEVER;
+            return FaceEvents.DOUBLE_BLINK;
+        }
+        mShortBlinkEndMs = reopenedMs;
+        return NONE;
+    }
+}
@@ -0,0 +1,104 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * The per-frame eye state of one face, published by a single writer, e.g. the eyes graphic when
+ * it is updated, to any number of readers, e.g. the renderer, without locks or allocation.<p>
+ *
+ * This is a seqlock: the writer makes the sequence odd, writes the fields, and makes it even
+ * again.  A reader reads the sequence, the fields and the sequence again, and retries if the
+ * sequence was odd or changed in between, so it never combines fields of two different frames.
+ * All fields are volatile, since without fences the Java memory model would let the reads of the
+ * fields move past the second read of the sequence.  Writes happen at most once per camera frame,
+ * so a reader rarely has to retry.
+ */
+public final class EyeState {
+    private volatile int mSequence;
+
+    private volatile boolean mHasEyes;
+    private volatile float mLeftX;
+    private volatile float mLeftY;
+    private volatile boolean mLeftOpen;
+    private volatile float mRightX;
+    private volatile float mRightY;
+    private volatile boolean mRightOpen;
+    private volatile int mBlinkCount;
+    private volatile long mTimestampMs;
+
+    /**
+     * A reader's copy of the state, reused for every read.
+     */
+    public static final class Snapshot {
+        /** Whether the eye positions are known. */
+        public boolean hasEyes;
+        public float leftX;
+        public float leftY;
+        public boolean leftOpen;
+        public float rightX;
+        public float rightY;
+        public boolean rightOpen;
+        public int blinkCount;
+        public long timestampMs;
+        /** Number of states published up to this one, so that readers can skip repeats. */
+        public int version;
+    }
+
+    /**
+     * Publishes the state of a frame.  Must only be called by one thread.
+     *
+     * @param hasEyes whether the eye positions are known; they are ignored if not
+     */
+    public void publish(boolean hasEyes, float leftX, float leftY, boolean leftOpen,
+                        float rightX, float rightY, boolean rightOpen, int blinkCount,
+                        long timestampMs) {
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mHasEyes = hasEyes;
+        mLeftX = leftX;
+        mLeftY = leftY;
+        mLeftOpen = leftOpen;
+        mRightX = rightX;
+        mRightY = rightY;
+        mRightOpen = rightOpen;
+        mBlinkCount = blinkCount;
+        mTimestampMs = timestampMs;
+        mSequence = sequence + 2;
+    }
+
+    /**
+     * Publishes that the eye positions are no longer known, keeping the count and time.
+     */
+    public void clearEyes() {
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mHasEyes = false;
+        mSequence = sequence + 2;
+    }
+
+    /**
+     * Copies the most recently published state into {@code out}.  Safe to call from any thread.
+     *
+     * @return whether the eye positions are known
+     */
+    public boolean read(Snapshot out) {
+        while (true) {
+            int before = mSequence;
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            out.hasEyes = mHasEyes;
+            out.leftX = mLeftX;
+            out.leftY = mLeftY;
+            out.leftOpen = mLeftOpen;
+            out.rightX = mRightX;
+            out.rightY = mRightY;
+            out.rightOpen = mRightOpen;
+            out.blinkCount = mBlinkCount;
+            out.timestampMs = mTimestampMs;
+            if (mSequence == before) {
+                out.version = before >>> 1;
+                return out.hasEyes;
+            }
+        }
+    }
+}
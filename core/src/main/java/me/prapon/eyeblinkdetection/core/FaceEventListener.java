@@ -0,0 +1,14 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Receives the blink and head turn events decided by {@link FaceTrackerLogic}.
+ */
+public interface FaceEventListener {
+
+    /**
+     * @param type        one of the {@link FaceEvents} types
+     * @param blinkCount  the number of blinks counted so far for this face
+     * @param timestampMs the time of the frame which triggered the event
+     */
+    void onFaceEvent(int type, int blinkCount, long timestampMs);
+}
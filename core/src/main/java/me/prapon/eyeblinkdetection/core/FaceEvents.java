@@ -0,0 +1,40 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Event types reported by {@link FaceTrackerLogic}.  These match the app's capture types.  The
+ * gestures from {@link BlinkGestureRecognizer} are reported in addition to the plain blink event.
+ */
+public final class FaceEvents {
+
+    public static final int EYE = 1;
+    public static final int LEFT_FACE = 2;
+    public static final int RIGHT_FACE = 3;
+    public static final int LEFT_WINK = 4;
+    public static final int RIGHT_WINK = 5;
+    public static final int DOUBLE_BLINK = 6;
+    public static final int LONG_BLINK = 7;
+
+    private FaceEvents() {
+    }
+
+    public static String name(int type) {
+        switch (type) {
+            case EYE:
+                return "EYE";
+            case LEFT_FACE:
+                return "LEFT_FACE";
+            case RIGHT_FACE:
+                return "RIGHT_FACE";
+            case LEFT_WINK:
+                return "LEFT_WINK";
+            case RIGHT_WINK:
+                return "RIGHT_WINK";
+            case DOUBLE_BLINK:
+                return "DOUBLE_BLINK";
+            case LONG_BLINK:
+                return "LONG_BLINK";
+            default:
+                return "UNKNOWN(" + type + ")";
+        }
+    }
+}
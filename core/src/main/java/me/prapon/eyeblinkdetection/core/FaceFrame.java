@@ -0,0 +1,156 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * The per-frame face data which the tracker logic works from: id, bounding box, head pose, eye
+ * open probabilities and landmark positions.<p>
+ *
+ * This mirrors what a Google Vision {@code Face} exposes, without depending on Android.  Instances
+ * are mutable so that a single frame can be reused for every update instead of allocating one per
+ * detection.
+ */
+public final class FaceFrame {
+    /**
+     * Value used for an eye probability which was not computed, as in the Vision API.
+     */
+    public static final float UNCOMPUTED_PROBABILITY = -1.0f;
+
+    private int mId;
+    private long mTimestampMs;
+
+    private float mLeft;
+    private float mTop;
+    private float mWidth;
+    private float mHeight;
+
+    private float mEulerY;
+    private float mEulerZ;
+
+    private float mLeftEyeOpenProbability = UNCOMPUTED_PROBABILITY;
+    private float mRightEyeOpenProbability = UNCOMPUTED_PROBABILITY;
+
+    // Landmark positions indexed by landmark type, with a bit set in mLandmarkMask for each
+    // landmark present in this frame.
+    private final float[] mLandmarkX = new float[LandmarkTypes.COUNT];
+    private final float[] mLandmarkY = new float[LandmarkTypes.COUNT];
+    private int mLandmarkMask;
+
+    //==============================================================================================
+    // Methods
+    //==============================================================================================
+
+    /**
+     * Sets all of the face values and clears the landmarks.
+     */
+    public FaceFrame set(int id, long timestampMs, float left, float top, float width,
+                         float height, float eulerY, float eulerZ,
+                         float leftEyeOpenProbability, float rightEyeOpenProbability) {
+        mId = id;
+        mTimestampMs = timestampMs;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mEulerY = eulerY;
+        mEulerZ = eulerZ;
+        mLeftEyeOpenProbability = leftEyeOpenProbability;
+        mRightEyeOpenProbability = rightEyeOpenProbability;
+        mLandmarkMask = 0;
+        return this;
+    }
+
+    /**
+     * Copies all values, including landmarks, from another frame.
+     */
+    public FaceFrame copyFrom(FaceFrame other) {
+        set(other.mId, other.mTimestampMs, other.mLeft, other.mTop, other.mWidth, other.mHeight,
+                other.mEulerY, other.mEulerZ, other.mLeftEyeOpenProbability,
+                other.mRightEyeOpenProbability);
+        System.arraycopy(other.mLandmarkX, 0, mLandmarkX, 0, LandmarkTypes.COUNT);
+        System.arraycopy(other.mLandmarkY, 0, mLandmarkY, 0, LandmarkTypes.COUNT);
+        mLandmarkMask = other.mLandmarkMask;
+        return this;
+    }
+
+    /**
+     * Records the position of a landmark.  Unknown landmark types are ignored.
+     */
+    public void setLandmark(int type, float x, float y) {
+        if (type < 0 || type >= LandmarkTypes.COUNT) {
+            return;
+        }
+        mLandmarkX[type] = x;
+        mLandmarkY[type] = y;
+        mLandmarkMask |= 1 << type;
+    }
+
+    public boolean hasLandmark(int type) {
+        return type >= 0 && type < LandmarkTypes.COUNT && (mLandmarkMask & (1 << type)) != 0;
+    }
+
+    public float getLandmarkX(int type) {
+        return mLandmarkX[type];
+    }
+
+    public float getLandmarkY(int type) {
+        return mLandmarkY[type];
+    }
+
+    /**
+     * Returns a bit mask with bit {@code 1 << type} set for each landmark present.
+     */
+    public int getLandmarkMask() {
+        return mLandmarkMask;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public long getTimestampMs() {
+        return mTimestampMs;
+    }
+
+    public void setTimestampMs(long timestampMs) {
+        mTimestampMs = timestampMs;
+    }
+
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mHeight;
+    }
+
+    public float getEulerY() {
+        return mEulerY;
+    }
+
+    public float getEulerZ() {
+        return mEulerZ;
+    }
+
+    /**
+     * Replaces the eye open probabilities, e.g. with those of a second, closer look at the face.
+     */
+    public void setEyeOpenProbabilities(float left, float right) {
+        mLeftEyeOpenProbability = left;
+        mRightEyeOpenProbability = right;
+    }
+
+    public float getLeftEyeOpenProbability() {
+        return mLeftEyeOpenProbability;
+    }
+
+    public float getRightEyeOpenProbability() {
+        return mRightEyeOpenProbability;
+    }
+}
@@ -0,0 +1,272 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matches newly detected faces to recently lost ones, so that a face which was briefly occluded
+ * and came back under a new id keeps its tracker state.<p>
+ *
+ * A tracker which loses its face offers its {@link FaceTrackerLogic} state together with the last
+ * frame of the face.  A tracker for a new face then claims the best matching lost face, if any,
+ * and continues from its state.  Lost faces are kept for a grace window and then forgotten.<p>
+ *
+ * Candidates are looked up in a uniform grid keyed by the center of their last bounding box, so a
+ * claim only compares against lost faces near the new one, however many are lost elsewhere.  A
+ * candidate must have moved by less than its own size and have a similar size, so the cells
+ * searched reach as far as the largest lost face on offer.  It is then
+ * scored by bounding box overlap, head yaw, and the landmark proportions within the box when both
+ * faces have landmarks in common; the best candidate above {@link #MIN_SCORE} wins.<p>
+ *
+ * Instances are not thread safe, and are expected to be shared by the trackers of one detector.
+ */
+public final class FaceReidentifier {
+    public static final long DEFAULT_GRACE_MS = 2000;
+
+    /** Returned by {@link #claim} when no lost face matched. */
+    public static final int NO_MATCH = -1;
+
+    // Minimum score of a match, out of 1.
+    static final float MIN_SCORE = 0.4f;
+
+    // Side of a grid cell, in frame coordinates.
+    private static final float CELL_SIZE = 64;
+    // The smaller of two matching faces has at least this fraction of the larger one's area.
+    private static final float MIN_AREA_RATIO = 0.5f;
+    // Yaw difference at which the pose no longer counts as similar at all.
+    private static final float MAX_YAW_DIFFERENCE = 45;
+    // Mean landmark proportion difference at which landmarks no longer count as similar at all.
+    private static final float MAX_PROPORTION_DIFFERENCE = 0.2f;
+
+    private static final class Lost {
+        int faceId;
+        long lostMs;
+        float left;
+        float top;
+        float width;
+        float height;
+        float eulerY;
+        long cell;
+        boolean live;
+        final FaceTrackerLogic.State state = new FaceTrackerLogic.State();
+    }
+
+    private final long mGraceMs;
+
+    // Live lost faces by id and by grid cell, and all lost faces in the order they were lost so
+    // that expired ones can be dropped from the front.  Claimed or withdrawn faces stay in the
+    // queue, marked dead, until they reach its front.
+    private final Map<Integer, Lost> mById = new HashMap<>();
+    private final Map<Long, ArrayList<Lost>> mGrid = new HashMap<>();
+    private final ArrayDeque<Lost> mByTime = new ArrayDeque<>();
+    private final ArrayDeque<Lost> mFree = new ArrayDeque<>();
+    // The largest side of any lost face on offer since there were none; an upper bound, since it
+    // is not lowered as faces are claimed or expire.
+    private float mMaxLostSize;
+
+    public FaceReidentifier() {
+        this(DEFAULT_GRACE_MS);
+    }
+
+    public FaceReidentifier(long graceMs) {
+        if (graceMs <= 0) {
+            throw new IllegalArgumentException("Grace window must be positive: " + graceMs);
+        }
+        mGraceMs = graceMs;
+    }
+
+    /**
+     * Offers the state of a face which is no longer detected.  An earlier offer for the same id is
+     * replaced.
+     *
+     * @param lastSeen the last frame in which the face was detected
+     */
+    public void offer(int faceId, FaceFrame lastSeen, FaceTrackerLogic logic, long nowMs) {
+        expire(nowMs);
+        withdraw(faceId);
+
+        Lost lost = mFree.isEmpty() ? new Lost() : mFree.poll();
+        lost.faceId = faceId;
+        lost.lostMs = nowMs;
+        lost.left = lastSeen.getLeft();
+        lost.top = lastSeen.getTop();
+        lost.width = lastSeen.getWidth();
+        lost.height = lastSeen.getHeight();
+        lost.eulerY = lastSeen.getEulerY();
+        lost.cell = cellOf(lost.left + lost.width / 2, lost.top + lost.height / 2);
+        lost.live = true;
+        logic.saveState(lost.state);
+        mMaxLostSize = Math.max(mMaxLostSize, Math.max(lost.width, lost.height));
+
+        mById.put(faceId, lost);
+        ArrayList<Lost> cell = mGrid.get(lost.cell);
+        if (cell == null) {
+            cell = new ArrayList<>(2);
+            mGrid.put(lost.cell, cell);
+        }
+        cell.add(lost);
+        mByTime.add(lost);
+    }
+
+    /**
+     * Takes back an offer, e.g. because the face was detected again under its old id.
+     *
+     * @return false if the face was not on offer, e.g. because it was claimed already
+     */
+    public boolean withdraw(int faceId) {
+        Lost lost = mById.get(faceId);
+        if (lost == null) {
+            return false;
+        }
+        remove(lost);
+        return true;
+    }
+
+    /**
+     * Finds the lost face which best matches a new face, and restores its state into the given
+     * logic.
+     *
+     * @return the id of the lost face, or {@link #NO_MATCH}
+     */
+    public int claim(FaceFrame face, FaceTrackerLogic logic, long nowMs) {
+        expire(nowMs);
+        if (mById.isEmpty() || face.getWidth() <= 0 || face.getHeight() <= 0) {
+            return NO_MATCH;
+        }
+
+        float centerX = face.getLeft() + face.getWidth() / 2;
+        float centerY = face.getTop() + face.getHeight() / 2;
+        // Lost faces may have moved by up to their own size, whatever the shape of the new face.
+        float radius = mMaxLostSize;
+        int minCellX = (int) Math.floor((centerX - radius) / CELL_SIZE);
+        int maxCellX = (int) Math.floor((centerX + radius) / CELL_SIZE);
+        int minCellY = (int) Math.floor((centerY - radius) / CELL_SIZE);
+        int maxCellY = (int) Math.floor((centerY + radius) / CELL_SIZE);
+
+        Lost best = null;
+        float bestScore = MIN_SCORE;
+        for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+            for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                ArrayList<Lost> cell = mGrid.get(cellKey(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    Lost lost = cell.get(i);
+                    float score = score(lost, face, centerX, centerY);
+                    if (score > bestScore) {
+                        best = lost;
+                        bestScore = score;
+                    }
+                }
+            }
+        }
+        if (best == null) {
+            return NO_MATCH;
+        }
+        logic.restoreState(best.state);
+        int faceId = best.faceId;
+        remove(best);
+        return faceId;
+    }
+
+    /**
+     * Number of lost faces on offer, including ones which expire at the next call.
+     */
+    public int size() {
+        return mById.size();
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Scores how well a new face matches a lost one, from 0 to 1, or 0 if it cannot be the same
+     * face.
+     */
+    private float score(Lost lost, FaceFrame face, float centerX, float centerY) {
+        float lostCenterX = lost.left + lost.width / 2;
+        float lostCenterY = lost.top + lost.height / 2;
+        float size = Math.max(lost.width, lost.height);
+        float dx = centerX - lostCenterX;
+        float dy = centerY - lostCenterY;
+        if (dx * dx + dy * dy > size * size) {
+            return 0;
+        }
+        float lostArea = lost.width * lost.height;
+        float area = face.getWidth() * face.getHeight();
+        if (Math.min(lostArea, area) < MIN_AREA_RATIO * Math.max(lostArea, area)) {
+            return 0;
+        }
+
+        float overlapWidth = Math.min(lost.left + lost.width, face.getLeft() + face.getWidth())
+                - Math.max(lost.left, face.getLeft());
+        float overlapHeight = Math.min(lost.top + lost.height, face.getTop() + face.getHeight())
+                - Math.max(lost.top, face.getTop());
+        float overlap = overlapWidth > 0 && overlapHeight > 0 ? overlapWidth * overlapHeight : 0;
+        float iou = overlap / (lostArea + area - overlap);
+
+        float pose = 1 - Math.min(1, Math.abs(face.getEulerY() - lost.eulerY)
+                / MAX_YAW_DIFFERENCE);
+
+        int common = face.getLandmarkMask() & lost.state.proportionMask;
+        if (common == 0) {
+            return 0.6f * iou + 0.4f * pose;
+        }
+        float difference = 0;
+        int count = 0;
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((common & (1 << type)) != 0) {
+                difference += Math.abs((face.getLandmarkX(type) - face.getLeft()) / face.getWidth()
+                        - lost.state.proportionX[type]);
+                difference += Math.abs((face.getLandmarkY(type) - face.getTop()) / face.getHeight()
+                        - lost.state.proportionY[type]);
+                count += 2;
+            }
+        }
+        float landmarks = 1 - Math.min(1, difference / count / MAX_PROPORTION_DIFFERENCE);
+        return 0.5f * iou + 0.3f * pose + 0.2f * landmarks;
+    }
+
+    private void expire(long nowMs) {
+        while (!mByTime.isEmpty()) {
+            Lost oldest = mByTime.peek();
+            if (oldest.live && nowMs - oldest.lostMs <= mGraceMs) {
+                return;
+            }
+            mByTime.poll();
+            if (oldest.live) {
+                remove(oldest);
+            }
+            mFree.add(oldest);
+        }
+    }
+
+    /**
+     * Removes a live lost face from the lookups.  It stays in the time queue until it reaches the
+     * front.
+     */
+    private void remove(Lost lost) {
+        lost.live = false;
+        mById.remove(lost.faceId);
+        if (mById.isEmpty()) {
+            mMaxLostSize = 0;
+        }
+        ArrayList<Lost> cell = mGrid.get(lost.cell);
+        cell.remove(lost);
+        if (cell.isEmpty()) {
+            mGrid.remove(lost.cell);
+        }
+    }
+
+    private static long cellOf(float x, float y) {
+        return cellKey((int) Math.floor(x / CELL_SIZE), (int) Math.floor(y / CELL_SIZE));
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+}
@@ -0,0 +1,86 @@
+package me.prapon.eyeblinkdetection.core;
+
+import me.prapon.eyeblinkdetection.core.series.RollupStore;
+
+/**
+ * The graphed signals of one face: the open probability of each eye and the head yaw, each kept as
+ * a {@link SignalHistory}.<p>
+ *
+ * Several trackers may feed the same signals, e.g. one per face in view.  The signals follow one
+ * face at a time, and only switch to another face once the followed one has not been seen for a
+ * while, so that the graph does not interleave the samples of different faces.<p>
+ *
+ * The recorded samples can also be kept for the whole session in a {@link RollupStore}, with the
+ * signals in the order of their indices here.
+ */
+public final class FaceSignals {
+    public static final int LEFT_EYE = 0;
+    public static final int RIGHT_EYE = 1;
+    public static final int YAW = 2;
+    public static final int COUNT = 3;
+
+    // Time without samples after which another face is followed.
+    private static final long FOLLOW_TIMEOUT_MS = 2000;
+
+    private final SignalHistory[] mHistories = new SignalHistory[COUNT];
+    private int mFaceId = -1;
+    private long mLastMs;
+    private RollupStore mStore;
+    private final float[] mStoreValues = new float[COUNT];
+
+    /**
+     * @see SignalHistory#SignalHistory
+     */
+    public FaceSignals(int capacity, int levels, int factor) {
+        for (int i = 0; i < COUNT; i++) {
+            mHistories[i] = new SignalHistory(capacity, levels, factor);
+        }
+    }
+
+    public SignalHistory get(int signal) {
+        return mHistories[signal];
+    }
+
+    /**
+     * Sets the store the recorded samples are also added to, or null.  Once this returns, the
+     * previous store gets no more samples, so it can be closed.
+     */
+    public synchronized void setStore(RollupStore store) {
+        if (store != null && store.getSignalCount() != COUNT) {
+            throw new IllegalArgumentException("Store has " + store.getSignalCount()
+                    + " signals, expected " + COUNT);
+        }
+        mStore = store;
+    }
+
+    /**
+     * Records the signals of a face, unless another face is being followed.  Uncomputed eye
+     * probabilities are recorded as missing.
+     *
+     * @return whether the face was recorded
+     */
+    public synchronized boolean add(FaceFrame face) {
+        long timestampMs = face.getTimestampMs();
+        if (face.getId() != mFaceId) {
+            if (mFaceId != -1 && timestampMs - mLastMs < FOLLOW_TIMEOUT_MS) {
+                return false;
+            }
+            mFaceId = face.getId();
+        }
+        mLastMs = timestampMs;
+        mStoreValues[LEFT_EYE] = probability(face.getLeftEyeOpenProbability());
+        mStoreValues[RIGHT_EYE] = probability(face.getRightEyeOpenProbability());
+        mStoreValues[YAW] = face.getEulerY();
+        for (int i = 0; i < COUNT; i++) {
+            mHistories[i].add(mStoreValues[i]);
+        }
+        if (mStore != null) {
+            mStore.add(timestampMs, mStoreValues);
+        }
+        return true;
+    }
+
+    private static float probability(float value) {
+        return value == FaceFrame.UNCOMPUTED_PROBABILITY ? Float.NaN : value;
+    }
+}
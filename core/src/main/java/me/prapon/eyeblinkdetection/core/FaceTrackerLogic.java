@@ -0,0 +1,302 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * The blink and head turn decisions for a single tracked face, independent of Android.<p>
+ *
+ * Each frame, the head pose is checked for a left or right turn (yaw beyond the turn threshold with
+ * little roll), and the eye open probabilities are checked for a blink.  Both are debounced by
+ * cooldowns so that a single turn or blink is only reported once.<p>
+ *
+ * To compensate for intermediate frames where the face was detected but an eye was not, the
+ * previous eye open state is reused when a probability is uncomputed, and the previously seen
+ * landmark proportions relative to the face bounding box are kept so that missing landmarks can be
+ * approximated.  Eye state older than {@link TrackerConfig#getMaxFrameGapMs} is not reused.<p>
+ *
+ * With a turn lead set, see {@link #setTurnLeadMs}, a head turn is also reported early, once the
+ * yaw a {@link YawPredictor} expects that far ahead is beyond the threshold, so that a capture
+ * which takes that long lands on the turned head.<p>
+ *
+ * Winks, double blinks and long blinks are recognized by a {@link BlinkGestureRecognizer} and
+ * reported when the eyes reopen, in addition to the blink event reported when they close.<p>
+ *
+ * The state can be saved and restored through a {@link State}, so that a face which the detector
+ * lost and found again under a new id keeps its count and cooldowns; see {@link FaceReidentifier}.<p>
+ *
+ * All times are taken from the frames themselves, normally via a {@link FrameClock}, so a session
+ * can be replayed with the same results.  Gaps the clock finds in the stream are passed on through
+ * {@link #onFrameGap}.  Instances are not thread safe and are expected to be updated from a single
+ * thread.
+ */
+public class FaceTrackerLogic {
+    // Used for "never", far enough from Long.MIN_VALUE that subtracting it cannot overflow.
+    private static final long NEVER = Long.MIN_VALUE / 4;
+    // A predicted turn also needs the head to be turned this fraction of the threshold already,
+    // so that noise on a still head cannot trigger it.
+    private static final float MIN_PREDICTED_TURN_FRACTION = 0.5f;
+
+    private final TrackerConfig mConfig;
+    private final FaceEventListener mListener;
+    private final BlinkGestureRecognizer mGestures;
+    private final YawPredictor mYaw = new YawPredictor();
+    private long mTurnLeadMs;
+    private float mTurnTargetYaw;
+
+    private int mBlinkCount;
+    private long mLastBlinkMs = NEVER;
+    private long mLastLeftCaptureMs = NEVER;
+    private long mLastRightCaptureMs = NEVER;
+    private long mLastFrameMs = NEVER;
+
+    // Keep track of the previous eye open state so that it can be reused for intermediate frames
+    // which lack eye landmarks and corresponding eye state.
+    private boolean mPreviousIsLeftOpen = true;
+    private boolean mPreviousIsRightOpen = true;
+
+    // The previously seen proportions of the landmark locations relative to the bounding box of the
+    // face, indexed by landmark type.
+    private final float[] mProportionX = new float[LandmarkTypes.COUNT];
+    private final float[] mProportionY = new float[LandmarkTypes.COUNT];
+    private int mProportionMask;
+
+    /**
+     * A copy of the per-face state of a tracker logic, reusable for any number of saves.
+     */
+    public static final class State {
+        int blinkCount;
+        long lastBlinkMs;
+        long lastLeftCaptureMs;
+        long lastRightCaptureMs;
+        long lastFrameMs;
+        boolean leftOpen;
+        boolean rightOpen;
+        final float[] proportionX = new float[LandmarkTypes.COUNT];
+        final float[] proportionY = new float[LandmarkTypes.COUNT];
+        int proportionMask;
+    }
+
+    //==============================================================================================
+    // Methods
+    //==============================================================================================
+
+    public FaceTrackerLogic(TrackerConfig config, FaceEventListener listener) {
+        mConfig = config;
+        mListener = listener;
+        mGestures = new BlinkGestureRecognizer(config);
+    }
+
+    /**
+     * Starts the head turn cooldowns at the given time, so that a head which is already turned when
+     * tracking begins is not captured straight away.
+     */
+    public void start(long nowMs) {
+        mLastLeftCaptureMs = nowMs;
+        mLastRightCaptureMs = nowMs;
+    }
+
+    /**
+     * Sets how long before the yaw crosses the turn threshold a head turn is reported, e.g. the
+     * measured capture latency.  Zero, the default, reports turns only once they are seen.
+     */
+    public void setTurnLeadMs(long leadMs) {
+        mTurnLeadMs = Math.max(0, leadMs);
+    }
+
+    /**
+     * The yaw expected when the most recently reported head turn is captured: the predicted yaw
+     * for a predicted turn, or the yaw of the frame otherwise.
+     */
+    public float getTurnTargetYaw() {
+        return mTurnTargetYaw;
+    }
+
+    /**
+     * Updates the state from the most recent detection of this face, reporting any blink or head
+     * turn to the listener.
+     */
+    public void update(FaceFrame face) {
+        long nowMs = face.getTimestampMs();
+
+        if (nowMs - mLastFrameMs > mConfig.getMaxFrameGapMs()) {
+            // The face was out of view for a while, so an eye closed before the gap says nothing
+            // about the eye now.
+            mPreviousIsLeftOpen = true;
+            mPreviousIsRightOpen = true;
+        }
+        mLastFrameMs = nowMs;
+
+        updatePreviousProportions(face);
+
+        float eulerY = face.getEulerY();
+        float eulerZ = face.getEulerZ();
+        float maxRoll = mConfig.getMaxRollDegrees();
+        boolean isLevel = eulerZ > -maxRoll && eulerZ < maxRoll;
+        long captureCooldownMs = mConfig.getCaptureCooldownMs();
+        float turnYaw = mConfig.getTurnYawDegrees();
+
+        // The yaw at the time a capture triggered now would land.
+        mYaw.update(nowMs, eulerY);
+        boolean predicting = mTurnLeadMs > 0 && mYaw.hasVelocity();
+        float targetYaw = predicting ? mYaw.predict(mTurnLeadMs) : eulerY;
+        float minYaw = predicting ? turnYaw * MIN_PREDICTED_TURN_FRACTION : turnYaw;
+
+        if ((eulerY < -turnYaw || (targetYaw < -turnYaw && eulerY < -minYaw)) && isLevel
+                && nowMs - mLastLeftCaptureMs > captureCooldownMs) {
+            mLastLeftCaptureMs = nowMs;
+            mTurnTargetYaw = Math.min(eulerY, targetYaw);
+            mListener.onFaceEvent(FaceEvents.LEFT_FACE, mBlinkCount, nowMs);
+        } else if ((eulerY > turnYaw || (targetYaw > turnYaw && eulerY > minYaw)) && isLevel
+                && nowMs - mLastRightCaptureMs > captureCooldownMs) {
+            mLastRightCaptureMs = nowMs;
+            mTurnTargetYaw = Math.max(eulerY, targetYaw);
+            mListener.onFaceEvent(FaceEvents.RIGHT_FACE, mBlinkCount, nowMs);
+        }
+
+        float threshold = mConfig.getEyeClosedThreshold();
+
+        float leftOpenScore = face.getLeftEyeOpenProbability();
+        if (leftOpenScore != FaceFrame.UNCOMPUTED_PROBABILITY) {
+            mPreviousIsLeftOpen = leftOpenScore > threshold;
+        }
+
+        float rightOpenScore = face.getRightEyeOpenProbability();
+        if (rightOpenScore != FaceFrame.UNCOMPUTED_PROBABILITY) {
+            mPreviousIsRightOpen = rightOpenScore > threshold;
+        }
+
+        if ((!mPreviousIsLeftOpen || !mPreviousIsRightOpen)
+                && nowMs - mLastBlinkMs > mConfig.getBlinkCooldownMs()) {
+            mLastBlinkMs = nowMs;
+            mBlinkCount++;
+            mListener.onFaceEvent(FaceEvents.EYE, mBlinkCount, nowMs);
+        }
+
+        int gesture = mGestures.update(nowMs, leftOpenScore, rightOpenScore);
+        if (gesture != BlinkGestureRecognizer.NONE) {
+            mListener.onFaceEvent(gesture, mBlinkCount, nowMs);
+        }
+    }
+
+    /**
+     * Tells the logic that the next frame follows a gap in the stream, as reported by
+     * {@link FrameClock#getDroppedInLastInterval} and {@link FrameClock#isDiscontinuity}.  After
+     * dropped frames, a blink may have been missed, so a gesture in progress is dropped rather
+     * than timed across the gap.  After a discontinuity, the time since the previous frame is only
+     * an estimate, so the eye state and the yaw trend are not carried across it either.
+     */
+    public void onFrameGap(boolean discontinuity) {
+        mGestures.reset();
+        if (discontinuity) {
+            resetEyeState();
+            mYaw.reset();
+        }
+    }
+
+    /**
+     * Forgets the eye state carried over from earlier frames, and any gesture in progress, e.g.
+     * when the detector stops classifying eyes, so that an eye which was closed at the time is not
+     * taken to stay closed in every frame from then on.
+     */
+    public void resetEyeState() {
+        mPreviousIsLeftOpen = true;
+        mPreviousIsRightOpen = true;
+        mGestures.reset();
+    }
+
+    /**
+     * Whether the left eye was open as of the last update.
+     */
+    public boolean isLeftOpen() {
+        return mPreviousIsLeftOpen;
+    }
+
+    /**
+     * Whether the right eye was open as of the last update.
+     */
+    public boolean isRightOpen() {
+        return mPreviousIsRightOpen;
+    }
+
+    /**
+     * Copies the per-face state into {@code out}.
+     */
+    public void saveState(State out) {
+        out.blinkCount = mBlinkCount;
+        out.lastBlinkMs = mLastBlinkMs;
+        out.lastLeftCaptureMs = mLastLeftCaptureMs;
+        out.lastRightCaptureMs = mLastRightCaptureMs;
+        out.lastFrameMs = mLastFrameMs;
+        out.leftOpen = mPreviousIsLeftOpen;
+        out.rightOpen = mPreviousIsRightOpen;
+        System.arraycopy(mProportionX, 0, out.proportionX, 0, LandmarkTypes.COUNT);
+        System.arraycopy(mProportionY, 0, out.proportionY, 0, LandmarkTypes.COUNT);
+        out.proportionMask = mProportionMask;
+    }
+
+    /**
+     * Replaces the per-face state with a saved one, as if the updates since had been made to this
+     * instance.  A gesture in progress is dropped.
+     */
+    public void restoreState(State state) {
+        mBlinkCount = state.blinkCount;
+        mLastBlinkMs = state.lastBlinkMs;
+        mLastLeftCaptureMs = state.lastLeftCaptureMs;
+        mLastRightCaptureMs = state.lastRightCaptureMs;
+        mLastFrameMs = state.lastFrameMs;
+        mPreviousIsLeftOpen = state.leftOpen;
+        mPreviousIsRightOpen = state.rightOpen;
+        System.arraycopy(state.proportionX, 0, mProportionX, 0, LandmarkTypes.COUNT);
+        System.arraycopy(state.proportionY, 0, mProportionY, 0, LandmarkTypes.COUNT);
+        mProportionMask = state.proportionMask;
+        mGestures.reset();
+        mYaw.reset();
+    }
+
+    public int getBlinkCount() {
+        return mBlinkCount;
+    }
+
+    public TrackerConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Finds a specific landmark position, or approximates the position based on past observations
+     * if it is not present.  The position is written to {@code out} as x, y.
+     *
+     * @return false if the landmark is missing and has never been seen for this face
+     */
+    public boolean getLandmarkPosition(FaceFrame face, int landmarkType, float[] out) {
+        if (face.hasLandmark(landmarkType)) {
+            out[0] = face.getLandmarkX(landmarkType);
+            out[1] = face.getLandmarkY(landmarkType);
+            return true;
+        }
+
+        if (landmarkType < 0 || landmarkType >= LandmarkTypes.COUNT
+                || (mProportionMask & (1 << landmarkType)) == 0) {
+            return false;
+        }
+
+        out[0] = face.getLeft() + (mProportionX[landmarkType] * face.getWidth());
+        out[1] = face.getTop() + (mProportionY[landmarkType] * face.getHeight());
+        return true;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void updatePreviousProportions(FaceFrame face) {
+        int mask = face.getLandmarkMask();
+        if (mask == 0 || face.getWidth() <= 0 || face.getHeight() <= 0) {
+            return;
+        }
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((mask & (1 << type)) != 0) {
+                mProportionX[type] = (face.getLandmarkX(type) - face.getLeft()) / face.getWidth();
+                mProportionY[type] = (face.getLandmarkY(type) - face.getTop()) / face.getHeight();
+            }
+        }
+        mProportionMask |= mask;
+    }
+}
@@ -0,0 +1,195 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.Locale;
+
+/**
+ * The time base for all tracker timing windows, driven by frame capture timestamps rather than by
+ * when a frame happened to be processed.<p>
+ *
+ * Each camera frame is fed to {@link #advance} once, before any tracker sees it.  The clock turns
+ * the capture timestamps into a continuous session time: capture timestamps restart from zero
+ * whenever the camera source is restarted, so a timestamp which goes backwards, or jumps further
+ * than the gap limit, is treated as a discontinuity and the session time is carried across it
+ * using a monotonic fallback clock.  Within a run of frames, session time advances exactly by the
+ * capture intervals, so replaying recorded timestamps gives the same results.<p>
+ *
+ * The clock also keeps inter-arrival statistics: a running estimate of the frame interval, the
+ * smoothed jitter around it (as in RFC 3550), and the number of frames estimated to be dropped.
+ * {@link #advance} is expected to be called from a single thread; {@link #getStats} may be called
+ * from any thread.
+ */
+public class FrameClock {
+    // Intervals longer than this multiple of the expected interval are counted as dropped frames.
+    private static final float DROP_FACTOR = 1.5f;
+    // Gain of the interval and jitter estimators, as a shift: each sample moves them by 1/16.
+    private static final int SMOOTHING_SHIFT = 4;
+    // After this many long intervals in a row the camera is taken to run at a lower rate than
+    // expected, rather than to drop every other frame.
+    private static final int RATE_CHANGE_INTERVALS = 8;
+
+    private final long mMaxGapMs;
+
+    private boolean mStarted;
+    private long mLastCaptureMs;
+    private long mLastFallbackMs;
+    private long mNowMs;
+    private boolean mDiscontinuity;
+    private int mDroppedInLastInterval;
+
+    // Estimates in microseconds, so that the integer smoothing keeps enough precision.
+    private long mExpectedIntervalUs;
+    private long mJitterUs;
+    private int mConsecutiveLongIntervals;
+
+    private long mFrameCount;
+    private long mDroppedFrames;
+    private long mDiscontinuities;
+    private long mLastIntervalMs;
+    private long mMaxIntervalMs;
+
+    /**
+     * @param expectedIntervalMs the nominal frame interval, e.g. from the requested frame rate.  It
+     *                           is refined from the observed intervals.
+     * @param maxGapMs           capture intervals longer than this are treated as a break in the
+     *                           stream rather than as dropped frames
+     */
+    public FrameClock(long expectedIntervalMs, long maxGapMs) {
+        if (expectedIntervalMs <= 0 || maxGapMs < expectedIntervalMs) {
+            throw new IllegalArgumentException("Bad intervals: expected " + expectedIntervalMs
+                    + " ms, max gap " + maxGapMs + " ms");
+        }
+        mExpectedIntervalUs = expectedIntervalMs * 1000;
+        mMaxGapMs = maxGapMs;
+    }
+
+    /**
+     * Advances the clock to a newly captured frame.
+     *
+     * @param captureMs  the capture timestamp of the frame
+     * @param fallbackMs a monotonic clock reading, used only to measure the time across a
+     *                   discontinuity in the capture timestamps
+     * @return the session time of the frame, as also returned by {@link #getNowMs}
+     */
+    public synchronized long advance(long captureMs, long fallbackMs) {
+        mDiscontinuity = false;
+        mDroppedInLastInterval = 0;
+        mFrameCount++;
+
+        if (!mStarted) {
+            mStarted = true;
+            mNowMs = captureMs;
+        } else {
+            long intervalMs = captureMs - mLastCaptureMs;
+            if (intervalMs < 0 || intervalMs > mMaxGapMs) {
+                // The camera was restarted or stalled; the capture timestamps cannot say for how
+                // long, so take the elapsed time from the fallback clock instead.
+                mDiscontinuity = true;
+                mDiscontinuities++;
+                mNowMs += Math.max(1, fallbackMs - mLastFallbackMs);
+            } else {
+                mNowMs += intervalMs;
+                updateIntervalStats(intervalMs);
+            }
+        }
+
+        mLastCaptureMs = captureMs;
+        mLastFallbackMs = fallbackMs;
+        return mNowMs;
+    }
+
+    /**
+     * The session time of the most recent frame.
+     */
+    public synchronized long getNowMs() {
+        return mNowMs;
+    }
+
+    /**
+     * Whether the most recent frame followed a break in the stream, in which case any state carried
+     * over from earlier frames may be stale.
+     */
+    public synchronized boolean isDiscontinuity() {
+        return mDiscontinuity;
+    }
+
+    /**
+     * The number of frames estimated to have been dropped just before the most recent frame.
+     */
+    public synchronized int getDroppedInLastInterval() {
+        return mDroppedInLastInterval;
+    }
+
+    /**
+     * Returns a consistent snapshot of the inter-arrival statistics.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(mFrameCount, mDroppedFrames, mDiscontinuities, mLastIntervalMs,
+                mMaxIntervalMs, mExpectedIntervalUs / 1000f, mJitterUs / 1000f);
+    }
+
+    //==============================================================================================
+    // Stats
+    //==============================================================================================
+
+    /**
+     * Inter-arrival statistics of the frames seen so far.
+     */
+    public static final class Stats {
+        public final long frames;
+        public final long droppedFrames;
+        public final long discontinuities;
+        public final long lastIntervalMs;
+        public final long maxIntervalMs;
+        public final float expectedIntervalMs;
+        public final float jitterMs;
+
+        Stats(long frames, long droppedFrames, long discontinuities, long lastIntervalMs,
+                long maxIntervalMs, float expectedIntervalMs, float jitterMs) {
+            this.frames = frames;
+            this.droppedFrames = droppedFrames;
+            this.discontinuities = discontinuities;
+            this.lastIntervalMs = lastIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+            this.expectedIntervalMs = expectedIntervalMs;
+            this.jitterMs = jitterMs;
+        }
+
+        @Override
+        public String toString() {
+            return "frames=" + frames
+                    + " dropped=" + droppedFrames
+                    + " discontinuities=" + discontinuities
+                    + " interval=" + String.format(Locale.US, "%.1f", expectedIntervalMs)
+                    + " jitter=" + String.format(Locale.US, "%.1f", jitterMs)
+                    + " maxInterval=" + maxIntervalMs;
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void updateIntervalStats(long intervalMs) {
+        mLastIntervalMs = intervalMs;
+        mMaxIntervalMs = Math.max(mMaxIntervalMs, intervalMs);
+
+        long intervalUs = intervalMs * 1000;
+        if (intervalUs > mExpectedIntervalUs * DROP_FACTOR
+                && ++mConsecutiveLongIntervals < RATE_CHANGE_INTERVALS) {
+            // Count the frames which should have arrived in between, and keep the long interval
+            // out of the estimates so that one stall does not stretch the expected interval.
+            int dropped = (int) ((intervalUs + mExpectedIntervalUs / 2) / mExpectedIntervalUs) - 1;
+            mDroppedInLastInterval = Math.max(1, dropped);
+            mDroppedFrames += mDroppedInLastInterval;
+            return;
+        }
+        if (mConsecutiveLongIntervals >= RATE_CHANGE_INTERVALS) {
+            mExpectedIntervalUs = intervalUs;
+        }
+        mConsecutiveLongIntervals = 0;
+
+        long deviationUs = Math.abs(intervalUs - mExpectedIntervalUs);
+        mJitterUs += (deviationUs - mJitterUs) >> SMOOTHING_SHIFT;
+        mExpectedIntervalUs += (intervalUs - mExpectedIntervalUs) >> SMOOTHING_SHIFT;
+    }
+}
@@ -0,0 +1,29 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Landmark type ids.  These have the same values as the Google Vision {@code Landmark} constants,
+ * so they can be used interchangeably without depending on Android types.
+ */
+public final class LandmarkTypes {
+
+    public static final int BOTTOM_MOUTH = 0;
+    public static final int LEFT_CHEEK = 1;
+    public static final int LEFT_EAR_TIP = 2;
+    public static final int LEFT_EAR = 3;
+    public static final int LEFT_EYE = 4;
+    public static final int LEFT_MOUTH = 5;
+    public static final int NOSE_BASE = 6;
+    public static final int RIGHT_CHEEK = 7;
+    public static final int RIGHT_EAR_TIP = 8;
+    public static final int RIGHT_EAR = 9;
+    public static final int RIGHT_EYE = 10;
+    public static final int RIGHT_MOUTH = 11;
+
+    /**
+     * Number of landmark types; every valid type is in the range [0, COUNT).
+     */
+    public static final int COUNT = 12;
+
+    private LandmarkTypes() {
+    }
+}
@@ -0,0 +1,137 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A fixed size histogram of durations for percentile reporting, without allocating per sample.<p>
+ *
+ * Values are recorded in microseconds into log-linear buckets: exact below 64 us, and 32 buckets
+ * per power of two above, so a reported percentile is within about 3% of the true value.  Values
+ * from one microsecond to several hours fit in about a thousand buckets.<p>
+ *
+ * Instances are not thread safe; a writer on another thread should be read through a copy taken
+ * under the writer's own lock, see {@link #copyFrom}.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT =
+            LINEAR_BUCKETS + (MAX_EXPONENT - 6 + 1) * SUB_BUCKETS;
+    private static final long MAX_VALUE_US = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mMaxUs;
+    private long mSumUs;
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE_US, micros));
+        mCounts[bucketOf(value)]++;
+        mTotalCount++;
+        mSumUs += value;
+        mMaxUs = Math.max(mMaxUs, value);
+    }
+
+    public long getCount() {
+        return mTotalCount;
+    }
+
+    public long getMaxMicros() {
+        return mMaxUs;
+    }
+
+    public double getMeanMicros() {
+        return mTotalCount == 0 ? 0 : mSumUs / (double) mTotalCount;
+    }
+
+    /**
+     * Returns the value at the given fraction of the recorded samples, e.g. 0.99 for the 99th
+     * percentile, or zero if nothing was recorded.
+     */
+    public long getPercentileMicros(double fraction) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= target) {
+                return Math.min(mMaxUs, valueOf(i));
+            }
+        }
+        return mMaxUs;
+    }
+
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mTotalCount = 0;
+        mMaxUs = 0;
+        mSumUs = 0;
+    }
+
+    /**
+     * Replaces the contents of this histogram with those of another.
+     */
+    public void copyFrom(LatencyHistogram other) {
+        System.arraycopy(other.mCounts, 0, mCounts, 0, BUCKET_COUNT);
+        mTotalCount = other.mTotalCount;
+        mMaxUs = other.mMaxUs;
+        mSumUs = other.mSumUs;
+    }
+
+    /**
+     * Adds the samples of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+        mMaxUs = Math.max(mMaxUs, other.mMaxUs);
+        mSumUs += other.mSumUs;
+    }
+
+    /**
+     * Formats the count and the usual percentiles in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f ms",
+                mTotalCount, getPercentileMicros(0.5) / 1000.0, getPercentileMicros(0.9) / 1000.0,
+                getPercentileMicros(0.99) / 1000.0, mMaxUs / 1000.0);
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The largest value which falls into the given bucket.
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 6;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,57 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the tracker logic over every face of a recorded session, keeping one
+ * {@link FaceTrackerLogic} per face id just like the app's processors do, and collects the events
+ * into a {@link SessionReport}.  The recorded timestamps are also fed to a {@link FrameClock}, so
+ * that the report shows how regularly the frames arrived, and the trackers learn of the gaps it
+ * finds just as in the app.
+ */
+public class SessionAnalyzer {
+    // A first guess of the recorded frame interval; the clock adapts to the actual rate.
+    private static final long EXPECTED_INTERVAL_MS = 100;
+
+    private final TrackerConfig mConfig;
+    private final SessionReport mReport;
+    private final Map<Integer, FaceTrackerLogic> mTrackers = new HashMap<>();
+    private final FrameClock mClock;
+    private long mLastTimestampMs = Long.MIN_VALUE;
+
+    public SessionAnalyzer(String sessionName, TrackerConfig config) {
+        mConfig = config;
+        mReport = new SessionReport(sessionName, config);
+        mClock = new FrameClock(EXPECTED_INTERVAL_MS,
+                Math.max(EXPECTED_INTERVAL_MS, config.getMaxFrameGapMs()));
+    }
+
+    public void update(FaceFrame face) {
+        // Faces of the same camera frame share a timestamp, and only count once for the clock.
+        if (face.getTimestampMs() != mLastTimestampMs) {
+            mLastTimestampMs = face.getTimestampMs();
+            mClock.advance(mLastTimestampMs, mLastTimestampMs);
+        }
+
+        FaceTrackerLogic tracker = mTrackers.get(face.getId());
+        if (tracker == null) {
+            final int faceId = face.getId();
+            tracker = new FaceTrackerLogic(mConfig,
+                    (type, blinkCount, timestampMs) -> mReport.addEvent(type, faceId, timestampMs));
+            tracker.start(face.getTimestampMs());
+            mTrackers.put(faceId, tracker);
+        }
+        mReport.addFrame(face.getTimestampMs());
+        if (mClock.isDiscontinuity() || mClock.getDroppedInLastInterval() > 0) {
+            tracker.onFrameGap(mClock.isDiscontinuity());
+        }
+        tracker.update(face);
+    }
+
+    public SessionReport getReport() {
+        mReport.setFaceCount(mTrackers.size());
+        mReport.setFrameStats(mClock.getStats());
+        return mReport;
+    }
+}
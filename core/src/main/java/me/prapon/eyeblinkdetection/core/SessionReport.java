@@ -0,0 +1,148 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The blink and head turn events found in one session, with per-type totals.
+ */
+public class SessionReport {
+    private final String mSessionName;
+    private final TrackerConfig mConfig;
+    private final List<Event> mEvents = new ArrayList<>();
+
+    private long mFrameCount;
+    private int mFaceCount;
+    private long mFirstTimestampMs = Long.MAX_VALUE;
+    private long mLastTimestampMs = Long.MIN_VALUE;
+    private int mBlinks;
+    private int mLeftTurns;
+    private int mRightTurns;
+    private int mGestures;
+    private FrameClock.Stats mFrameStats;
+
+    /**
+     * A single event reported by the tracker logic.
+     */
+    public static final class Event {
+        public final int type;
+        public final int faceId;
+        public final long timestampMs;
+
+        Event(int type, int faceId, long timestampMs) {
+            this.type = type;
+            this.faceId = faceId;
+            this.timestampMs = timestampMs;
+        }
+    }
+
+    SessionReport(String sessionName, TrackerConfig config) {
+        mSessionName = sessionName;
+        mConfig = config;
+    }
+
+    void addFrame(long timestampMs) {
+        mFrameCount++;
+        mFirstTimestampMs = Math.min(mFirstTimestampMs, timestampMs);
+        mLastTimestampMs = Math.max(mLastTimestampMs, timestampMs);
+    }
+
+    void addEvent(int type, int faceId, long timestampMs) {
+        mEvents.add(new Event(type, faceId, timestampMs));
+        if (type == FaceEvents.EYE) {
+            mBlinks++;
+        } else if (type == FaceEvents.LEFT_FACE) {
+            mLeftTurns++;
+        } else if (type == FaceEvents.RIGHT_FACE) {
+            mRightTurns++;
+        } else {
+            mGestures++;
+        }
+    }
+
+    void setFaceCount(int faceCount) {
+        mFaceCount = faceCount;
+    }
+
+    void setFrameStats(FrameClock.Stats frameStats) {
+        mFrameStats = frameStats;
+    }
+
+    public String getSessionName() {
+        return mSessionName;
+    }
+
+    public TrackerConfig getConfig() {
+        return mConfig;
+    }
+
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(mEvents);
+    }
+
+    /**
+     * Number of face records processed.  In rear mode a single camera frame holds several.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getFaceCount() {
+        return mFaceCount;
+    }
+
+    public long getDurationMs() {
+        return mFrameCount == 0 ? 0 : mLastTimestampMs - mFirstTimestampMs;
+    }
+
+    /**
+     * Inter-arrival statistics of the recorded camera frames.
+     */
+    public FrameClock.Stats getFrameStats() {
+        return mFrameStats;
+    }
+
+    public int getBlinks() {
+        return mBlinks;
+    }
+
+    public int getLeftTurns() {
+        return mLeftTurns;
+    }
+
+    public int getRightTurns() {
+        return mRightTurns;
+    }
+
+    /**
+     * Number of winks, double blinks and long blinks.
+     */
+    public int getGestures() {
+        return mGestures;
+    }
+
+    /**
+     * Formats the report as text: a summary followed by one line per event.
+     */
+    public void appendTo(StringBuilder out) {
+        out.append("session: ").append(mSessionName).append('\n')
+                .append("config: ").append(mConfig).append('\n')
+                .append("frames: ").append(mFrameCount).append('\n')
+                .append("faces: ").append(mFaceCount).append('\n')
+                .append("duration_ms: ").append(getDurationMs()).append('\n');
+        if (mFrameStats != null) {
+            out.append("frame_timing: ").append(mFrameStats).append('\n');
+        }
+        out.append("blinks: ").append(mBlinks).append('\n')
+                .append("left_turns: ").append(mLeftTurns).append('\n')
+                .append("right_turns: ").append(mRightTurns).append('\n')
+                .append("gestures: ").append(mGestures).append('\n')
+                .append("# timestampMs,faceId,event\n");
+        for (Event event : mEvents) {
+            out.append(event.timestampMs).append(',')
+                    .append(event.faceId).append(',')
+                    .append(FaceEvents.name(event.type)).append('\n');
+        }
+    }
+}
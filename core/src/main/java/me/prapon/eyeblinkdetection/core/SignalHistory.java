@@ -0,0 +1,138 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.Arrays;
+
+/**
+ * The recent history of one signal at several zoom levels, for graphing.<p>
+ *
+ * Each level is a fixed size ring of points.  Level 0 holds the last samples themselves, and each
+ * point of level {@code k + 1} holds the minimum and maximum of {@code factor} points of level
+ * {@code k}.  A graph drawn from one level therefore always has the same number of points, however
+ * long the span of history it shows, and min/max decimation keeps short spikes, such as a blink,
+ * visible at every level.<p>
+ *
+ * Missing samples are recorded as NaN, and a point is NaN only if all samples it covers are.
+ * Adding never allocates.  Methods are synchronized, for one thread adding and another drawing.
+ */
+public final class SignalHistory {
+    private final int mCapacity;
+    private final int mFactor;
+    private final float[][] mMins;
+    private final float[][] mMaxs;
+    // Index of the next point to write, and number of points held, per level.
+    private final int[] mNext;
+    private final int[] mCounts;
+    // Points of the level below not yet folded into a point of this level.
+    private final float[] mPendingMin;
+    private final float[] mPendingMax;
+    private final int[] mPendingCounts;
+
+    /**
+     * @param capacity the number of points per level
+     * @param levels the number of zoom levels
+     * @param factor the number of points of a level folded into one point of the next
+     */
+    public SignalHistory(int capacity, int levels, int factor) {
+        if (capacity < 1 || levels < 1 || factor < 2) {
+            throw new IllegalArgumentException("Bad history shape: " + capacity + " x " + levels
+                    + " / " + factor);
+        }
+        mCapacity = capacity;
+        mFactor = factor;
+        mMins = new float[levels][capacity];
+        mMaxs = new float[levels][capacity];
+        mNext = new int[levels];
+        mCounts = new int[levels];
+        mPendingMin = new float[levels];
+        mPendingMax = new float[levels];
+        mPendingCounts = new int[levels];
+        clear();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getLevels() {
+        return mMins.length;
+    }
+
+    /**
+     * The number of samples covered by each point of the given level.
+     */
+    public long getSamplesPerPoint(int level) {
+        long samples = 1;
+        for (int i = 0; i < level; i++) {
+            samples *= mFactor;
+        }
+        return samples;
+    }
+
+    /**
+     * Appends a sample, NaN if it is missing.
+     */
+    public synchronized void add(float value) {
+        push(0, value, value);
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(mNext, 0);
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mPendingMin, Float.NaN);
+        Arrays.fill(mPendingMax, Float.NaN);
+        Arrays.fill(mPendingCounts, 0);
+    }
+
+    /**
+     * Copies the points of a level, oldest first.
+     *
+     * @param mins receives the minimum of each point; at least {@link #getCapacity} long
+     * @param maxs receives the maximum of each point; at least {@link #getCapacity} long
+     * @return the number of points copied
+     */
+    public synchronized int read(int level, float[] mins, float[] maxs) {
+        int count = mCounts[level];
+        int start = (mNext[level] - count + mCapacity) % mCapacity;
+        int first = Math.min(count, mCapacity - start);
+        System.arraycopy(mMins[level], start, mins, 0, first);
+        System.arraycopy(mMaxs[level], start, maxs, 0, first);
+        System.arraycopy(mMins[level], 0, mins, first, count - first);
+        System.arraycopy(mMaxs[level], 0, maxs, first, count - first);
+        return count;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void push(int level, float min, float max) {
+        int index = mNext[level];
+        mMins[level][index] = min;
+        mMaxs[level][index] = max;
+        mNext[level] = (index + 1) % mCapacity;
+        mCounts[level] = Math.min(mCapacity, mCounts[level] + 1);
+
+        int above = level + 1;
+        if (above == mMins.length) {
+            return;
+        }
+        mPendingMin[above] = minOf(mPendingMin[above], min);
+        mPendingMax[above] = maxOf(mPendingMax[above], max);
+        if (++mPendingCounts[above] == mFactor) {
+            float pendingMin = mPendingMin[above];
+            float pendingMax = mPendingMax[above];
+            mPendingMin[above] = Float.NaN;
+            mPendingMax[above] = Float.NaN;
+            mPendingCounts[above] = 0;
+            push(above, pendingMin, pendingMax);
+        }
+    }
+
+    private static float minOf(float a, float b) {
+        return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    private static float maxOf(float a, float b) {
+        return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.max(a, b);
+    }
+}
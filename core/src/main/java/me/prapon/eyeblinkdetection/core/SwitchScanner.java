@@ -0,0 +1,68 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Steps a focus through a row of UI elements with deliberate eye gestures, for hands-free switch
+ * access: a double blink or a right wink moves to the next element, a left wink to the previous
+ * one, and a long blink selects the focused element.  The focus wraps around at both ends.<p>
+ *
+ * Plain blinks are ignored, since they are mostly involuntary, and so are head turns.  Instances
+ * are not thread safe.
+ */
+public final class SwitchScanner {
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_NEXT = 1;
+    public static final int ACTION_PREVIOUS = 2;
+    public static final int ACTION_SELECT = 3;
+
+    private final int mCount;
+    private int mFocus;
+
+    /**
+     * @param count the number of elements, at least one
+     */
+    public SwitchScanner(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("No elements to scan");
+        }
+        mCount = count;
+    }
+
+    /**
+     * Applies a {@link FaceEvents} type to the focus.
+     *
+     * @return the action taken, one of the {@code ACTION_*} constants
+     */
+    public int onEvent(int type) {
+        switch (type) {
+            case FaceEvents.DOUBLE_BLINK:
+            case FaceEvents.RIGHT_WINK:
+                mFocus = (mFocus + 1) % mCount;
+                return ACTION_NEXT;
+            case FaceEvents.LEFT_WINK:
+                mFocus = (mFocus - 1 + mCount) % mCount;
+                return ACTION_PREVIOUS;
+            case FaceEvents.LONG_BLINK:
+                return ACTION_SELECT;
+            default:
+                return ACTION_NONE;
+        }
+    }
+
+    /**
+     * The index of the focused element.
+     */
+    public int getFocus() {
+        return mFocus;
+    }
+
+    public void setFocus(int focus) {
+        if (focus < 0 || focus >= mCount) {
+            throw new IndexOutOfBoundsException("Focus " + focus + " of " + mCount);
+        }
+        mFocus = focus;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+}
@@ -0,0 +1,181 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Thresholds and cooldowns used by {@link FaceTrackerLogic}.  Use {@link Builder} to change any of
+ * the defaults, which are the values the app has always used.
+ */
+public final class TrackerConfig {
+    public static final TrackerConfig DEFAULT = new Builder().build();
+
+    private final float mEyeClosedThreshold;
+    private final long mBlinkCooldownMs;
+    private final long mCaptureCooldownMs;
+    private final float mTurnYawDegrees;
+    private final float mMaxRollDegrees;
+    private final long mMaxFrameGapMs;
+    private final long mLongBlinkMs;
+    private final long mDoubleBlinkGapMs;
+
+    private TrackerConfig(Builder builder) {
+        mEyeClosedThreshold = builder.mEyeClosedThreshold;
+        mBlinkCooldownMs = builder.mBlinkCooldownMs;
+        mCaptureCooldownMs = builder.mCaptureCooldownMs;
+        mTurnYawDegrees = builder.mTurnYawDegrees;
+        mMaxRollDegrees = builder.mMaxRollDegrees;
+        mMaxFrameGapMs = builder.mMaxFrameGapMs;
+        mLongBlinkMs = builder.mLongBlinkMs;
+        mDoubleBlinkGapMs = builder.mDoubleBlinkGapMs;
+    }
+
+    /**
+     * An eye is considered closed when its open probability is at or below this value.
+     */
+    public float getEyeClosedThreshold() {
+        return mEyeClosedThreshold;
+    }
+
+    /**
+     * Minimum time between two counted blinks.
+     */
+    public long getBlinkCooldownMs() {
+        return mBlinkCooldownMs;
+    }
+
+    /**
+     * Minimum time between two left (or two right) head turn captures.
+     */
+    public long getCaptureCooldownMs() {
+        return mCaptureCooldownMs;
+    }
+
+    /**
+     * Head yaw (Euler Y) beyond which the head counts as turned left or right.
+     */
+    public float getTurnYawDegrees() {
+        return mTurnYawDegrees;
+    }
+
+    /**
+     * Head roll (Euler Z) must stay within plus or minus this value for a turn to count.
+     */
+    public float getMaxRollDegrees() {
+        return mMaxRollDegrees;
+    }
+
+    /**
+     * If a face is not seen for longer than this, the eye state from before the gap is discarded
+     * instead of being carried over to the next frame.
+     */
+    public long getMaxFrameGapMs() {
+        return mMaxFrameGapMs;
+    }
+
+    /**
+     * Both eyes closed for at least this long, from the first to the last closed frame, is a long
+     * blink rather than a short one.
+     */
+    public long getLongBlinkMs() {
+        return mLongBlinkMs;
+    }
+
+    /**
+     * Two short blinks make a double blink if the second one starts within this time after the
+     * first one ended.
+     */
+    public long getDoubleBlinkGapMs() {
+        return mDoubleBlinkGapMs;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .setEyeClosedThreshold(mEyeClosedThreshold)
+                .setBlinkCooldownMs(mBlinkCooldownMs)
+                .setCaptureCooldownMs(mCaptureCooldownMs)
+                .setTurnYawDegrees(mTurnYawDegrees)
+                .setMaxRollDegrees(mMaxRollDegrees)
+                .setMaxFrameGapMs(mMaxFrameGapMs)
+                .setLongBlinkMs(mLongBlinkMs)
+                .setDoubleBlinkGapMs(mDoubleBlinkGapMs);
+    }
+
+    @Override
+    public String toString() {
+        return "eyeClosed=" + mEyeClosedThreshold
+                + " blinkCooldown=" + mBlinkCooldownMs
+                + " captureCooldown=" + mCaptureCooldownMs
+                + " yaw=" + mTurnYawDegrees
+                + " roll=" + mMaxRollDegrees
+                + " maxFrameGap=" + mMaxFrameGapMs
+                + " longBlink=" + mLongBlinkMs
+                + " doubleBlinkGap=" + mDoubleBlinkGapMs;
+    }
+
+    public static class Builder {
+        private float mEyeClosedThreshold = 0.4f;
+        private long mBlinkCooldownMs = 2000;
+        private long mCaptureCooldownMs = 2000;
+        private float mTurnYawDegrees = 40;
+        private float mMaxRollDegrees = 20;
+        private long mMaxFrameGapMs = 3000;
+        private long mLongBlinkMs = 1000;
+        private long mDoubleBlinkGapMs = 1500;
+
+        public Builder setEyeClosedThreshold(float eyeClosedThreshold) {
+            mEyeClosedThreshold = eyeClosedThreshold;
+            return this;
+        }
+
+        public Builder setBlinkCooldownMs(long blinkCooldownMs) {
+            mBlinkCooldownMs = blinkCooldownMs;
+            return this;
+        }
+
+        public Builder setCaptureCooldownMs(long captureCooldownMs) {
+            mCaptureCooldownMs = captureCooldownMs;
+            return this;
+        }
+
+        public Builder setTurnYawDegrees(float turnYawDegrees) {
+            mTurnYawDegrees = turnYawDegrees;
+            return this;
+        }
+
+        public Builder setMaxRollDegrees(float maxRollDegrees) {
+            mMaxRollDegrees = maxRollDegrees;
+            return this;
+        }
+
+        public Builder setMaxFrameGapMs(long maxFrameGapMs) {
+            mMaxFrameGapMs = maxFrameGapMs;
+            return this;
+        }
+
+        public Builder setLongBlinkMs(long longBlinkMs) {
+            mLongBlinkMs = longBlinkMs;
+            return this;
+        }
+
+        public Builder setDoubleBlinkGapMs(long doubleBlinkGapMs) {
+            mDoubleBlinkGapMs = doubleBlinkGapMs;
+            return this;
+        }
+
+        public TrackerConfig build() {
+            if (mEyeClosedThreshold < 0 || mEyeClosedThreshold > 1) {
+                throw new IllegalArgumentException(
+                        "Eye closed threshold must be in [0, 1]: " + mEyeClosedThreshold);
+            }
+            if (mBlinkCooldownMs < 0 || mCaptureCooldownMs < 0) {
+                throw new IllegalArgumentException("Cooldowns must not be negative");
+            }
+            if (mMaxFrameGapMs <= 0) {
+                throw new IllegalArgumentException("Max frame gap must be positive");
+            }
+            if (mLongBlinkMs <= 0 || mDoubleBlinkGapMs < 0) {
+                throw new IllegalArgumentException(
+                        "Long blink must be positive and double blink gap not negative");
+            }
+            return new TrackerConfig(this);
+        }
+    }
+}
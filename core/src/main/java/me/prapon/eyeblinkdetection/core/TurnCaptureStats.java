@@ -0,0 +1,80 @@
+package me.prapon.eyeblinkdetection.core;
+
+import java.util.Locale;
+
+/**
+ * Measures head turn captures on the device at hand: how long after the turn was triggered the
+ * captured image was taken, and how far its yaw was from the yaw the trigger aimed for.<p>
+ *
+ * The smoothed latency is the lead time with which {@link FaceTrackerLogic} predicts head turns,
+ * so captures trigger early by as much as they land late.  The estimate is clamped, so that a
+ * single stalled capture cannot make the tracker fire on barely begun turns.  Safe to use from any
+ * thread.
+ */
+public final class TurnCaptureStats {
+    // The longest lead used for predictions.
+    public static final long MAX_LEAD_MS = 1000;
+    // Gain of the latency estimator: each capture moves it by a quarter of its error.
+    private static final float GAIN = 0.25f;
+
+    private boolean mHasLatency;
+    private float mLatencyMs;
+    private long mCount;
+    private double mSumError;
+    private double mSumAbsError;
+    private float mMaxAbsError;
+
+    /**
+     * Records a head turn capture.
+     *
+     * @param latencyMs  the time from the trigger to the capture of the image
+     * @param targetYaw  the yaw predicted for the capture when it was triggered
+     * @param actualYaw  the yaw in the captured image, or NaN if unknown
+     */
+    public synchronized void recordCapture(long latencyMs, float targetYaw, float actualYaw) {
+        float latency = Math.max(0, latencyMs);
+        mLatencyMs = mHasLatency ? mLatencyMs + GAIN * (latency - mLatencyMs) : latency;
+        mHasLatency = true;
+        if (Float.isNaN(actualYaw)) {
+            return;
+        }
+        // Positive errors mean the capture overshot the target, in the direction of the turn.
+        float error = Math.signum(targetYaw) * (actualYaw - targetYaw);
+        mCount++;
+        mSumError += error;
+        mSumAbsError += Math.abs(error);
+        mMaxAbsError = Math.max(mMaxAbsError, Math.abs(error));
+    }
+
+    /**
+     * The lead time for predicted head turns: the smoothed capture latency, or zero before the
+     * first capture.
+     */
+    public synchronized long getLeadMs() {
+        return mHasLatency ? Math.min(MAX_LEAD_MS, Math.round(mLatencyMs)) : 0;
+    }
+
+    /**
+     * The number of captures with a known yaw.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * The mean difference between the actual and target yaw, positive if captures overshoot.
+     */
+    public synchronized float getMeanError() {
+        return mCount == 0 ? 0 : (float) (mSumError / mCount);
+    }
+
+    public synchronized float getMeanAbsError() {
+        return mCount == 0 ? 0 : (float) (mSumAbsError / mCount);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "lead %d ms, %d captures, error mean %+.1f abs %.1f max %.1f"
+                + " deg", getLeadMs(), mCount, getMeanError(), getMeanAbsError(), mMaxAbsError);
+    }
+}
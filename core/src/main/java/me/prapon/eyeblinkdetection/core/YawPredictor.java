@@ -0,0 +1,105 @@
+package me.prapon.eyeblinkdetection.core;
+
+/**
+ * Predicts the head yaw a short time ahead from its recent angular velocity.<p>
+ *
+ * The velocity is the least squares slope of the last few yaw samples within a short window, which
+ * smooths the frame-to-frame noise of the detector's angle estimate.  A prediction is only made
+ * once there are two samples in the window; a turn is short enough that a constant velocity fits
+ * it well for a fraction of a second, and the prediction is meant for no more than that.
+ */
+public final class YawPredictor {
+    // Samples used for the fit, and how far back they may go from the newest one.
+    private static final int SAMPLES = 4;
+    private static final long WINDOW_MS = 1500;
+
+    private final long[] mTimes = new long[SAMPLES];
+    private final float[] mYaws = new float[SAMPLES];
+    private int mNext;
+    private int mCount;
+
+    // Degrees per millisecond, valid if mHasVelocity.
+    private float mVelocity;
+    private boolean mHasVelocity;
+
+    /**
+     * Adds the yaw of a frame.  Times must not go backwards; a sample after a longer gap than the
+     * window starts over.
+     */
+    public void update(long timestampMs, float yaw) {
+        if (mCount > 0 && timestampMs - newestTime() > WINDOW_MS) {
+            reset();
+        }
+        mTimes[mNext] = timestampMs;
+        mYaws[mNext] = yaw;
+        mNext = (mNext + 1) % SAMPLES;
+        mCount = Math.min(SAMPLES, mCount + 1);
+        fit(timestampMs);
+    }
+
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mHasVelocity = false;
+    }
+
+    public boolean hasVelocity() {
+        return mHasVelocity;
+    }
+
+    /**
+     * The angular velocity in degrees per second, positive towards the right, or zero if unknown.
+     */
+    public float getVelocity() {
+        return mHasVelocity ? mVelocity * 1000 : 0;
+    }
+
+    /**
+     * Returns the yaw expected {@code leadMs} after the newest sample, or the newest yaw itself if
+     * the velocity is unknown.
+     */
+    public float predict(long leadMs) {
+        float yaw = mCount == 0 ? 0 : mYaws[(mNext - 1 + SAMPLES) % SAMPLES];
+        return mHasVelocity ? yaw + mVelocity * leadMs : yaw;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private long newestTime() {
+        return mTimes[(mNext - 1 + SAMPLES) % SAMPLES];
+    }
+
+    /**
+     * Fits a line through the samples within the window of the newest one, with times relative to
+     * it to keep the sums small.
+     */
+    private void fit(long newestMs) {
+        int n = 0;
+        double sumT = 0;
+        double sumY = 0;
+        double sumTT = 0;
+        double sumTY = 0;
+        for (int i = 0; i < mCount; i++) {
+            long ageMs = newestMs - mTimes[i];
+            if (ageMs > WINDOW_MS) {
+                continue;
+            }
+            double t = -ageMs;
+            double y = mYaws[i];
+            n++;
+            sumT += t;
+            sumY += y;
+            sumTT += t * t;
+            sumTY += t * y;
+        }
+        double denominator = n * sumTT - sumT * sumT;
+        if (n < 2 || denominator <= 0) {
+            mHasVelocity = false;
+            return;
+        }
+        mVelocity = (float) ((n * sumTY - sumT * sumY) / denominator);
+        mHasVelocity = true;
+    }
+}
@@ -0,0 +1,56 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.util.Arrays;
+
+/**
+ * The previous-record state that deltas are taken against.  Encoder and decoder keep identical
+ * copies and update them the same way, so nothing but the deltas needs to be stored.<p>
+ *
+ * Each face id gets a slot holding its last quantized values, so interleaved faces in rear mode
+ * are still delta encoded against themselves.  When all slots are taken, they are reused
+ * round-robin.
+ */
+final class CodecState {
+    static final int SLOTS = 8;
+
+    // Quantized values per slot, in FrameFormat field order.
+    final int[][] values = new int[SLOTS][FrameFormat.FIELD_COUNT];
+    final int[] ids = new int[SLOTS];
+    final int[] landmarkMasks = new int[SLOTS];
+    private final boolean[] mUsed = new boolean[SLOTS];
+    private int mNextVictim;
+
+    long previousTimestampMs;
+
+    void reset() {
+        Arrays.fill(mUsed, false);
+        mNextVictim = 0;
+        previousTimestampMs = 0;
+    }
+
+    /**
+     * Returns the slot for the face id, claiming and clearing one if the id has no slot yet.
+     */
+    int slotFor(int id) {
+        for (int i = 0; i < SLOTS; i++) {
+            if (mUsed[i] && ids[i] == id) {
+                return i;
+            }
+        }
+        int slot = mNextVictim;
+        mNextVictim = (mNextVictim + 1) % SLOTS;
+        mUsed[slot] = true;
+        ids[slot] = id;
+        landmarkMasks[slot] = 0;
+        Arrays.fill(values[slot], 0);
+        return slot;
+    }
+
+    static int landmarkXField(int type) {
+        return FrameFormat.FIXED_FIELD_COUNT + type * 2;
+    }
+
+    static int landmarkYField(int type) {
+        return FrameFormat.FIXED_FIELD_COUNT + type * 2 + 1;
+    }
+}
@@ -0,0 +1,74 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Decodes records written by {@link FrameEncoder}.  Like the encoder it is stateful, must see the
+ * records in order starting from a keyframe, and does not allocate per record.
+ */
+public class FrameDecoder {
+    private final CodecState mState = new CodecState();
+    private boolean mStarted;
+
+    /**
+     * Forgets all state, e.g. before jumping to a keyframe.
+     */
+    public void reset() {
+        mState.reset();
+        mStarted = false;
+    }
+
+    /**
+     * Decodes one record from {@code in} into {@code out}.
+     *
+     * @throws IllegalStateException if the first record decoded is not a keyframe
+     */
+    public void decode(ByteBuffer in, FaceFrame out) {
+        int flags = in.get();
+        if ((flags & FrameFormat.FLAG_KEYFRAME) != 0) {
+            mState.reset();
+            mStarted = true;
+        } else if (!mStarted) {
+            throw new IllegalStateException("Decoding must start at a keyframe");
+        }
+        long timestampMs = mState.previousTimestampMs + Varints.getSigned(in);
+        int id = (int) Varints.getUnsigned(in);
+
+        int slot = mState.slotFor(id);
+        int[] values = mState.values[slot];
+        if ((flags & FrameFormat.FLAG_MASK_CHANGED) != 0) {
+            mState.landmarkMasks[slot] = (int) Varints.getUnsigned(in);
+        }
+        int mask = mState.landmarkMasks[slot];
+
+        for (int field = 0; field < FrameFormat.FIXED_FIELD_COUNT; field++) {
+            values[field] += (int) Varints.getSigned(in);
+        }
+
+        float position = FrameFormat.POSITION_SCALE;
+        float angle = FrameFormat.ANGLE_SCALE;
+        out.set(id, timestampMs,
+                values[FrameFormat.LEFT] / position,
+                values[FrameFormat.TOP] / position,
+                values[FrameFormat.WIDTH] / position,
+                values[FrameFormat.HEIGHT] / position,
+                values[FrameFormat.EULER_Y] / angle,
+                values[FrameFormat.EULER_Z] / angle,
+                FrameFormat.dequantizeProbability(values[FrameFormat.LEFT_EYE_OPEN]),
+                FrameFormat.dequantizeProbability(values[FrameFormat.RIGHT_EYE_OPEN]));
+
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((mask & (1 << type)) != 0) {
+                int x = CodecState.landmarkXField(type);
+                int y = CodecState.landmarkYField(type);
+                values[x] += (int) Varints.getSigned(in);
+                values[y] += (int) Varints.getSigned(in);
+                out.setLandmark(type, values[x] / position, values[y] / position);
+            }
+        }
+        mState.previousTimestampMs = timestampMs;
+    }
+}
@@ -0,0 +1,108 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Encodes a stream of face frames into the {@link FrameFormat} record format.  The encoder is
+ * stateful, since each record is a delta against the previous one for the same face, and it does
+ * not allocate per record.
+ */
+public class FrameEncoder {
+    private final CodecState mState = new CodecState();
+    private final int[] mQuantized = new int[FrameFormat.FIELD_COUNT];
+    private final int mKeyframeInterval;
+    private long mRecordCount;
+
+    public FrameEncoder(int keyframeInterval) {
+        if (keyframeInterval <= 0 || keyframeInterval > 0xffff) {
+            throw new IllegalArgumentException("Bad keyframe interval: " + keyframeInterval);
+        }
+        mKeyframeInterval = keyframeInterval;
+    }
+
+    public int getKeyframeInterval() {
+        return mKeyframeInterval;
+    }
+
+    /**
+     * Whether the next record will be a keyframe.
+     */
+    public boolean isNextKeyframe() {
+        return mRecordCount % mKeyframeInterval == 0;
+    }
+
+    /**
+     * Appends one record.  {@code out} must have at least {@link FrameFormat#MAX_RECORD_BYTES}
+     * remaining.
+     */
+    public void encode(FaceFrame face, ByteBuffer out) {
+        int flags = 0;
+        if (isNextKeyframe()) {
+            mState.reset();
+            flags |= FrameFormat.FLAG_KEYFRAME;
+        }
+        mRecordCount++;
+
+        int slot = mState.slotFor(face.getId());
+        int[] previous = mState.values[slot];
+        int mask = face.getLandmarkMask();
+        if (mask != mState.landmarkMasks[slot]) {
+            flags |= FrameFormat.FLAG_MASK_CHANGED;
+        }
+
+        quantize(face, previous, mQuantized);
+
+        out.put((byte) flags);
+        Varints.putSigned(out, face.getTimestampMs() - mState.previousTimestampMs);
+        Varints.putUnsigned(out, face.getId() & 0xffffffffL);
+        if ((flags & FrameFormat.FLAG_MASK_CHANGED) != 0) {
+            Varints.putUnsigned(out, mask);
+        }
+        for (int field = 0; field < FrameFormat.FIXED_FIELD_COUNT; field++) {
+            Varints.putSigned(out, mQuantized[field] - previous[field]);
+        }
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((mask & (1 << type)) != 0) {
+                int x = CodecState.landmarkXField(type);
+                int y = CodecState.landmarkYField(type);
+                Varints.putSigned(out, mQuantized[x] - previous[x]);
+                Varints.putSigned(out, mQuantized[y] - previous[y]);
+            }
+        }
+
+        System.arraycopy(mQuantized, 0, previous, 0, FrameFormat.FIELD_COUNT);
+        mState.landmarkMasks[slot] = mask;
+        mState.previousTimestampMs = face.getTimestampMs();
+    }
+
+    /**
+     * Quantizes the face to fixed point.  Landmarks which are absent keep their previous value so
+     * that they do not disturb later deltas.
+     */
+    private static void quantize(FaceFrame face, int[] previous, int[] out) {
+        out[FrameFormat.LEFT] = Math.round(face.getLeft() * FrameFormat.POSITION_SCALE);
+        out[FrameFormat.TOP] = Math.round(face.getTop() * FrameFormat.POSITION_SCALE);
+        out[FrameFormat.WIDTH] = Math.round(face.getWidth() * FrameFormat.POSITION_SCALE);
+        out[FrameFormat.HEIGHT] = Math.round(face.getHeight() * FrameFormat.POSITION_SCALE);
+        out[FrameFormat.EULER_Y] = Math.round(face.getEulerY() * FrameFormat.ANGLE_SCALE);
+        out[FrameFormat.EULER_Z] = Math.round(face.getEulerZ() * FrameFormat.ANGLE_SCALE);
+        out[FrameFormat.LEFT_EYE_OPEN] =
+                FrameFormat.quantizeProbability(face.getLeftEyeOpenProbability());
+        out[FrameFormat.RIGHT_EYE_OPEN] =
+                FrameFormat.quantizeProbability(face.getRightEyeOpenProbability());
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            int x = CodecState.landmarkXField(type);
+            int y = CodecState.landmarkYField(type);
+            if (face.hasLandmark(type)) {
+                out[x] = Math.round(face.getLandmarkX(type) * FrameFormat.POSITION_SCALE);
+                out[y] = Math.round(face.getLandmarkY(type) * FrameFormat.POSITION_SCALE);
+            } else {
+                out[x] = previous[x];
+                out[y] = previous[y];
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+
+/**
+ * Reads a file written by {@link FrameFileWriter} through a memory mapping, either sequentially or
+ * from any record index.  Seeking jumps to the closest keyframe before the index and decodes
+ * forward from there, so it costs at most one keyframe interval of decoding.  Files are limited to
+ * 2 GB by the mapping.
+ */
+public class FrameFileReader implements Closeable {
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final FrameDecoder mDecoder = new FrameDecoder();
+    private final FaceFrame mSkipped = new FaceFrame();
+
+    private final int mKeyframeInterval;
+    private final long mRecordCount;
+    private final int mIndexOffset;
+    private final int mRecordsEnd;
+
+    private long mNextIndex;
+
+    public FrameFileReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            long length = mFile.length();
+            if (length < FrameFormat.HEADER_BYTES + FrameFormat.FOOTER_BYTES) {
+                throw new IOException("Not a frame file: " + file);
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Frame file too large to map: " + file);
+            }
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (mBuffer.getInt(0) != FrameFormat.MAGIC
+                    || mBuffer.getInt((int) length - 4) != FrameFormat.MAGIC) {
+                throw new IOException("Not a frame file: " + file);
+            }
+            int version = mBuffer.get(4);
+            if (version != FrameFormat.VERSION) {
+                throw new IOException("Unsupported frame file version " + version + ": " + file);
+            }
+            mKeyframeInterval = mBuffer.getShort(6) & 0xffff;
+
+            int footer = (int) length - FrameFormat.FOOTER_BYTES;
+            mIndexOffset = (int) mBuffer.getLong(footer);
+            mRecordCount = mBuffer.getLong(footer + 8);
+            mRecordsEnd = mIndexOffset;
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+        seek(0);
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Positions the reader so that the next call to {@link #next} returns the record at the given
+     * index.
+     */
+    public void seek(long index) {
+        if (index < 0 || index > mRecordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + mRecordCount);
+        }
+        long keyframe = index / mKeyframeInterval;
+        mDecoder.reset();
+        if (index == mRecordCount && index % mKeyframeInterval == 0) {
+            mBuffer.position(mRecordsEnd);
+        } else {
+            mBuffer.position((int) mBuffer.getLong(mIndexOffset + (int) keyframe * 8));
+        }
+        mNextIndex = keyframe * mKeyframeInterval;
+        while (mNextIndex < index) {
+            mDecoder.decode(mBuffer, mSkipped);
+            mNextIndex++;
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false at the end of the file
+     */
+    public boolean next(FaceFrame out) {
+        if (mNextIndex >= mRecordCount) {
+            return false;
+        }
+        mDecoder.decode(mBuffer, out);
+        mNextIndex++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
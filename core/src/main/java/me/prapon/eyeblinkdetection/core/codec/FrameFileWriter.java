@@ -0,0 +1,97 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+
+/**
+ * Writes face frames to a file in the {@link FrameFormat}, followed by a keyframe index so that
+ * {@link FrameFileReader} can jump to any frame.  Records are batched in a buffer and written in
+ * large chunks.
+ */
+public class FrameFileWriter implements Closeable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final FrameEncoder mEncoder;
+
+    private long mOffset;
+    private long mRecordCount;
+    private long[] mKeyframeOffsets = new long[256];
+    private int mKeyframeCount;
+
+    public FrameFileWriter(File file) throws IOException {
+        this(file, FrameFormat.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public FrameFileWriter(File file, int keyframeInterval) throws IOException {
+        mEncoder = new FrameEncoder(keyframeInterval);
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+
+        mBuffer.putInt(FrameFormat.MAGIC)
+                .put((byte) FrameFormat.VERSION)
+                .put((byte) 0)
+                .putShort((short) keyframeInterval);
+    }
+
+    public void write(FaceFrame face) throws IOException {
+        if (mBuffer.remaining() < FrameFormat.MAX_RECORD_BYTES) {
+            flush();
+        }
+        if (mEncoder.isNextKeyframe()) {
+            if (mKeyframeCount == mKeyframeOffsets.length) {
+                mKeyframeOffsets = Arrays.copyOf(mKeyframeOffsets, mKeyframeCount * 2);
+            }
+            mKeyframeOffsets[mKeyframeCount++] = mOffset + mBuffer.position();
+        }
+        mEncoder.encode(face, mBuffer);
+        mRecordCount++;
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Writes the keyframe index and footer, and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = mOffset + mBuffer.position();
+            for (int i = 0; i < mKeyframeCount; i++) {
+                if (mBuffer.remaining() < 8) {
+                    flush();
+                }
+                mBuffer.putLong(mKeyframeOffsets[i]);
+            }
+            if (mBuffer.remaining() < FrameFormat.FOOTER_BYTES) {
+                flush();
+            }
+            mBuffer.putLong(indexOffset)
+                    .putLong(mRecordCount)
+                    .putInt(FrameFormat.MAGIC);
+            flush();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mOffset += mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+}
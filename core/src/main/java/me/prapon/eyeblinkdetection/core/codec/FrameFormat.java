@@ -0,0 +1,71 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Constants of the binary face frame format, version 1.<p>
+ *
+ * A file starts with a header: the magic "EBFS", a version byte, a reserved byte and the keyframe
+ * interval as an unsigned short.  Records follow, one per face per frame:
+ *
+ * <pre>
+ * flags:1                 KEYFRAME, MASK_CHANGED
+ * timestamp delta         signed varint, against the previous record (absolute on keyframes)
+ * face id                 unsigned varint
+ * landmark mask           unsigned varint, only if MASK_CHANGED
+ * left top width height   signed varint deltas, 1/16 pixel
+ * eulerY eulerZ           signed varint deltas, 1/100 degree
+ * left/right eye open     signed varint deltas, 1/1000, biased by one so zero means uncomputed
+ * x y per landmark        signed varint deltas, 1/16 pixel, in landmark type order
+ * </pre>
+ *
+ * Deltas are taken against the last record with the same face id.  A keyframe starts from clean
+ * state, so decoding can begin at any keyframe; files written by {@link FrameFileWriter} end with
+ * an index of keyframe offsets followed by a footer: index offset (8 bytes), record count
+ * (8 bytes) and the magic again.
+ */
+public final class FrameFormat {
+    public static final int VERSION = 1;
+    public static final String FILE_SUFFIX = ".ebf";
+
+    static final int MAGIC = 0x45424653;
+    static final int HEADER_BYTES = 8;
+    static final int FOOTER_BYTES = 20;
+
+    static final int FLAG_KEYFRAME = 1;
+    static final int FLAG_MASK_CHANGED = 2;
+
+    static final float POSITION_SCALE = 16f;
+    static final float ANGLE_SCALE = 100f;
+    static final float PROBABILITY_SCALE = 1000f;
+
+    // Field order of the quantized values.
+    static final int LEFT = 0;
+    static final int TOP = 1;
+    static final int WIDTH = 2;
+    static final int HEIGHT = 3;
+    static final int EULER_Y = 4;
+    static final int EULER_Z = 5;
+    static final int LEFT_EYE_OPEN = 6;
+    static final int RIGHT_EYE_OPEN = 7;
+    static final int FIXED_FIELD_COUNT = 8;
+    static final int FIELD_COUNT = FIXED_FIELD_COUNT + LandmarkTypes.COUNT * 2;
+
+    /**
+     * An upper bound on the encoded size of one record.
+     */
+    public static final int MAX_RECORD_BYTES = 1 + 10 + 5 + 5 + FIELD_COUNT * 5;
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+
+    private FrameFormat() {
+    }
+
+    static int quantizeProbability(float probability) {
+        return probability < 0 ? 0 : Math.round(probability * PROBABILITY_SCALE) + 1;
+    }
+
+    static float dequantizeProbability(int quantized) {
+        return quantized == 0 ? -1.0f : (quantized - 1) / PROBABILITY_SCALE;
+    }
+}
@@ -0,0 +1,46 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable length integers, with zigzag encoding for signed values so that small negative
+ * deltas stay small.
+ */
+public final class Varints {
+
+    private Varints() {
+    }
+
+    public static void putUnsigned(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static long getUnsigned(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed varint");
+            }
+        }
+    }
+
+    public static void putSigned(ByteBuffer out, long value) {
+        putUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getSigned(ByteBuffer in) {
+        long raw = getUnsigned(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
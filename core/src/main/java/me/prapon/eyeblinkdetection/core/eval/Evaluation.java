@@ -0,0 +1,178 @@
+package me.prapon.eyeblinkdetection.core.eval;
+
+import java.util.List;
+import java.util.Locale;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+import me.prapon.eyeblinkdetection.core.SessionReport;
+
+/**
+ * Scores the events the tracker reported against the labeled ones, per event type: how many of
+ * the reported events were labeled (precision), how many of the labeled events were reported
+ * (recall), and how long after the labeled onset they were reported.<p>
+ *
+ * An event matches a label of its type, and of its face if the label names one, when it falls
+ * between the label's start and end, widened by a tolerance on either side.  Each label matches at
+ * most one event, the earliest, so repeated events for one blink count against precision.  Only
+ * the types given at construction are scored, and label files must label every event of those
+ * types.  Scores of several sessions add up.  Not thread safe.
+ */
+public final class Evaluation {
+    private final int[] mTypes;
+    private final long[] mTruePositives = new long[FaceEvents.LONG_BLINK + 1];
+    private final long[] mFalsePositives = new long[FaceEvents.LONG_BLINK + 1];
+    private final long[] mFalseNegatives = new long[FaceEvents.LONG_BLINK + 1];
+    // Per type, the time from the labeled onset to the matching event.
+    private final LatencyHistogram[] mLatencies = new LatencyHistogram[FaceEvents.LONG_BLINK + 1];
+
+    /**
+     * @param types the {@link FaceEvents} types to score
+     */
+    public Evaluation(int... types) {
+        mTypes = types.clone();
+        for (int type : mTypes) {
+            if (type < FaceEvents.EYE || type > FaceEvents.LONG_BLINK) {
+                throw new IllegalArgumentException("Unknown event type " + type);
+            }
+            mLatencies[type] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Scores the events of one session.
+     *
+     * @param events      the session's events in time order, as {@link SessionReport#getEvents}
+     * @param toleranceMs how far outside a label an event may fall and still match it
+     */
+    public void score(GroundTruth truth, List<SessionReport.Event> events, long toleranceMs) {
+        List<GroundTruth.Label> labels = truth.getLabels();
+        boolean[] matched = new boolean[labels.size()];
+        for (SessionReport.Event event : events) {
+            if (!isScored(event.type)) {
+                continue;
+            }
+            int match = findLabel(labels, matched, event, toleranceMs);
+            if (match < 0) {
+                mFalsePositives[event.type]++;
+                continue;
+            }
+            matched[match] = true;
+            mTruePositives[event.type]++;
+            long latencyMs = event.timestampMs - labels.get(match).startMs;
+            mLatencies[event.type].recordMicros(latencyMs * 1000);
+        }
+        for (int i = 0; i < labels.size(); i++) {
+            int type = labels.get(i).type;
+            if (!matched[i] && isScored(type)) {
+                mFalseNegatives[type]++;
+            }
+        }
+    }
+
+    public void add(Evaluation other) {
+        for (int type : mTypes) {
+            mTruePositives[type] += other.mTruePositives[type];
+            mFalsePositives[type] += other.mFalsePositives[type];
+            mFalseNegatives[type] += other.mFalseNegatives[type];
+            if (other.mLatencies[type] != null) {
+                mLatencies[type].add(other.mLatencies[type]);
+            }
+        }
+    }
+
+    public int[] getTypes() {
+        return mTypes.clone();
+    }
+
+    public long getTruePositives(int type) {
+        return mTruePositives[type];
+    }
+
+    public long getFalsePositives(int type) {
+        return mFalsePositives[type];
+    }
+
+    public long getFalseNegatives(int type) {
+        return mFalseNegatives[type];
+    }
+
+    /**
+     * The fraction of reported events which were labeled, or 1 if none were reported.
+     */
+    public float getPrecision(int type) {
+        return ratio(mTruePositives[type], mTruePositives[type] + mFalsePositives[type]);
+    }
+
+    /**
+     * The fraction of labeled events which were reported, or 1 if none were labeled.
+     */
+    public float getRecall(int type) {
+        return ratio(mTruePositives[type], mTruePositives[type] + mFalseNegatives[type]);
+    }
+
+    /**
+     * The F1 score over all scored types together, which ranks configurations.
+     */
+    public float getF1() {
+        long truePositives = 0;
+        long errors = 0;
+        for (int type : mTypes) {
+            truePositives += mTruePositives[type];
+            errors += mFalsePositives[type] + mFalseNegatives[type];
+        }
+        return ratio(2 * truePositives, 2 * truePositives + errors);
+    }
+
+    /**
+     * The time from the labeled onset to the reported event, for matched events of the type.
+     * Events reported before the onset count as zero.
+     */
+    public LatencyHistogram getLatency(int type) {
+        return mLatencies[type];
+    }
+
+    /**
+     * Formats the scores of one type: counts, precision, recall, and latency percentiles.
+     */
+    public String toString(int type) {
+        LatencyHistogram latency = mLatencies[type];
+        return String.format(Locale.US, "%s tp=%d fp=%d fn=%d p=%.3f r=%.3f latency p50=%d p90=%d"
+                        + " p99=%d ms", FaceEvents.name(type), mTruePositives[type],
+                mFalsePositives[type], mFalseNegatives[type], getPrecision(type), getRecall(type),
+                latency.getPercentileMicros(0.5) / 1000, latency.getPercentileMicros(0.9) / 1000,
+                latency.getPercentileMicros(0.99) / 1000);
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private boolean isScored(int type) {
+        return type >= 0 && type < mLatencies.length && mLatencies[type] != null;
+    }
+
+    /**
+     * Returns the earliest unmatched label the event falls into, or -1.
+     */
+    private static int findLabel(List<GroundTruth.Label> labels, boolean[] matched,
+                                 SessionReport.Event event, long toleranceMs) {
+        for (int i = 0; i < labels.size(); i++) {
+            GroundTruth.Label label = labels.get(i);
+            if (label.startMs - toleranceMs > event.timestampMs) {
+                // Labels are in order of their start, so none of the rest can match.
+                break;
+            }
+            if (!matched[i] && label.type == event.type
+                    && event.timestampMs <= label.endMs + toleranceMs
+                    && (label.faceId == GroundTruth.ANY_FACE || label.faceId == event.faceId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static float ratio(long numerator, long denominator) {
+        return denominator == 0 ? 1 : numerator / (float) denominator;
+    }
+}
@@ -0,0 +1,113 @@
+package me.prapon.eyeblinkdetection.core.eval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+
+/**
+ * The hand labeled events of one recorded session, which the tracker's events are scored against.
+ * A label file holds one event per line:
+ *
+ * <pre>
+ * type,startMs,endMs[,faceId]
+ * </pre>
+ *
+ * where type is a {@link FaceEvents#name} such as {@code EYE} or {@code LEFT_FACE}, and the times
+ * are those of the trace, spanning the blink or turn from its onset.  Without a face id, the label
+ * matches an event of any face.  Blank lines and lines starting with '#' are ignored.
+ */
+public final class GroundTruth {
+    public static final String FILE_SUFFIX = ".labels";
+    public static final int ANY_FACE = -1;
+
+    private final List<Label> mLabels;
+
+    /**
+     * One labeled event.
+     */
+    public static final class Label {
+        public final int type;
+        public final long startMs;
+        public final long endMs;
+        public final int faceId;
+
+        public Label(int type, long startMs, long endMs, int faceId) {
+            this.type = type;
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.faceId = faceId;
+        }
+    }
+
+    public GroundTruth(List<Label> labels) {
+        List<Label> sorted = new ArrayList<>(labels);
+        Collections.sort(sorted, (a, b) -> Long.compare(a.startMs, b.startMs));
+        mLabels = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * The labels in order of their start.
+     */
+    public List<Label> getLabels() {
+        return mLabels;
+    }
+
+    /**
+     * Reads a label file.
+     *
+     * @throws IOException if reading fails or a line is malformed
+     */
+    public static GroundTruth read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        List<Label> labels = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3 || fields.length > 4) {
+                throw new IOException("Line " + lineNumber + ": expected 3 or 4 fields but found "
+                        + fields.length);
+            }
+            int type = typeOf(fields[0].trim());
+            if (type < 0) {
+                throw new IOException("Line " + lineNumber + ": unknown event " + fields[0]);
+            }
+            try {
+                long startMs = Long.parseLong(fields[1].trim());
+                long endMs = Long.parseLong(fields[2].trim());
+                int faceId = fields.length == 4 ? Integer.parseInt(fields[3].trim()) : ANY_FACE;
+                if (endMs < startMs) {
+                    throw new IOException("Line " + lineNumber + ": ends before it starts");
+                }
+                labels.add(new Label(type, startMs, endMs, faceId));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return new GroundTruth(labels);
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private static int typeOf(String name) {
+        for (int type = FaceEvents.EYE; type <= FaceEvents.LONG_BLINK; type++) {
+            if (FaceEvents.name(type).equals(name)) {
+                return type;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,392 @@
+package me.prapon.eyeblinkdetection.core.eventlog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.prapon.eyeblinkdetection.core.codec.Varints;
+
+/**
+ * An append-only store of typed events, e.g. blinks, gestures and head turn captures, kept in a
+ * directory of segment files in the {@link EventLogFormat}.<p>
+ *
+ * Appends are batched in memory and written to the newest segment when the batch is full or on
+ * {@link #flush}; a new segment is started once the newest one reaches the segment size.  Each
+ * segment keeps a sparse index of one timestamp per {@link EventLogFormat#INDEX_INTERVAL} events,
+ * so a time range query reads only the segments which overlap the range, from the index point
+ * before its start, and never holds more than the index in memory.  Queries run outside the log's
+ * lock on a read-only mapping of the segments, so a long query does not hold up appends.<p>
+ *
+ * {@link #compact} drops events before a retention time and merges the remaining sealed segments
+ * into as few full segments as possible.<p>
+ *
+ * Events are expected in time order.  A timestamp before the previous event's, e.g. after the
+ * wall clock was set back, is recorded as the previous event's timestamp so that the index stays
+ * ordered.  Methods are thread safe.
+ */
+public final class EventLog implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+
+    /** A type mask which matches all event types. */
+    public static final int ALL_TYPES = -1;
+
+    /** The most buckets {@link #countPerBucket} returns, e.g. a year of minutes. */
+    public static final int MAX_BUCKETS = 1 << 20;
+
+    /**
+     * Receives the events of a query, in time order.
+     */
+    public interface Visitor {
+        void onEvent(long timestampMs, int type, int faceId, int value);
+    }
+
+    private final File mDirectory;
+    private final int mSegmentBytes;
+
+    // Guarded by this.  The last segment is the one being appended to.
+    private final List<Segment> mSegments = new ArrayList<>();
+    private SegmentWriter mWriter;
+    private long mLastMs = Long.MIN_VALUE;
+    private boolean mClosed;
+
+    public EventLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if needed.  A segment left unsealed, e.g.
+     * by a crash, is recovered up to its last complete event and appended to.
+     */
+    public EventLog(File directory, int segmentBytes) throws IOException {
+        if (segmentBytes < EventLogFormat.HEADER_BYTES + EventLogFormat.MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentBytes);
+        }
+        mDirectory = directory;
+        mSegmentBytes = segmentBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create event log directory: " + directory);
+        }
+        loadSegments();
+    }
+
+    /**
+     * Returns the bit of an event type in a type mask.
+     */
+    public static int typeBit(int type) {
+        return 1 << type;
+    }
+
+    /**
+     * Appends an event.  It is visible to queries right away, and written to its segment file with
+     * the batch it belongs to.
+     *
+     * @param type  an event type, from 0 to 31
+     * @param value a value of the event, e.g. the face's blink count
+     */
+    public synchronized void append(long timestampMs, int type, int faceId, int value)
+            throws IOException {
+        if (type < 0 || type > EventLogFormat.MAX_TYPE) {
+            throw new IllegalArgumentException("Event type out of range: " + type);
+        }
+        checkOpen();
+        if (mWriter.size() + EventLogFormat.MAX_RECORD_BYTES > mSegmentBytes) {
+            mWriter.seal();
+            mWriter = new SegmentWriter(newSegment());
+        }
+        timestampMs = Math.max(timestampMs, mLastMs);
+        mWriter.append(timestampMs, type, faceId, value);
+        mLastMs = timestampMs;
+    }
+
+    /**
+     * Writes the batched events to the newest segment file.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        mWriter.flush();
+    }
+
+    /**
+     * Visits the events from {@code fromMs} inclusive to {@code toMs} exclusive whose type is in
+     * the type mask, in time order.
+     */
+    public void query(long fromMs, long toMs, int typeMask, Visitor visitor) throws IOException {
+        List<ByteBuffer> views = new ArrayList<>();
+        synchronized (this) {
+            checkOpen();
+            mWriter.flush();
+            for (Segment segment : mSegments) {
+                if (segment.overlaps(fromMs, toMs)) {
+                    views.add(segment.view(fromMs));
+                }
+            }
+        }
+        for (ByteBuffer view : views) {
+            if (!scan(view, fromMs, toMs, typeMask, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts the events in a time range whose type is in the type mask.
+     */
+    public long count(long fromMs, long toMs, int typeMask) throws IOException {
+        long[] count = new long[1];
+        query(fromMs, toMs, typeMask, (timestampMs, type, faceId, value) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Counts the events in consecutive buckets of a time range, e.g. blinks per minute over the
+     * last hour.  The last bucket may be partial.
+     *
+     * @throws IllegalArgumentException if the range is empty or reversed, or would take more than
+     *                                  {@link #MAX_BUCKETS} buckets
+     */
+    public long[] countPerBucket(long fromMs, long toMs, long bucketMs, int typeMask)
+            throws IOException {
+        // The span overflows to negative for ranges longer than Long.MAX_VALUE, and the count is
+        // rounded up after dividing so that it cannot overflow itself.
+        long spanMs = toMs - fromMs;
+        if (bucketMs <= 0 || toMs < fromMs || spanMs < 0) {
+            throw new IllegalArgumentException("Bad buckets: " + fromMs + ".." + toMs + " by "
+                    + bucketMs);
+        }
+        long buckets = spanMs / bucketMs + (spanMs % bucketMs != 0 ? 1 : 0);
+        if (buckets > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Too many buckets: " + buckets);
+        }
+        long[] counts = new long[(int) buckets];
+        query(fromMs, toMs, typeMask,
+                (timestampMs, type, faceId, value) -> counts[(int) ((timestampMs - fromMs)
+                        / bucketMs)]++);
+        return counts;
+    }
+
+    /**
+     * Drops the events before {@code retainFromMs} and merges the sealed segments, so that old
+     * sessions do not leave many small files behind.  The segment being appended to is not
+     * touched.<p>
+     *
+     * Merged segments replace the old ones file by file, and the old ones left over are deleted
+     * last, so a crash part way can leave some events duplicated but never loses one.
+     *
+     * @return the number of events dropped
+     */
+    public synchronized long compact(long retainFromMs) throws IOException {
+        checkOpen();
+        List<Segment> inputs = new ArrayList<>(mSegments.subList(0, mSegments.size() - 1));
+        if (inputs.isEmpty()) {
+            return 0;
+        }
+        long before = 0;
+        for (Segment input : inputs) {
+            before += input.recordCount;
+        }
+
+        // Write the merged segments to temporary files.
+        Merger merger = new Merger();
+        for (Segment input : inputs) {
+            if (input.overlaps(retainFromMs, Long.MAX_VALUE)) {
+                scan(input.view(retainFromMs), retainFromMs, Long.MAX_VALUE, ALL_TYPES, merger);
+                merger.checkFailure();
+            }
+        }
+        List<Segment> outputs = merger.finish();
+        if (outputs.size() > inputs.size()) {
+            // Only possible if nothing was dropped and the inputs were already full, in which case
+            // there is nothing to gain.
+            for (Segment output : outputs) {
+                output.file.delete();
+            }
+            return 0;
+        }
+
+        // Each output takes the place of an input, in order.
+        long after = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            File target = inputs.get(i).file;
+            if (!outputs.get(i).file.renameTo(target)) {
+                throw new IOException("Cannot replace event segment: " + target);
+            }
+            after += outputs.get(i).recordCount;
+        }
+        for (int i = outputs.size(); i < inputs.size(); i++) {
+            if (!inputs.get(i).file.delete()) {
+                throw new IOException("Cannot delete event segment: " + inputs.get(i).file);
+            }
+        }
+
+        Segment active = mSegments.get(mSegments.size() - 1);
+        mSegments.clear();
+        for (int i = 0; i < outputs.size(); i++) {
+            mSegments.add(Segment.load(inputs.get(i).file, inputs.get(i).sequence));
+        }
+        mSegments.add(active);
+        return before - after;
+    }
+
+    public synchronized long getEventCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            count += segment.recordCount;
+        }
+        return count + mWriter.getPendingCount();
+    }
+
+    public synchronized int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    /**
+     * Seals the newest segment and closes the log.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        Segment active = mWriter.getSegment();
+        if (active.recordCount == 0 && mWriter.size() == active.dataEnd) {
+            // Nothing was appended to it; do not leave an empty segment behind.
+            mWriter.close();
+            if (!active.file.delete()) {
+                throw new IOException("Cannot delete empty event segment: " + active.file);
+            }
+        } else {
+            mWriter.seal();
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Event log is closed");
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list event log directory: " + mDirectory);
+        }
+        List<Integer> sequences = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                // Left over from a compaction which did not finish.
+                file.delete();
+            } else if (name.endsWith(EventLogFormat.FILE_SUFFIX)) {
+                try {
+                    sequences.add(Integer.parseInt(name.substring(0,
+                            name.length() - EventLogFormat.FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment.
+                }
+            }
+        }
+        sequences.sort(null);
+        for (int sequence : sequences) {
+            mSegments.add(Segment.load(new File(mDirectory, EventLogFormat.fileName(sequence)),
+                    sequence));
+        }
+
+        for (Segment segment : mSegments) {
+            if (segment.recordCount > 0) {
+                mLastMs = Math.max(mLastMs, segment.lastMs);
+            }
+        }
+        Segment last = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (last == null || last.sealed) {
+            last = newSegment();
+        }
+        mWriter = new SegmentWriter(last);
+    }
+
+    private Segment newSegment() {
+        int sequence = mSegments.isEmpty() ? 0 : mSegments.get(mSegments.size() - 1).sequence + 1;
+        Segment segment = new Segment(new File(mDirectory, EventLogFormat.fileName(sequence)),
+                sequence);
+        mSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Appends the events it visits to temporary segments of the full segment size.
+     */
+    private final class Merger implements Visitor {
+        private final List<Segment> mOutputs = new ArrayList<>();
+        private SegmentWriter mOutput;
+        private IOException mFailure;
+
+        @Override
+        public void onEvent(long timestampMs, int type, int faceId, int value) {
+            if (mFailure != null) {
+                return;
+            }
+            try {
+                if (mOutput == null
+                        || mOutput.size() + EventLogFormat.MAX_RECORD_BYTES > mSegmentBytes) {
+                    if (mOutput != null) {
+                        mOutput.seal();
+                    }
+                    Segment output = new Segment(
+                            new File(mDirectory, "compact-" + mOutputs.size() + ".tmp"), -1);
+                    mOutputs.add(output);
+                    mOutput = new SegmentWriter(output);
+                }
+                mOutput.append(timestampMs, type, faceId, value);
+            } catch (IOException e) {
+                mFailure = e;
+            }
+        }
+
+        void checkFailure() throws IOException {
+            if (mFailure != null) {
+                throw mFailure;
+            }
+        }
+
+        List<Segment> finish() throws IOException {
+            checkFailure();
+            if (mOutput != null) {
+                mOutput.seal();
+            }
+            return mOutputs;
+        }
+    }
+
+    /**
+     * Decodes records from an index point on, visiting those in range.
+     *
+     * @return false once a record at or after {@code toMs} was reached
+     */
+    private static boolean scan(ByteBuffer view, long fromMs, long toMs, int typeMask,
+                                Visitor visitor) {
+        // Views start at an index point, and every INDEX_INTERVAL records after it is another.
+        long previousMs = 0;
+        for (long n = 0; view.hasRemaining(); n++) {
+            long delta = Varints.getUnsigned(view);
+            long timestampMs = n % EventLogFormat.INDEX_INTERVAL == 0 ? delta : previousMs + delta;
+            int type = view.get();
+            int faceId = (int) Varints.getSigned(view);
+            int value = (int) Varints.getSigned(view);
+            if (timestampMs >= toMs) {
+                return false;
+            }
+            if (timestampMs >= fromMs && (typeMask & (1 << type)) != 0) {
+                visitor.onEvent(timestampMs, type, faceId, value);
+            }
+            previousMs = timestampMs;
+        }
+        return true;
+    }
+}
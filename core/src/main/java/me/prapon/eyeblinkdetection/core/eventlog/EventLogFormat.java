@@ -0,0 +1,47 @@
+package me.prapon.eyeblinkdetection.core.eventlog;
+
+import java.util.Locale;
+
+/**
+ * Constants of the event log segment format, version 1.<p>
+ *
+ * A segment starts with a header: the magic "EBEL", a version byte and three reserved bytes.
+ * Records follow in time order:
+ *
+ * <pre>
+ * timestamp delta         unsigned varint, against the previous record (absolute on index points)
+ * type                    one byte, below 32
+ * face id                 signed varint
+ * value                   signed varint
+ * </pre>
+ *
+ * Every {@link #INDEX_INTERVAL}th record is an index point, which can be decoded without the
+ * records before it.  A sealed segment ends with its sparse index, one entry per index point
+ * (timestamp, 8 bytes, and offset, 4 bytes), and a footer: index offset (4 bytes), index entries
+ * (4 bytes), record count, first and last timestamp (8 bytes each) and the magic again.  The
+ * segment being appended to has no index or footer yet; its index is rebuilt by scanning it.
+ */
+final class EventLogFormat {
+    static final int VERSION = 1;
+    static final String FILE_SUFFIX = ".evl";
+
+    static final int MAGIC = 0x4542454c;
+    static final int HEADER_BYTES = 8;
+    static final int INDEX_ENTRY_BYTES = 12;
+    static final int FOOTER_BYTES = 36;
+
+    static final int INDEX_INTERVAL = 256;
+
+    // An upper bound on the encoded size of one record.
+    static final int MAX_RECORD_BYTES = 10 + 1 + 5 + 5;
+
+    // Event types must fit a type mask.
+    static final int MAX_TYPE = 31;
+
+    private EventLogFormat() {
+    }
+
+    static String fileName(int sequence) {
+        return String.format(Locale.ROOT, "%08d%s", sequence, FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,188 @@
+package me.prapon.eyeblinkdetection.core.eventlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import me.prapon.eyeblinkdetection.core.codec.Varints;
+
+/**
+ * One segment file of an {@link EventLog}: its time range, record count and sparse index, and
+ * read access to its records.  The metadata of the segment being appended to is updated by its
+ * {@link SegmentWriter}; all access is guarded by the log.
+ */
+final class Segment {
+    final File file;
+    final int sequence;
+
+    long firstMs = Long.MAX_VALUE;
+    long lastMs = Long.MIN_VALUE;
+    long recordCount;
+    // End of the records written to the file so far.
+    int dataEnd = EventLogFormat.HEADER_BYTES;
+    boolean sealed;
+
+    // Index points, grown by copying so that views taken earlier stay valid.
+    long[] indexTimes = new long[16];
+    int[] indexOffsets = new int[16];
+    int indexCount;
+
+    private MappedByteBuffer mMapping;
+
+    Segment(File file, int sequence) {
+        this.file = file;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Loads a segment from its file.  A segment which was not sealed is scanned to rebuild its
+     * index, and a partly written record at its end is cut off.
+     */
+    static Segment load(File file, int sequence) throws IOException {
+        Segment segment = new Segment(file, sequence);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Event segment too large: " + file);
+            }
+            if (length < EventLogFormat.HEADER_BYTES) {
+                // Crashed before the header was written.
+                raf.setLength(0);
+                ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_BYTES);
+                SegmentWriter.putHeader(header);
+                header.flip();
+                raf.getChannel().write(header, 0);
+                return segment;
+            }
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != EventLogFormat.MAGIC) {
+                throw new IOException("Not an event segment: " + file);
+            }
+            int version = buffer.get(4);
+            if (version != EventLogFormat.VERSION) {
+                throw new IOException("Unsupported event segment version " + version + ": " + file);
+            }
+
+            if (length >= EventLogFormat.HEADER_BYTES + EventLogFormat.FOOTER_BYTES
+                    && buffer.getInt((int) length - 4) == EventLogFormat.MAGIC) {
+                segment.readFooter(buffer, (int) length);
+            } else {
+                segment.scan(buffer);
+                raf.setLength(segment.dataEnd);
+            }
+        }
+        return segment;
+    }
+
+    boolean overlaps(long fromMs, long toMs) {
+        return recordCount > 0 && firstMs < toMs && lastMs >= fromMs;
+    }
+
+    /**
+     * Returns the records written so far, positioned at the last index point at or before
+     * {@code fromMs}.  The returned buffer is independent of later appends.
+     */
+    ByteBuffer view(long fromMs) throws IOException {
+        if (mMapping == null || mMapping.capacity() < dataEnd) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                mMapping = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                        sealed ? raf.length() : dataEnd);
+            }
+        }
+        ByteBuffer view = mMapping.duplicate();
+        view.limit(dataEnd);
+        view.position(indexOffsets[Math.max(0, indexPointBefore(fromMs))]);
+        return view;
+    }
+
+    /**
+     * Records an index point for the record about to be written at the given offset.
+     */
+    void addIndexPoint(long timestampMs, int offset) {
+        if (indexCount == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+        }
+        indexTimes[indexCount] = timestampMs;
+        indexOffsets[indexCount] = offset;
+        indexCount++;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Returns the last index point whose timestamp is before {@code fromMs}, or -1.  Records with
+     * the same timestamp may straddle an index point, so a point exactly at {@code fromMs} is not
+     * early enough.
+     */
+    private int indexPointBefore(long fromMs) {
+        int low = 0;
+        int high = indexCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] < fromMs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void readFooter(ByteBuffer buffer, int length) {
+        int footer = length - EventLogFormat.FOOTER_BYTES;
+        int indexOffset = buffer.getInt(footer);
+        int entries = buffer.getInt(footer + 4);
+        recordCount = buffer.getLong(footer + 8);
+        firstMs = buffer.getLong(footer + 16);
+        lastMs = buffer.getLong(footer + 24);
+        dataEnd = indexOffset;
+        indexTimes = new long[Math.max(1, entries)];
+        indexOffsets = new int[Math.max(1, entries)];
+        for (int i = 0; i < entries; i++) {
+            int entry = indexOffset + i * EventLogFormat.INDEX_ENTRY_BYTES;
+            indexTimes[i] = buffer.getLong(entry);
+            indexOffsets[i] = buffer.getInt(entry + 8);
+        }
+        indexCount = entries;
+        sealed = true;
+    }
+
+    private void scan(ByteBuffer buffer) {
+        buffer.position(EventLogFormat.HEADER_BYTES);
+        long previousMs = 0;
+        while (buffer.hasRemaining()) {
+            int offset = buffer.position();
+            boolean indexPoint = recordCount % EventLogFormat.INDEX_INTERVAL == 0;
+            long timestampMs;
+            try {
+                timestampMs = (indexPoint ? 0 : previousMs) + Varints.getUnsigned(buffer);
+                int type = buffer.get();
+                Varints.getSigned(buffer);
+                Varints.getSigned(buffer);
+                if (type < 0 || type > EventLogFormat.MAX_TYPE || timestampMs < previousMs) {
+                    break;
+                }
+            } catch (BufferUnderflowException | IllegalStateException e) {
+                break;
+            }
+            if (indexPoint) {
+                addIndexPoint(timestampMs, offset);
+            }
+            firstMs = Math.min(firstMs, timestampMs);
+            lastMs = timestampMs;
+            previousMs = timestampMs;
+            recordCount++;
+            dataEnd = buffer.position();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.prapon.eyeblinkdetection.core.eventlog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import me.prapon.eyeblinkdetection.core.codec.Varints;
+
+/**
+ * Appends records to a segment, batching them in a buffer which is written in one go when full or
+ * on {@link #flush}.  Keeps the segment's metadata up to date as records are flushed.
+ */
+final class SegmentWriter implements Closeable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Segment mSegment;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+    // State of the records in the buffer, applied to the segment when they are flushed.
+    private long mPendingFirstMs = Long.MAX_VALUE;
+    private long mPendingLastMs;
+    private long mPendingCount;
+
+    /**
+     * Opens a segment for appending, after the records it already has.  A new segment gets its
+     * header.
+     */
+    SegmentWriter(Segment segment) throws IOException {
+        mSegment = segment;
+        mFile = new RandomAccessFile(segment.file, "rw");
+        mChannel = mFile.getChannel();
+        if (mFile.length() < EventLogFormat.HEADER_BYTES) {
+            putHeader(mBuffer);
+            mBuffer.flip();
+            mChannel.write(mBuffer, 0);
+            mBuffer.clear();
+            segment.dataEnd = EventLogFormat.HEADER_BYTES;
+        }
+        mPendingLastMs = segment.recordCount > 0 ? segment.lastMs : 0;
+    }
+
+    static void putHeader(ByteBuffer out) {
+        out.putInt(EventLogFormat.MAGIC)
+                .put((byte) EventLogFormat.VERSION)
+                .put((byte) 0)
+                .putShort((short) 0);
+    }
+
+    Segment getSegment() {
+        return mSegment;
+    }
+
+    /**
+     * Size of the segment including the records not yet flushed.
+     */
+    long size() {
+        return mSegment.dataEnd + mBuffer.position();
+    }
+
+    /**
+     * Number of records appended but not yet flushed.
+     */
+    long getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Appends a record.  The timestamp must not be before the previous record's.
+     */
+    void append(long timestampMs, int type, int faceId, int value) throws IOException {
+        if (mBuffer.remaining() < EventLogFormat.MAX_RECORD_BYTES) {
+            flush();
+        }
+        long count = mSegment.recordCount + mPendingCount;
+        if (count % EventLogFormat.INDEX_INTERVAL == 0) {
+            mSegment.addIndexPoint(timestampMs, (int) size());
+            Varints.putUnsigned(mBuffer, timestampMs);
+        } else {
+            Varints.putUnsigned(mBuffer, timestampMs - mPendingLastMs);
+        }
+        mBuffer.put((byte) type);
+        Varints.putSigned(mBuffer, faceId);
+        Varints.putSigned(mBuffer, value);
+
+        mPendingFirstMs = Math.min(mPendingFirstMs, timestampMs);
+        mPendingLastMs = timestampMs;
+        mPendingCount++;
+    }
+
+    /**
+     * Writes the buffered records to the file, without forcing them to the storage device.
+     */
+    void flush() throws IOException {
+        mBuffer.flip();
+        int position = mSegment.dataEnd;
+        while (mBuffer.hasRemaining()) {
+            position += mChannel.write(mBuffer, position);
+        }
+        mBuffer.clear();
+
+        mSegment.dataEnd = position;
+        if (mPendingCount > 0) {
+            mSegment.firstMs = Math.min(mSegment.firstMs, mPendingFirstMs);
+            mSegment.lastMs = mPendingLastMs;
+            mSegment.recordCount += mPendingCount;
+            mPendingFirstMs = Long.MAX_VALUE;
+            mPendingCount = 0;
+        }
+    }
+
+    /**
+     * Flushes, appends the index and footer, and forces the segment to the storage device.  The
+     * writer is closed afterwards.
+     */
+    void seal() throws IOException {
+        try {
+            flush();
+            Segment segment = mSegment;
+            ByteBuffer tail = ByteBuffer.allocate(segment.indexCount
+                    * EventLogFormat.INDEX_ENTRY_BYTES + EventLogFormat.FOOTER_BYTES);
+            for (int i = 0; i < segment.indexCount; i++) {
+                tail.putLong(segment.indexTimes[i]).putInt(segment.indexOffsets[i]);
+            }
+            tail.putInt(segment.dataEnd)
+                    .putInt(segment.indexCount)
+                    .putLong(segment.recordCount)
+                    .putLong(segment.firstMs)
+                    .putLong(segment.lastMs)
+                    .putInt(EventLogFormat.MAGIC);
+            tail.flip();
+            long position = segment.dataEnd;
+            while (tail.hasRemaining()) {
+                position += mChannel.write(tail, position);
+            }
+            mChannel.force(false);
+            segment.sealed = true;
+        } finally {
+            mFile.close();
+        }
+    }
+
+    /**
+     * Flushes and closes without sealing, so that appending can continue after a reopen.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mFile.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import java.util.Arrays;
+
+/**
+ * A bounded set of 64 bit hashes, such as those of {@link PerceptualHash}, which finds the hashes
+ * within a small Hamming distance of a query without comparing it against every entry.<p>
+ *
+ * The index is split the way of multi-index hashing: each hash is cut into eight bytes, and each
+ * byte position has its own table of chains from byte value to the entries with that byte.  Two
+ * hashes which differ in at most seven bits agree in at least one of the eight bytes, so following
+ * the query's eight chains finds every entry within {@link #MAX_DISTANCE}, and only the entries
+ * which share a byte with the query are compared in full.<p>
+ *
+ * The tables are primitive arrays allocated up front, and lookups do not allocate.  Once full, the
+ * oldest half of the entries is dropped and the chains rebuilt, which costs the same as the adds
+ * since the last rebuild, so adds take constant amortized time.  Not thread safe.
+ */
+public final class HashIndex {
+    /** The largest distance a lookup is exact for. */
+    public static final int MAX_DISTANCE = 7;
+
+    private static final int CHUNKS = 8;
+    private static final int CHUNK_VALUES = 256;
+    private static final int NONE = -1;
+
+    private final long[] mHashes;
+    // Per chunk and byte value, the newest entry with that byte, and per entry and chunk, the next
+    // older entry with the same byte, or NONE.
+    private final int[] mHeads = new int[CHUNKS * CHUNK_VALUES];
+    private final int[] mNext;
+    private int mSize;
+
+    /**
+     * @param capacity the most hashes kept; older ones are dropped in halves beyond that
+     */
+    public HashIndex(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        mHashes = new long[capacity];
+        mNext = new int[capacity * CHUNKS];
+        clear();
+    }
+
+    /**
+     * Returns the distance to the nearest hash within {@code maxDistance} of the given one, or -1
+     * if there is none.
+     *
+     * @param maxDistance at most {@link #MAX_DISTANCE}
+     */
+    public int findNearest(long hash, int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("maxDistance " + maxDistance);
+        }
+        int nearest = -1;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            for (int entry = mHeads[head(chunk, hash)]; entry != NONE;
+                 entry = mNext[entry * CHUNKS + chunk]) {
+                int distance = Long.bitCount(mHashes[entry] ^ hash);
+                if (distance <= maxDistance && (nearest < 0 || distance < nearest)) {
+                    if (distance == 0) {
+                        return 0;
+                    }
+                    nearest = distance;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Adds a hash, dropping the oldest half of the entries first if the index is full.
+     */
+    public void add(long hash) {
+        if (mSize == mHashes.length) {
+            int keep = mSize / 2;
+            System.arraycopy(mHashes, mSize - keep, mHashes, 0, keep);
+            clear();
+            for (int i = 0; i < keep; i++) {
+                link(mHashes[i]);
+            }
+        }
+        link(hash);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        Arrays.fill(mHeads, NONE);
+        mSize = 0;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void link(long hash) {
+        int entry = mSize++;
+        mHashes[entry] = hash;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int head = head(chunk, hash);
+            mNext[entry * CHUNKS + chunk] = mHeads[head];
+            mHeads[head] = entry;
+        }
+    }
+
+    private static int head(int chunk, long hash) {
+        return chunk * CHUNK_VALUES + (int) ((hash >>> (chunk * 8)) & 0xff);
+    }
+}
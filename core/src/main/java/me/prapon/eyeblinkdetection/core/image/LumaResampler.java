@@ -0,0 +1,69 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+/**
+ * Resamples a region of a luma plane to another size, e.g. to enlarge a small face so that a
+ * detector sees it at a size it handles well.
+ */
+public final class LumaResampler {
+    // Fixed point bits of the source coordinates.
+    private static final int SHIFT = 16;
+    private static final int ONE = 1 << SHIFT;
+
+    private LumaResampler() {
+    }
+
+    /**
+     * Scales a region of {@code src} to fill {@code dst} by bilinear interpolation, mapping the
+     * centers of the corner pixels of the region onto those of {@code dst}.
+     *
+     * @param src       the source plane, one byte per pixel
+     * @param srcWidth  the width of the source plane, which is also its row stride
+     * @param srcHeight the height of the source plane
+     * @param region    left, top, right, bottom of the region in source coordinates, exclusive of
+     *                  right and bottom; clamped to the plane
+     * @param dst       receives {@code dstWidth * dstHeight} pixels, row by row from index 0
+     * @return false if the region is empty, in which case {@code dst} is left untouched
+     */
+    public static boolean scale(byte[] src, int srcWidth, int srcHeight, int[] region,
+                                byte[] dst, int dstWidth, int dstHeight) {
+        int left = Math.max(0, region[0]);
+        int top = Math.max(0, region[1]);
+        int right = Math.min(srcWidth, region[2]);
+        int bottom = Math.min(srcHeight, region[3]);
+        if (right <= left || bottom <= top || dstWidth <= 0 || dstHeight <= 0) {
+            return false;
+        }
+
+        long stepX = dstWidth > 1 ? ((long) (right - left - 1) << SHIFT) / (dstWidth - 1) : 0;
+        long stepY = dstHeight > 1 ? ((long) (bottom - top - 1) << SHIFT) / (dstHeight - 1) : 0;
+        int lastX = right - 1;
+        int lastY = bottom - 1;
+        int out = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            long sourceY = ((long) top << SHIFT) + y * stepY;
+            int y0 = (int) (sourceY >> SHIFT);
+            int y1 = Math.min(y0 + 1, lastY);
+            int fy = (int) (sourceY & (ONE - 1));
+            int row0 = y0 * srcWidth;
+            int row1 = y1 * srcWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                long sourceX = ((long) left << SHIFT) + x * stepX;
+                int x0 = (int) (sourceX >> SHIFT);
+                int x1 = Math.min(x0 + 1, lastX);
+                int fx = (int) (sourceX & (ONE - 1));
+
+                // Interpolate each row with 8 fractional bits, then the two rows with 16.
+                int a = src[row0 + x0] & 0xff;
+                int b = src[row0 + x1] & 0xff;
+                int c = src[row1 + x0] & 0xff;
+                int d = src[row1 + x1] & 0xff;
+                int fx8 = fx >>> 8;
+                int upper = (a << 8) + (b - a) * fx8;
+                int lower = (c << 8) + (d - c) * fx8;
+                long value = ((long) upper << 8) + (long) (lower - upper) * (fy >>> 8);
+                dst[out++] = (byte) ((value + (1 << 15)) >> 16);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+/**
+ * Cheap quality scores computed directly on the luma plane of a camera frame, e.g. the Y plane at
+ * the start of an NV21 buffer, so that frames can be ranked as they arrive without decoding them.
+ */
+public final class LumaScores {
+    private LumaScores() {
+    }
+
+    /**
+     * Returns the mean squared gradient (Tenengrad) of the luma within the given region, sampling
+     * every {@code step}-th pixel in each direction.  Blurred frames, from motion or focus, have
+     * weaker edges and so a lower score.  Scores are only comparable between regions of similar
+     * content, e.g. the same face in consecutive frames.
+     *
+     * @param luma   the luma plane, one byte per pixel
+     * @param width  the width of the plane, which is also its row stride
+     * @param height the height of the plane
+     * @param region left, top, right, bottom of the region in plane coordinates; clamped to the
+     *               plane
+     */
+    public static float sharpness(byte[] luma, int width, int height, int[] region, int step) {
+        int left = Math.max(1, region[0]);
+        int top = Math.max(1, region[1]);
+        int right = Math.min(width - 1, region[2]);
+        int bottom = Math.min(height - 1, region[3]);
+        if (right <= left || bottom <= top || step <= 0) {
+            return 0;
+        }
+
+        long sum = 0;
+        int samples = 0;
+        for (int y = top; y < bottom; y += step) {
+            int row = y * width;
+            for (int x = left; x < right; x += step) {
+                int i = row + x;
+                int gx = (luma[i + 1] & 0xff) - (luma[i - 1] & 0xff);
+                int gy = (luma[i + width] & 0xff) - (luma[i - width] & 0xff);
+                sum += gx * gx + gy * gy;
+                samples++;
+            }
+        }
+        return samples == 0 ? 0 : sum / (float) samples;
+    }
+
+    /**
+     * Maps a region given in upright image coordinates, as detections are reported, back to the
+     * sensor coordinates of the unrotated frame data, in place.
+     *
+     * @param rotation     the number of quarter turns clockwise which make the sensor image
+     *                     upright, i.e. the frame's {@code ROTATION_*} value
+     * @param sensorWidth  the width of the frame data
+     * @param sensorHeight the height of the frame data
+     * @param region       left, top, right, bottom
+     */
+    public static void toSensorRegion(int rotation, int sensorWidth, int sensorHeight,
+                                      int[] region) {
+        int left = region[0];
+        int top = region[1];
+        int right = region[2];
+        int bottom = region[3];
+        switch (rotation & 3) {
+            case 1:
+                // Upright (u, v) = (H - y, x).
+                region[0] = top;
+                region[1] = sensorHeight - right;
+                region[2] = bottom;
+                region[3] = sensorHeight - left;
+                break;
+            case 2:
+                region[0] = sensorWidth - right;
+                region[1] = sensorHeight - bottom;
+                region[2] = sensorWidth - left;
+                region[3] = sensorHeight - top;
+                break;
+            case 3:
+                // Upright (u, v) = (y, W - x).
+                region[0] = sensorWidth - bottom;
+                region[1] = left;
+                region[2] = sensorWidth - top;
+                region[3] = right;
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides cheaply whether a camera frame differs enough from the last detected one to be worth
+ * detecting again.<p>
+ *
+ * When a frame is detected, the gate samples a coarse grid of the luma within the detected faces,
+ * widened by a margin, or the whole frame if there were none.  Each following frame is sampled at
+ * the same points and compared by the sum of absolute differences.  The change is that of the
+ * grid row which changed most, rather than the mean over the whole grid, so that a blink, which
+ * only touches the rows across the eyes, is not averaged away by the rest of a still face.<p>
+ *
+ * Frames are compared against the last detected frame rather than the previous one, so that slow
+ * drift adds up until it crosses the threshold.  However still the frames, one is let through once
+ * the refresh interval has passed since the last detection, to pick up what the sampled region
+ * misses, such as a face entering elsewhere in the frame.  Not thread safe.
+ */
+public final class MotionGate {
+    // Margin around the faces, as a fraction of their size, on each side.
+    private static final float MARGIN = 0.25f;
+
+    private final int mGridSize;
+    private final float mThreshold;
+    private final long mRefreshMs;
+
+    // Sample positions in the luma plane, and the samples of the last detected frame.
+    private final int[] mColumns;
+    private final int[] mRows;
+    private final byte[] mReference;
+    private boolean mHasReference;
+    private int mWidth;
+    private int mHeight;
+    private long mReferenceMs;
+    private float mLastChange;
+
+    /**
+     * @param gridSize  the number of samples along each side of the grid
+     * @param threshold the mean absolute luma difference along a grid row above which a frame
+     *                  counts as changed
+     * @param refreshMs the longest time a frame may go without detection
+     */
+    public MotionGate(int gridSize, float threshold, long refreshMs) {
+        if (gridSize < 2) {
+            throw new IllegalArgumentException("gridSize " + gridSize);
+        }
+        mGridSize = gridSize;
+        mThreshold = threshold;
+        mRefreshMs = refreshMs;
+        mColumns = new int[gridSize];
+        mRows = new int[gridSize];
+        mReference = new byte[gridSize * gridSize];
+    }
+
+    /**
+     * Returns whether the frame may reuse the detections of the last detected frame: it has the
+     * same size, came after it within the refresh interval, and no grid row changed by more than
+     * the threshold.  Frames read here are not remembered; detected frames must be passed to
+     * {@link #setReference}.
+     *
+     * @param luma   the luma plane, one byte per pixel from index 0, e.g. the start of an NV21
+     *               buffer; its position is ignored
+     * @param width  the width of the plane, which is also its row stride
+     * @param height the height of the plane
+     */
+    public boolean isUnchanged(ByteBuffer luma, int width, int height, long timestampMs) {
+        mLastChange = Float.NaN;
+        if (!mHasReference || width != mWidth || height != mHeight
+                || timestampMs < mReferenceMs || timestampMs - mReferenceMs >= mRefreshMs
+                || luma.limit() < width * height) {
+            return false;
+        }
+        float change = 0;
+        for (int row = 0; row < mGridSize; row++) {
+            int offset = mRows[row] * width;
+            int reference = row * mGridSize;
+            int sum = 0;
+            for (int column = 0; column < mGridSize; column++) {
+                int sample = luma.get(offset + mColumns[column]) & 0xff;
+                sum += Math.abs(sample - (mReference[reference + column] & 0xff));
+            }
+            change = Math.max(change, sum / (float) mGridSize);
+        }
+        mLastChange = change;
+        return change <= mThreshold;
+    }
+
+    /**
+     * Samples a detected frame as the reference for the following ones.
+     *
+     * @param region left, top, right, bottom of the detected faces in plane coordinates, or null to
+     *               sample the whole frame; widened by a margin and clamped to the plane
+     */
+    public void setReference(ByteBuffer luma, int width, int height, int[] region,
+                             long timestampMs) {
+        if (luma.limit() < width * height || width <= 0 || height <= 0) {
+            mHasReference = false;
+            return;
+        }
+        int left = 0;
+        int top = 0;
+        int right = width;
+        int bottom = height;
+        if (region != null) {
+            int marginX = (int) ((region[2] - region[0]) * MARGIN);
+            int marginY = (int) ((region[3] - region[1]) * MARGIN);
+            left = Math.max(0, region[0] - marginX);
+            top = Math.max(0, region[1] - marginY);
+            right = Math.min(width, region[2] + marginX);
+            bottom = Math.min(height, region[3] + marginY);
+            if (right <= left || bottom <= top) {
+                left = 0;
+                top = 0;
+                right = width;
+                bottom = height;
+            }
+        }
+        spread(left, right, mColumns);
+        spread(top, bottom, mRows);
+        for (int row = 0; row < mGridSize; row++) {
+            int offset = mRows[row] * width;
+            for (int column = 0; column < mGridSize; column++) {
+                mReference[row * mGridSize + column] = luma.get(offset + mColumns[column]);
+            }
+        }
+        mWidth = width;
+        mHeight = height;
+        mReferenceMs = timestampMs;
+        mHasReference = true;
+    }
+
+    /**
+     * Forgets the reference, so that the next frame is detected, e.g. after the detector changed.
+     */
+    public void invalidate() {
+        mHasReference = false;
+    }
+
+    /**
+     * The change measured by the last call to {@link #isUnchanged}, or NaN if it let the frame
+     * through without comparing it.
+     */
+    public float getLastChange() {
+        return mLastChange;
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Spreads the grid positions evenly over [start, end), at the centers of equal cells.
+     */
+    private void spread(int start, int end, int[] out) {
+        int length = end - start;
+        for (int i = 0; i < mGridSize; i++) {
+            out[i] = start + (int) ((i + 0.5f) * length / mGridSize);
+        }
+    }
+}
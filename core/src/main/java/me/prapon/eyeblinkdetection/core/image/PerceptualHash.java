@@ -0,0 +1,93 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+/**
+ * A 64 bit difference hash (dHash) of a region of a luma plane, so that near identical images can
+ * be found by the Hamming distance between their hashes without decoding or comparing pixels.<p>
+ *
+ * The region is shrunk to a grid of 9 by 8 cells, each the mean of its pixels, and each bit tells
+ * whether a cell is darker than its right neighbour by more than a luma level, so that noise in
+ * flat areas does not flip bits at random.  The hash thus follows the coarse gradients
+ * of the image and ignores uniform changes of brightness and contrast, sensor noise, and the fine
+ * detail which differs between consecutive frames of a still scene.  Frames of the same scene
+ * typically hash within a few bits of each other, and different scenes about half the bits apart.
+ */
+public final class PerceptualHash {
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+    // Pixels sampled per cell along each direction, at most; larger cells are subsampled.
+    private static final int CELL_SAMPLES = 8;
+    // Cell means are kept with 4 fractional bits; neighbours closer than one level compare equal.
+    private static final int FRACTION_BITS = 4;
+    private static final int MIN_STEP = 1 << FRACTION_BITS;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Returns the difference hash of a region.
+     *
+     * @param luma   the luma plane, one byte per pixel
+     * @param width  the width of the plane, which is also its row stride
+     * @param height the height of the plane
+     * @param region left, top, right, bottom of the region in plane coordinates, clamped to the
+     *               plane, or null for the whole plane.  A region smaller than the grid is
+     *               hashed as the whole plane.
+     * @param cells  scratch space for at least {@code 9 * 8} cell means, so that hashing does not
+     *               allocate
+     */
+    public static long dHash(byte[] luma, int width, int height, int[] region, int[] cells) {
+        int left = region != null ? Math.max(0, region[0]) : 0;
+        int top = region != null ? Math.max(0, region[1]) : 0;
+        int right = region != null ? Math.min(width, region[2]) : width;
+        int bottom = region != null ? Math.min(height, region[3]) : height;
+        if (right - left < COLUMNS || bottom - top < ROWS) {
+            left = 0;
+            top = 0;
+            right = width;
+            bottom = height;
+        }
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+
+        for (int row = 0; row < ROWS; row++) {
+            int y0 = top + row * regionHeight / ROWS;
+            int y1 = top + (row + 1) * regionHeight / ROWS;
+            int stepY = Math.max(1, (y1 - y0) / CELL_SAMPLES);
+            for (int column = 0; column < COLUMNS; column++) {
+                int x0 = left + column * regionWidth / COLUMNS;
+                int x1 = left + (column + 1) * regionWidth / COLUMNS;
+                int stepX = Math.max(1, (x1 - x0) / CELL_SAMPLES);
+                int sum = 0;
+                int samples = 0;
+                for (int y = y0; y < y1; y += stepY) {
+                    int offset = y * width;
+                    for (int x = x0; x < x1; x += stepX) {
+                        sum += luma[offset + x] & 0xff;
+                        samples++;
+                    }
+                }
+                cells[row * COLUMNS + column] = samples == 0 ? 0 : (sum << FRACTION_BITS) / samples;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                int cell = row * COLUMNS + column;
+                hash = (hash << 1) | (cells[cell + 1] - cells[cell] > MIN_STEP ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of scratch cells {@link #dHash} needs.
+     */
+    public static int cellCount() {
+        return COLUMNS * ROWS;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
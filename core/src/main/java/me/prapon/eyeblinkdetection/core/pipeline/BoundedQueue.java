@@ -0,0 +1,111 @@
+package me.prapon.eyeblinkdetection.core.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue which any number of threads can offer to and poll from without locking.<p>
+ *
+ * This is Dmitry Vyukov's bounded MPMC queue: each slot has a sequence number which says whether
+ * it is ready to be written or read for a given position, so producers and consumers only contend
+ * on one compare-and-set of the position they advance.  Every item carries the time it was
+ * offered, kept in a parallel array so that measuring queue latency does not allocate.
+ */
+final class BoundedQueue<T> {
+    private final Object[] mItems;
+    private final long[] mOfferedNs;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mHead = new AtomicLong();
+
+    /**
+     * @param capacity the number of items the queue holds, rounded up to a power of two
+     */
+    BoundedQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mItems = new Object[size];
+        mOfferedNs = new long[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+        mMask = size - 1;
+    }
+
+    int capacity() {
+        return mItems.length;
+    }
+
+    /**
+     * Appends an item, unless the queue is full.
+     */
+    boolean offer(T item, long offeredNs) {
+        long position = mTail.get();
+        while (true) {
+            int index = (int) position & mMask;
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mItems[index] = item;
+                    mOfferedNs[index] = offeredNs;
+                    // Publishes the item to the consumer which reads this sequence.
+                    mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mTail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest item.
+     *
+     * @param offeredNs receives the time the item was offered at index 0, unless null
+     * @return the item, or null if the queue is empty or the oldest item is still being written
+     */
+    @SuppressWarnings("unchecked")
+    T poll(long[] offeredNs) {
+        long position = mHead.get();
+        while (true) {
+            int index = (int) position & mMask;
+            long difference = mSequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (mHead.compareAndSet(position, position + 1)) {
+                    T item = (T) mItems[index];
+                    mItems[index] = null;
+                    if (offeredNs != null) {
+                        offeredNs[0] = mOfferedNs[index];
+                    }
+                    // Frees the slot for the producer one lap ahead.
+                    mSequences.lazySet(index, position + mMask + 1);
+                    return item;
+                }
+                position = mHead.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = mHead.get();
+            }
+        }
+    }
+
+    /**
+     * The number of items in the queue, including ones still being written.  Only a hint while
+     * other threads offer or poll.
+     */
+    int size() {
+        long size = mTail.get() - mHead.get();
+        return (int) Math.max(0, Math.min(mItems.length, size));
+    }
+}
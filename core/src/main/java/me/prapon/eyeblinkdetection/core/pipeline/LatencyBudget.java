@@ -0,0 +1,195 @@
+package me.prapon.eyeblinkdetection.core.pipeline;
+
+import java.util.Locale;
+
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+
+/**
+ * Measures the latency of events along a path of hops, such as detection, tracking, dispatch and
+ * the UI, and compares it with a budget.<p>
+ *
+ * Each event is recorded as the times at which it passed the boundaries between hops, so that a
+ * miss can be put down to the hop which took the time.  The time of each hop and of the whole path
+ * is kept in a {@link LatencyHistogram}.<p>
+ *
+ * The budget also drives a degradation level, which the owner of the path uses to shed work while
+ * the budget is missed: {@link #LEVEL_FULL}, {@link #LEVEL_REDUCED} and {@link #LEVEL_MINIMAL}.
+ * The level goes up one step when {@link #MISS_LIMIT} of the last {@link #WINDOW} events missed
+ * the budget, and down one step when a full window of events all made it with
+ * {@link #RECOVER_FRACTION} of the budget to spare.  The window starts over at each change, so the
+ * level moves at most one step per window, and a path which only just makes the budget with the
+ * work shed does not flap between two levels.  Safe to use from any thread.
+ */
+public final class LatencyBudget {
+    /** Within budget: nothing needs to be shed. */
+    public static final int LEVEL_FULL = 0;
+    /** The budget was missed: optional work should be shed. */
+    public static final int LEVEL_REDUCED = 1;
+    /** The budget was missed even with optional work shed. */
+    public static final int LEVEL_MINIMAL = 2;
+
+    public static final int WINDOW = 8;
+    public static final int MISS_LIMIT = 3;
+    public static final float RECOVER_FRACTION = 0.75f;
+
+    private final String[] mHops;
+    private final LatencyHistogram[] mHopLatency;
+    private final LatencyHistogram mTotal = new LatencyHistogram();
+    private long mBudgetNs;
+
+    // Whether each of the last events missed the budget, in a ring, and whether it made it with
+    // room to spare.
+    private final boolean[] mMissed = new boolean[WINDOW];
+    private final boolean[] mSpare = new boolean[WINDOW];
+    private int mWindowCount;
+    private int mNext;
+    private int mLevel = LEVEL_FULL;
+    private long mMisses;
+    private long mLevelChanges;
+
+    /**
+     * @param budgetMs the longest acceptable time from the first to the last boundary
+     * @param hops     the names of the hops, in path order
+     */
+    public LatencyBudget(long budgetMs, String... hops) {
+        if (hops.length == 0) {
+            throw new IllegalArgumentException("No hops");
+        }
+        mHops = hops.clone();
+        mHopLatency = new LatencyHistogram[hops.length];
+        for (int i = 0; i < hops.length; i++) {
+            mHopLatency[i] = new LatencyHistogram();
+        }
+        setBudgetMs(budgetMs);
+    }
+
+    /**
+     * Changes the budget.  The window of recent events starts over, the level is kept.
+     */
+    public synchronized void setBudgetMs(long budgetMs) {
+        if (budgetMs <= 0) {
+            throw new IllegalArgumentException("Bad budget: " + budgetMs + " ms");
+        }
+        mBudgetNs = budgetMs * 1000000;
+        mWindowCount = 0;
+    }
+
+    public synchronized long getBudgetMs() {
+        return mBudgetNs / 1000000;
+    }
+
+    public int getHopCount() {
+        return mHops.length;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param boundariesNs the {@link System#nanoTime} at which the event entered the first hop,
+     *                     left each hop for the next, and left the last hop: one more than the
+     *                     number of hops.  A zero entry means the time is unknown, and the event
+     *                     is not recorded.
+     * @return the degradation level after the event
+     */
+    public synchronized int record(long[] boundariesNs) {
+        if (boundariesNs.length != mHops.length + 1) {
+            throw new IllegalArgumentException("Expected " + (mHops.length + 1)
+                    + " boundaries, got " + boundariesNs.length);
+        }
+        for (long boundary : boundariesNs) {
+            if (boundary == 0) {
+                return mLevel;
+            }
+        }
+        for (int i = 0; i < mHops.length; i++) {
+            mHopLatency[i].recordNanos(boundariesNs[i + 1] - boundariesNs[i]);
+        }
+        long totalNs = boundariesNs[mHops.length] - boundariesNs[0];
+        mTotal.recordNanos(totalNs);
+
+        boolean missed = totalNs > mBudgetNs;
+        if (missed) {
+            mMisses++;
+        }
+        mMissed[mNext] = missed;
+        mSpare[mNext] = totalNs <= mBudgetNs * RECOVER_FRACTION;
+        mNext = (mNext + 1) % WINDOW;
+        mWindowCount = Math.min(WINDOW, mWindowCount + 1);
+
+        int misses = 0;
+        int spare = 0;
+        for (int i = 0; i < mWindowCount; i++) {
+            int index = (mNext - 1 - i + WINDOW) % WINDOW;
+            misses += mMissed[index] ? 1 : 0;
+            spare += mSpare[index] ? 1 : 0;
+        }
+        if (misses >= MISS_LIMIT && mLevel < LEVEL_MINIMAL) {
+            changeLevel(mLevel + 1);
+        } else if (spare == WINDOW && mLevel > LEVEL_FULL) {
+            changeLevel(mLevel - 1);
+        }
+        return mLevel;
+    }
+
+    public synchronized int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Returns the number of events which missed the budget.
+     */
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getCount() {
+        return mTotal.getCount();
+    }
+
+    /**
+     * Returns the total latency at the given fraction of the recorded events, e.g. 0.9 for the 90th
+     * percentile, in microseconds.
+     */
+    public synchronized long getPercentileMicros(double fraction) {
+        return mTotal.getPercentileMicros(fraction);
+    }
+
+    /**
+     * Forgets all events and returns to {@link #LEVEL_FULL}.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram hop : mHopLatency) {
+            hop.reset();
+        }
+        mTotal.reset();
+        mWindowCount = 0;
+        mLevel = LEVEL_FULL;
+        mMisses = 0;
+        mLevelChanges = 0;
+    }
+
+    /**
+     * Formats the budget, misses and level, then the total and per hop latencies, one per line.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "budget %d ms, missed %d of %d, level %d after %d"
+                + " changes%n", getBudgetMs(), mMisses, mTotal.getCount(), mLevel, mLevelChanges));
+        report.append("total: ").append(mTotal).append('\n');
+        for (int i = 0; i < mHops.length; i++) {
+            report.append(mHops[i]).append(": ").append(mHopLatency[i]).append('\n');
+        }
+        return report.toString();
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void changeLevel(int level) {
+        mLevel = level;
+        mLevelChanges++;
+        mWindowCount = 0;
+    }
+}
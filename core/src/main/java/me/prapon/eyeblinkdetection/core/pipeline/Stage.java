@@ -0,0 +1,258 @@
+package me.prapon.eyeblinkdetection.core.pipeline;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import me.prapon.eyeblinkdetection.core.LatencyHistogram;
+
+/**
+ * One stage of a processing pipeline: a worker thread which processes the items submitted to it
+ * in order, from a bounded lock-free queue.<p>
+ *
+ * Chaining stages lets each step of the work run on its own thread, so that the throughput of the
+ * whole pipeline is that of its slowest stage rather than the sum of all of them.  When a stage
+ * falls behind, its queue fills and it drops items according to its drop policy instead of
+ * holding up the stage before it: {@link #DROP_OLDEST} makes room for the new item, which suits
+ * camera frames where only the latest matters, and {@link #DROP_NEWEST} rejects it.  Dropped items
+ * are handed to the stage's {@link DropListener}, e.g. to release the resources they hold.<p>
+ *
+ * Each stage counts its items and records how long they waited in the queue and how long they
+ * took to process.  The worker only parks while its queue is empty, and submitters only unpark it
+ * when it does.
+ */
+public final class Stage<T> {
+    public static final int DROP_OLDEST = 0;
+    public static final int DROP_NEWEST = 1;
+
+    /**
+     * Processes the items of a stage, on its worker thread.
+     */
+    public interface Worker<T> {
+        void process(T item);
+    }
+
+    /**
+     * Receives the items which a stage dropped, on the thread which dropped them: a submitting
+     * thread when the queue is full, or the worker when the stage is stopped.
+     */
+    public interface DropListener<T> {
+        void onDropped(T item);
+    }
+
+    private final String mName;
+    private final BoundedQueue<T> mQueue;
+    private final int mDropPolicy;
+    private final Worker<T> mWorker;
+    private final DropListener<T> mDropListener;
+    private final Thread mThread;
+
+    private volatile boolean mStopped;
+    // Set while the worker is about to park or parked, so that submitters know to unpark it.
+    private volatile boolean mWaiting;
+
+    private final AtomicLong mSubmitted = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mProcessed = new AtomicLong();
+
+    // Only written by the worker, under the lock of mWaitLatency, so that they can be copied.
+    private final LatencyHistogram mWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram mServiceLatency = new LatencyHistogram();
+
+    // Only used by the worker.
+    private final long[] mOfferedNs = new long[1];
+    private long mCurrentOfferedNs;
+
+    /**
+     * Creates a stage; its worker starts with {@link #start}.
+     *
+     * @param capacity the number of items which can wait, rounded up to a power of two
+     * @param dropPolicy {@link #DROP_OLDEST} or {@link #DROP_NEWEST}
+     * @param dropListener receives dropped items, or null
+     */
+    public Stage(String name, int capacity, int dropPolicy, Worker<T> worker,
+                 DropListener<T> dropListener) {
+        if (dropPolicy != DROP_OLDEST && dropPolicy != DROP_NEWEST) {
+            throw new IllegalArgumentException("Unknown drop policy: " + dropPolicy);
+        }
+        mName = name;
+        mQueue = new BoundedQueue<>(capacity);
+        mDropPolicy = dropPolicy;
+        mWorker = worker;
+        mDropListener = dropListener;
+        mThread = new Thread(this::run, "stage-" + name);
+        mThread.setDaemon(true);
+    }
+
+    public void start() {
+        mThread.start();
+    }
+
+    /**
+     * Stops the worker after the item in progress, if any.  Items still queued are dropped, as are
+     * items submitted from now on.  Does not wait for the worker.
+     */
+    public void stop() {
+        mStopped = true;
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * Queues an item for the worker.  If the queue is full, drops either its oldest item or this one,
+     * according to the drop policy.  Can be called from any thread.<p>
+     *
+     * An item queued while the stage stops may come after the worker's last look at the queue, so
+     * the submitter then drops what is left itself: every item is either processed or dropped.
+     *
+     * @return false if this item was dropped by this call
+     */
+    public boolean submit(T item) {
+        mSubmitted.incrementAndGet();
+        if (mStopped) {
+            drop(item);
+            return false;
+        }
+        long nowNs = System.nanoTime();
+        while (!mQueue.offer(item, nowNs)) {
+            if (mDropPolicy == DROP_NEWEST) {
+                drop(item);
+                return false;
+            }
+            T oldest = mQueue.poll(null);
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+        if (mStopped) {
+            return !dropQueued(item);
+        }
+        if (mWaiting) {
+            LockSupport.unpark(mThread);
+        }
+        return true;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getCapacity() {
+        return mQueue.capacity();
+    }
+
+    /**
+     * The number of items waiting, not counting the one being processed.
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    public long getSubmittedCount() {
+        return mSubmitted.get();
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    public long getProcessedCount() {
+        return mProcessed.get();
+    }
+
+    /**
+     * The {@code System.nanoTime()} at which the item being processed was submitted.  Only valid on
+     * the worker thread, while it processes an item.
+     */
+    public long getCurrentSubmittedNs() {
+        return mCurrentOfferedNs;
+    }
+
+    /**
+     * Copies the times items spent waiting in the queue.
+     */
+    public void copyWaitLatency(LatencyHistogram out) {
+        synchronized (mWaitLatency) {
+            out.copyFrom(mWaitLatency);
+        }
+    }
+
+    /**
+     * Copies the times the worker took per item.
+     */
+    public void copyServiceLatency(LatencyHistogram out) {
+        synchronized (mWaitLatency) {
+            out.copyFrom(mServiceLatency);
+        }
+    }
+
+    /**
+     * Formats the queue depth, counts and latencies.
+     */
+    @Override
+    public String toString() {
+        LatencyHistogram wait = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        synchronized (mWaitLatency) {
+            wait.copyFrom(mWaitLatency);
+            service.copyFrom(mServiceLatency);
+        }
+        return String.format(Locale.US, "%s: queue %d/%d, %d submitted, %d processed, %d dropped;"
+                        + " wait %s; service %s", mName, getQueueDepth(), getCapacity(),
+                getSubmittedCount(), getProcessedCount(), getDroppedCount(), wait, service);
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void run() {
+        while (!mStopped) {
+            T item = mQueue.poll(mOfferedNs);
+            if (item == null) {
+                mWaiting = true;
+                // Checked again after announcing the wait, so that a submitter which did not see
+                // it has already made its item visible here.
+                if (mQueue.size() == 0 && !mStopped) {
+                    LockSupport.park(this);
+                }
+                mWaiting = false;
+                continue;
+            }
+
+            long startNs = System.nanoTime();
+            mCurrentOfferedNs = mOfferedNs[0];
+            mWorker.process(item);
+            long endNs = System.nanoTime();
+            synchronized (mWaitLatency) {
+                mWaitLatency.recordNanos(startNs - mCurrentOfferedNs);
+                mServiceLatency.recordNanos(endNs - startNs);
+            }
+            mProcessed.lazySet(mProcessed.get() + 1);
+        }
+
+        dropQueued(null);
+    }
+
+    /**
+     * Drops the items left in the queue once the stage has stopped.  Both the worker and late
+     * submitters may do so at the same time, and each item is polled by only one of them.
+     *
+     * @return true if {@code submitted} was among the items dropped
+     */
+    private boolean dropQueued(T submitted) {
+        boolean found = false;
+        T item;
+        while ((item = mQueue.poll(null)) != null) {
+            found |= item == submitted;
+            drop(item);
+        }
+        return found;
+    }
+
+    private void drop(T item) {
+        mDropped.incrementAndGet();
+        if (mDropListener != null) {
+            mDropListener.onDropped(item);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package me.prapon.eyeblinkdetection.core.series;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A time series store for the per-frame signals of a long session, e.g. eye open probabilities
+ * and head yaw, which takes the same memory however long the session runs.<p>
+ *
+ * The raw samples are kept for a short window only.  As they arrive, they are rolled up into
+ * buckets of one second, one minute and ten minutes, each with the sample count, minimum, maximum
+ * and mean of every signal, and the fraction of samples below the signal's closed threshold.
+ * Each resolution is built from the one below it as buckets complete, so a sample is only looked
+ * at once.  Missing samples are recorded as NaN and left out of the statistics.<p>
+ *
+ * Every resolution keeps its most recent buckets in fixed size rings of primitive arrays, for
+ * graphs and queries, and completed buckets are written to one file per resolution in batches:
+ * {@link #isFlushDue} turns true once a batch is waiting, and {@link #flush} writes it, so that
+ * the writer can be kept off the thread which adds samples.  If the rings wrap before their
+ * buckets are written, the oldest are dropped from the files rather than held in memory, and
+ * counted.<p>
+ *
+ * Timestamps are session times in milliseconds, and each store writes a new set of files, named
+ * after the wall clock time the session started, which is recorded in their headers.  A timestamp
+ * before the previous sample's is taken as the previous one.  Methods are thread safe.
+ */
+public final class RollupStore implements Closeable {
+    public static final int SECOND = 0;
+    public static final int MINUTE = 1;
+    public static final int TEN_MINUTES = 2;
+    public static final int RESOLUTIONS = 3;
+
+    static final String FILE_SUFFIX = ".rlp";
+    static final int MAGIC = 0x524c5550;
+    static final int VERSION = 1;
+    // Magic, version, signal count, bucket length and session start time.
+    static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+
+    private static final long[] BUCKET_MS = {1000, 60000, 600000};
+    private static final String[] NAMES = {"1s", "1m", "10m"};
+    // Buckets kept in memory per resolution: ten minutes, ten hours and a day.
+    private static final int[] CAPACITY = {600, 600, 144};
+    // Completed buckets which make a resolution due for a flush.
+    private static final int BATCH = 60;
+    private static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * The statistics of one bucket, per signal.
+     */
+    public static final class Bucket {
+        public long startMs;
+        public final int[] count;
+        public final float[] min;
+        public final float[] max;
+        public final float[] mean;
+        // NaN for signals without a closed threshold, or without samples.
+        public final float[] closedFraction;
+
+        public Bucket(int signals) {
+            count = new int[signals];
+            min = new float[signals];
+            max = new float[signals];
+            mean = new float[signals];
+            closedFraction = new float[signals];
+        }
+    }
+
+    /**
+     * Receives the buckets read from a file, in time order.  The bucket is reused for each call.
+     */
+    public interface Visitor {
+        void onBucket(Bucket bucket);
+    }
+
+    private final int mSignals;
+    private final float[] mClosedBelow;
+    private final long mSessionStartMs;
+    private final long mRawWindowMs;
+
+    // The raw samples, in a ring.
+    private final long[] mRawTimes;
+    private final float[] mRawValues;
+    private int mRawNext;
+    private int mRawSize;
+    private long mLastMs = NONE;
+
+    private final Level[] mLevels = new Level[RESOLUTIONS];
+    private final Object mWriteLock = new Object();
+    private boolean mFlushDue;
+    private boolean mClosed;
+    private long mDroppedBuckets;
+
+    /**
+     * Starts a session with new files in the given directory, which is created if needed.
+     *
+     * @param closedBelow    per signal, the value below which a sample counts as closed, or NaN
+     *                       if the signal has no closed state, e.g. head yaw
+     * @param rawWindowMs    how long raw samples are kept
+     * @param rawCapacity    the most raw samples kept, e.g. the window times the frame rate
+     * @param sessionStartMs the wall clock time of the start of the session
+     */
+    public RollupStore(File directory, float[] closedBelow, long rawWindowMs, int rawCapacity,
+                       long sessionStartMs) throws IOException {
+        if (closedBelow.length == 0 || rawCapacity < 1) {
+            throw new IllegalArgumentException("Bad store shape: " + closedBelow.length
+                    + " signals, " + rawCapacity + " raw samples");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create rollup directory: " + directory);
+        }
+        mSignals = closedBelow.length;
+        mClosedBelow = closedBelow.clone();
+        mSessionStartMs = sessionStartMs;
+        mRawWindowMs = rawWindowMs;
+        mRawTimes = new long[rawCapacity];
+        mRawValues = new float[rawCapacity * mSignals];
+        try {
+            for (int i = 0; i < RESOLUTIONS; i++) {
+                mLevels[i] = new Level(BUCKET_MS[i], CAPACITY[i], mSignals,
+                        fileOf(directory, sessionStartMs, i), sessionStartMs);
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the file of the given resolution of the session which started at the given time.
+     */
+    public static File fileOf(File directory, long sessionStartMs, int resolution) {
+        return new File(directory, sessionStartMs + "-" + NAMES[resolution] + FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the files of sessions which started before the given wall clock time.
+     *
+     * @return the number of files deleted
+     */
+    public static int deleteSessionsBefore(File directory, long wallMs) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            int dash = name.indexOf('-');
+            try {
+                if (dash > 0 && Long.parseLong(name.substring(0, dash)) < wallMs
+                        && file.delete()) {
+                    deleted++;
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours.
+            }
+        }
+        return deleted;
+    }
+
+    public int getSignalCount() {
+        return mSignals;
+    }
+
+    public long getSessionStartMs() {
+        return mSessionStartMs;
+    }
+
+    public static long getBucketMs(int resolution) {
+        return BUCKET_MS[resolution];
+    }
+
+    /**
+     * Adds the signals of one frame.  Does not allocate or write to disk.
+     *
+     * @param values one value per signal, NaN if missing
+     * @throws IllegalStateException if the store is closed
+     */
+    public synchronized void add(long timestampMs, float[] values) {
+        if (mClosed) {
+            throw new IllegalStateException("Rollup store is closed");
+        }
+        if (timestampMs < mLastMs) {
+            timestampMs = mLastMs;
+        }
+        mLastMs = timestampMs;
+
+        mRawTimes[mRawNext] = timestampMs;
+        System.arraycopy(values, 0, mRawValues, mRawNext * mSignals, mSignals);
+        mRawNext = (mRawNext + 1) % mRawTimes.length;
+        mRawSize = Math.min(mRawSize + 1, mRawTimes.length);
+
+        Level second = mLevels[SECOND];
+        long startMs = timestampMs - Math.floorMod(timestampMs, second.bucketMs);
+        if (second.openStart != startMs) {
+            closeBucket(SECOND);
+            second.openStart = startMs;
+        }
+        for (int s = 0; s < mSignals; s++) {
+            float value = values[s];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            second.accCount[s]++;
+            second.accSum[s] += value;
+            second.accMin[s] = Math.min(second.accMin[s], value);
+            second.accMax[s] = Math.max(second.accMax[s], value);
+            if (value < mClosedBelow[s]) {
+                second.accClosed[s]++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of raw samples within the raw window of the newest one.
+     */
+    public synchronized int getRawCount() {
+        int count = 0;
+        while (count < mRawSize && mLastMs - mRawTimes[rawIndex(count)] <= mRawWindowMs) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the timestamp of a raw sample, by age: 0 for the newest.
+     */
+    public synchronized long getRawTimestamp(int age) {
+        return mRawTimes[rawIndex(checkRawAge(age))];
+    }
+
+    public synchronized float getRawValue(int age, int signal) {
+        return mRawValues[rawIndex(checkRawAge(age)) * mSignals + signal];
+    }
+
+    /**
+     * Returns the number of completed buckets of a resolution held in memory.
+     */
+    public synchronized int getBucketCount(int resolution) {
+        return mLevels[resolution].size;
+    }
+
+    /**
+     * Copies a completed bucket of a resolution, by age: 0 for the newest.
+     */
+    public synchronized void getBucket(int resolution, int age, Bucket out) {
+        Level level = mLevels[resolution];
+        if (age < 0 || age >= level.size) {
+            throw new IndexOutOfBoundsException("Bucket " + age + " of " + level.size);
+        }
+        int index = Math.floorMod(level.next - 1 - age, level.capacity);
+        out.startMs = level.starts[index];
+        int offset = index * mSignals;
+        System.arraycopy(level.counts, offset, out.count, 0, mSignals);
+        System.arraycopy(level.mins, offset, out.min, 0, mSignals);
+        System.arraycopy(level.maxs, offset, out.max, 0, mSignals);
+        System.arraycopy(level.means, offset, out.mean, 0, mSignals);
+        System.arraycopy(level.closed, offset, out.closedFraction, 0, mSignals);
+    }
+
+    /**
+     * Whether a batch of buckets is waiting to be written.  Reading it clears it, so that a caller
+     * which schedules a {@link #flush} whenever this is true schedules one per batch.
+     */
+    public synchronized boolean isFlushDue() {
+        boolean due = mFlushDue;
+        mFlushDue = false;
+        return due;
+    }
+
+    /**
+     * Returns the number of buckets which were overwritten in memory before they were written.
+     */
+    public synchronized long getDroppedBuckets() {
+        return mDroppedBuckets;
+    }
+
+    /**
+     * Writes the completed buckets which have not been written yet.  Samples can be added while
+     * the write is in progress.
+     */
+    public void flush() throws IOException {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                for (Level level : mLevels) {
+                    level.encodeUnwritten();
+                }
+            }
+            for (Level level : mLevels) {
+                level.write();
+            }
+        }
+    }
+
+    /**
+     * Completes the buckets in progress, writes everything, and closes the files.  Adding samples
+     * afterwards fails.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                for (int i = 0; i < RESOLUTIONS; i++) {
+                    closeBucket(i);
+                }
+                for (Level level : mLevels) {
+                    level.encodeUnwritten();
+                }
+                mClosed = true;
+            }
+            try {
+                for (Level level : mLevels) {
+                    level.write();
+                }
+            } finally {
+                closeChannels();
+            }
+        }
+    }
+
+    /**
+     * Reads the buckets of a file written by a store.
+     *
+     * @return the wall clock time the file's session started
+     */
+    public static long read(File file, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a rollup file: " + file);
+            }
+            int signals = in.readInt();
+            in.readLong();
+            long sessionStartMs = in.readLong();
+            Bucket bucket = new Bucket(signals);
+            while (true) {
+                try {
+                    bucket.startMs = in.readLong();
+                    for (int s = 0; s < signals; s++) {
+                        bucket.count[s] = in.readInt();
+                        bucket.min[s] = in.readFloat();
+                        bucket.max[s] = in.readFloat();
+                        bucket.mean[s] = in.readFloat();
+                        bucket.closedFraction[s] = in.readFloat();
+                    }
+                } catch (EOFException e) {
+                    // A bucket cut short, e.g. by a crash, is ignored.
+                    return sessionStartMs;
+                }
+                visitor.onBucket(bucket);
+            }
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Completes the bucket in progress of a resolution, if it has one, and folds it into the
+     * bucket in progress of the next resolution, completing that first if the bucket belongs to
+     * a later one.
+     */
+    private void closeBucket(int resolution) {
+        Level level = mLevels[resolution];
+        if (level.openStart == NONE) {
+            return;
+        }
+        if (level.append(mClosedBelow)) {
+            mDroppedBuckets++;
+        }
+        if (level.unwritten >= BATCH) {
+            mFlushDue = true;
+        }
+        if (resolution + 1 < RESOLUTIONS) {
+            Level up = mLevels[resolution + 1];
+            long upStart = level.openStart - Math.floorMod(level.openStart, up.bucketMs);
+            if (up.openStart != upStart) {
+                closeBucket(resolution + 1);
+                up.openStart = upStart;
+            }
+            for (int s = 0; s < mSignals; s++) {
+                up.accCount[s] += level.accCount[s];
+                up.accSum[s] += level.accSum[s];
+                up.accClosed[s] += level.accClosed[s];
+                up.accMin[s] = Math.min(up.accMin[s], level.accMin[s]);
+                up.accMax[s] = Math.max(up.accMax[s], level.accMax[s]);
+            }
+        }
+        level.resetOpen();
+    }
+
+    private int rawIndex(int age) {
+        return Math.floorMod(mRawNext - 1 - age, mRawTimes.length);
+    }
+
+    private int checkRawAge(int age) {
+        if (age < 0 || age >= mRawSize) {
+            throw new IndexOutOfBoundsException("Raw sample " + age + " of " + mRawSize);
+        }
+        return age;
+    }
+
+    private void closeChannels() {
+        for (Level level : mLevels) {
+            if (level != null) {
+                try {
+                    level.channel.close();
+                } catch (IOException e) {
+                    // Closing anyway.
+                }
+            }
+        }
+    }
+
+    /**
+     * One resolution: the ring of completed buckets, the bucket in progress, and the file.
+     */
+    private static final class Level {
+        final long bucketMs;
+        final int capacity;
+        final int signals;
+
+        // The ring of completed buckets, per signal within each bucket.
+        final long[] starts;
+        final int[] counts;
+        final float[] mins;
+        final float[] maxs;
+        final float[] means;
+        final float[] closed;
+        int next;
+        int size;
+        // The newest buckets of the ring which have not been encoded for writing yet.
+        int unwritten;
+
+        // The bucket in progress, if openStart is not NONE.
+        long openStart = NONE;
+        final int[] accCount;
+        final double[] accSum;
+        final float[] accMin;
+        final float[] accMax;
+        final int[] accClosed;
+
+        // The file, and the buckets encoded for it but not yet written; the buffer is guarded by
+        // the store's write lock.
+        final FileChannel channel;
+        final ByteBuffer buffer;
+
+        Level(long bucketMs, int capacity, int signals, File file, long sessionStartMs)
+                throws IOException {
+            this.bucketMs = bucketMs;
+            this.capacity = capacity;
+            this.signals = signals;
+            starts = new long[capacity];
+            counts = new int[capacity * signals];
+            mins = new float[capacity * signals];
+            maxs = new float[capacity * signals];
+            means = new float[capacity * signals];
+            closed = new float[capacity * signals];
+            accCount = new int[signals];
+            accSum = new double[signals];
+            accMin = new float[signals];
+            accMax = new float[signals];
+            accClosed = new int[signals];
+            resetOpen();
+
+            buffer = ByteBuffer.allocate(Math.max(HEADER_BYTES, capacity * (8 + signals * 20)));
+            channel = new FileOutputStream(file).getChannel();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(signals).putLong(bucketMs)
+                    .putLong(sessionStartMs);
+            write();
+        }
+
+        /**
+         * Adds the bucket in progress to the ring.
+         *
+         * @return whether a bucket which was not written yet was overwritten
+         */
+        boolean append(float[] closedBelow) {
+            starts[next] = openStart;
+            int offset = next * signals;
+            for (int s = 0; s < signals; s++) {
+                int count = accCount[s];
+                counts[offset + s] = count;
+                mins[offset + s] = count == 0 ? Float.NaN : accMin[s];
+                maxs[offset + s] = count == 0 ? Float.NaN : accMax[s];
+                means[offset + s] = count == 0 ? Float.NaN : (float) (accSum[s] / count);
+                closed[offset + s] = count == 0 || Float.isNaN(closedBelow[s])
+                        ? Float.NaN : accClosed[s] / (float) count;
+            }
+            next = (next + 1) % capacity;
+            size = Math.min(size + 1, capacity);
+            boolean dropped = unwritten == capacity;
+            unwritten = Math.min(unwritten + 1, capacity);
+            return dropped;
+        }
+
+        void resetOpen() {
+            openStart = NONE;
+            Arrays.fill(accCount, 0);
+            Arrays.fill(accSum, 0);
+            Arrays.fill(accMin, Float.POSITIVE_INFINITY);
+            Arrays.fill(accMax, Float.NEGATIVE_INFINITY);
+            Arrays.fill(accClosed, 0);
+        }
+
+        /**
+         * Encodes the unwritten buckets into the buffer, oldest first.
+         */
+        void encodeUnwritten() {
+            for (int age = unwritten - 1; age >= 0; age--) {
+                int index = Math.floorMod(next - 1 - age, capacity);
+                buffer.putLong(starts[index]);
+                int offset = index * signals;
+                for (int s = 0; s < signals; s++) {
+                    buffer.putInt(counts[offset + s]);
+                    buffer.putFloat(mins[offset + s]);
+                    buffer.putFloat(maxs[offset + s]);
+                    buffer.putFloat(means[offset + s]);
+                    buffer.putFloat(closed[offset + s]);
+                }
+            }
+            unwritten = 0;
+        }
+
+        void write() throws IOException {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+}
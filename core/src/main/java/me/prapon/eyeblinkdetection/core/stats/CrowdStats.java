@@ -0,0 +1,310 @@
+package me.prapon.eyeblinkdetection.core.stats;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+
+/**
+ * Blink and event statistics across all faces tracked by a pipeline, e.g. everyone in view of the
+ * rear camera.<p>
+ *
+ * Each tracked face feeds its own {@link FaceWindow}, which keeps the blinks of the last
+ * {@link #getWindowMs} and is only written by the thread tracking that face.  Totals across faces
+ * are kept in {@link StripedCounter}s.  Each window publishes its summary through volatile fields,
+ * so {@link #snapshot} can be called from any thread, e.g. the UI, without taking a lock which the
+ * detector threads also take.<p>
+ *
+ * All times are frame timestamps from the trackers, normally from a
+ * {@link me.prapon.eyeblinkdetection.core.FrameClock}.
+ */
+public final class CrowdStats {
+    public static final long DEFAULT_WINDOW_MS = 60000;
+
+    // Faces seen for less than this are rated as if seen this long, so that a blink in the first
+    // second of a face does not count as 60 per minute.
+    private static final long MIN_RATE_SPAN_MS = 10000;
+
+    // Upper bounds of the buckets of total blinks per face, for faces which are gone.  The last
+    // bucket holds everything above the last bound.
+    private static final int[] BLINK_BUCKET_BOUNDS = {0, 1, 2, 4, 8, 16, 32};
+
+    // One past the highest event type in FaceEvents.
+    private static final int EVENT_TYPES = FaceEvents.LONG_BLINK + 1;
+
+    // Blinks kept per face window.  With the default blink cooldown a window holds at most 30.
+    private static final int WINDOW_CAPACITY = 64;
+
+    private final long mWindowMs;
+    private final StripedCounter[] mEventCounts = new StripedCounter[EVENT_TYPES];
+    private final StripedCounter mFacesSeen = new StripedCounter();
+    private final AtomicLongArray mBlinksPerFace =
+            new AtomicLongArray(BLINK_BUCKET_BOUNDS.length + 1);
+    private final Set<FaceWindow> mVisible =
+            Collections.newSetFromMap(new ConcurrentHashMap<FaceWindow, Boolean>());
+
+    // The newest frame time any window has seen.
+    private volatile long mLatestMs;
+
+    public CrowdStats() {
+        this(DEFAULT_WINDOW_MS);
+    }
+
+    public CrowdStats(long windowMs) {
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMs);
+        }
+        mWindowMs = windowMs;
+        for (int i = 0; i < EVENT_TYPES; i++) {
+            mEventCounts[i] = new StripedCounter();
+        }
+    }
+
+    public long getWindowMs() {
+        return mWindowMs;
+    }
+
+    /**
+     * Starts the window of a newly tracked face.  The window must be closed once the face is gone.
+     */
+    public FaceWindow open(int faceId, long nowMs) {
+        FaceWindow window = new FaceWindow(faceId, nowMs);
+        mFacesSeen.increment();
+        mVisible.add(window);
+        return window;
+    }
+
+    /**
+     * Takes a snapshot of the totals and of the currently visible faces.  Never blocks the threads
+     * feeding the windows.
+     */
+    public Snapshot snapshot() {
+        long[] eventCounts = new long[EVENT_TYPES];
+        for (int i = 0; i < EVENT_TYPES; i++) {
+            eventCounts[i] = mEventCounts[i].sum();
+        }
+        long[] blinksPerFace = new long[mBlinksPerFace.length()];
+        for (int i = 0; i < blinksPerFace.length; i++) {
+            blinksPerFace[i] = mBlinksPerFace.get(i);
+        }
+
+        float[] rates = new float[mVisible.size()];
+        int faces = 0;
+        int recentBlinks = 0;
+        for (FaceWindow window : mVisible) {
+            if (faces == rates.length) {
+                // A face appeared since the array was sized; it is in the next snapshot.
+                break;
+            }
+            int blinks = window.mRecentBlinks;
+            long span = Math.min(mWindowMs,
+                    Math.max(MIN_RATE_SPAN_MS, window.mLastSeenMs - window.mFirstSeenMs));
+            rates[faces++] = blinks * 60000f / span;
+            recentBlinks += blinks;
+        }
+        rates = Arrays.copyOf(rates, faces);
+        Arrays.sort(rates);
+
+        return new Snapshot(mLatestMs, mFacesSeen.sum(), eventCounts, blinksPerFace, rates,
+                recentBlinks);
+    }
+
+    //==============================================================================================
+    // Face window
+    //==============================================================================================
+
+    /**
+     * The blinks of one tracked face within the last window.  Must only be updated from the thread
+     * which tracks the face.
+     */
+    public final class FaceWindow {
+        private final int mFaceId;
+        private final long[] mBlinkTimes = new long[WINDOW_CAPACITY];
+        private int mHead;
+        private int mSize;
+        private int mTotalBlinks;
+        private boolean mClosed;
+
+        // Published for snapshots.
+        private volatile long mFirstSeenMs;
+        private volatile long mLastSeenMs;
+        private volatile int mRecentBlinks;
+
+        FaceWindow(int faceId, long nowMs) {
+            mFaceId = faceId;
+            mFirstSeenMs = nowMs;
+            mLastSeenMs = nowMs;
+        }
+
+        public int getFaceId() {
+            return mFaceId;
+        }
+
+        /**
+         * Moves the window up to the time of a frame in which the face was seen.
+         */
+        public void onFrame(long nowMs) {
+            mLastSeenMs = nowMs;
+            if (nowMs > mLatestMs) {
+                mLatestMs = nowMs;
+            }
+            while (mSize > 0 && nowMs - mBlinkTimes[mHead] > mWindowMs) {
+                mHead = (mHead + 1) % WINDOW_CAPACITY;
+                mSize--;
+            }
+            mRecentBlinks = mSize;
+        }
+
+        /**
+         * Records an event of the given {@link FaceEvents} type for this face.
+         */
+        public void onEvent(int type, long nowMs) {
+            if (type >= 0 && type < EVENT_TYPES) {
+                mEventCounts[type].increment();
+            }
+            if (type != FaceEvents.EYE) {
+                return;
+            }
+            mTotalBlinks++;
+            if (mSize == WINDOW_CAPACITY) {
+                mHead = (mHead + 1) % WINDOW_CAPACITY;
+                mSize--;
+            }
+            mBlinkTimes[(mHead + mSize) % WINDOW_CAPACITY] = nowMs;
+            mSize++;
+            onFrame(nowMs);
+        }
+
+        /**
+         * Removes the face from the visible faces, and adds its total to the history.
+         */
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mVisible.remove(this);
+            int bucket = 0;
+            while (bucket < BLINK_BUCKET_BOUNDS.length
+                    && mTotalBlinks > BLINK_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            mBlinksPerFace.incrementAndGet(bucket);
+        }
+    }
+
+    //==============================================================================================
+    // Snapshot
+    //==============================================================================================
+
+    /**
+     * Statistics as of one moment.  Counts may be off by the events which happened while the
+     * snapshot was being taken.
+     */
+    public static final class Snapshot {
+        /** The newest frame time seen by any face. */
+        public final long timestampMs;
+        /** Faces tracked since the statistics were created. */
+        public final long facesSeen;
+        private final long[] mEventCounts;
+        private final long[] mBlinksPerFace;
+        // Blinks per minute of each visible face, ascending.
+        private final float[] mRates;
+        private final int mRecentBlinks;
+
+        Snapshot(long timestampMs, long facesSeen, long[] eventCounts, long[] blinksPerFace,
+                 float[] rates, int recentBlinks) {
+            this.timestampMs = timestampMs;
+            this.facesSeen = facesSeen;
+            mEventCounts = eventCounts;
+            mBlinksPerFace = blinksPerFace;
+            mRates = rates;
+            mRecentBlinks = recentBlinks;
+        }
+
+        public int getVisibleFaces() {
+            return mRates.length;
+        }
+
+        /**
+         * Total events of a {@link FaceEvents} type, across all faces ever tracked.
+         */
+        public long getEventCount(int type) {
+            return type >= 0 && type < mEventCounts.length ? mEventCounts[type] : 0;
+        }
+
+        /**
+         * Blinks of the visible faces within the window.
+         */
+        public int getRecentBlinks() {
+            return mRecentBlinks;
+        }
+
+        /**
+         * Blinks per minute of all visible faces together.
+         */
+        public float getCrowdRate() {
+            float sum = 0;
+            for (float rate : mRates) {
+                sum += rate;
+            }
+            return sum;
+        }
+
+        /**
+         * Blinks per minute of the visible face at the given fraction of the distribution, e.g. 0.5
+         * for the median, or 0 if no face is visible.
+         */
+        public float getFaceRate(float fraction) {
+            if (mRates.length == 0) {
+                return 0;
+            }
+            int index = Math.round(fraction * (mRates.length - 1));
+            return mRates[Math.max(0, Math.min(mRates.length - 1, index))];
+        }
+
+        /**
+         * Number of faces which are gone, by their total blinks: bucket i holds the faces with at
+         * most {@link #getBlinkBucketBound}(i) blinks and more than the previous bound.
+         */
+        public long getFacesWithBlinks(int bucket) {
+            return mBlinksPerFace[bucket];
+        }
+
+        public int getBlinkBucketCount() {
+            return mBlinksPerFace.length;
+        }
+
+        /**
+         * Upper bound of a blink bucket, or {@code Integer.MAX_VALUE} for the last one.
+         */
+        public static int getBlinkBucketBound(int bucket) {
+            return bucket < BLINK_BUCKET_BOUNDS.length
+                    ? BLINK_BUCKET_BOUNDS[bucket] : Integer.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder()
+                    .append("faces=").append(getVisibleFaces()).append('/').append(facesSeen)
+                    .append(" blinks=").append(getEventCount(FaceEvents.EYE))
+                    .append(" recent=").append(mRecentBlinks)
+                    .append(String.format(Locale.US, " rate=%.1f/min face p50=%.1f max=%.1f",
+                            getCrowdRate(), getFaceRate(0.5f), getFaceRate(1)))
+                    .append(" gone=[");
+            for (int i = 0; i < mBlinksPerFace.length; i++) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                out.append(i < BLINK_BUCKET_BOUNDS.length
+                        ? "<=" + BLINK_BUCKET_BOUNDS[i] : ">" + BLINK_BUCKET_BOUNDS[i - 1])
+                        .append(':').append(mBlinksPerFace[i]);
+            }
+            return out.append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package me.prapon.eyeblinkdetection.core.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which many threads can add to without contending on a single value.  Each thread adds
+ * to one of several cells, picked from its thread id, and reads sum all cells.<p>
+ *
+ * This is the idea behind {@code java.util.concurrent.atomic.LongAdder}, which Android only has
+ * from API 24.  The cells are spread a cache line apart so that threads adding to neighbouring
+ * cells do not invalidate each other's caches.  A sum taken while threads are adding is not an
+ * atomic snapshot, but never misses an addition which completed before it started.
+ */
+public final class StripedCounter {
+    // Longs per 64 byte cache line.
+    private static final int SPREAD = 8;
+
+    private final AtomicLongArray mCells;
+    private final int mMask;
+
+    public StripedCounter() {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        mCells = new AtomicLongArray(stripes * SPREAD);
+        mMask = stripes - 1;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        // Fibonacci hashing, so that consecutive thread ids land on different cells.
+        int stripe = (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 58) & mMask;
+        mCells.getAndAdd(stripe * SPREAD, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < mCells.length(); i += SPREAD) {
+            sum += mCells.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,442 @@
+package me.prapon.eyeblinkdetection.core.synth;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Generates a stream of synthetic camera frames with faces in them, for load and soak testing
+ * without a camera or anyone in front of it.  Use {@link Builder} to set up the stream.<p>
+ *
+ * Each face drifts slowly around its own spot, blinks and winks at random intervals, and now and
+ * then turns its head left or right and back.  Faces are occluded from time to time, and come
+ * back under a new id, as they would from the detector.  Eye probabilities are sometimes
+ * uncomputed and landmarks sometimes missing.  Each frame comes out as the detector's face
+ * records, and can also be drawn into an NV21 buffer, so that code working on the image data sees
+ * faces at the same places.  Every blink and turn is reported to a {@link LabelListener} with its
+ * onset and end, so that the stream can be scored like a labeled recording.<p>
+ *
+ * The stream is a function of the seed alone, and advances by a fixed frame interval however fast
+ * it is consumed.  Generating and drawing frames does not allocate.  Not thread safe.
+ */
+public final class SyntheticFaces {
+    // Eye open probabilities: open eyes fall within the first range, closed ones the second.
+    private static final float MIN_OPEN = 0.7f;
+    private static final float MIN_CLOSED = 0.02f;
+    private static final float MAX_CLOSED = 0.2f;
+    // Luma of the background, the faces, and the open eyes.
+    private static final int BACKGROUND_LUMA = 90;
+    private static final int SKIN_LUMA = 170;
+    private static final int EYE_LUMA = 30;
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    /**
+     * Receives the ground truth of the generated stream, as each event begins.
+     */
+    public interface LabelListener {
+        /**
+         * @param type    a {@link FaceEvents} type: {@code EYE} for every blink and wink, with
+         *                {@code LEFT_WINK} or {@code RIGHT_WINK} in addition for winks, and
+         *                {@code LEFT_FACE} or {@code RIGHT_FACE} for head turns
+         * @param startMs the onset of the event
+         * @param endMs   the end of the event
+         */
+        void onLabel(int type, long startMs, long endMs, int faceId);
+    }
+
+    private final Builder mConfig;
+    private final Random mRandom;
+    private final Face[] mFaces;
+    private final LabelListener mListener;
+    private long mTimestampMs;
+    private int mNextId;
+
+    /**
+     * The state of one face slot.  A slot keeps its spot in the frame across occlusions, but gets a
+     * new id each time it comes back.
+     */
+    private static final class Face {
+        int id;
+        float centerX;
+        float centerY;
+        float size;
+        float phase;
+        // Current pose and box, as of the last frame.
+        float x;
+        float y;
+        float yaw;
+        float roll;
+        boolean visible;
+        long occludedUntilMs;
+        long nextOcclusionMs;
+        long blinkStartMs;
+        long blinkEndMs;
+        // Which eyes the current blink closes: both, or one for a wink.
+        boolean blinkLeft;
+        boolean blinkRight;
+        long turnStartMs;
+        long turnEndMs;
+        float turnYaw;
+    }
+
+    private SyntheticFaces(Builder config, LabelListener listener) {
+        mConfig = config;
+        mListener = listener;
+        mRandom = new Random(config.mSeed);
+        mFaces = new Face[config.mFaceCount];
+        for (int i = 0; i < mFaces.length; i++) {
+            Face face = new Face();
+            // Faces side by side, so that they do not overlap.
+            float cell = config.mWidth / (float) mFaces.length;
+            face.size = Math.min(cell, config.mHeight) * 0.5f;
+            face.centerX = cell * (i + 0.5f);
+            face.centerY = config.mHeight * 0.5f;
+            face.phase = mRandom.nextFloat() * 10;
+            face.id = mNextId++;
+            face.visible = true;
+            face.nextOcclusionMs = scheduleAfter(0, config.mOcclusionIntervalMs);
+            face.blinkStartMs = scheduleAfter(0, config.mBlinkIntervalMs);
+            face.turnStartMs = scheduleAfter(0, config.mTurnIntervalMs);
+            face.blinkEndMs = Long.MIN_VALUE;
+            face.turnEndMs = Long.MIN_VALUE;
+            mFaces[i] = face;
+        }
+        mTimestampMs = -config.mFrameIntervalMs;
+    }
+
+    public int getWidth() {
+        return mConfig.mWidth;
+    }
+
+    public int getHeight() {
+        return mConfig.mHeight;
+    }
+
+    public int getMaxFaces() {
+        return mFaces.length;
+    }
+
+    /**
+     * The timestamp of the current frame.
+     */
+    public long getTimestampMs() {
+        return mTimestampMs;
+    }
+
+    /**
+     * Advances to the next frame and writes its visible faces to the start of {@code out}, which
+     * must hold at least {@link #getMaxFaces} frames.
+     *
+     * @return the number of visible faces
+     */
+    public int next(FaceFrame[] out) {
+        mTimestampMs += mConfig.mFrameIntervalMs;
+        long nowMs = mTimestampMs;
+        int count = 0;
+        for (Face face : mFaces) {
+            advance(face, nowMs);
+            if (face.visible) {
+                write(face, nowMs, out[count++]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Draws the current frame into an NV21 buffer of the stream's size: a flat background with
+     * each visible face as a bright box, and its open eyes as dark squares.
+     *
+     * @param nv21 at least {@code width * height * 3 / 2} bytes
+     */
+    public void render(byte[] nv21) {
+        int width = mConfig.mWidth;
+        int height = mConfig.mHeight;
+        int lumaLength = width * height;
+        Arrays.fill(nv21, 0, lumaLength, (byte) BACKGROUND_LUMA);
+        Arrays.fill(nv21, lumaLength, lumaLength + lumaLength / 2, NEUTRAL_CHROMA);
+        long nowMs = mTimestampMs;
+        for (Face face : mFaces) {
+            if (!face.visible) {
+                continue;
+            }
+            float half = face.size / 2;
+            fillRect(nv21, face.x - half, face.y - half * 1.2f, face.x + half, face.y + half * 1.2f,
+                    SKIN_LUMA);
+            float eyeSize = face.size * 0.12f;
+            float eyeY = face.y - face.size * 0.15f;
+            float shift = face.size * 0.2f * face.yaw / 90;
+            boolean blinking = nowMs >= face.blinkStartMs && nowMs < face.blinkEndMs;
+            if (!(blinking && face.blinkLeft)) {
+                float eyeX = face.x - face.size * 0.2f + shift;
+                fillRect(nv21, eyeX - eyeSize, eyeY - eyeSize / 2, eyeX + eyeSize,
+                        eyeY + eyeSize / 2, EYE_LUMA);
+            }
+            if (!(blinking && face.blinkRight)) {
+                float eyeX = face.x + face.size * 0.2f + shift;
+                fillRect(nv21, eyeX - eyeSize, eyeY - eyeSize / 2, eyeX + eyeSize,
+                        eyeY + eyeSize / 2, EYE_LUMA);
+            }
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void advance(Face face, long nowMs) {
+        Builder config = mConfig;
+        if (face.visible && nowMs >= face.nextOcclusionMs) {
+            face.visible = false;
+            face.occludedUntilMs = nowMs + config.mOcclusionMs;
+        }
+        if (!face.visible) {
+            if (nowMs < face.occludedUntilMs) {
+                return;
+            }
+            face.visible = true;
+            face.id = mNextId++;
+            face.nextOcclusionMs = scheduleAfter(nowMs, config.mOcclusionIntervalMs);
+            // Events in progress were cut short by the occlusion, and the new face starts afresh.
+            face.blinkStartMs = scheduleAfter(nowMs, config.mBlinkIntervalMs);
+            face.blinkEndMs = Long.MIN_VALUE;
+            face.turnStartMs = scheduleAfter(nowMs, config.mTurnIntervalMs);
+            face.turnEndMs = Long.MIN_VALUE;
+        }
+
+        if (nowMs >= face.blinkStartMs && face.blinkEndMs <= face.blinkStartMs) {
+            // A blink begins.
+            face.blinkEndMs = face.blinkStartMs + config.mBlinkMs;
+            boolean wink = mRandom.nextFloat() < config.mWinkFraction;
+            boolean left = mRandom.nextBoolean();
+            face.blinkLeft = !wink || left;
+            face.blinkRight = !wink || !left;
+            label(FaceEvents.EYE, face.blinkStartMs, face.blinkEndMs, face.id);
+            if (wink) {
+                label(left ? FaceEvents.LEFT_WINK : FaceEvents.RIGHT_WINK, face.blinkStartMs,
+                        face.blinkEndMs, face.id);
+            }
+        } else if (nowMs >= face.blinkEndMs && face.blinkEndMs > face.blinkStartMs) {
+            face.blinkStartMs = scheduleAfter(face.blinkEndMs, config.mBlinkIntervalMs);
+        }
+
+        if (nowMs >= face.turnStartMs && face.turnEndMs <= face.turnStartMs) {
+            face.turnEndMs = face.turnStartMs + config.mTurnMs;
+            face.turnYaw = mRandom.nextBoolean() ? config.mTurnYaw : -config.mTurnYaw;
+            label(face.turnYaw < 0 ? FaceEvents.LEFT_FACE : FaceEvents.RIGHT_FACE,
+                    face.turnStartMs, face.turnEndMs, face.id);
+        } else if (nowMs >= face.turnEndMs && face.turnEndMs > face.turnStartMs) {
+            face.turnStartMs = scheduleAfter(face.turnEndMs, config.mTurnIntervalMs);
+        }
+
+        double t = nowMs / 1000.0 + face.phase;
+        face.x = face.centerX + (float) (face.size * 0.1 * Math.sin(t * 0.7));
+        face.y = face.centerY + (float) (face.size * 0.05 * Math.cos(t * 0.5));
+        face.roll = (float) (5 * Math.sin(t * 0.3));
+        face.yaw = (float) (5 * Math.sin(t * 0.4));
+        if (nowMs >= face.turnStartMs && nowMs < face.turnEndMs) {
+            // Out and back along half a sine.
+            double progress = (nowMs - face.turnStartMs) / (double) (face.turnEndMs
+                    - face.turnStartMs);
+            face.yaw += (float) (face.turnYaw * Math.sin(Math.PI * progress));
+        }
+    }
+
+    private void write(Face face, long nowMs, FaceFrame out) {
+        Builder config = mConfig;
+        boolean blinking = nowMs >= face.blinkStartMs && nowMs < face.blinkEndMs;
+        float left = eyeProbability(blinking && face.blinkLeft);
+        float right = eyeProbability(blinking && face.blinkRight);
+        if (mRandom.nextFloat() < config.mUncomputedFraction) {
+            left = FaceFrame.UNCOMPUTED_PROBABILITY;
+            right = FaceFrame.UNCOMPUTED_PROBABILITY;
+        }
+        float half = face.size / 2;
+        out.set(face.id, nowMs, face.x - half, face.y - half * 1.2f, face.size, face.size * 1.2f,
+                face.yaw, face.roll, left, right);
+
+        float shift = face.size * 0.2f * face.yaw / 90;
+        float eyeY = face.y - face.size * 0.15f;
+        landmark(out, LandmarkTypes.LEFT_EYE, face.x - face.size * 0.2f + shift, eyeY);
+        landmark(out, LandmarkTypes.RIGHT_EYE, face.x + face.size * 0.2f + shift, eyeY);
+        landmark(out, LandmarkTypes.NOSE_BASE, face.x + shift * 1.5f, face.y + face.size * 0.1f);
+        landmark(out, LandmarkTypes.LEFT_MOUTH, face.x - face.size * 0.15f + shift,
+                face.y + face.size * 0.3f);
+        landmark(out, LandmarkTypes.RIGHT_MOUTH, face.x + face.size * 0.15f + shift,
+                face.y + face.size * 0.3f);
+        landmark(out, LandmarkTypes.BOTTOM_MOUTH, face.x + shift, face.y + face.size * 0.35f);
+        landmark(out, LandmarkTypes.LEFT_EAR, face.x - half, face.y);
+        landmark(out, LandmarkTypes.RIGHT_EAR, face.x + half, face.y);
+    }
+
+    private void landmark(FaceFrame out, int type, float x, float y) {
+        if (mRandom.nextFloat() >= mConfig.mMissingLandmarkFraction) {
+            out.setLandmark(type, x, y);
+        }
+    }
+
+    private float eyeProbability(boolean closed) {
+        float random = mRandom.nextFloat();
+        return closed ? MIN_CLOSED + random * (MAX_CLOSED - MIN_CLOSED)
+                : MIN_OPEN + random * (1 - MIN_OPEN);
+    }
+
+    private void label(int type, long startMs, long endMs, int faceId) {
+        if (mListener != null) {
+            mListener.onLabel(type, startMs, endMs, faceId);
+        }
+    }
+
+    /**
+     * Returns a time after {@code fromMs}, exponentially distributed with the given mean, or never
+     * if the mean is not positive.
+     */
+    private long scheduleAfter(long fromMs, long meanMs) {
+        if (meanMs <= 0) {
+            return Long.MAX_VALUE / 2;
+        }
+        double delay = -Math.log(1 - mRandom.nextDouble()) * meanMs;
+        return fromMs + Math.max(1, (long) delay);
+    }
+
+    private void fillRect(byte[] nv21, float left, float top, float right, float bottom,
+                          int luma) {
+        int width = mConfig.mWidth;
+        int x0 = Math.max(0, (int) left);
+        int x1 = Math.min(width, (int) right);
+        int y0 = Math.max(0, (int) top);
+        int y1 = Math.min(mConfig.mHeight, (int) bottom);
+        if (x1 <= x0) {
+            return;
+        }
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(nv21, y * width + x0, y * width + x1, (byte) luma);
+        }
+    }
+
+    //==============================================================================================
+    // Builder
+    //==============================================================================================
+
+    public static class Builder {
+        private long mSeed = 1;
+        private int mFaceCount = 1;
+        private int mWidth = 640;
+        private int mHeight = 480;
+        private long mFrameIntervalMs = 33;
+        private long mBlinkIntervalMs = 4000;
+        private long mBlinkMs = 200;
+        private float mWinkFraction = 0.1f;
+        private long mTurnIntervalMs = 8000;
+        private long mTurnMs = 1200;
+        private float mTurnYaw = 55;
+        private long mOcclusionIntervalMs = 30000;
+        private long mOcclusionMs = 1500;
+        private float mUncomputedFraction = 0.02f;
+        private float mMissingLandmarkFraction = 0.05f;
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public Builder setFaceCount(int faceCount) {
+            mFaceCount = faceCount;
+            return this;
+        }
+
+        /**
+         * The size of the frames, which are upright: faces are drawn as they are reported.
+         */
+        public Builder setFrameSize(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            return this;
+        }
+
+        public Builder setFrameIntervalMs(long frameIntervalMs) {
+            mFrameIntervalMs = frameIntervalMs;
+            return this;
+        }
+
+        /**
+         * The mean time between blinks of a face, and how long each lasts.  A mean of zero turns
+         * blinking off.
+         */
+        public Builder setBlinks(long meanIntervalMs, long durationMs) {
+            mBlinkIntervalMs = meanIntervalMs;
+            mBlinkMs = durationMs;
+            return this;
+        }
+
+        /**
+         * The fraction of blinks which close only one eye.
+         */
+        public Builder setWinkFraction(float winkFraction) {
+            mWinkFraction = winkFraction;
+            return this;
+        }
+
+        /**
+         * The mean time between head turns, how long a turn takes out and back, and the yaw it
+         * peaks at.  A mean of zero turns head turns off.
+         */
+        public Builder setTurns(long meanIntervalMs, long durationMs, float peakYaw) {
+            mTurnIntervalMs = meanIntervalMs;
+            mTurnMs = durationMs;
+            mTurnYaw = peakYaw;
+            return this;
+        }
+
+        /**
+         * The mean time a face stays in view, and how long it is gone when it is occluded.  A mean
+         * of zero keeps faces in view.
+         */
+        public Builder setOcclusions(long meanIntervalMs, long durationMs) {
+            mOcclusionIntervalMs = meanIntervalMs;
+            mOcclusionMs = durationMs;
+            return this;
+        }
+
+        /**
+         * The fraction of face records with uncomputed eye probabilities, and of landmarks which
+         * are missing.
+         */
+        public Builder setDropouts(float uncomputedFraction, float missingLandmarkFraction) {
+            mUncomputedFraction = uncomputedFraction;
+            mMissingLandmarkFraction = missingLandmarkFraction;
+            return this;
+        }
+
+        public SyntheticFaces build(LabelListener listener) {
+            if (mFaceCount <= 0 || mWidth <= 0 || mHeight <= 0 || (mWidth & 1) != 0
+                    || (mHeight & 1) != 0) {
+                throw new IllegalArgumentException(
+                        "Need faces and an even, positive frame size");
+            }
+            if (mFrameIntervalMs <= 0 || mBlinkMs <= 0 || mTurnMs <= 0 || mOcclusionMs <= 0) {
+                throw new IllegalArgumentException("Intervals and durations must be positive");
+            }
+            // Copied, so that later changes to the builder do not reach the stream.
+            Builder config = new Builder();
+            config.mSeed = mSeed;
+            config.mFaceCount = mFaceCount;
+            config.mWidth = mWidth;
+            config.mHeight = mHeight;
+            config.mFrameIntervalMs = mFrameIntervalMs;
+            config.mBlinkIntervalMs = mBlinkIntervalMs;
+            config.mBlinkMs = mBlinkMs;
+            config.mWinkFraction = mWinkFraction;
+            config.mTurnIntervalMs = mTurnIntervalMs;
+            config.mTurnMs = mTurnMs;
+            config.mTurnYaw = mTurnYaw;
+            config.mOcclusionIntervalMs = mOcclusionIntervalMs;
+            config.mOcclusionMs = mOcclusionMs;
+            config.mUncomputedFraction = mUncomputedFraction;
+            config.mMissingLandmarkFraction = mMissingLandmarkFraction;
+            return new SyntheticFaces(config, listener);
+        }
+    }
+}
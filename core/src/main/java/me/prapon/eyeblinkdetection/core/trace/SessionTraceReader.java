@@ -0,0 +1,91 @@
+package me.prapon.eyeblinkdetection.core.trace;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+
+/**
+ * Reads a text session trace: the faces seen by the tracker, one face per line, in frame order.
+ * Each line holds comma separated values:
+ *
+ * <pre>
+ * timestampMs,id,left,top,width,height,eulerY,eulerZ,leftEyeOpen,rightEyeOpen,landmarks
+ * </pre>
+ *
+ * where landmarks is a space separated list of {@code type:x:y}, and may be empty.  Blank lines and
+ * lines starting with '#' are ignored.
+ */
+public class SessionTraceReader implements Closeable {
+    static final String HEADER =
+            "# timestampMs,id,left,top,width,height,eulerY,eulerZ,leftEyeOpen,rightEyeOpen,landmarks";
+
+    private static final int FIELD_COUNT = 11;
+
+    private final BufferedReader mReader;
+    private int mLineNumber;
+
+    public SessionTraceReader(Reader reader) {
+        mReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Reads the next face into {@code out}.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if reading fails or the line is malformed
+     */
+    public boolean next(FaceFrame out) throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            mLineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            parse(line, out);
+            return true;
+        }
+        return false;
+    }
+
+    private void parse(String line, FaceFrame out) throws IOException {
+        String[] fields = line.split(",", -1);
+        if (fields.length < FIELD_COUNT - 1 || fields.length > FIELD_COUNT) {
+            throw new IOException("Line " + mLineNumber + ": expected " + FIELD_COUNT
+                    + " fields but found " + fields.length);
+        }
+        try {
+            out.set(Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[0]),
+                    Float.parseFloat(fields[2]),
+                    Float.parseFloat(fields[3]),
+                    Float.parseFloat(fields[4]),
+                    Float.parseFloat(fields[5]),
+                    Float.parseFloat(fields[6]),
+                    Float.parseFloat(fields[7]),
+                    Float.parseFloat(fields[8]),
+                    Float.parseFloat(fields[9]));
+            if (fields.length == FIELD_COUNT && !fields[10].isEmpty()) {
+                for (String landmark : fields[10].trim().split(" +")) {
+                    String[] parts = landmark.split(":");
+                    if (parts.length != 3) {
+                        throw new IOException("Line " + mLineNumber + ": bad landmark " + landmark);
+                    }
+                    out.setLandmark(Integer.parseInt(parts[0]),
+                            Float.parseFloat(parts[1]), Float.parseFloat(parts[2]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + mLineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,58 @@
+package me.prapon.eyeblinkdetection.core.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Writes face frames as a text session trace, one frame per line, in the format read by
+ * {@link SessionTraceReader}.
+ */
+public class SessionTraceWriter implements Closeable {
+    private final Writer mWriter;
+    private final StringBuilder mLine = new StringBuilder(256);
+
+    public SessionTraceWriter(Writer writer) throws IOException {
+        mWriter = writer;
+        mWriter.write(SessionTraceReader.HEADER);
+        mWriter.write('\n');
+    }
+
+    public void write(FaceFrame face) throws IOException {
+        StringBuilder line = mLine;
+        line.setLength(0);
+        line.append(face.getTimestampMs()).append(',')
+                .append(face.getId()).append(',')
+                .append(face.getLeft()).append(',')
+                .append(face.getTop()).append(',')
+                .append(face.getWidth()).append(',')
+                .append(face.getHeight()).append(',')
+                .append(face.getEulerY()).append(',')
+                .append(face.getEulerZ()).append(',')
+                .append(face.getLeftEyeOpenProbability()).append(',')
+                .append(face.getRightEyeOpenProbability()).append(',');
+        boolean first = true;
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if (!face.hasLandmark(type)) {
+                continue;
+            }
+            if (!first) {
+                line.append(' ');
+            }
+            first = false;
+            line.append(type).append(':')
+                    .append(face.getLandmarkX(type)).append(':')
+                    .append(face.getLandmarkY(type));
+        }
+        line.append('\n');
+        mWriter.append(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.close();
+    }
+}
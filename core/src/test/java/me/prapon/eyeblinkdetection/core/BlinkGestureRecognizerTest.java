@@ -0,0 +1,82 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlinkGestureRecognizerTest {
+    private static final float OPEN = 0.9f;
+    private static final float CLOSED = 0.1f;
+    private static final long FRAME_MS = 100;
+
+    /**
+     * Feeds one frame per {@link #FRAME_MS} from pairs of left and right probabilities, and returns
+     * the gestures with the index of the frame they were reported on.
+     */
+    private static List<String> recognize(float... probabilities) {
+        BlinkGestureRecognizer recognizer = new BlinkGestureRecognizer(TrackerConfig.DEFAULT);
+        List<String> gestures = new ArrayList<>();
+        for (int i = 0; i < probabilities.length / 2; i++) {
+            int gesture = recognizer.update(i * FRAME_MS, probabilities[2 * i],
+                    probabilities[2 * i + 1]);
+            if (gesture != BlinkGestureRecognizer.NONE) {
+                gestures.add(FaceEvents.name(gesture) + "@" + i);
+            }
+        }
+        return gestures;
+    }
+
+    @Test
+    public void winksAreReportedWhenTheEyeReopens() {
+        assertEquals(Arrays.asList("LEFT_WINK@3", "RIGHT_WINK@6"), recognize(
+                OPEN, OPEN,
+                CLOSED, OPEN,
+                CLOSED, FaceFrame.UNCOMPUTED_PROBABILITY,
+                OPEN, OPEN,
+                OPEN, CLOSED,
+                OPEN, CLOSED,
+                OPEN, OPEN));
+    }
+
+    @Test
+    public void twoShortBlinksMakeADoubleBlink() {
+        assertEquals(Arrays.asList("DOUBLE_BLINK@5"), recognize(
+                CLOSED, CLOSED,
+                OPEN, OPEN,
+                OPEN, OPEN,
+                CLOSED, OPEN,
+                CLOSED, CLOSED,
+                OPEN, OPEN,
+                CLOSED, CLOSED,
+                OPEN, OPEN));
+    }
+
+    @Test
+    public void longBlinkIsNotTheStartOfADoubleBlink() {
+        float[] probabilities = new float[2 * 15];
+        for (int i = 0; i < 12; i++) {
+            probabilities[2 * i] = CLOSED;
+            probabilities[2 * i + 1] = CLOSED;
+        }
+        probabilities[24] = OPEN;
+        probabilities[25] = OPEN;
+        probabilities[26] = CLOSED;
+        probabilities[27] = CLOSED;
+        probabilities[28] = OPEN;
+        probabilities[29] = OPEN;
+
+        assertEquals(Arrays.asList("LONG_BLINK@12"), recognize(probabilities));
+    }
+
+    @Test
+    public void alternatingEyesAreIgnored() {
+        assertTrue(recognize(
+                CLOSED, OPEN,
+                OPEN, CLOSED,
+                OPEN, OPEN).isEmpty());
+    }
+}
@@ -0,0 +1,45 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EyeStateTest {
+    private static final int FRAMES = 200000;
+
+    @Test
+    public void readerNeverSeesFieldsOfTwoFrames() throws InterruptedException {
+        EyeState state = new EyeState();
+        // Every field of frame i is derived from i, so that a torn read shows as a mismatch.
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= FRAMES; i++) {
+                state.publish(true, i, i + 1, i % 2 == 0, i + 2, i + 3, i % 2 != 0, i, i * 10L);
+            }
+        });
+        writer.start();
+
+        EyeState.Snapshot snapshot = new EyeState.Snapshot();
+        int lastCount = 0;
+        while (lastCount < FRAMES) {
+            if (!state.read(snapshot)) {
+                continue;
+            }
+            int i = snapshot.blinkCount;
+            assertTrue(i >= lastCount);
+            assertEquals(i, snapshot.leftX, 0);
+            assertEquals(i + 1, snapshot.leftY, 0);
+            assertEquals(i % 2 == 0, snapshot.leftOpen);
+            assertEquals(i + 2, snapshot.rightX, 0);
+            assertEquals(i + 3, snapshot.rightY, 0);
+            assertEquals(i % 2 != 0, snapshot.rightOpen);
+            assertEquals(i * 10L, snapshot.timestampMs);
+            assertEquals(i, snapshot.version);
+            lastCount = i;
+        }
+        writer.join();
+
+        state.clearEyes();
+        assertFalse(state.read(snapshot));
+        assertEquals(FRAMES, snapshot.blinkCount);
+    }
+}
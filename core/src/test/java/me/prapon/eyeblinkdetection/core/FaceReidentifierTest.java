@@ -0,0 +1,63 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FaceReidentifierTest {
+    private static final FaceEventListener IGNORE = (type, blinkCount, timestampMs) -> {
+    };
+
+    private static FaceFrame face(int id, long timestampMs, float left, float top, float eulerY) {
+        return new FaceFrame().set(id, timestampMs, left, top, 100, 100, eulerY, 0, 0.9f, 0.9f);
+    }
+
+    @Test
+    public void nearbyNewFaceContinuesLostFace() {
+        FaceReidentifier reidentifier = new FaceReidentifier();
+        FaceTrackerLogic lost = new FaceTrackerLogic(TrackerConfig.DEFAULT, IGNORE);
+        lost.update(new FaceFrame().set(1, 100, 200, 100, 100, 100, 0, 0, 0.1f, 0.1f));
+        FaceFrame lastSeen = face(1, 100, 200, 100, 0);
+        lost.update(lastSeen);
+        assertEquals(1, lost.getBlinkCount());
+        reidentifier.offer(1, lastSeen, lost, 200);
+        reidentifier.offer(2, face(2, 100, 600, 100, 0), lost, 200);
+
+        FaceTrackerLogic found = new FaceTrackerLogic(TrackerConfig.DEFAULT, IGNORE);
+        assertEquals(1, reidentifier.claim(face(3, 500, 220, 110, 5), found, 500));
+        assertEquals(1, found.getBlinkCount());
+        assertEquals(1, reidentifier.size());
+
+        // Faces cannot move further than their own size between detections.
+        assertEquals(FaceReidentifier.NO_MATCH,
+                reidentifier.claim(face(4, 500, 750, 100, 0), found, 500));
+        assertEquals(2, reidentifier.claim(face(5, 500, 620, 90, 30), found, 500));
+    }
+
+    @Test
+    public void searchReachesLargerLostFacesOfAnyShape() {
+        FaceReidentifier reidentifier = new FaceReidentifier();
+        FaceTrackerLogic logic = new FaceTrackerLogic(TrackerConfig.DEFAULT, IGNORE);
+        // A wide lost face, whose center is further from the new face's than the new face is
+        // tall or wide, but within the lost face's own width.
+        FaceFrame wide = new FaceFrame().set(1, 0, 0, 0, 400, 100, 0, 0, 0.9f, 0.9f);
+        reidentifier.offer(1, wide, logic, 0);
+
+        FaceFrame tall = new FaceFrame().set(2, 100, 300, -100, 130, 260, 0, 0, 0.9f, 0.9f);
+        assertEquals(1, reidentifier.claim(tall, logic, 100));
+    }
+
+    @Test
+    public void lostFacesExpireAfterGraceWindow() {
+        FaceReidentifier reidentifier = new FaceReidentifier(1000);
+        FaceTrackerLogic logic = new FaceTrackerLogic(TrackerConfig.DEFAULT, IGNORE);
+        reidentifier.offer(1, face(1, 0, 0, 0, 0), logic, 0);
+        reidentifier.offer(2, face(2, 0, 0, 0, 0), logic, 500);
+        assertTrue(reidentifier.withdraw(2));
+        assertFalse(reidentifier.withdraw(2));
+
+        assertEquals(FaceReidentifier.NO_MATCH,
+                reidentifier.claim(face(3, 1500, 0, 0, 0), logic, 1500));
+        assertEquals(0, reidentifier.size());
+    }
+}
@@ -0,0 +1,114 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FaceTrackerLogicTest {
+    private final List<Integer> mEvents = new ArrayList<>();
+    private final FaceFrame mFrame = new FaceFrame();
+    private FaceTrackerLogic mLogic;
+
+    @Before
+    public void setUp() {
+        mLogic = new FaceTrackerLogic(TrackerConfig.DEFAULT,
+                (type, blinkCount, timestampMs) -> mEvents.add(type));
+        mLogic.start(0);
+    }
+
+    private void update(long timestampMs, float eulerY, float leftOpen, float rightOpen) {
+        mFrame.set(1, timestampMs, 0, 0, 100, 100, eulerY, 0, leftOpen, rightOpen);
+        mLogic.update(mFrame);
+    }
+
+    @Test
+    public void blinksAreDebouncedByCooldown() {
+        update(100, 0, 0.1f, 0.9f);
+        update(200, 0, 0.1f, 0.1f);
+        update(2500, 0, 0.9f, 0.2f);
+
+        assertEquals(2, mLogic.getBlinkCount());
+        assertEquals(2, mEvents.size());
+    }
+
+    @Test
+    public void uncomputedProbabilityKeepsPreviousState() {
+        update(100, 0, 0.9f, 0.9f);
+        update(200, 0, FaceFrame.UNCOMPUTED_PROBABILITY, FaceFrame.UNCOMPUTED_PROBABILITY);
+
+        assertTrue(mLogic.isLeftOpen());
+        assertEquals(0, mLogic.getBlinkCount());
+    }
+
+    @Test
+    public void eyeStateIsNotCarriedOverLongGap() {
+        update(100, 0, 0.1f, 0.9f);
+        assertFalse(mLogic.isLeftOpen());
+
+        update(5000, 0, FaceFrame.UNCOMPUTED_PROBABILITY, FaceFrame.UNCOMPUTED_PROBABILITY);
+        assertTrue(mLogic.isLeftOpen());
+        assertEquals(1, mLogic.getBlinkCount());
+    }
+
+    @Test
+    public void eyeStateIsNotCarriedAcrossDiscontinuity() {
+        update(100, 0, 0.1f, 0.9f);
+        // Dropped frames keep the eye state, only a break in the stream clears it.
+        mLogic.onFrameGap(false);
+        update(300, 0, FaceFrame.UNCOMPUTED_PROBABILITY, FaceFrame.UNCOMPUTED_PROBABILITY);
+        assertFalse(mLogic.isLeftOpen());
+
+        mLogic.onFrameGap(true);
+        update(400, 0, FaceFrame.UNCOMPUTED_PROBABILITY, FaceFrame.UNCOMPUTED_PROBABILITY);
+        assertTrue(mLogic.isLeftOpen());
+        assertEquals(1, mLogic.getBlinkCount());
+    }
+
+    @Test
+    public void headTurnsWaitForCooldownFromStart() {
+        update(1000, -50, 0.9f, 0.9f);
+        assertTrue(mEvents.isEmpty());
+
+        update(2100, -50, 0.9f, 0.9f);
+        update(2200, 50, 0.9f, 0.9f);
+        assertEquals(FaceEvents.LEFT_FACE, (int) mEvents.get(0));
+        assertEquals(FaceEvents.RIGHT_FACE, (int) mEvents.get(1));
+    }
+
+    @Test
+    public void turnLeadFiresBeforeThresholdOnlyWhileTurning() {
+        mLogic.setTurnLeadMs(300);
+        // Turning right at 60 degrees per second: 40 degrees is expected within the lead at 24.
+        update(2100, 12, 0.9f, 0.9f);
+        update(2200, 18, 0.9f, 0.9f);
+        assertTrue(mEvents.isEmpty());
+        update(2300, 24, 0.9f, 0.9f);
+        assertEquals(FaceEvents.RIGHT_FACE, (int) mEvents.get(0));
+        assertEquals(42, mLogic.getTurnTargetYaw(), 0.01f);
+
+        // A head held at 30 degrees to the left is not turning, so it is not expected to get to 40.
+        update(5000, -30, 0.9f, 0.9f);
+        update(5100, -30, 0.9f, 0.9f);
+        assertEquals(1, mEvents.size());
+    }
+
+    @Test
+    public void missingLandmarkIsApproximatedFromProportions() {
+        mFrame.set(1, 0, 10, 20, 100, 100, 0, 0, 0.9f, 0.9f);
+        mFrame.setLandmark(LandmarkTypes.LEFT_EYE, 40, 50);
+        mLogic.update(mFrame);
+
+        mFrame.set(1, 100, 110, 20, 200, 100, 0, 0, 0.9f, 0.9f);
+        mLogic.update(mFrame);
+
+        float[] position = new float[2];
+        assertTrue(mLogic.getLandmarkPosition(mFrame, LandmarkTypes.LEFT_EYE, position));
+        assertEquals(170f, position[0], 0.001f);
+        assertEquals(50f, position[1], 0.001f);
+        assertFalse(mLogic.getLandmarkPosition(mFrame, LandmarkTypes.NOSE_BASE, position));
+    }
+}
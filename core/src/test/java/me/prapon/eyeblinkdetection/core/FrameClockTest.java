@@ -0,0 +1,40 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameClockTest {
+    private final FrameClock mClock = new FrameClock(100, 1000);
+
+    @Test
+    public void sessionTimeFollowsCaptureTimestamps() {
+        assertEquals(500, mClock.advance(500, 9000));
+        assertEquals(600, mClock.advance(600, 9500));
+        assertEquals(710, mClock.advance(710, 9510));
+        assertFalse(mClock.isDiscontinuity());
+        assertEquals(0, mClock.getStats().droppedFrames);
+    }
+
+    @Test
+    public void longIntervalsCountDroppedFrames() {
+        mClock.advance(0, 0);
+        mClock.advance(100, 100);
+        mClock.advance(400, 400);
+
+        assertEquals(2, mClock.getDroppedInLastInterval());
+        assertEquals(2, mClock.getStats().droppedFrames);
+        assertEquals(100f, mClock.getStats().expectedIntervalMs, 0.001f);
+    }
+
+    @Test
+    public void cameraRestartIsBridgedWithFallbackClock() {
+        mClock.advance(5000, 20000);
+        long now = mClock.advance(30, 23000);
+
+        assertTrue(mClock.isDiscontinuity());
+        assertEquals(8000, now);
+        assertEquals(8100, mClock.advance(130, 23100));
+        assertEquals(1, mClock.getStats().discontinuities);
+    }
+}
@@ -0,0 +1,57 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SignalHistoryTest {
+    @Test
+    public void levelsKeepSpikesAndWrapOldestFirst() {
+        SignalHistory history = new SignalHistory(4, 3, 2);
+        float[] mins = new float[4];
+        float[] maxs = new float[4];
+        // Mostly open eyes, with one blink and one missing sample.
+        float[] samples = {0.9f, 0.8f, 0.1f, 0.9f, Float.NaN, 0.7f, 0.9f, 0.9f, 0.6f, 0.8f};
+        for (float sample : samples) {
+            history.add(sample);
+        }
+
+        assertEquals(4, history.read(0, mins, maxs));
+        assertArrayEquals(new float[]{0.9f, 0.9f, 0.6f, 0.8f}, maxs, 0);
+
+        // Pairs of samples, of which the first pair no longer fits.
+        assertEquals(4, history.read(1, mins, maxs));
+        assertArrayEquals(new float[]{0.1f, 0.7f, 0.9f, 0.6f}, mins, 0);
+        assertArrayEquals(new float[]{0.9f, 0.7f, 0.9f, 0.8f}, maxs, 0);
+
+        // Pairs of pairs: the blink survives two levels of decimation.
+        assertEquals(2, history.read(2, mins, maxs));
+        assertEquals(0.1f, mins[0], 0);
+        assertEquals(0.7f, mins[1], 0);
+        assertEquals(4, history.getSamplesPerPoint(2));
+
+        history.add(Float.NaN);
+        history.add(Float.NaN);
+        history.read(1, mins, maxs);
+        assertTrue(Float.isNaN(mins[3]));
+    }
+
+    @Test
+    public void signalsFollowOneFaceAtATime() {
+        FaceSignals signals = new FaceSignals(8, 1, 2);
+        assertTrue(signals.add(new FaceFrame().set(1, 0, 0, 0, 10, 10, 5, 0, 0.9f, -1)));
+        assertFalse(signals.add(new FaceFrame().set(2, 100, 0, 0, 10, 10, -5, 0, 0.9f, 0.9f)));
+        assertTrue(signals.add(new FaceFrame().set(1, 200, 0, 0, 10, 10, 6, 0, 0.2f, 0.2f)));
+        // The first face is gone for long enough.
+        assertTrue(signals.add(new FaceFrame().set(2, 5000, 0, 0, 10, 10, -5, 0, 0.9f, 0.9f)));
+
+        float[] mins = new float[8];
+        float[] maxs = new float[8];
+        assertEquals(3, signals.get(FaceSignals.YAW).read(0, mins, maxs));
+        assertArrayEquals(new float[]{5, 6, -5}, Arrays.copyOf(mins, 3), 0);
+        signals.get(FaceSignals.RIGHT_EYE).read(0, mins, maxs);
+        assertTrue(Float.isNaN(mins[0]));
+    }
+}
@@ -0,0 +1,43 @@
+package me.prapon.eyeblinkdetection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class YawPredictorTest {
+    @Test
+    public void velocityIsFittedOverRecentSamples() {
+        YawPredictor predictor = new YawPredictor();
+        predictor.update(0, 0);
+        assertFalse(predictor.hasVelocity());
+        assertEquals(0, predictor.predict(500), 0);
+
+        // 100 degrees per second, with noise that the fit averages out.
+        predictor.update(100, 11);
+        predictor.update(200, 19);
+        predictor.update(300, 30);
+        assertEquals(98, predictor.getVelocity(), 1);
+        assertEquals(30 + 0.098 * 200, predictor.predict(200), 0.5);
+
+        // A long gap starts over.
+        predictor.update(5000, 30);
+        assertFalse(predictor.hasVelocity());
+    }
+
+    @Test
+    public void captureStatsSmoothLatencyIntoLead() {
+        TurnCaptureStats stats = new TurnCaptureStats();
+        assertEquals(0, stats.getLeadMs());
+        stats.recordCapture(400, 42, 45);
+        assertEquals(400, stats.getLeadMs());
+        stats.recordCapture(200, -42, Float.NaN);
+        assertEquals(350, stats.getLeadMs());
+        stats.recordCapture(10000, -42, -40);
+        assertEquals(TurnCaptureStats.MAX_LEAD_MS, stats.getLeadMs());
+
+        // Overshooting the right turn by 3 and undershooting the left one by 2.
+        assertEquals(2, stats.getCount());
+        assertEquals(0.5f, stats.getMeanError(), 0.001f);
+        assertEquals(2.5f, stats.getMeanAbsError(), 0.001f);
+    }
+}
@@ -0,0 +1,93 @@
+package me.prapon.eyeblinkdetection.core.codec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+import static org.junit.Assert.*;
+
+public class FrameCodecTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static FaceFrame face(int i) {
+        FaceFrame face = new FaceFrame();
+        // Two interleaved faces, the second without landmarks every third frame.
+        int id = i % 2;
+        face.set(id, 1000 + i * 33L, 10 + i * 0.5f, 20 - id, 100, 120,
+                (i % 90) - 45, -3.25f, (i % 30) < 2 ? 0.05f : 0.97f,
+                i % 5 == 0 ? FaceFrame.UNCOMPUTED_PROBABILITY : 0.8f);
+        if (id == 0 || i % 3 != 0) {
+            face.setLandmark(LandmarkTypes.LEFT_EYE, 40 + i * 0.25f, 50);
+            face.setLandmark(LandmarkTypes.RIGHT_EYE, 80 + i * 0.25f, 50.5f);
+        }
+        return face;
+    }
+
+    private static void assertSameFace(FaceFrame expected, FaceFrame actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestampMs(), actual.getTimestampMs());
+        assertEquals(expected.getLeft(), actual.getLeft(), 1 / 32f);
+        assertEquals(expected.getTop(), actual.getTop(), 1 / 32f);
+        assertEquals(expected.getEulerY(), actual.getEulerY(), 0.005f);
+        assertEquals(expected.getEulerZ(), actual.getEulerZ(), 0.005f);
+        assertEquals(expected.getLeftEyeOpenProbability(), actual.getLeftEyeOpenProbability(),
+                0.0005f);
+        assertEquals(expected.getRightEyeOpenProbability(), actual.getRightEyeOpenProbability(),
+                0.0005f);
+        assertEquals(expected.getLandmarkMask(), actual.getLandmarkMask());
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if (expected.hasLandmark(type)) {
+                assertEquals(expected.getLandmarkX(type), actual.getLandmarkX(type), 1 / 32f);
+                assertEquals(expected.getLandmarkY(type), actual.getLandmarkY(type), 1 / 32f);
+            }
+        }
+    }
+
+    @Test
+    public void streamRoundTrip() {
+        FrameEncoder encoder = new FrameEncoder(16);
+        ByteBuffer buffer = ByteBuffer.allocate(200 * FrameFormat.MAX_RECORD_BYTES);
+        for (int i = 0; i < 200; i++) {
+            encoder.encode(face(i), buffer);
+        }
+        buffer.flip();
+
+        FrameDecoder decoder = new FrameDecoder();
+        FaceFrame decoded = new FaceFrame();
+        for (int i = 0; i < 200; i++) {
+            decoder.decode(buffer, decoded);
+            assertSameFace(face(i), decoded);
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void fileSeeksToAnyRecord() throws IOException {
+        File file = mFolder.newFile("session" + FrameFormat.FILE_SUFFIX);
+        try (FrameFileWriter writer = new FrameFileWriter(file, 10)) {
+            for (int i = 0; i < 95; i++) {
+                writer.write(face(i));
+            }
+        }
+
+        FaceFrame decoded = new FaceFrame();
+        try (FrameFileReader reader = new FrameFileReader(file)) {
+            assertEquals(95, reader.getRecordCount());
+            for (int index : new int[]{57, 0, 94, 10, 9}) {
+                reader.seek(index);
+                assertTrue(reader.next(decoded));
+                assertSameFace(face(index), decoded);
+            }
+            reader.seek(95);
+            assertFalse(reader.next(decoded));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.prapon.eyeblinkdetection.core.eval;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.SessionAnalyzer;
+import me.prapon.eyeblinkdetection.core.SessionReport;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+import static org.junit.Assert.*;
+
+public class EvaluationTest {
+    @Test
+    public void scoresBlinksAgainstLabels() throws IOException {
+        GroundTruth truth = GroundTruth.read(new StringReader("# type,startMs,endMs\n"
+                + "EYE,950,1250\n"
+                + "\n"
+                + "EYE,8000,8200,7\n"
+                + "LEFT_FACE,9000,9500\n"));
+        assertEquals(3, truth.getLabels().size());
+
+        SessionAnalyzer analyzer = new SessionAnalyzer("test", TrackerConfig.DEFAULT);
+        FaceFrame face = new FaceFrame();
+        for (long t = 0; t < 10000; t += 100) {
+            // A labeled blink, an unlabeled one, and a labeled one that is missed.
+            boolean closed = (t >= 1000 && t <= 1200) || t == 5000;
+            float open = closed ? 0.1f : 0.9f;
+            analyzer.update(face.set(7, t, 0, 0, 100, 100, 0, 0, open, open));
+        }
+        SessionReport report = analyzer.getReport();
+
+        Evaluation evaluation = new Evaluation(FaceEvents.EYE);
+        evaluation.score(truth, report.getEvents(), 100);
+        assertEquals(1, evaluation.getTruePositives(FaceEvents.EYE));
+        assertEquals(1, evaluation.getFalsePositives(FaceEvents.EYE));
+        assertEquals(1, evaluation.getFalseNegatives(FaceEvents.EYE));
+        assertEquals(0.5f, evaluation.getPrecision(FaceEvents.EYE), 1e-6);
+        assertEquals(0.5f, evaluation.getRecall(FaceEvents.EYE), 1e-6);
+        // Reported on the first closed frame, 50 ms after the labeled onset.
+        assertEquals(50, evaluation.getLatency(FaceEvents.EYE).getPercentileMicros(0.5) / 1000);
+
+        Evaluation total = new Evaluation(FaceEvents.EYE);
+        total.add(evaluation);
+        total.add(evaluation);
+        assertEquals(2, total.getTruePositives(FaceEvents.EYE));
+        assertEquals(0.5f, total.getF1(), 1e-6);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownEvents() throws IOException {
+        GroundTruth.read(new StringReader("WAVE,0,100\n"));
+    }
+}
@@ -0,0 +1,90 @@
+package me.prapon.eyeblinkdetection.core.eventlog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+
+import static org.junit.Assert.*;
+
+public class EventLogTest {
+    // Small segments, so that a few thousand events span several.
+    private static final int SEGMENT_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Appends an event every 100 ms: a blink, or a right turn every tenth event.
+     */
+    private static void appendEvents(EventLog log, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            log.append(i * 100L, i % 10 == 0 ? FaceEvents.RIGHT_FACE : FaceEvents.EYE, i % 3, i);
+        }
+    }
+
+    @Test
+    public void rangeQueriesSpanSegmentsAndSurviveReopen() throws IOException {
+        File directory = mFolder.newFolder();
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES)) {
+            appendEvents(log, 5000);
+            assertTrue(log.getSegmentCount() > 3);
+            assertEquals(5000, log.getEventCount());
+
+            List<Integer> values = new ArrayList<>();
+            log.query(123450, 125000, EventLog.ALL_TYPES,
+                    (timestampMs, type, faceId, value) -> values.add(value));
+            assertEquals(15, values.size());
+            assertEquals(1235, (int) values.get(0));
+        }
+
+        // Simulate a crash part way through writing the second of two events.
+        EventLog crashed = new EventLog(directory, SEGMENT_BYTES);
+        crashed.append(500000, FaceEvents.LONG_BLINK, 1, 0);
+        crashed.append(500100, FaceEvents.LONG_BLINK, 1, 0);
+        crashed.flush();
+        File newest = new File(directory, EventLogFormat.fileName(crashed.getSegmentCount() - 1));
+        try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES)) {
+            assertEquals(500, log.count(0, 500000, EventLog.typeBit(FaceEvents.RIGHT_FACE)));
+            long[] perMinute = log.countPerBucket(0, 500000, 60000,
+                    EventLog.typeBit(FaceEvents.EYE));
+            assertEquals(540, perMinute[0]);
+            assertEquals(1, log.count(499950, 600000, EventLog.ALL_TYPES));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyBucketsAreRejected() throws IOException {
+        try (EventLog log = new EventLog(mFolder.newFolder(), SEGMENT_BYTES)) {
+            log.countPerBucket(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2, 1, EventLog.ALL_TYPES);
+        }
+    }
+
+    @Test
+    public void compactionDropsOldEventsAndMergesSegments() throws IOException {
+        File directory = mFolder.newFolder();
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES)) {
+            appendEvents(log, 5000);
+            int segments = log.getSegmentCount();
+
+            assertEquals(2500, log.compact(250000));
+            assertTrue(log.getSegmentCount() < segments);
+            assertEquals(0, log.count(0, 250000, EventLog.ALL_TYPES));
+            assertEquals(2500, log.count(250000, Long.MAX_VALUE, EventLog.ALL_TYPES));
+
+            log.append(600000, FaceEvents.EYE, 0, 0);
+            assertEquals(2501, log.getEventCount());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LumaResamplerTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+
+    @Test
+    public void upscaledGradientKeepsEndsAndOrder() {
+        // A horizontal ramp, 0 to 248 in steps of 8.
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                luma[y * WIDTH + x] = (byte) (x * 8);
+            }
+        }
+
+        // Columns 4 to 11 inclusive, to four times their size.
+        int[] region = {4, 8, 12, 16};
+        byte[] out = new byte[29 * 29];
+        assertTrue(LumaResampler.scale(luma, WIDTH, HEIGHT, region, out, 29, 29));
+        for (int y = 0; y < 29; y++) {
+            assertEquals(32, out[y * 29] & 0xff);
+            assertEquals(88, out[y * 29 + 28] & 0xff);
+            // Every fourth pixel lands on a source pixel, and those in between interpolate.
+            assertEquals(48, out[y * 29 + 8] & 0xff);
+            assertEquals(50, out[y * 29 + 9] & 0xff);
+            for (int x = 1; x < 29; x++) {
+                assertTrue((out[y * 29 + x] & 0xff) >= (out[y * 29 + x - 1] & 0xff));
+            }
+        }
+    }
+
+    @Test
+    public void regionIsClampedToPlane() {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luma, (byte) 200);
+        byte[] out = new byte[16 * 16];
+        assertTrue(LumaResampler.scale(luma, WIDTH, HEIGHT, new int[]{-10, -10, 8, 8}, out, 16, 16));
+        for (byte value : out) {
+            assertEquals(200, value & 0xff);
+        }
+        assertFalse(LumaResampler.scale(luma, WIDTH, HEIGHT, new int[]{40, 0, 50, 8}, out, 16, 16));
+    }
+}
@@ -0,0 +1,60 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LumaScoresTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[] checkerboard(int cell) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                luma[y * WIDTH + x] = (byte) (((x / cell + y / cell) & 1) == 0 ? 30 : 220);
+            }
+        }
+        return luma;
+    }
+
+    private static byte[] boxBlur(byte[] luma) {
+        byte[] out = luma.clone();
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                int sum = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        sum += luma[(y + dy) * WIDTH + x + dx] & 0xff;
+                    }
+                }
+                out[y * WIDTH + x] = (byte) (sum / 9);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void blurLowersSharpness() {
+        byte[] sharp = checkerboard(4);
+        int[] region = {0, 0, WIDTH, HEIGHT};
+
+        float sharpScore = LumaScores.sharpness(sharp, WIDTH, HEIGHT, region, 1);
+        float blurredScore = LumaScores.sharpness(boxBlur(sharp), WIDTH, HEIGHT, region, 1);
+
+        assertTrue(sharpScore > 2 * blurredScore);
+        assertEquals(0, LumaScores.sharpness(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, region, 2),
+                0);
+    }
+
+    @Test
+    public void regionsMapBackToSensorCoordinates() {
+        int[] region = {10, 20, 30, 60};
+        LumaScores.toSensorRegion(1, WIDTH, HEIGHT, region);
+        assertArrayEquals(new int[]{20, 18, 60, 38}, region);
+
+        region = new int[]{10, 20, 30, 40};
+        LumaScores.toSensorRegion(2, WIDTH, HEIGHT, region);
+        assertArrayEquals(new int[]{34, 8, 54, 28}, region);
+    }
+}
@@ -0,0 +1,70 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MotionGateTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[] gradient() {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                luma[y * WIDTH + x] = (byte) (40 + x * 2 + y);
+            }
+        }
+        return luma;
+    }
+
+    private static void fill(byte[] luma, int left, int top, int right, int bottom, int value) {
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                luma[y * WIDTH + x] = (byte) value;
+            }
+        }
+    }
+
+    @Test
+    public void localChangeWithinFacesPassesTheGate() {
+        MotionGate gate = new MotionGate(8, 6, 500);
+        byte[] luma = gradient();
+        int[] face = {16, 8, 48, 40};
+        assertFalse(gate.isUnchanged(ByteBuffer.wrap(luma), WIDTH, HEIGHT, 0));
+        gate.setReference(ByteBuffer.wrap(luma), WIDTH, HEIGHT, face, 0);
+
+        // Sensor noise, and a change outside the faces and their margin.
+        byte[] still = luma.clone();
+        for (int i = 0; i < still.length; i += 3) {
+            still[i] += 2;
+        }
+        fill(still, 0, 0, 6, HEIGHT, 255);
+        assertTrue(gate.isUnchanged(ByteBuffer.wrap(still), WIDTH, HEIGHT, 33));
+        assertTrue(gate.getLastChange() <= 2);
+
+        // A dark band across the eyes: small against the whole face, large along its rows.
+        byte[] blink = luma.clone();
+        fill(blink, 20, 18, 44, 22, 0);
+        assertFalse(gate.isUnchanged(ByteBuffer.wrap(blink), WIDTH, HEIGHT, 66));
+        assertTrue(gate.getLastChange() > 6);
+    }
+
+    @Test
+    public void stillFramesAreRefreshedAndResizesPassTheGate() {
+        MotionGate gate = new MotionGate(8, 6, 500);
+        ByteBuffer luma = ByteBuffer.wrap(gradient());
+        gate.setReference(luma, WIDTH, HEIGHT, null, 1000);
+        assertTrue(gate.isUnchanged(luma, WIDTH, HEIGHT, 1499));
+        assertFalse(gate.isUnchanged(luma, WIDTH, HEIGHT, 1500));
+        assertTrue(Float.isNaN(gate.getLastChange()));
+        // An earlier timestamp means the camera restarted.
+        assertFalse(gate.isUnchanged(luma, WIDTH, HEIGHT, 10));
+        assertFalse(gate.isUnchanged(ByteBuffer.wrap(new byte[32 * 24]), 32, 24, 1100));
+
+        gate.invalidate();
+        assertFalse(gate.isUnchanged(luma, WIDTH, HEIGHT, 1100));
+    }
+}
@@ -0,0 +1,75 @@
+package me.prapon.eyeblinkdetection.core.image;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PerceptualHashTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    /**
+     * A face-like blob of the given size and brightness on a gradient, with sensor noise.
+     */
+    private static byte[] scene(int radius, int level, int gain, long seed) {
+        Random random = new Random(seed);
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int dx = x - WIDTH / 2;
+                int dy = y - HEIGHT / 2;
+                int value = dx * dx + dy * dy < radius * radius ? level : x;
+                value = value * gain / 8 + random.nextInt(7) - 3;
+                luma[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        return luma;
+    }
+
+    @Test
+    public void nearDuplicatesAreFoundAndOthersAreNot() {
+        int[] cells = new int[PerceptualHash.cellCount()];
+        int[] face = {40, 20, 120, 100};
+        long original = PerceptualHash.dHash(scene(30, 200, 8, 1), WIDTH, HEIGHT, face, cells);
+        // Another frame of the same scene, a bit darker.
+        long again = PerceptualHash.dHash(scene(30, 200, 7, 2), WIDTH, HEIGHT, face, cells);
+        long other = PerceptualHash.dHash(scene(12, 20, 8, 3), WIDTH, HEIGHT, face, cells);
+        assertTrue(PerceptualHash.distance(original, again) <= 4);
+        assertTrue(PerceptualHash.distance(original, other) > 12);
+
+        HashIndex index = new HashIndex(64);
+        index.add(original);
+        assertEquals(PerceptualHash.distance(original, again), index.findNearest(again, 6));
+        assertEquals(-1, index.findNearest(other, 6));
+    }
+
+    @Test
+    public void indexMatchesExhaustiveSearchAcrossRebuilds() {
+        Random random = new Random(5);
+        HashIndex index = new HashIndex(100);
+        long[] added = new long[250];
+        for (int i = 0; i < added.length; i++) {
+            // Mostly variations of a few hashes, so that there are near matches to find.
+            added[i] = i % 3 == 0 ? random.nextLong()
+                    : added[random.nextInt(Math.max(1, i))] ^ (1L << random.nextInt(64))
+                    ^ (1L << random.nextInt(64));
+            index.add(added[i]);
+            // Once full, the index keeps between half and all of its capacity of the newest hashes.
+            int kept = index.size();
+            assertTrue(kept == i + 1 || (kept > 50 && kept <= 100));
+
+            long query = added[i] ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64))
+                    ^ (1L << random.nextInt(64));
+            int expected = -1;
+            for (int j = i - kept + 1; j <= i; j++) {
+                int distance = PerceptualHash.distance(added[j], query);
+                if (distance <= HashIndex.MAX_DISTANCE && (expected < 0 || distance < expected)) {
+                    expected = distance;
+                }
+            }
+            assertEquals(expected, index.findNearest(query, HashIndex.MAX_DISTANCE));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package me.prapon.eyeblinkdetection.core.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyBudgetTest {
+    private static final long MS = 1000000;
+
+    private static long[] event(long detectMs, long uiMs) {
+        long start = 1000 * MS;
+        return new long[]{start, start + detectMs * MS, start + (detectMs + uiMs) * MS};
+    }
+
+    @Test
+    public void levelStepsDownOnMissesAndRecoversWithHeadroom() {
+        LatencyBudget budget = new LatencyBudget(150, "detect", "ui");
+        for (int i = 0; i < 20; i++) {
+            assertEquals(LatencyBudget.LEVEL_FULL, budget.record(event(80, 20)));
+        }
+
+        // Two misses in a window are tolerated, the third sheds work.
+        assertEquals(LatencyBudget.LEVEL_FULL, budget.record(event(150, 20)));
+        assertEquals(LatencyBudget.LEVEL_FULL, budget.record(event(150, 20)));
+        assertEquals(LatencyBudget.LEVEL_REDUCED, budget.record(event(150, 20)));
+        // The window starts over, so it takes three more misses to shed more.
+        assertEquals(LatencyBudget.LEVEL_REDUCED, budget.record(event(150, 20)));
+        assertEquals(LatencyBudget.LEVEL_REDUCED, budget.record(event(150, 20)));
+        assertEquals(LatencyBudget.LEVEL_MINIMAL, budget.record(event(150, 20)));
+        assertEquals(LatencyBudget.LEVEL_MINIMAL, budget.record(event(150, 20)));
+        assertEquals(7, budget.getMisses());
+
+        // Just within budget is not enough headroom to recover.
+        for (int i = 0; i < 2 * LatencyBudget.WINDOW; i++) {
+            assertEquals(LatencyBudget.LEVEL_MINIMAL, budget.record(event(120, 20)));
+        }
+        for (int i = 0; i < LatencyBudget.WINDOW - 1; i++) {
+            assertEquals(LatencyBudget.LEVEL_MINIMAL, budget.record(event(60, 20)));
+        }
+        assertEquals(LatencyBudget.LEVEL_REDUCED, budget.record(event(60, 20)));
+        for (int i = 0; i < LatencyBudget.WINDOW; i++) {
+            budget.record(event(60, 20));
+        }
+        assertEquals(LatencyBudget.LEVEL_FULL, budget.getLevel());
+
+        // Events with an unknown boundary are not recorded.
+        long count = budget.getCount();
+        long[] unknown = event(500, 20);
+        unknown[0] = 0;
+        budget.record(unknown);
+        assertEquals(count, budget.getCount());
+        assertTrue(budget.toString().contains("detect: n=" + count));
+
+        budget.reset();
+        assertEquals(0, budget.getCount());
+        assertEquals(LatencyBudget.LEVEL_FULL, budget.getLevel());
+    }
+}
@@ -0,0 +1,131 @@
+package me.prapon.eyeblinkdetection.core.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StageTest {
+    @Test
+    public void everyItemOfManyProducersIsDeliveredOnce() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50000;
+        BoundedQueue<Integer> queue = new BoundedQueue<>(64);
+        assertEquals(64, queue.capacity());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            Thread thread = new Thread(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!queue.offer(i, 0)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        for (int received = 0; received < seen.length; ) {
+            Integer item = queue.poll(null);
+            if (item == null) {
+                continue;
+            }
+            assertFalse(seen[item]);
+            seen[item] = true;
+            // Each producer's items arrive in the order it offered them.
+            assertTrue(item > lastOfProducer[item / perProducer]);
+            lastOfProducer[item / perProducer] = item;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll(null));
+    }
+
+    @Test
+    public void fullStageDropsOldestItems() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+        Stage<Integer> stage = new Stage<>("test", 3, Stage.DROP_OLDEST, item -> {
+            if (item == 0) {
+                blocked.countDown();
+                awaitQuietly(release);
+            }
+            processed.add(item);
+            done.countDown();
+        }, dropped::add);
+        stage.start();
+
+        stage.submit(0);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // The capacity is rounded up to 4, so the first two of these six are dropped.
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(stage.submit(i));
+        }
+        assertEquals(4, stage.getQueueDepth());
+        assertEquals(Arrays.asList(1, 2), dropped);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 3, 4), processed.subList(0, 3));
+        stage.stop();
+        assertEquals(7, stage.getSubmittedCount());
+        assertEquals(2, stage.getDroppedCount());
+    }
+
+    @Test
+    public void itemsSubmittedWhileStoppingAreProcessedOrDropped() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            Stage<Integer> stage = new Stage<>("test", 8, Stage.DROP_OLDEST, item -> {
+            }, null);
+            stage.start();
+
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        stage.submit(i);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            stage.stop();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // The worker may still be dropping what it found queued.
+            long deadlineMs = System.currentTimeMillis() + 5000;
+            while (stage.getProcessedCount() + stage.getDroppedCount() < 6000
+                    && System.currentTimeMillis() < deadlineMs) {
+                Thread.sleep(1);
+            }
+            assertEquals(6000, stage.getProcessedCount() + stage.getDroppedCount());
+            assertEquals(0, stage.getQueueDepth());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package me.prapon.eyeblinkdetection.core.series;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RollupStoreTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void rollsUpLongSessionInBoundedMemoryAndWritesEveryBucket() throws IOException {
+        File directory = mFolder.newFolder("signals");
+        // An eye probability, closed below 0.5, and a yaw without a closed state.
+        RollupStore store = new RollupStore(directory, new float[]{0.5f, Float.NaN}, 2000, 64,
+                1234);
+        float[] values = new float[2];
+        int flushes = 0;
+        // 25 minutes at 10 frames per second: the eye is closed for the first 2 of every 10
+        // frames, and the yaw is missing every other frame.
+        long endMs = 25 * 60000;
+        for (long t = 0; t < endMs; t += 100) {
+            int frame = (int) (t / 100);
+            values[0] = frame % 10 < 2 ? 0.1f : 0.9f;
+            values[1] = frame % 2 == 0 ? (frame % 10) - 5 : Float.NaN;
+            store.add(t, values);
+            if (store.isFlushDue()) {
+                store.flush();
+                flushes++;
+            }
+        }
+        assertTrue(flushes >= 24);
+        assertEquals(0, store.getDroppedBuckets());
+
+        // The raw window holds 2 s of samples, the newest last added.
+        assertEquals(21, store.getRawCount());
+        assertEquals(endMs - 100, store.getRawTimestamp(0));
+        assertEquals(0.9f, store.getRawValue(0, 0), 0);
+
+        // The one second ring is full, the others hold every completed bucket.
+        assertEquals(600, store.getBucketCount(RollupStore.SECOND));
+        assertEquals(24, store.getBucketCount(RollupStore.MINUTE));
+        assertEquals(2, store.getBucketCount(RollupStore.TEN_MINUTES));
+
+        RollupStore.Bucket bucket = new RollupStore.Bucket(2);
+        store.getBucket(RollupStore.SECOND, 0, bucket);
+        assertEquals(endMs - 2000, bucket.startMs);
+        assertEquals(10, bucket.count[0]);
+        assertEquals(0.1f, bucket.min[0], 0);
+        assertEquals(0.9f, bucket.max[0], 0);
+        assertEquals(0.74f, bucket.mean[0], 1e-5);
+        assertEquals(0.2f, bucket.closedFraction[0], 1e-6);
+        assertEquals(5, bucket.count[1]);
+        assertEquals(-5, bucket.min[1], 0);
+        assertEquals(3, bucket.max[1], 0);
+        assertEquals(-1, bucket.mean[1], 1e-6);
+        assertTrue(Float.isNaN(bucket.closedFraction[1]));
+
+        store.getBucket(RollupStore.TEN_MINUTES, 1, bucket);
+        assertEquals(0, bucket.startMs);
+        assertEquals(6000, bucket.count[0]);
+        assertEquals(0.2f, bucket.closedFraction[0], 1e-6);
+
+        // Closing completes the buckets in progress, so the files hold the whole session.
+        store.close();
+        for (int resolution = 0; resolution < RollupStore.RESOLUTIONS; resolution++) {
+            long bucketMs = RollupStore.getBucketMs(resolution);
+            List<Long> starts = new ArrayList<>();
+            long[] samples = new long[1];
+            long sessionStartMs = RollupStore.read(
+                    RollupStore.fileOf(directory, 1234, resolution), b -> {
+                        starts.add(b.startMs);
+                        samples[0] += b.count[0];
+                    });
+            assertEquals(1234, sessionStartMs);
+            assertEquals((endMs + bucketMs - 1) / bucketMs, starts.size());
+            assertEquals(endMs / 100, samples[0]);
+            for (int i = 0; i < starts.size(); i++) {
+                assertEquals(i * bucketMs, (long) starts.get(i));
+            }
+        }
+        try {
+            store.add(endMs, values);
+            fail("Added to a closed store");
+        } catch (IllegalStateException expectedException) {
+            // Expected.
+        }
+
+        assertEquals(0, RollupStore.deleteSessionsBefore(directory, 1234));
+        assertEquals(RollupStore.RESOLUTIONS, RollupStore.deleteSessionsBefore(directory, 1235));
+    }
+}
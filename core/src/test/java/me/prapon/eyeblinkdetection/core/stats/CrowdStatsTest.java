@@ -0,0 +1,57 @@
+package me.prapon.eyeblinkdetection.core.stats;
+
+import org.junit.Test;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+
+import static org.junit.Assert.*;
+
+public class CrowdStatsTest {
+
+    @Test
+    public void windowsDropOldBlinksAndGoneFacesMoveToHistory() {
+        CrowdStats stats = new CrowdStats(10000);
+        CrowdStats.FaceWindow first = stats.open(1, 0);
+        CrowdStats.FaceWindow second = stats.open(2, 0);
+
+        first.onEvent(FaceEvents.EYE, 1000);
+        first.onEvent(FaceEvents.EYE, 4000);
+        first.onEvent(FaceEvents.LEFT_FACE, 5000);
+        second.onEvent(FaceEvents.EYE, 2000);
+        first.onFrame(12500);
+        second.onFrame(12500);
+
+        CrowdStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(2, snapshot.getVisibleFaces());
+        assertEquals(3, snapshot.getEventCount(FaceEvents.EYE));
+        assertEquals(1, snapshot.getEventCount(FaceEvents.LEFT_FACE));
+        assertEquals(1, snapshot.getRecentBlinks());
+        assertEquals(6f, snapshot.getCrowdRate(), 0.001f);
+
+        first.close();
+        second.close();
+        snapshot = stats.snapshot();
+        assertEquals(0, snapshot.getVisibleFaces());
+        assertEquals(2, snapshot.facesSeen);
+        assertEquals(1, snapshot.getFacesWithBlinks(1));
+        assertEquals(1, snapshot.getFacesWithBlinks(2));
+    }
+
+    @Test
+    public void stripedCounterSumsAllThreads() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counter.increment();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, counter.sum());
+    }
+}
@@ -0,0 +1,72 @@
+package me.prapon.eyeblinkdetection.core.synth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.SessionAnalyzer;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.eval.Evaluation;
+import me.prapon.eyeblinkdetection.core.eval.GroundTruth;
+
+import static org.junit.Assert.*;
+
+public class SyntheticFacesTest {
+    @Test
+    public void labeledStreamScoresWellAndRepeats() {
+        List<GroundTruth.Label> labels = new ArrayList<>();
+        SyntheticFaces faces = new SyntheticFaces.Builder()
+                .setSeed(7)
+                .setFaceCount(2)
+                .setFrameSize(160, 120)
+                .setWinkFraction(0)
+                .build((type, startMs, endMs, faceId) ->
+                        labels.add(new GroundTruth.Label(type, startMs, endMs, faceId)));
+        FaceFrame[] out = {new FaceFrame(), new FaceFrame()};
+        SessionAnalyzer analyzer = new SessionAnalyzer("synthetic", TrackerConfig.DEFAULT);
+        byte[] nv21 = new byte[160 * 120 * 3 / 2];
+        long checksum = 0;
+        for (int i = 0; i < 30 * 120; i++) {
+            int count = faces.next(out);
+            for (int j = 0; j < count; j++) {
+                analyzer.update(out[j]);
+                checksum += (long) out[j].getLeft() * 31 + out[j].getId();
+            }
+            if (i % 100 == 0) {
+                faces.render(nv21);
+                checksum += nv21[(int) (out[0].getTop() + 20) * 160 + (int) out[0].getLeft() + 20];
+            }
+        }
+        assertFalse(labels.isEmpty());
+
+        Evaluation evaluation = new Evaluation(FaceEvents.EYE, FaceEvents.LEFT_FACE,
+                FaceEvents.RIGHT_FACE);
+        evaluation.score(new GroundTruth(labels), analyzer.getReport().getEvents(), 100);
+        assertTrue(evaluation.getTruePositives(FaceEvents.EYE) > 20);
+        assertTrue(evaluation.getF1() > 0.8f);
+
+        // The same seed gives the same stream.
+        SyntheticFaces again = new SyntheticFaces.Builder()
+                .setSeed(7)
+                .setFaceCount(2)
+                .setFrameSize(160, 120)
+                .setWinkFraction(0)
+                .build(null);
+        long checksumAgain = 0;
+        for (int i = 0; i < 30 * 120; i++) {
+            int count = again.next(out);
+            for (int j = 0; j < count; j++) {
+                checksumAgain += (long) out[j].getLeft() * 31 + out[j].getId();
+            }
+            if (i % 100 == 0) {
+                again.render(nv21);
+                checksumAgain += nv21[(int) (out[0].getTop() + 20) * 160
+                        + (int) out[0].getLeft() + 20];
+            }
+        }
+        assertEquals(checksum, checksumAgain);
+    }
+}
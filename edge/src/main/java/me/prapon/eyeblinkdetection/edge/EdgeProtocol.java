@@ -0,0 +1,140 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * The wire format between devices and the edge server.  Every message is a two byte big-endian
+ * length (excluding the length itself), a one byte kind, and a payload:
+ *
+ * <pre>
+ * FRAME: sessionId:8 timestampMs:8 faceId:4 left top width height eulerY eulerZ
+ *        leftEyeOpen rightEyeOpen:4 each landmarkMask:2 (x:4 y:4) per landmark in type order
+ * EVENT: sessionId:8 type:1 blinkCount:4 timestampMs:8
+ * </pre>
+ *
+ * Devices send FRAME messages, and the server answers with an EVENT for each blink or head turn.
+ */
+final class EdgeProtocol {
+    static final int KIND_FRAME = 1;
+    static final int KIND_EVENT = 2;
+
+    private static final int HEADER_BYTES = 3;
+    private static final int FRAME_FIXED_BYTES = 8 + 8 + 4 + 8 * 4 + 2;
+    private static final int EVENT_BYTES = 8 + 1 + 4 + 8;
+
+    static final int MAX_FRAME_MESSAGE_BYTES =
+            HEADER_BYTES + FRAME_FIXED_BYTES + LandmarkTypes.COUNT * 8;
+    static final int EVENT_MESSAGE_BYTES = HEADER_BYTES + EVENT_BYTES;
+
+    /**
+     * A decoded event, reused by the reader.
+     */
+    static final class Event {
+        long sessionId;
+        int type;
+        int blinkCount;
+        long timestampMs;
+    }
+
+    private EdgeProtocol() {
+    }
+
+    /**
+     * Checks whether a complete message is buffered.  If so, consumes its header and returns its
+     * kind with the buffer positioned at the payload.  Otherwise leaves the buffer untouched and
+     * returns 0.
+     *
+     * @throws IOException if the declared length is empty or longer than any message, which
+     *                     could never be buffered completely
+     */
+    static int nextMessage(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_BYTES) {
+            return 0;
+        }
+        int length = in.getShort(in.position()) & 0xffff;
+        if (length < 1 || 2 + length > MAX_FRAME_MESSAGE_BYTES) {
+            throw new IOException("Bad message length " + length);
+        }
+        if (in.remaining() < 2 + length) {
+            return 0;
+        }
+        in.position(in.position() + 2);
+        return in.get();
+    }
+
+    static void writeFrame(ByteBuffer out, long sessionId, FaceFrame face) {
+        int mask = face.getLandmarkMask();
+        int length = 1 + FRAME_FIXED_BYTES + Integer.bitCount(mask) * 8;
+        out.putShort((short) length)
+                .put((byte) KIND_FRAME)
+                .putLong(sessionId)
+                .putLong(face.getTimestampMs())
+                .putInt(face.getId())
+                .putFloat(face.getLeft())
+                .putFloat(face.getTop())
+                .putFloat(face.getWidth())
+                .putFloat(face.getHeight())
+                .putFloat(face.getEulerY())
+                .putFloat(face.getEulerZ())
+                .putFloat(face.getLeftEyeOpenProbability())
+                .putFloat(face.getRightEyeOpenProbability())
+                .putShort((short) mask);
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((mask & (1 << type)) != 0) {
+                out.putFloat(face.getLandmarkX(type)).putFloat(face.getLandmarkY(type));
+            }
+        }
+    }
+
+    /**
+     * Reads a FRAME payload into {@code out}, returning the session id.
+     *
+     * @param length the length the message declared, which is checked against the landmarks the
+     *               payload holds before anything is read
+     * @throws IOException if the length does not match the payload
+     */
+    static long readFrame(ByteBuffer in, int length, FaceFrame out) throws IOException {
+        if (length < 1 + FRAME_FIXED_BYTES) {
+            throw new IOException("Frame message too short: " + length);
+        }
+        int mask = in.getShort(in.position() + FRAME_FIXED_BYTES - 2) & 0xffff;
+        if ((mask >>> LandmarkTypes.COUNT) != 0
+                || length != 1 + FRAME_FIXED_BYTES + Integer.bitCount(mask) * 8) {
+            throw new IOException("Frame message length " + length + " does not match landmarks "
+                    + Integer.toHexString(mask));
+        }
+        long sessionId = in.getLong();
+        long timestampMs = in.getLong();
+        int faceId = in.getInt();
+        out.set(faceId, timestampMs, in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(),
+                in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        in.getShort();
+        for (int type = 0; type < LandmarkTypes.COUNT; type++) {
+            if ((mask & (1 << type)) != 0) {
+                out.setLandmark(type, in.getFloat(), in.getFloat());
+            }
+        }
+        return sessionId;
+    }
+
+    static void writeEvent(ByteBuffer out, long sessionId, int type, int blinkCount,
+                           long timestampMs) {
+        out.putShort((short) (1 + EVENT_BYTES))
+                .put((byte) KIND_EVENT)
+                .putLong(sessionId)
+                .put((byte) type)
+                .putInt(blinkCount)
+                .putLong(timestampMs);
+    }
+
+    static void readEvent(ByteBuffer in, Event out) {
+        out.sessionId = in.getLong();
+        out.type = in.get();
+        out.blinkCount = in.getInt();
+        out.timestampMs = in.getLong();
+    }
+}
@@ -0,0 +1,333 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.prapon.eyeblinkdetection.core.FaceEventListener;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+/**
+ * A small local service which runs the tracker decision logic for devices too slow to do it
+ * themselves.  Devices stream per-frame face data over TCP in the {@link EdgeProtocol} format and
+ * get blink and head turn events back.<p>
+ *
+ * Connections are spread over a few NIO event loops, each owning a selector, so thousands of
+ * devices are served by a handful of threads.  Tracker state lives in a striped
+ * {@link SessionTable} keyed by session id, and sessions which stop sending frames are evicted
+ * after an idle timeout.<p>
+ *
+ * Usage: {@code EdgeServer [port] [--loops=N] [--stripes=N] [--idle-ms=30000]}
+ */
+public final class EdgeServer implements Closeable {
+    public static final int DEFAULT_PORT = 7461;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    private final ServerSocketChannel mServerChannel;
+    private final EventLoop[] mLoops;
+    private final SessionTable mSessions;
+    private final TrackerConfig mConfig;
+    private final long mIdleMs;
+    private final ScheduledExecutorService mSweeper = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "edge-sweeper"));
+
+    private final LongAdder mFrames = new LongAdder();
+    private final LongAdder mEvents = new LongAdder();
+    private final LongAdder mEvicted = new LongAdder();
+
+    private volatile boolean mRunning = true;
+
+    public EdgeServer(int port, int loops, int stripes, long idleMs, TrackerConfig config)
+            throws IOException {
+        mConfig = config;
+        mIdleMs = idleMs;
+        mSessions = new SessionTable(stripes);
+
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.bind(new InetSocketAddress(port));
+
+        mLoops = new EventLoop[loops];
+        for (int i = 0; i < loops; i++) {
+            mLoops[i] = new EventLoop(i);
+        }
+    }
+
+    public void start() {
+        for (EventLoop loop : mLoops) {
+            loop.start();
+        }
+        mSweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+
+        Thread acceptor = new Thread(this::acceptLoop, "edge-acceptor");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    public long getFrameCount() {
+        return mFrames.sum();
+    }
+
+    public long getEventCount() {
+        return mEvents.sum();
+    }
+
+    public int getSessionCount() {
+        return mSessions.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRunning = false;
+        mSweeper.shutdownNow();
+        mServerChannel.close();
+        for (EventLoop loop : mLoops) {
+            loop.mSelector.wakeup();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int loops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int stripes = 64;
+        long idleMs = 30000;
+        for (String arg : args) {
+            if (arg.startsWith("--loops=")) {
+                loops = Integer.parseInt(arg.substring("--loops=".length()));
+            } else if (arg.startsWith("--stripes=")) {
+                stripes = Integer.parseInt(arg.substring("--stripes=".length()));
+            } else if (arg.startsWith("--idle-ms=")) {
+                idleMs = Long.parseLong(arg.substring("--idle-ms=".length()));
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+
+        EdgeServer server = new EdgeServer(port, loops, stripes, idleMs, TrackerConfig.DEFAULT);
+        server.start();
+        System.out.printf("edge server listening on %d with %d loops%n", server.getPort(), loops);
+
+        long lastFrames = 0;
+        while (true) {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long frames = server.getFrameCount();
+            System.out.printf("sessions: %d, frames/s: %d, events: %d, evicted: %d%n",
+                    server.getSessionCount(), (frames - lastFrames) / 5, server.getEventCount(),
+                    server.mEvicted.sum());
+            lastFrames = frames;
+        }
+        server.close();
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    private void acceptLoop() {
+        int next = 0;
+        while (mRunning) {
+            try {
+                SocketChannel channel = mServerChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                mLoops[next].register(channel);
+                next = (next + 1) % mLoops.length;
+            } catch (IOException e) {
+                if (mRunning) {
+                    System.err.println("accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    private void sweep() {
+        mEvicted.add(mSessions.evictIdle(System.currentTimeMillis(), mIdleMs));
+    }
+
+    /**
+     * The state of one device connection.  Only touched by its event loop.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * One selector thread serving a share of the connections.
+     */
+    private final class EventLoop extends Thread implements FaceEventListener {
+        private final Selector mSelector;
+        private final Queue<SocketChannel> mPending = new ConcurrentLinkedQueue<>();
+        private final FaceFrame mFrame = new FaceFrame();
+
+        // The connection and session whose frame is being processed, for event callbacks.
+        private Connection mCurrent;
+        private long mCurrentSessionId;
+
+        EventLoop(int index) throws IOException {
+            super("edge-loop-" + index);
+            mSelector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            mPending.add(channel);
+            mSelector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (mRunning) {
+                try {
+                    mSelector.select();
+                    registerPending();
+
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                drain(key, connection);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key, connection);
+                            }
+                        } catch (IOException e) {
+                            close(key, connection);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println(getName() + " failed: " + e);
+                }
+            }
+            try {
+                mSelector.close();
+            } catch (IOException ignored) {
+                // Shutting down anyway.
+            }
+        }
+
+        private void registerPending() throws IOException {
+            SocketChannel channel;
+            while ((channel = mPending.poll()) != null) {
+                channel.register(mSelector, SelectionKey.OP_READ, new Connection(channel));
+            }
+        }
+
+        private void read(SelectionKey key, Connection connection) throws IOException {
+            if (connection.channel.read(connection.in) < 0) {
+                close(key, connection);
+                return;
+            }
+            connection.in.flip();
+            process(connection);
+            connection.in.compact();
+            flush(key, connection);
+        }
+
+        /**
+         * Handles every complete message, stopping early if the output buffer cannot hold the
+         * events a frame might produce.  Unprocessed input stays buffered, and reading pauses
+         * until the output drains, which pushes back on the device through TCP flow control.
+         * A malformed message throws, which closes only this connection.
+         */
+        private void process(Connection connection) throws IOException {
+            ByteBuffer in = connection.in;
+            mCurrent = connection;
+            try {
+                while (connection.out.remaining() >= 3 * EdgeProtocol.EVENT_MESSAGE_BYTES) {
+                    int start = in.position();
+                    int kind = EdgeProtocol.nextMessage(in);
+                    if (kind == 0) {
+                        break;
+                    }
+                    if (kind != EdgeProtocol.KIND_FRAME) {
+                        throw new IOException("Unexpected message kind " + kind);
+                    }
+                    int length = in.getShort(start) & 0xffff;
+                    long sessionId = EdgeProtocol.readFrame(in, length, mFrame);
+                    in.position(start + 2 + length);
+
+                    mCurrentSessionId = sessionId;
+                    SessionState session = mSessions.getOrCreate(sessionId,
+                            System.currentTimeMillis(),
+                            id -> new SessionState(id, mConfig, mIdleMs));
+                    session.update(mFrame, this);
+                    mFrames.increment();
+                }
+            } finally {
+                mCurrent = null;
+            }
+        }
+
+        @Override
+        public void onFaceEvent(int type, int blinkCount, long timestampMs) {
+            EdgeProtocol.writeEvent(mCurrent.out, mCurrentSessionId, type, blinkCount, timestampMs);
+            mEvents.increment();
+        }
+
+        private void flush(SelectionKey key, Connection connection) throws IOException {
+            ByteBuffer out = connection.out;
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+
+            boolean pending = out.position() > 0;
+            boolean canRead = out.remaining() >= 3 * EdgeProtocol.EVENT_MESSAGE_BYTES;
+            key.interestOps((pending ? SelectionKey.OP_WRITE : 0)
+                    | (canRead ? SelectionKey.OP_READ : 0));
+        }
+
+        /**
+         * Writes pending events, then handles any input which was left unprocessed while the
+         * output was full.
+         */
+        private void drain(SelectionKey key, Connection connection) throws IOException {
+            flush(key, connection);
+            if ((key.interestOps() & SelectionKey.OP_READ) != 0 && connection.in.position() > 0) {
+                connection.in.flip();
+                process(connection);
+                connection.in.compact();
+                flush(key, connection);
+            }
+        }
+
+        private void close(SelectionKey key, Connection connection) {
+            key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException ignored) {
+                // Already gone.
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+/**
+ * Simulates thousands of devices streaming face data to an {@link EdgeServer} from one machine.
+ * Each simulated session blinks and turns its head on its own schedule.  Sessions are multiplexed
+ * over a smaller number of connections, all driven by a single selector thread.<p>
+ *
+ * Reports frames sent, events received, and the event round trip latency percentiles.<p>
+ *
+ * Usage: {@code LoadGenerator [host] [port] [--sessions=5000] [--connections=100] [--fps=15]
+ * [--seconds=30]}
+ */
+public final class LoadGenerator {
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final long TICK_MS = 5;
+    private static final int MAX_LATENCY_MS = 10000;
+
+    private final Selector mSelector;
+    private final Client[] mClients;
+    private final int mSessions;
+    private final long mFrameIntervalMs;
+    private final FaceFrame mFrame = new FaceFrame();
+    private final EdgeProtocol.Event mEvent = new EdgeProtocol.Event();
+
+    // Next frame time per session, indexed by session id.
+    private final long[] mNextFrameMs;
+    private final long mStartMs;
+
+    private long mFramesSent;
+    private long mFramesDropped;
+    private long mEventsReceived;
+    private final long[] mEventsByType = new long[FaceEvents.RIGHT_FACE + 1];
+    private final long[] mLatencyHistogram = new long[MAX_LATENCY_MS + 1];
+
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private LoadGenerator(InetSocketAddress address, int sessions, int connections, float fps)
+            throws IOException {
+        mSelector = Selector.open();
+        mSessions = sessions;
+        mFrameIntervalMs = Math.max(1, Math.round(1000 / fps));
+        mClients = new Client[connections];
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            mClients[i] = new Client(channel);
+            channel.register(mSelector, SelectionKey.OP_READ, mClients[i]);
+        }
+
+        // Spread the sessions' frames evenly over one frame interval.
+        mStartMs = System.currentTimeMillis();
+        mNextFrameMs = new long[sessions];
+        for (int i = 0; i < sessions; i++) {
+            mNextFrameMs[i] = mStartMs + (i * mFrameIntervalMs) / sessions;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = EdgeServer.DEFAULT_PORT;
+        int sessions = 5000;
+        int connections = 100;
+        float fps = 15;
+        int seconds = 30;
+        int positional = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--sessions=")) {
+                sessions = Integer.parseInt(arg.substring("--sessions=".length()));
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(arg.substring("--connections=".length()));
+            } else if (arg.startsWith("--fps=")) {
+                fps = Float.parseFloat(arg.substring("--fps=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(arg.substring("--seconds=".length()));
+            } else if (positional++ == 0) {
+                host = arg;
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(new InetSocketAddress(host, port), sessions,
+                Math.min(connections, sessions), fps);
+        generator.run(seconds * 1000L);
+        generator.report(seconds);
+    }
+
+    private void run(long durationMs) throws IOException {
+        long endMs = mStartMs + durationMs;
+        long now;
+        while ((now = System.currentTimeMillis()) < endMs) {
+            sendDueFrames(now);
+            mSelector.select(TICK_MS);
+            Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (key.isWritable()) {
+                    flush(key, client);
+                }
+                if (key.isReadable()) {
+                    read(client);
+                }
+            }
+        }
+        for (Client client : mClients) {
+            client.channel.close();
+        }
+    }
+
+    private void sendDueFrames(long now) throws IOException {
+        for (int session = 0; session < mSessions; session++) {
+            if (mNextFrameMs[session] > now) {
+                continue;
+            }
+            mNextFrameMs[session] += mFrameIntervalMs;
+
+            Client client = mClients[session % mClients.length];
+            if (client.out.remaining() < EdgeProtocol.MAX_FRAME_MESSAGE_BYTES) {
+                // The server is not keeping up with this connection; drop the frame like a camera
+                // would rather than queueing without bound.
+                mFramesDropped++;
+                continue;
+            }
+            simulateFrame(session, now, mFrame);
+            EdgeProtocol.writeFrame(client.out, session, mFrame);
+            mFramesSent++;
+        }
+        for (Client client : mClients) {
+            if (client.out.position() > 0) {
+                flush(client.channel.keyFor(mSelector), client);
+            }
+        }
+    }
+
+    /**
+     * Produces the face of a simulated session: a blink of 150 ms every few seconds, and a slow
+     * head turn to each side every ten seconds, each offset per session.
+     */
+    private static void simulateFrame(int session, long now, FaceFrame out) {
+        long t = now + session * 7919L;
+        boolean closed = t % (2500 + (session % 7) * 250) < 150;
+        float yaw = (float) (55 * Math.sin(2 * Math.PI * (t % 10000) / 10000.0));
+        float eyeOpen = closed ? 0.05f : 0.95f;
+        out.set(1, now, 100, 80, 120, 140, yaw, 0, eyeOpen, eyeOpen);
+        out.setLandmark(LandmarkTypes.LEFT_EYE, 140, 130);
+        out.setLandmark(LandmarkTypes.RIGHT_EYE, 180, 130);
+    }
+
+    private void flush(SelectionKey key, Client client) throws IOException {
+        client.out.flip();
+        client.channel.write(client.out);
+        client.out.compact();
+        key.interestOps(SelectionKey.OP_READ
+                | (client.out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void read(Client client) throws IOException {
+        if (client.channel.read(client.in) < 0) {
+            throw new IOException("Server closed the connection");
+        }
+        ByteBuffer in = client.in;
+        in.flip();
+        long now = System.currentTimeMillis();
+        while (EdgeProtocol.nextMessage(in) == EdgeProtocol.KIND_EVENT) {
+            EdgeProtocol.readEvent(in, mEvent);
+            mEventsReceived++;
+            if (mEvent.type > 0 && mEvent.type < mEventsByType.length) {
+                mEventsByType[mEvent.type]++;
+            }
+            int latency = (int) Math.min(MAX_LATENCY_MS, Math.max(0, now - mEvent.timestampMs));
+            mLatencyHistogram[latency]++;
+        }
+        in.compact();
+    }
+
+    private void report(int seconds) {
+        System.out.printf("sessions: %d over %d connections for %d s%n", mSessions,
+                mClients.length, seconds);
+        System.out.printf("frames sent: %d (%.0f/s), dropped: %d%n", mFramesSent,
+                mFramesSent / (double) seconds, mFramesDropped);
+        System.out.printf("events: %d (blinks %d, left %d, right %d)%n", mEventsReceived,
+                mEventsByType[FaceEvents.EYE], mEventsByType[FaceEvents.LEFT_FACE],
+                mEventsByType[FaceEvents.RIGHT_FACE]);
+        System.out.printf("event latency ms: p50 %d, p90 %d, p99 %d, max %d%n",
+                percentile(0.5), percentile(0.9), percentile(0.99), percentile(1.0));
+    }
+
+    private int percentile(double fraction) {
+        long target = (long) Math.ceil(fraction * mEventsReceived);
+        long seen = 0;
+        for (int i = 0; i < mLatencyHistogram.length; i++) {
+            seen += mLatencyHistogram[i];
+            if (seen >= target && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,132 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import java.util.Arrays;
+
+import me.prapon.eyeblinkdetection.core.FaceEventListener;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.FaceTrackerLogic;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+/**
+ * The tracker state of one device session: one {@link FaceTrackerLogic} per face id, like the
+ * app's processors keep one tracker per face.  A session rarely has more than a few faces, so they
+ * are kept in small parallel arrays rather than a map.  A face which has not been seen for the
+ * idle period, by the device's frame timestamps, has its tracker dropped when a new face arrives,
+ * and beyond {@link #MAX_FACES} the least recently seen face is dropped, so that long sessions do
+ * not accumulate the trackers of faces long gone.<p>
+ *
+ * Updates are synchronized on the session, since a device may reconnect on another event loop.
+ */
+final class SessionState {
+    static final int MAX_FACES = 16;
+
+    private final long mSessionId;
+    private final TrackerConfig mConfig;
+    private final long mIdleMs;
+
+    private int[] mFaceIds = new int[2];
+    private FaceTrackerLogic[] mTrackers = new FaceTrackerLogic[2];
+    private long[] mFaceSeenMs = new long[2];
+    private int mFaceCount;
+
+    // Guarded by the owning SessionTable stripe.
+    long lastSeenMs;
+
+    // The listener of the current update; trackers report events through it.
+    private FaceEventListener mListener;
+    private final FaceEventListener mForwarder = (type, blinkCount, timestampMs) -> {
+        FaceEventListener listener = mListener;
+        if (listener != null) {
+            listener.onFaceEvent(type, blinkCount, timestampMs);
+        }
+    };
+
+    /**
+     * @param idleMs how long a face may go unseen before its tracker is dropped
+     */
+    SessionState(long sessionId, TrackerConfig config, long idleMs) {
+        mSessionId = sessionId;
+        mConfig = config;
+        mIdleMs = idleMs;
+    }
+
+    long getSessionId() {
+        return mSessionId;
+    }
+
+    synchronized int getFaceCount() {
+        return mFaceCount;
+    }
+
+    /**
+     * Runs the tracker logic for the face, reporting events to the given listener.
+     */
+    synchronized void update(FaceFrame face, FaceEventListener listener) {
+        FaceTrackerLogic tracker = findTracker(face);
+        mListener = listener;
+        try {
+            tracker.update(face);
+        } finally {
+            mListener = null;
+        }
+    }
+
+    private FaceTrackerLogic findTracker(FaceFrame face) {
+        int faceId = face.getId();
+        long nowMs = face.getTimestampMs();
+        for (int i = 0; i < mFaceCount; i++) {
+            if (mFaceIds[i] == faceId) {
+                mFaceSeenMs[i] = Math.max(mFaceSeenMs[i], nowMs);
+                return mTrackers[i];
+            }
+        }
+
+        evictIdleFaces(nowMs);
+        if (mFaceCount == MAX_FACES) {
+            remove(oldestFace());
+        }
+        if (mFaceCount == mFaceIds.length) {
+            int capacity = Math.min(MAX_FACES, mFaceCount * 2);
+            mFaceIds = Arrays.copyOf(mFaceIds, capacity);
+            mTrackers = Arrays.copyOf(mTrackers, capacity);
+            mFaceSeenMs = Arrays.copyOf(mFaceSeenMs, capacity);
+        }
+        FaceTrackerLogic tracker = new FaceTrackerLogic(mConfig, mForwarder);
+        tracker.start(nowMs);
+        mFaceIds[mFaceCount] = faceId;
+        mTrackers[mFaceCount] = tracker;
+        mFaceSeenMs[mFaceCount] = nowMs;
+        mFaceCount++;
+        return tracker;
+    }
+
+    private void evictIdleFaces(long nowMs) {
+        int i = 0;
+        while (i < mFaceCount) {
+            if (nowMs - mFaceSeenMs[i] > mIdleMs) {
+                // The last face moves into this slot, so look at it again.
+                remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int oldestFace() {
+        int oldest = 0;
+        for (int i = 1; i < mFaceCount; i++) {
+            if (mFaceSeenMs[i] < mFaceSeenMs[oldest]) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    private void remove(int i) {
+        int last = --mFaceCount;
+        mFaceIds[i] = mFaceIds[last];
+        mTrackers[i] = mTrackers[last];
+        mFaceSeenMs[i] = mFaceSeenMs[last];
+        mTrackers[last] = null;
+    }
+}
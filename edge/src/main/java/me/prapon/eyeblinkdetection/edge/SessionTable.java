@@ -0,0 +1,183 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import java.util.function.LongFunction;
+
+/**
+ * A concurrent map from session id to {@link SessionState}, keyed by primitive longs.<p>
+ *
+ * The table is split into independently locked stripes, each an open addressing hash table with
+ * linear probing, so that event loops working on different sessions rarely contend and no boxed
+ * keys or entry objects are allocated.  Idle sessions are evicted by a periodic sweep which locks
+ * one stripe at a time.
+ */
+final class SessionTable {
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+
+    private final Stripe[] mStripes;
+    private final int mStripeShift;
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two of at least two
+     */
+    SessionTable(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        mStripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            mStripes[i] = new Stripe();
+        }
+        mStripeShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Returns the session for the given id, creating it if needed, and marks it as seen.
+     */
+    SessionState getOrCreate(long sessionId, long nowMs, LongFunction<SessionState> factory) {
+        long hash = mix(sessionId);
+        Stripe stripe = mStripes[stripeIndex(hash)];
+        synchronized (stripe) {
+            SessionState state = stripe.get(sessionId, hash);
+            if (state == null) {
+                state = factory.apply(sessionId);
+                stripe.put(sessionId, hash, state);
+            }
+            state.lastSeenMs = nowMs;
+            return state;
+        }
+    }
+
+    /**
+     * Removes every session which has not been seen for longer than {@code idleMs}.
+     *
+     * @return the number of sessions evicted
+     */
+    int evictIdle(long nowMs, long idleMs) {
+        int evicted = 0;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                evicted += stripe.evictIdle(nowMs - idleMs);
+            }
+        }
+        return evicted;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                size += stripe.mSize;
+            }
+        }
+        return size;
+    }
+
+    private int stripeIndex(long hash) {
+        return (int) (hash >>> mStripeShift);
+    }
+
+    /**
+     * Spreads session ids, which are often sequential, over the whole hash range.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    //==============================================================================================
+    // Stripe
+    //==============================================================================================
+
+    /**
+     * One open addressing table.  An empty slot has a null value.
+     */
+    private static final class Stripe {
+        private long[] mKeys = new long[INITIAL_STRIPE_CAPACITY];
+        private SessionState[] mValues = new SessionState[INITIAL_STRIPE_CAPACITY];
+        private int mSize;
+
+        SessionState get(long key, long hash) {
+            int mask = mKeys.length - 1;
+            for (int i = (int) hash & mask; mValues[i] != null; i = (i + 1) & mask) {
+                if (mKeys[i] == key) {
+                    return mValues[i];
+                }
+            }
+            return null;
+        }
+
+        void put(long key, long hash, SessionState value) {
+            if ((mSize + 1) * 4 > mKeys.length * 3) {
+                resize();
+            }
+            int mask = mKeys.length - 1;
+            int i = (int) hash & mask;
+            while (mValues[i] != null) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+            mSize++;
+        }
+
+        int evictIdle(long seenBeforeMs) {
+            int evicted = 0;
+            int i = 0;
+            while (i < mValues.length) {
+                SessionState value = mValues[i];
+                if (value != null && value.lastSeenMs < seenBeforeMs) {
+                    // Deleting shifts a later entry into this slot, so look at it again.
+                    delete(i);
+                    evicted++;
+                } else {
+                    i++;
+                }
+            }
+            return evicted;
+        }
+
+        /**
+         * Removes the entry at slot i using backward shift deletion, which keeps probe sequences
+         * intact without tombstones.
+         */
+        private void delete(int i) {
+            int mask = mKeys.length - 1;
+            int hole = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (mValues[j] == null) {
+                    break;
+                }
+                int home = (int) mix(mKeys[j]) & mask;
+                // Move the entry at j into the hole unless its home slot lies cyclically in
+                // (hole, j], in which case it is still reachable from its home.
+                boolean reachable = hole <= j
+                        ? (home > hole && home <= j)
+                        : (home > hole || home <= j);
+                if (!reachable) {
+                    mKeys[hole] = mKeys[j];
+                    mValues[hole] = mValues[j];
+                    hole = j;
+                }
+            }
+            mValues[hole] = null;
+            mSize--;
+        }
+
+        private void resize() {
+            long[] keys = mKeys;
+            SessionState[] values = mValues;
+            mKeys = new long[keys.length * 2];
+            mValues = new SessionState[values.length * 2];
+            mSize = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    put(keys[i], mix(keys[i]), values[i]);
+                }
+            }
+        }
+    }
+}
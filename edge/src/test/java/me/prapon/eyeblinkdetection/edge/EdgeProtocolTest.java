@@ -0,0 +1,86 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+
+import static org.junit.Assert.*;
+
+public class EdgeProtocolTest {
+    private static FaceFrame face() {
+        FaceFrame face = new FaceFrame();
+        face.set(7, 123456789L, 10.5f, 20, 100, 120, -31.25f, 2.5f, 0.05f,
+                FaceFrame.UNCOMPUTED_PROBABILITY);
+        face.setLandmark(LandmarkTypes.LEFT_EYE, 40, 50.5f);
+        face.setLandmark(LandmarkTypes.RIGHT_MOUTH, 80.25f, 90);
+        return face;
+    }
+
+    @Test
+    public void framesAndEventsRoundTrip() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(EdgeProtocol.MAX_FRAME_MESSAGE_BYTES * 2);
+        FaceFrame face = face();
+        EdgeProtocol.writeFrame(buffer, 42, face);
+        EdgeProtocol.writeEvent(buffer, 42, 3, 17, 123456000L);
+        buffer.flip();
+
+        int start = buffer.position();
+        assertEquals(EdgeProtocol.KIND_FRAME, EdgeProtocol.nextMessage(buffer));
+        FaceFrame read = new FaceFrame();
+        assertEquals(42, EdgeProtocol.readFrame(buffer, buffer.getShort(start) & 0xffff, read));
+        assertEquals(face.getId(), read.getId());
+        assertEquals(face.getTimestampMs(), read.getTimestampMs());
+        assertEquals(face.getLeft(), read.getLeft(), 0);
+        assertEquals(face.getEulerY(), read.getEulerY(), 0);
+        assertEquals(face.getLeftEyeOpenProbability(), read.getLeftEyeOpenProbability(), 0);
+        assertEquals(FaceFrame.UNCOMPUTED_PROBABILITY, read.getRightEyeOpenProbability(), 0);
+        assertEquals(face.getLandmarkMask(), read.getLandmarkMask());
+        assertEquals(80.25f, read.getLandmarkX(LandmarkTypes.RIGHT_MOUTH), 0);
+        assertEquals(50.5f, read.getLandmarkY(LandmarkTypes.LEFT_EYE), 0);
+
+        assertEquals(EdgeProtocol.KIND_EVENT, EdgeProtocol.nextMessage(buffer));
+        EdgeProtocol.Event event = new EdgeProtocol.Event();
+        EdgeProtocol.readEvent(buffer, event);
+        assertEquals(42, event.sessionId);
+        assertEquals(3, event.type);
+        assertEquals(17, event.blinkCount);
+        assertEquals(123456000L, event.timestampMs);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void partialMessagesWaitAndMalformedOnesThrow() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(EdgeProtocol.MAX_FRAME_MESSAGE_BYTES);
+        EdgeProtocol.writeFrame(buffer, 42, face());
+        int length = buffer.position();
+        buffer.flip();
+        buffer.limit(length - 1);
+        assertEquals(0, EdgeProtocol.nextMessage(buffer));
+        assertEquals(0, buffer.position());
+
+        // A length which disagrees with the landmark mask.
+        buffer.limit(length);
+        buffer.putShort(0, (short) (length - 2 - 8));
+        assertEquals(EdgeProtocol.KIND_FRAME, EdgeProtocol.nextMessage(buffer));
+        try {
+            EdgeProtocol.readFrame(buffer, length - 2 - 8, new FaceFrame());
+            fail("Read a frame shorter than its landmarks");
+        } catch (IOException expectedException) {
+            // Expected.
+        }
+
+        // A length no buffer could hold.
+        buffer.clear();
+        buffer.putShort((short) 0xffff).put((byte) EdgeProtocol.KIND_FRAME).flip();
+        try {
+            EdgeProtocol.nextMessage(buffer);
+            fail("Accepted an oversize message");
+        } catch (IOException expectedException) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+import static org.junit.Assert.*;
+
+public class EdgeServerTest {
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    private EdgeServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        // A single loop, so that every connection shares the loop a bad one could break.
+        mServer = new EdgeServer(0, 1, 4, 60000, TrackerConfig.DEFAULT);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), mServer.getPort());
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(READ_TIMEOUT_MS);
+        return socket;
+    }
+
+    private static void sendFrame(OutputStream out, long sessionId, int faceId, long timestampMs,
+                                  float eyeOpen) throws IOException {
+        FaceFrame face = new FaceFrame();
+        face.set(faceId, timestampMs, 100, 80, 120, 140, 0, 0, eyeOpen, eyeOpen);
+        ByteBuffer buffer = ByteBuffer.allocate(EdgeProtocol.MAX_FRAME_MESSAGE_BYTES);
+        EdgeProtocol.writeFrame(buffer, sessionId, face);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    private static EdgeProtocol.Event readEvent(DataInputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(EdgeProtocol.EVENT_MESSAGE_BYTES);
+        in.readFully(buffer.array());
+        assertEquals(EdgeProtocol.KIND_EVENT, EdgeProtocol.nextMessage(buffer));
+        EdgeProtocol.Event event = new EdgeProtocol.Event();
+        EdgeProtocol.readEvent(buffer, event);
+        return event;
+    }
+
+    @Test(timeout = 20000)
+    public void streamsFramesAndAnswersWithEvents() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            sendFrame(out, 42, 1, 1000, 0.95f);
+            sendFrame(out, 42, 1, 1100, 0.05f);
+            EdgeProtocol.Event event = readEvent(in);
+            assertEquals(42, event.sessionId);
+            assertEquals(FaceEvents.EYE, event.type);
+            assertEquals(1, event.blinkCount);
+            assertEquals(1100, event.timestampMs);
+
+            // Another session on the same connection keeps its own count.
+            sendFrame(out, 43, 1, 1100, 0.05f);
+            event = readEvent(in);
+            assertEquals(43, event.sessionId);
+            assertEquals(1, event.blinkCount);
+            assertEquals(2, mServer.getSessionCount());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void malformedMessageClosesOnlyItsConnection() throws IOException {
+        try (Socket good = connect(); Socket bad = connect()) {
+            OutputStream goodOut = good.getOutputStream();
+            DataInputStream goodIn = new DataInputStream(good.getInputStream());
+            sendFrame(goodOut, 1, 1, 1000, 0.05f);
+            assertEquals(1, readEvent(goodIn).sessionId);
+
+            // A length longer than any message.
+            bad.getOutputStream().write(new byte[] {(byte) 0xff, (byte) 0xff,
+                    EdgeProtocol.KIND_FRAME});
+            assertEquals(-1, bad.getInputStream().read());
+
+            sendFrame(goodOut, 1, 1, 4000, 0.05f);
+            EdgeProtocol.Event event = readEvent(goodIn);
+            assertEquals(1, event.sessionId);
+            assertEquals(2, event.blinkCount);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void deviceWhichStopsReadingLosesNoEvents() throws Exception {
+        // Every frame is a new face with closed eyes, so each one produces a blink event.  Far
+        // more events than the output buffer and the socket buffers hold are queued before the
+        // device starts reading, so the server has to stop reading and resume as it drains.
+        final int frames = 100000;
+        try (Socket socket = connect()) {
+            final OutputStream out = socket.getOutputStream();
+            final AtomicReference<IOException> failure = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < frames; i++) {
+                        sendFrame(out, 7, i, 1000 + i, 0.05f);
+                    }
+                } catch (IOException e) {
+                    failure.set(e);
+                }
+            }, "edge-test-writer");
+            writer.start();
+            Thread.sleep(500);
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < frames; i++) {
+                EdgeProtocol.Event event = readEvent(in);
+                assertEquals(FaceEvents.EYE, event.type);
+                assertEquals(1000 + i, event.timestampMs);
+            }
+            writer.join();
+            assertNull(failure.get());
+            assertEquals(frames, mServer.getFrameCount());
+            assertEquals(frames, mServer.getEventCount());
+        }
+    }
+}
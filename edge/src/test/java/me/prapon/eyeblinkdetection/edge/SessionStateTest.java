@@ -0,0 +1,35 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import org.junit.Test;
+
+import me.prapon.eyeblinkdetection.core.FaceEventListener;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+import static org.junit.Assert.*;
+
+public class SessionStateTest {
+    private static final FaceEventListener IGNORE = (type, blinkCount, timestampMs) -> {
+    };
+
+    @Test
+    public void dropsTrackersOfFacesGoneForTheIdlePeriod() {
+        SessionState session = new SessionState(1, TrackerConfig.DEFAULT, 1000);
+        FaceFrame face = new FaceFrame();
+        // A new face id every 100 ms, as a tracker which keeps losing the face would report.
+        for (int i = 0; i < 100; i++) {
+            face.set(i, i * 100L, 0, 0, 100, 100, 0, 0, 0.9f, 0.9f);
+            session.update(face, IGNORE);
+            assertTrue(session.getFaceCount() <= 11);
+        }
+        assertEquals(11, session.getFaceCount());
+
+        // Without gaps, the least recently seen face makes room.
+        session = new SessionState(2, TrackerConfig.DEFAULT, 60000);
+        for (int i = 0; i < 100; i++) {
+            face.set(i, i * 100L, 0, 0, 100, 100, 0, 0, 0.9f, 0.9f);
+            session.update(face, IGNORE);
+        }
+        assertEquals(SessionState.MAX_FACES, session.getFaceCount());
+    }
+}
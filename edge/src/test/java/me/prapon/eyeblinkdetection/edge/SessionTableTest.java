@@ -0,0 +1,48 @@
+package me.prapon.eyeblinkdetection.edge;
+
+import org.junit.Test;
+
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+
+import static org.junit.Assert.*;
+
+public class SessionTableTest {
+    private static SessionState create(long sessionId) {
+        return new SessionState(sessionId, TrackerConfig.DEFAULT, 1000);
+    }
+
+    private static SessionState existing(long sessionId) {
+        throw new AssertionError("Lost session " + sessionId);
+    }
+
+    @Test
+    public void keepsEverySessionReachableAcrossResizesAndEvictions() {
+        // Two stripes, so that each grows well past its initial capacity.
+        SessionTable table = new SessionTable(2);
+        int sessions = 1000;
+        SessionState[] states = new SessionState[sessions];
+        for (int i = 0; i < sessions; i++) {
+            // Sequential ids, and every third one seen late.
+            states[i] = table.getOrCreate(i, i % 3 == 0 ? 200 : 100, SessionTableTest::create);
+            assertEquals(i, states[i].getSessionId());
+        }
+        assertEquals(sessions, table.size());
+        for (int i = 0; i < sessions; i++) {
+            assertSame(states[i], table.getOrCreate(i, i % 3 == 0 ? 200 : 100,
+                    SessionTableTest::existing));
+        }
+
+        // Evicting two thirds shifts entries back along their probe sequences; the rest must
+        // still be found where lookups stop at the first empty slot.
+        assertEquals(sessions - (sessions + 2) / 3, table.evictIdle(250, 100));
+        assertEquals((sessions + 2) / 3, table.size());
+        for (int i = 0; i < sessions; i += 3) {
+            assertSame(states[i], table.getOrCreate(i, 300, SessionTableTest::existing));
+        }
+        SessionState recreated = table.getOrCreate(1, 300, SessionTableTest::create);
+        assertNotSame(states[1], recreated);
+
+        assertEquals((sessions + 2) / 3 + 1, table.evictIdle(10000, 100));
+        assertEquals(0, table.size());
+    }
+}
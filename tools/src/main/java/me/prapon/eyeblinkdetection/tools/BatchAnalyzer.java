@@ -0,0 +1,236 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.SessionAnalyzer;
+import me.prapon.eyeblinkdetection.core.SessionReport;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.codec.FrameFileReader;
+import me.prapon.eyeblinkdetection.core.codec.FrameFormat;
+import me.prapon.eyeblinkdetection.core.trace.SessionTraceReader;
+
+/**
+ * Re-scores a directory of recorded session traces with the tracker logic, e.g. after changing
+ * thresholds.  Sessions are analyzed in parallel on a fork-join pool using all cores, and a blink
+ * and head turn report is written for each one.  Both text traces and binary
+ * {@link FrameFormat#FILE_SUFFIX} recordings are accepted.<p>
+ *
+ * Usage: {@code BatchAnalyzer <traceDir> <reportDir> [--eye-closed=0.4] [--blink-cooldown=2000]
+ * [--capture-cooldown=2000] [--yaw=40] [--roll=20] [--max-gap=3000] [--long-blink=1000]
+ * [--double-blink-gap=1500]}
+ */
+public final class BatchAnalyzer {
+    static final String TRACE_SUFFIX = ".trace";
+    static final String REPORT_SUFFIX = ".report.txt";
+
+    // A task with at most this many sessions analyzes them directly instead of splitting further.
+    private static final int SEQUENTIAL_THRESHOLD = 1;
+
+    private BatchAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchAnalyzer <traceDir> <reportDir> [--eye-closed=0.4]"
+                    + " [--blink-cooldown=2000] [--capture-cooldown=2000] [--yaw=40] [--roll=20]"
+                    + " [--max-gap=3000] [--long-blink=1000] [--double-blink-gap=1500]");
+            System.exit(2);
+        }
+        File traceDir = new File(args[0]);
+        File reportDir = new File(args[1]);
+        TrackerConfig config = parseConfig(Arrays.copyOfRange(args, 2, args.length));
+
+        File[] traces = traceDir.listFiles((dir, name) -> name.endsWith(TRACE_SUFFIX)
+                || name.endsWith(FrameFormat.FILE_SUFFIX));
+        if (traces == null) {
+            throw new IOException("Not a directory: " + traceDir);
+        }
+        Arrays.sort(traces);
+        Files.createDirectories(reportDir.toPath());
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long startNs = System.nanoTime();
+        Totals totals;
+        try {
+            totals = pool.invoke(new AnalyzeTask(traces, 0, traces.length, reportDir, config));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - startNs) / 1e9;
+
+        System.out.printf("sessions: %d (%d failed)%n", totals.sessions, totals.failures);
+        System.out.printf("frames: %d%n", totals.frames);
+        System.out.printf("blinks: %d, left turns: %d, right turns: %d, gestures: %d%n",
+                totals.blinks, totals.leftTurns, totals.rightTurns, totals.gestures);
+        System.out.printf("elapsed: %.3f s on %d threads, throughput: %.0f frames/s%n",
+                seconds, pool.getParallelism(), totals.frames / Math.max(seconds, 1e-9));
+        if (totals.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses {@code --name=value} options into a tracker config, starting from the defaults.
+     */
+    static TrackerConfig parseConfig(String[] options) {
+        TrackerConfig.Builder builder = new TrackerConfig.Builder();
+        for (String option : options) {
+            int eq = option.indexOf('=');
+            if (!option.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Bad option: " + option);
+            }
+            String name = option.substring(2, eq);
+            String value = option.substring(eq + 1);
+            switch (name) {
+                case "eye-closed":
+                    builder.setEyeClosedThreshold(Float.parseFloat(value));
+                    break;
+                case "blink-cooldown":
+                    builder.setBlinkCooldownMs(Long.parseLong(value));
+                    break;
+                case "capture-cooldown":
+                    builder.setCaptureCooldownMs(Long.parseLong(value));
+                    break;
+                case "yaw":
+                    builder.setTurnYawDegrees(Float.parseFloat(value));
+                    break;
+                case "roll":
+                    builder.setMaxRollDegrees(Float.parseFloat(value));
+                    break;
+                case "max-gap":
+                    builder.setMaxFrameGapMs(Long.parseLong(value));
+                    break;
+                case "long-blink":
+                    builder.setLongBlinkMs(Long.parseLong(value));
+                    break;
+                case "double-blink-gap":
+                    builder.setDoubleBlinkGapMs(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Analyzes one trace file, text or binary depending on its suffix.
+     */
+    static SessionReport analyze(File trace, TrackerConfig config) throws IOException {
+        String name = trace.getName();
+        FaceFrame face = new FaceFrame();
+        if (name.endsWith(FrameFormat.FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - FrameFormat.FILE_SUFFIX.length());
+            SessionAnalyzer analyzer = new SessionAnalyzer(name, config);
+            try (FrameFileReader reader = new FrameFileReader(trace)) {
+                while (reader.next(face)) {
+                    analyzer.update(face);
+                }
+            }
+            return analyzer.getReport();
+        }
+
+        name = name.substring(0, name.length() - TRACE_SUFFIX.length());
+        SessionAnalyzer analyzer = new SessionAnalyzer(name, config);
+        try (SessionTraceReader reader = new SessionTraceReader(new FileReader(trace))) {
+            while (reader.next(face)) {
+                analyzer.update(face);
+            }
+        }
+        return analyzer.getReport();
+    }
+
+    //==============================================================================================
+    // Fork-join
+    //==============================================================================================
+
+    private static final class Totals {
+        long sessions;
+        long failures;
+        long frames;
+        long blinks;
+        long leftTurns;
+        long rightTurns;
+        long gestures;
+
+        Totals add(Totals other) {
+            sessions += other.sessions;
+            failures += other.failures;
+            frames += other.frames;
+            blinks += other.blinks;
+            leftTurns += other.leftTurns;
+            rightTurns += other.rightTurns;
+            gestures += other.gestures;
+            return this;
+        }
+    }
+
+    /**
+     * Splits the range of traces in half until it is small enough to analyze directly.
+     */
+    @SuppressWarnings("serial")
+    private static final class AnalyzeTask extends RecursiveTask<Totals> {
+        private final File[] mTraces;
+        private final int mFrom;
+        private final int mTo;
+        private final File mReportDir;
+        private final TrackerConfig mConfig;
+
+        AnalyzeTask(File[] traces, int from, int to, File reportDir, TrackerConfig config) {
+            mTraces = traces;
+            mFrom = from;
+            mTo = to;
+            mReportDir = reportDir;
+            mConfig = config;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (mTo - mFrom <= SEQUENTIAL_THRESHOLD) {
+                Totals totals = new Totals();
+                for (int i = mFrom; i < mTo; i++) {
+                    analyzeOne(mTraces[i], totals);
+                }
+                return totals;
+            }
+            int mid = (mFrom + mTo) >>> 1;
+            AnalyzeTask left = new AnalyzeTask(mTraces, mFrom, mid, mReportDir, mConfig);
+            AnalyzeTask right = new AnalyzeTask(mTraces, mid, mTo, mReportDir, mConfig);
+            left.fork();
+            Totals totals = right.compute();
+            return totals.add(left.join());
+        }
+
+        private void analyzeOne(File trace, Totals totals) {
+            totals.sessions++;
+            try {
+                SessionReport report = analyze(trace, mConfig);
+                StringBuilder text = new StringBuilder();
+                report.appendTo(text);
+                File out = new File(mReportDir, report.getSessionName() + REPORT_SUFFIX);
+                try (Writer writer = new OutputStreamWriter(
+                        Files.newOutputStream(out.toPath()), StandardCharsets.UTF_8)) {
+                    writer.append(text);
+                }
+                totals.frames += report.getFrameCount();
+                totals.blinks += report.getBlinks();
+                totals.leftTurns += report.getLeftTurns();
+                totals.rightTurns += report.getRightTurns();
+                totals.gestures += report.getGestures();
+            } catch (IOException | RuntimeException e) {
+                totals.failures++;
+                System.err.println(trace + ": " + e.getMessage());
+            }
+        }
+    }
+}
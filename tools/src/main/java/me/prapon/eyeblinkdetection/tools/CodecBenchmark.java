@@ -0,0 +1,132 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+import me.prapon.eyeblinkdetection.core.codec.FrameDecoder;
+import me.prapon.eyeblinkdetection.core.codec.FrameEncoder;
+import me.prapon.eyeblinkdetection.core.codec.FrameFileReader;
+import me.prapon.eyeblinkdetection.core.codec.FrameFileWriter;
+import me.prapon.eyeblinkdetection.core.codec.FrameFormat;
+import me.prapon.eyeblinkdetection.core.trace.SessionTraceWriter;
+
+/**
+ * Measures the binary frame codec: bytes per frame compared to the text trace format, streaming
+ * encode and decode throughput, and random access seeks on a memory-mapped file.<p>
+ *
+ * Usage: {@code CodecBenchmark [frames=1000000] [faces=1]}
+ */
+public final class CodecBenchmark {
+    private static final int ROUNDS = 5;
+
+    private CodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int faces = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        FaceFrame[] input = generate(frames, faces);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(frames * FrameFormat.MAX_RECORD_BYTES / 4
+                + FrameFormat.MAX_RECORD_BYTES);
+        long encodeNs = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            buffer.clear();
+            FrameEncoder encoder = new FrameEncoder(FrameFormat.DEFAULT_KEYFRAME_INTERVAL);
+            long start = System.nanoTime();
+            for (FaceFrame face : input) {
+                encoder.encode(face, buffer);
+            }
+            encodeNs = Math.min(encodeNs, System.nanoTime() - start);
+        }
+        buffer.flip();
+        int encodedBytes = buffer.remaining();
+
+        FaceFrame decoded = new FaceFrame();
+        long decodeNs = Long.MAX_VALUE;
+        float checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            buffer.rewind();
+            FrameDecoder decoder = new FrameDecoder();
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                decoder.decode(buffer, decoded);
+                checksum += decoded.getEulerY();
+            }
+            decodeNs = Math.min(decodeNs, System.nanoTime() - start);
+        }
+
+        System.out.printf("frames: %d, faces per frame: %d%n", frames, faces);
+        System.out.printf("binary: %.1f bytes/frame, text: %.1f bytes/frame%n",
+                encodedBytes / (double) frames, textBytesPerFrame(input));
+        System.out.printf("encode: %.1f M frames/s%n", frames / (encodeNs / 1e3));
+        System.out.printf("decode: %.1f M frames/s (checksum %.0f)%n",
+                frames / (decodeNs / 1e3), checksum);
+
+        File file = File.createTempFile("codec-benchmark", FrameFormat.FILE_SUFFIX);
+        file.deleteOnExit();
+        try (FrameFileWriter writer = new FrameFileWriter(file)) {
+            for (FaceFrame face : input) {
+                writer.write(face);
+            }
+        }
+        try (FrameFileReader reader = new FrameFileReader(file)) {
+            Random random = new Random(1);
+            int seeks = 100000;
+            long start = System.nanoTime();
+            for (int i = 0; i < seeks; i++) {
+                reader.seek(random.nextInt(frames));
+                reader.next(decoded);
+            }
+            long seekNs = System.nanoTime() - start;
+            System.out.printf("mapped file: %d bytes, random access: %.2f us/seek%n",
+                    file.length(), seekNs / 1e3 / seeks);
+        }
+    }
+
+    /**
+     * Builds a plausible session: slow head motion, a blink every few seconds, and the eye and ear
+     * landmarks following the face box.
+     */
+    private static FaceFrame[] generate(int frames, int faces) {
+        Random random = new Random(42);
+        FaceFrame[] out = new FaceFrame[frames];
+        for (int i = 0; i < frames; i++) {
+            int id = i % faces;
+            long timestampMs = (i / faces) * 33L;
+            double t = timestampMs / 1000.0;
+            float left = (float) (80 + 20 * Math.sin(t * 0.7 + id) + random.nextGaussian() * 0.3);
+            float top = (float) (60 + 10 * Math.cos(t * 0.5 + id) + random.nextGaussian() * 0.3);
+            float size = (float) (110 + 5 * Math.sin(t * 0.2));
+            float yaw = (float) (35 * Math.sin(t * 0.4 + id));
+            float open = (timestampMs % 3000) < 150 ? 0.05f : 0.9f + random.nextFloat() * 0.05f;
+
+            FaceFrame face = new FaceFrame().set(id, timestampMs, left, top, size, size * 1.2f,
+                    yaw, (float) random.nextGaussian() * 2, open, open);
+            face.setLandmark(LandmarkTypes.LEFT_EYE, left + size * 0.3f, top + size * 0.4f);
+            face.setLandmark(LandmarkTypes.RIGHT_EYE, left + size * 0.7f, top + size * 0.4f);
+            face.setLandmark(LandmarkTypes.LEFT_EAR, left, top + size * 0.5f);
+            face.setLandmark(LandmarkTypes.RIGHT_EAR, left + size, top + size * 0.5f);
+            face.setLandmark(LandmarkTypes.NOSE_BASE, left + size * 0.5f, top + size * 0.7f);
+            out[i] = face;
+        }
+        return out;
+    }
+
+    private static double textBytesPerFrame(FaceFrame[] input) throws IOException {
+        int sample = Math.min(input.length, 10000);
+        StringWriter text = new StringWriter();
+        try (SessionTraceWriter writer = new SessionTraceWriter(text)) {
+            for (int i = 0; i < sample; i++) {
+                writer.write(input[i]);
+            }
+        }
+        return text.getBuffer().length() / (double) sample;
+    }
+}
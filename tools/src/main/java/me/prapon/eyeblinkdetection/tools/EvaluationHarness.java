@@ -0,0 +1,252 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.SessionAnalyzer;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.codec.FrameFileReader;
+import me.prapon.eyeblinkdetection.core.codec.FrameFormat;
+import me.prapon.eyeblinkdetection.core.eval.Evaluation;
+import me.prapon.eyeblinkdetection.core.eval.GroundTruth;
+import me.prapon.eyeblinkdetection.core.trace.SessionTraceReader;
+
+/**
+ * Measures how tracker settings trade accuracy against latency on labeled recordings.  Every
+ * trace in the directory with a {@link GroundTruth#FILE_SUFFIX} file of the same name is run
+ * through the tracker logic once per configuration, and its events are scored against the labels.
+ * For each configuration, the precision, recall and detection latency percentiles of blinks and
+ * head turns are printed, best overall F1 first.<p>
+ *
+ * The options are those of {@link BatchAnalyzer}, but each takes a comma separated list of values,
+ * and every combination is evaluated.  The traces are decoded once and kept in memory, and the
+ * configurations are spread over all cores, so that a sweep of hundreds of configurations takes
+ * about as long as reading the traces and running the logic that many times.<p>
+ *
+ * Usage: {@code EvaluationHarness <traceDir> [--tolerance=300] [--top=20]
+ * [--eye-closed=0.3,0.4,0.5] [--yaw=30,40] ...}
+ */
+public final class EvaluationHarness {
+    private static final int[] SCORED_TYPES =
+            {FaceEvents.EYE, FaceEvents.LEFT_FACE, FaceEvents.RIGHT_FACE};
+
+    private EvaluationHarness() {
+    }
+
+    /**
+     * A labeled session held in memory.
+     */
+    private static final class Session {
+        final String name;
+        final FaceFrame[] frames;
+        final GroundTruth truth;
+
+        Session(String name, FaceFrame[] frames, GroundTruth truth) {
+            this.name = name;
+            this.frames = frames;
+            this.truth = truth;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EvaluationHarness <traceDir> [--tolerance=300] [--top=20]"
+                    + " [--eye-closed=0.3,0.4,0.5] [--yaw=30,40] ...");
+            System.exit(2);
+        }
+        long toleranceMs = 300;
+        int top = Integer.MAX_VALUE;
+        List<String[]> sweep = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (option.startsWith("--tolerance=")) {
+                toleranceMs = Long.parseLong(option.substring("--tolerance=".length()));
+            } else if (option.startsWith("--top=")) {
+                top = Integer.parseInt(option.substring("--top=".length()));
+            } else {
+                int eq = option.indexOf('=');
+                if (!option.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Bad option: " + option);
+                }
+                String name = option.substring(0, eq + 1);
+                String[] values = option.substring(eq + 1).split(",");
+                for (int v = 0; v < values.length; v++) {
+                    values[v] = name + values[v];
+                }
+                sweep.add(values);
+            }
+        }
+        TrackerConfig[] configs = expand(sweep);
+
+        long loadNs = System.nanoTime();
+        List<Session> sessions = load(new File(args[0]));
+        long frames = 0;
+        for (Session session : sessions) {
+            frames += session.frames.length;
+        }
+        double loadSeconds = (System.nanoTime() - loadNs) / 1e9;
+        if (sessions.isEmpty()) {
+            System.err.println("No labeled traces in " + args[0]);
+            System.exit(1);
+        }
+
+        Evaluation[] results = new Evaluation[configs.length];
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long startNs = System.nanoTime();
+        try {
+            pool.invoke(new SweepTask(sessions, configs, results, toleranceMs, 0, configs.length));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - startNs) / 1e9;
+
+        Integer[] order = new Integer[configs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(results[b].getF1(), results[a].getF1()));
+        for (int rank = 0; rank < Math.min(top, order.length); rank++) {
+            Evaluation result = results[order[rank]];
+            System.out.printf("#%d f1=%.3f %s%n", rank + 1, result.getF1(), configs[order[rank]]);
+            for (int type : SCORED_TYPES) {
+                System.out.println("    " + result.toString(type));
+            }
+        }
+        System.out.printf("sessions: %d, frames: %d, loaded in %.3f s%n", sessions.size(), frames,
+                loadSeconds);
+        System.out.printf("configurations: %d in %.3f s on %d threads, throughput: %.0f frames/s%n",
+                configs.length, seconds, pool.getParallelism(),
+                frames * (double) configs.length / Math.max(seconds, 1e-9));
+    }
+
+    /**
+     * Returns the config of every combination of the swept option values.
+     */
+    static TrackerConfig[] expand(List<String[]> sweep) {
+        List<TrackerConfig> configs = new ArrayList<>();
+        int[] index = new int[sweep.size()];
+        String[] options = new String[sweep.size()];
+        while (true) {
+            for (int i = 0; i < options.length; i++) {
+                options[i] = sweep.get(i)[index[i]];
+            }
+            configs.add(BatchAnalyzer.parseConfig(options));
+            // Advance the last option fastest, like an odometer.
+            int i = index.length - 1;
+            while (i >= 0 && ++index[i] == sweep.get(i).length) {
+                index[i] = 0;
+                i--;
+            }
+            if (i < 0) {
+                return configs.toArray(new TrackerConfig[0]);
+            }
+        }
+    }
+
+    /**
+     * Reads every trace which has a label file, text or binary depending on its suffix.
+     */
+    private static List<Session> load(File traceDir) throws IOException {
+        File[] traces = traceDir.listFiles((dir, name) -> name.endsWith(BatchAnalyzer.TRACE_SUFFIX)
+                || name.endsWith(FrameFormat.FILE_SUFFIX));
+        if (traces == null) {
+            throw new IOException("Not a directory: " + traceDir);
+        }
+        Arrays.sort(traces);
+        List<Session> sessions = new ArrayList<>();
+        for (File trace : traces) {
+            String name = trace.getName();
+            boolean binary = name.endsWith(FrameFormat.FILE_SUFFIX);
+            name = name.substring(0, name.length() - (binary
+                    ? FrameFormat.FILE_SUFFIX.length() : BatchAnalyzer.TRACE_SUFFIX.length()));
+            File labels = new File(traceDir, name + GroundTruth.FILE_SUFFIX);
+            if (!labels.isFile()) {
+                continue;
+            }
+            GroundTruth truth;
+            try (Reader reader = new FileReader(labels)) {
+                truth = GroundTruth.read(reader);
+            }
+            List<FaceFrame> frames = new ArrayList<>();
+            FaceFrame face = new FaceFrame();
+            if (binary) {
+                try (FrameFileReader reader = new FrameFileReader(trace)) {
+                    while (reader.next(face)) {
+                        frames.add(new FaceFrame().copyFrom(face));
+                    }
+                }
+            } else {
+                try (SessionTraceReader reader = new SessionTraceReader(new FileReader(trace))) {
+                    while (reader.next(face)) {
+                        frames.add(new FaceFrame().copyFrom(face));
+                    }
+                }
+            }
+            sessions.add(new Session(name, frames.toArray(new FaceFrame[0]), truth));
+        }
+        return Collections.unmodifiableList(sessions);
+    }
+
+    //==============================================================================================
+    // Fork-join
+    //==============================================================================================
+
+    /**
+     * Splits the range of configurations in half until a single one is left, which runs every
+     * session.  The sessions' frames are shared read-only between the tasks.
+     */
+    @SuppressWarnings("serial")
+    private static final class SweepTask extends RecursiveAction {
+        private final List<Session> mSessions;
+        private final TrackerConfig[] mConfigs;
+        private final Evaluation[] mResults;
+        private final long mToleranceMs;
+        private final int mFrom;
+        private final int mTo;
+
+        SweepTask(List<Session> sessions, TrackerConfig[] configs, Evaluation[] results,
+                  long toleranceMs, int from, int to) {
+            mSessions = sessions;
+            mConfigs = configs;
+            mResults = results;
+            mToleranceMs = toleranceMs;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= 1) {
+                for (int i = mFrom; i < mTo; i++) {
+                    mResults[i] = evaluate(mConfigs[i]);
+                }
+                return;
+            }
+            int mid = (mFrom + mTo) >>> 1;
+            invokeAll(new SweepTask(mSessions, mConfigs, mResults, mToleranceMs, mFrom, mid),
+                    new SweepTask(mSessions, mConfigs, mResults, mToleranceMs, mid, mTo));
+        }
+
+        private Evaluation evaluate(TrackerConfig config) {
+            Evaluation evaluation = new Evaluation(SCORED_TYPES);
+            for (Session session : mSessions) {
+                SessionAnalyzer analyzer = new SessionAnalyzer(session.name, config);
+                for (FaceFrame face : session.frames) {
+                    analyzer.update(face);
+                }
+                evaluation.score(session.truth, analyzer.getReport().getEvents(), mToleranceMs);
+            }
+            return evaluation;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.eventlog.EventLog;
+
+/**
+ * Measures the event log: append throughput including segment writes, short and long range
+ * queries, a full scan, and compaction of the older half of the log.<p>
+ *
+ * Usage: {@code EventLogBenchmark [events=5000000] [segmentBytes=4194304]}
+ */
+public final class EventLogBenchmark {
+    private static final int QUERIES = 10000;
+
+    private EventLogBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        int segmentBytes = args.length > 1 ? Integer.parseInt(args[1])
+                : EventLog.DEFAULT_SEGMENT_BYTES;
+
+        File directory = Files.createTempDirectory("event-log-benchmark").toFile();
+        try (EventLog log = new EventLog(directory, segmentBytes)) {
+            // A crowd blinking about once every three seconds each, at ten events per second.
+            Random random = new Random(42);
+            long startNs = System.nanoTime();
+            long timestampMs = 0;
+            for (int i = 0; i < events; i++) {
+                timestampMs += random.nextInt(200);
+                int type = random.nextInt(20) == 0
+                        ? FaceEvents.LEFT_FACE + random.nextInt(2) : FaceEvents.EYE;
+                log.append(timestampMs, type, random.nextInt(16), i);
+            }
+            log.flush();
+            long appendNs = System.nanoTime() - startNs;
+            long endMs = timestampMs;
+
+            System.out.printf("events: %d over %.1f h in %d segments, %.1f bytes/event%n",
+                    events, endMs / 3.6e6, log.getSegmentCount(),
+                    directorySize(directory) / (double) events);
+            System.out.printf("append: %.2f M events/s%n", events / (appendNs / 1e3));
+
+            long checksum = 0;
+            startNs = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                long fromMs = (long) (random.nextDouble() * endMs);
+                checksum += log.count(fromMs, fromMs + 60000, EventLog.typeBit(FaceEvents.EYE));
+            }
+            System.out.printf("1 minute range: %.1f us/query%n",
+                    (System.nanoTime() - startNs) / 1e3 / QUERIES);
+
+            startNs = System.nanoTime();
+            int hourQueries = QUERIES / 100;
+            for (int i = 0; i < hourQueries; i++) {
+                long fromMs = (long) (random.nextDouble() * Math.max(1, endMs - 3600000));
+                long[] perMinute = log.countPerBucket(fromMs, fromMs + 3600000, 60000,
+                        EventLog.typeBit(FaceEvents.EYE));
+                checksum += perMinute[0];
+            }
+            System.out.printf("blinks per minute over 1 hour: %.1f us/query%n",
+                    (System.nanoTime() - startNs) / 1e3 / hourQueries);
+
+            startNs = System.nanoTime();
+            long turns = log.count(0, Long.MAX_VALUE, EventLog.typeBit(FaceEvents.RIGHT_FACE));
+            long scanNs = System.nanoTime() - startNs;
+            System.out.printf("full scan: %.2f M events/s (%d right turns, checksum %d)%n",
+                    events / (scanNs / 1e3), turns, checksum);
+
+            startNs = System.nanoTime();
+            long dropped = log.compact(endMs / 2);
+            System.out.printf("compaction: %d events dropped in %.1f ms, %d segments left%n",
+                    dropped, (System.nanoTime() - startNs) / 1e6, log.getSegmentCount());
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    private static long directorySize(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,495 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import me.prapon.eyeblinkdetection.core.EyeState;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.FaceSignals;
+import me.prapon.eyeblinkdetection.core.FaceTrackerLogic;
+import me.prapon.eyeblinkdetection.core.LandmarkTypes;
+import me.prapon.eyeblinkdetection.core.TrackerConfig;
+import me.prapon.eyeblinkdetection.core.eventlog.EventLog;
+import me.prapon.eyeblinkdetection.core.image.MotionGate;
+import me.prapon.eyeblinkdetection.core.pipeline.Stage;
+import me.prapon.eyeblinkdetection.core.synth.SyntheticFaces;
+
+/**
+ * Soak tests the face pipeline on synthetic faces, many times faster than real time, and watches
+ * its allocation rate and retained heap.<p>
+ *
+ * The camera views, the detector and the overlay need a device, so this runs the parts of the
+ * pipeline which do not, arranged as the app arranges them: a camera thread which draws NV21
+ * frames from a small pool of buffers and passes them through the motion gate, standing in for the
+ * detector with the generator's face records; a tracking stage with a tracker per face, the graphed
+ * signals and the published eye state; an event stage which appends to an event log; and a render
+ * thread which reads the eye state and signals at display rate.  When no buffer is free, the
+ * camera drops the frame, as a real one does.<p>
+ *
+ * Every report shows the throughput, the stages, the bytes allocated per frame and the heap
+ * retained after the last collection.  Allocation should stay flat per frame, and the retained
+ * heap should level off; one that keeps growing over hours is a leak.<p>
+ *
+ * Usage: {@code SoakRunner [--minutes=60] [--speed=10] [--faces=3] [--fps=30] [--width=640]
+ * [--height=480] [--report-s=10] [--seed=1]}, where the minutes are of wall time and a speed of 0
+ * runs as fast as the pipeline keeps up.
+ */
+public final class SoakRunner {
+    // Buffers the camera cycles through, as in CameraSource.
+    private static final int CAMERA_BUFFERS = 4;
+    private static final int MAX_TRACKERS = 16;
+    private static final int EVENT_STAGE_CAPACITY = 64;
+    private static final long DISPLAY_INTERVAL_MS = 16;
+    // Events kept in the log, in simulated time, so that its disk use levels off as well.
+    private static final long EVENT_RETENTION_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private SoakRunner() {
+    }
+
+    /**
+     * A camera buffer with the face records detected in it.
+     */
+    private static final class FrameItem {
+        final byte[] nv21;
+        final ByteBuffer luma;
+        final FaceFrame[] faces;
+        int count;
+
+        FrameItem(int width, int height, int maxFaces) {
+            nv21 = new byte[width * height * 3 / 2];
+            luma = ByteBuffer.wrap(nv21);
+            faces = new FaceFrame[maxFaces];
+            for (int i = 0; i < maxFaces; i++) {
+                faces[i] = new FaceFrame();
+            }
+        }
+    }
+
+    /**
+     * The tracker of one face, reused for another once its face is gone.
+     */
+    private static final class Tracker {
+        int faceId = -1;
+        long lastSeenMs = Long.MIN_VALUE;
+        FaceTrackerLogic logic;
+        final EyeState eyes = new EyeState();
+    }
+
+    private static final class Event {
+        final long timestampMs;
+        final int type;
+        final int faceId;
+        final int blinkCount;
+
+        Event(long timestampMs, int type, int faceId, int blinkCount) {
+            this.timestampMs = timestampMs;
+            this.type = type;
+            this.faceId = faceId;
+            this.blinkCount = blinkCount;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double minutes = 60;
+        double speed = 10;
+        int faceCount = 3;
+        int fps = 30;
+        int width = 640;
+        int height = 480;
+        long reportSeconds = 10;
+        long seed = 1;
+        for (String option : args) {
+            int eq = option.indexOf('=');
+            if (!option.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Bad option: " + option);
+            }
+            String value = option.substring(eq + 1);
+            switch (option.substring(2, eq)) {
+                case "minutes":
+                    minutes = Double.parseDouble(value);
+                    break;
+                case "speed":
+                    speed = Double.parseDouble(value);
+                    break;
+                case "faces":
+                    faceCount = Integer.parseInt(value);
+                    break;
+                case "fps":
+                    fps = Integer.parseInt(value);
+                    break;
+                case "width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "height":
+                    height = Integer.parseInt(value);
+                    break;
+                case "report-s":
+                    reportSeconds = Long.parseLong(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+
+        SyntheticFaces source = new SyntheticFaces.Builder()
+                .setSeed(seed)
+                .setFaceCount(faceCount)
+                .setFrameSize(width, height)
+                .setFrameIntervalMs(1000 / fps)
+                .build(null);
+        File logDir = Files.createTempDirectory("soak-events").toFile();
+        Pipeline pipeline = new Pipeline(source, new EventLog(logDir));
+        try {
+            pipeline.run((long) (minutes * 60e9), speed,
+                    TimeUnit.SECONDS.toNanos(reportSeconds));
+        } finally {
+            pipeline.close();
+            File[] files = logDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            logDir.delete();
+        }
+    }
+
+    //==============================================================================================
+    // Pipeline
+    //==============================================================================================
+
+    private static final class Pipeline {
+        private final SyntheticFaces mSource;
+        private final EventLog mEventLog;
+        private final ArrayBlockingQueue<FrameItem> mFreeItems =
+                new ArrayBlockingQueue<>(CAMERA_BUFFERS);
+        private final Stage<FrameItem> mTrackStage;
+        private final Stage<Event> mEventStage;
+        private final FaceSignals mSignals = new FaceSignals(240, 4, 4);
+        private final Tracker[] mTrackers = new Tracker[MAX_TRACKERS];
+        private final MotionGate mGate = new MotionGate(24, 6, 500);
+        private final Thread mRenderThread;
+        private volatile boolean mStopped;
+
+        // Only used on the camera thread.
+        private final FaceFrame[] mDetected;
+        private int mDetectedCount;
+        private final int[] mRegion = new int[4];
+        private long mFrames;
+        private long mCameraDrops;
+        private long mGateSkips;
+
+        // Only used on the tracking stage.
+        private long mTrackedMs;
+
+        // Only used on the render thread.
+        private final EyeState.Snapshot mSnapshot = new EyeState.Snapshot();
+        private final float[] mMins = new float[240];
+        private final float[] mMaxs = new float[240];
+        private volatile long mRenders;
+
+        private volatile long mEventsLogged;
+        private volatile long mLogFailures;
+
+        Pipeline(SyntheticFaces source, EventLog eventLog) {
+            mSource = source;
+            mEventLog = eventLog;
+            for (int i = 0; i < CAMERA_BUFFERS; i++) {
+                mFreeItems.add(new FrameItem(source.getWidth(), source.getHeight(),
+                        source.getMaxFaces()));
+            }
+            mDetected = new FaceFrame[source.getMaxFaces()];
+            for (int i = 0; i < mDetected.length; i++) {
+                mDetected[i] = new FaceFrame();
+            }
+            for (int i = 0; i < MAX_TRACKERS; i++) {
+                mTrackers[i] = new Tracker();
+            }
+            mTrackStage = new Stage<>("track", 2, Stage.DROP_OLDEST, this::track,
+                    mFreeItems::offer);
+            mEventStage = new Stage<>("event", EVENT_STAGE_CAPACITY, Stage.DROP_NEWEST,
+                    this::log, null);
+            mRenderThread = new Thread(this::render, "render");
+            mRenderThread.setDaemon(true);
+        }
+
+        void run(long durationNs, double speed, long reportNs) throws InterruptedException {
+            mTrackStage.start();
+            mEventStage.start();
+            mRenderThread.start();
+            Monitor monitor = new Monitor();
+            long startNs = System.nanoTime();
+            long nextReportNs = startNs + reportNs;
+            long lastFrames = 0;
+            monitor.sample();
+            while (System.nanoTime() - startNs < durationNs) {
+                long timestampMs = frame();
+                if (speed > 0) {
+                    long dueNs = startNs + (long) (timestampMs * 1e6 / speed);
+                    long waitNs = dueNs - System.nanoTime();
+                    if (waitNs > 0) {
+                        LockSupport.parkNanos(waitNs);
+                    }
+                }
+                long nowNs = System.nanoTime();
+                if (nowNs >= nextReportNs) {
+                    long frames = mFrames - lastFrames;
+                    lastFrames = mFrames;
+                    report(monitor, nowNs - startNs, timestampMs, frames);
+                    nextReportNs += reportNs;
+                }
+            }
+            if (monitor.firstRetained >= 0) {
+                System.out.printf("retained heap: first %.1f MB, min %.1f MB, last %.1f MB%n",
+                        monitor.firstRetained / 1e6, monitor.minRetained / 1e6,
+                        monitor.retained / 1e6);
+            }
+        }
+
+        void close() throws IOException {
+            mStopped = true;
+            mTrackStage.stop();
+            mEventStage.stop();
+            mEventLog.close();
+        }
+
+        /**
+         * Generates, draws and gates the next frame, as the camera and detector threads do, and
+         * returns its timestamp.
+         */
+        private long frame() {
+            FrameItem item = mFreeItems.poll();
+            if (item == null) {
+                // Every buffer is still in the pipeline, so the camera skips the frame.
+                mCameraDrops++;
+                mSource.next(mDetected);
+                return mSource.getTimestampMs();
+            }
+            int count = mSource.next(item.faces);
+            long timestampMs = mSource.getTimestampMs();
+            mSource.render(item.nv21);
+            mFrames++;
+
+            int width = mSource.getWidth();
+            int height = mSource.getHeight();
+            if (mDetectedCount > 0 && mGate.isUnchanged(item.luma, width, height, timestampMs)) {
+                // Reuse the last detections, as the gated detector does.
+                mGateSkips++;
+                for (int i = 0; i < mDetectedCount; i++) {
+                    item.faces[i].copyFrom(mDetected[i]);
+                    item.faces[i].setTimestampMs(timestampMs);
+                }
+                item.count = mDetectedCount;
+            } else {
+                item.count = count;
+                for (int i = 0; i < count; i++) {
+                    mDetected[i].copyFrom(item.faces[i]);
+                }
+                mDetectedCount = count;
+                mGate.setReference(item.luma, width, height, region(item.faces, count),
+                        timestampMs);
+            }
+            mTrackStage.submit(item);
+            return timestampMs;
+        }
+
+        private int[] region(FaceFrame[] faces, int count) {
+            if (count == 0) {
+                return null;
+            }
+            float left = Float.MAX_VALUE;
+            float top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                left = Math.min(left, faces[i].getLeft());
+                top = Math.min(top, faces[i].getTop());
+                right = Math.max(right, faces[i].getLeft() + faces[i].getWidth());
+                bottom = Math.max(bottom, faces[i].getTop() + faces[i].getHeight());
+            }
+            mRegion[0] = (int) left;
+            mRegion[1] = (int) top;
+            mRegion[2] = (int) right;
+            mRegion[3] = (int) bottom;
+            return mRegion;
+        }
+
+        /**
+         * Runs the trackers on a frame's faces, on the tracking stage.
+         */
+        private void track(FrameItem item) {
+            for (int i = 0; i < item.count; i++) {
+                FaceFrame face = item.faces[i];
+                Tracker tracker = trackerFor(face);
+                mTrackedMs = face.getTimestampMs();
+                tracker.logic.update(face);
+                tracker.lastSeenMs = face.getTimestampMs();
+                mSignals.add(face);
+                boolean hasEyes = face.hasLandmark(LandmarkTypes.LEFT_EYE)
+                        && face.hasLandmark(LandmarkTypes.RIGHT_EYE);
+                tracker.eyes.publish(hasEyes, face.getLandmarkX(LandmarkTypes.LEFT_EYE),
+                        face.getLandmarkY(LandmarkTypes.LEFT_EYE), tracker.logic.isLeftOpen(),
+                        face.getLandmarkX(LandmarkTypes.RIGHT_EYE),
+                        face.getLandmarkY(LandmarkTypes.RIGHT_EYE), tracker.logic.isRightOpen(),
+                        tracker.logic.getBlinkCount(), face.getTimestampMs());
+            }
+            mFreeItems.offer(item);
+        }
+
+        /**
+         * Returns the tracker of the face, or takes over the one which has gone unseen longest.
+         */
+        private Tracker trackerFor(FaceFrame face) {
+            Tracker stalest = mTrackers[0];
+            for (Tracker tracker : mTrackers) {
+                if (tracker.faceId == face.getId()) {
+                    return tracker;
+                }
+                if (tracker.lastSeenMs < stalest.lastSeenMs) {
+                    stalest = tracker;
+                }
+            }
+            final int faceId = face.getId();
+            stalest.faceId = faceId;
+            stalest.eyes.clearEyes();
+            stalest.logic = new FaceTrackerLogic(TrackerConfig.DEFAULT,
+                    (type, blinkCount, timestampMs) ->
+                            mEventStage.submit(new Event(timestampMs, type, faceId, blinkCount)));
+            stalest.logic.start(face.getTimestampMs());
+            return stalest;
+        }
+
+        private void log(Event event) {
+            try {
+                mEventLog.append(event.timestampMs, event.type, event.faceId, event.blinkCount);
+                long logged = mEventsLogged + 1;
+                mEventsLogged = logged;
+                if (logged % 1000 == 0) {
+                    mEventLog.flush();
+                    mEventLog.compact(event.timestampMs - EVENT_RETENTION_MS);
+                }
+            } catch (IOException e) {
+                mLogFailures++;
+            }
+        }
+
+        /**
+         * Reads what the overlay draws, at display rate.
+         */
+        private void render() {
+            while (!mStopped) {
+                for (Tracker tracker : mTrackers) {
+                    tracker.eyes.read(mSnapshot);
+                }
+                for (int signal = 0; signal < FaceSignals.COUNT; signal++) {
+                    mSignals.get(signal).read(0, mMins, mMaxs);
+                }
+                mRenders++;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DISPLAY_INTERVAL_MS));
+            }
+        }
+
+        private void report(Monitor monitor, long elapsedNs, long simulatedMs, long frames) {
+            monitor.sample();
+            System.out.printf("%6.0f s wall, %8.0f s simulated: %.0f frames/s, %.0f B/frame"
+                            + " allocated, retained %.1f MB, gc %d in %d ms%n",
+                    elapsedNs / 1e9, simulatedMs / 1e3, frames / monitor.intervalSeconds,
+                    frames == 0 ? 0 : monitor.allocatedBytes / (double) frames,
+                    monitor.retained / 1e6, monitor.gcCount, monitor.gcMs);
+            System.out.printf("    camera: %d frames, %d dropped, gate skipped %d (%.0f%%);"
+                            + " tracked to %d ms; renders %d; events %d logged, %d failed%n",
+                    mFrames, mCameraDrops, mGateSkips,
+                    mFrames == 0 ? 0 : 100.0 * mGateSkips / mFrames, mTrackedMs, mRenders,
+                    mEventsLogged, mLogFailures);
+            System.out.println("    " + mTrackStage);
+            System.out.println("    " + mEventStage);
+        }
+    }
+
+    //==============================================================================================
+    // Monitoring
+    //==============================================================================================
+
+    /**
+     * Samples allocation and collection counters, reporting the change since the last sample.
+     * Allocation is summed over the live threads, which in a steady state are the pipeline's.
+     */
+    private static final class Monitor {
+        private final ThreadMXBean mThreads = ManagementFactory.getThreadMXBean();
+        private long mLastAllocated = -1;
+        private long mLastGcCount;
+        private long mLastGcMs;
+        private long mLastSampleNs;
+
+        double intervalSeconds;
+        long allocatedBytes;
+        long retained;
+        long firstRetained = -1;
+        long minRetained = Long.MAX_VALUE;
+        long gcCount;
+        long gcMs;
+
+        void sample() {
+            long nowNs = System.nanoTime();
+            intervalSeconds = mLastSampleNs == 0 ? 0 : (nowNs - mLastSampleNs) / 1e9;
+            mLastSampleNs = nowNs;
+
+            long allocated = allocatedBytes();
+            allocatedBytes = mLastAllocated < 0 || allocated < 0 ? 0 : allocated - mLastAllocated;
+            mLastAllocated = allocated;
+
+            long count = 0;
+            long ms = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+                ms += Math.max(0, collector.getCollectionTime());
+            }
+            gcCount = count - mLastGcCount;
+            gcMs = ms - mLastGcMs;
+            mLastGcCount = count;
+            mLastGcMs = ms;
+
+            // The heap in use right after the last collection, without forcing one.
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && usage != null) {
+                    used += usage.getUsed();
+                }
+            }
+            retained = used;
+            if (count > 0) {
+                if (firstRetained < 0) {
+                    firstRetained = used;
+                }
+                minRetained = Math.min(minRetained, used);
+            }
+        }
+
+        private long allocatedBytes() {
+            if (!(mThreads instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mThreads;
+            long total = 0;
+            for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                total += Math.max(0, allocated);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package me.prapon.eyeblinkdetection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import me.prapon.eyeblinkdetection.core.FaceEvents;
+import me.prapon.eyeblinkdetection.core.FaceFrame;
+import me.prapon.eyeblinkdetection.core.codec.FrameFileWriter;
+import me.prapon.eyeblinkdetection.core.codec.FrameFormat;
+import me.prapon.eyeblinkdetection.core.eval.GroundTruth;
+import me.prapon.eyeblinkdetection.core.synth.SyntheticFaces;
+
+/**
+ * Writes synthetic sessions as binary recordings with their label files, for
+ * {@link EvaluationHarness} and {@link BatchAnalyzer} to run on when there are no real recordings
+ * at hand, or to test them on more sessions than were recorded.  Session {@code i} is generated
+ * with seed {@code i}, so the same arguments always write the same files.<p>
+ *
+ * Usage: {@code SyntheticTraces <outDir> [sessions=10] [minutes=5] [faces=1] [fps=30]}
+ */
+public final class SyntheticTraces {
+    private SyntheticTraces() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticTraces <outDir> [sessions=10] [minutes=5]"
+                    + " [faces=1] [fps=30]");
+            System.exit(2);
+        }
+        File outDir = new File(args[0]);
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long durationMs = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 60000;
+        int faces = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int fps = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        Files.createDirectories(outDir.toPath());
+
+        long records = 0;
+        for (int session = 0; session < sessions; session++) {
+            String name = String.format("synthetic-%03d", session);
+            File labels = new File(outDir, name + GroundTruth.FILE_SUFFIX);
+            File trace = new File(outDir, name + FrameFormat.FILE_SUFFIX);
+            try (Writer labelWriter = new OutputStreamWriter(
+                    Files.newOutputStream(labels.toPath()), StandardCharsets.UTF_8);
+                 FrameFileWriter traceWriter = new FrameFileWriter(trace)) {
+                labelWriter.write("# type,startMs,endMs,faceId\n");
+                SyntheticFaces source = new SyntheticFaces.Builder()
+                        .setSeed(session)
+                        .setFaceCount(faces)
+                        .setFrameIntervalMs(1000 / fps)
+                        .build((type, startMs, endMs, faceId) -> {
+                            try {
+                                labelWriter.write(FaceEvents.name(type) + "," + startMs + ","
+                                        + endMs + "," + faceId + "\n");
+                            } catch (IOException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        });
+                FaceFrame[] frame = new FaceFrame[faces];
+                for (int i = 0; i < faces; i++) {
+                    frame[i] = new FaceFrame();
+                }
+                while (source.getTimestampMs() < durationMs) {
+                    int count = source.next(frame);
+                    for (int i = 0; i < count; i++) {
+                        traceWriter.write(frame[i]);
+                    }
+                }
+                records += traceWriter.getRecordCount();
+            }
+        }
+        System.out.printf("sessions: %d, face records: %d, in %s%n", sessions, records, outDir);
+    }
+}